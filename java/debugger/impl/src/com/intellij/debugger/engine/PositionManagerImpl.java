@@ -62,7 +62,7 @@ public class PositionManagerImpl implements PositionManager {
   public List<Location> locationsOfLine(ReferenceType type, SourcePosition position) throws NoDataException {
     try {
       final int line = position.getLine() + 1;
-      return type.locationsOfLine(DebugProcess.JAVA_STRATUM, null, line);
+      return myDebugProcess.getVirtualMachineProxy().locationsOfLine(type, DebugProcess.JAVA_STRATUM, line);
     }
     catch (AbsentInformationException ignored) {
     }
@@ -272,23 +272,19 @@ public class PositionManagerImpl implements PositionManager {
           final ReferenceType found = findNested(nested, classToFind, classPosition);
           if (found != null) {
             // check if enclosing class also has executable code at the same line, and if yes, prefer enclosing class 
-            return fromClass.locationsOfLine(lineNumber).isEmpty()? found : fromClass;
+            return vmProxy.locationsOfLine(fromClass, null, lineNumber).isEmpty()? found : fromClass;
           }
         }
 
-        if (fromClass.locationsOfLine(lineNumber).size() > 0) {
+        if (vmProxy.locationsOfLine(fromClass, null, lineNumber).size() > 0) {
           return fromClass;
         }
         
-        int rangeBegin = Integer.MAX_VALUE;
-        int rangeEnd = Integer.MIN_VALUE;
-        for (Location location : fromClass.allLineLocations()) {
-          final int locationLine = location.lineNumber() - 1;
-          rangeBegin = Math.min(rangeBegin,  locationLine);
-          rangeEnd = Math.max(rangeEnd,  locationLine);
-        }
+        final int[] linesRange = vmProxy.getLinesRange(fromClass, null);
+        final int rangeBegin = linesRange[0] - 1;
+        final int rangeEnd = linesRange[1] - 1;
 
-        if (classPosition.getLine() >= rangeBegin && classPosition.getLine() <= rangeEnd) {
+        if (linesRange[0] <= linesRange[1] && classPosition.getLine() >= rangeBegin && classPosition.getLine() <= rangeEnd) {
           // choose the second line to make sure that only this class' code exists on the line chosen
           // Otherwise the line (depending on the offset in it) can contain code that belongs to different classes
           // and JVMNameUtil.getClassAt(candidatePosition) will return the wrong class.
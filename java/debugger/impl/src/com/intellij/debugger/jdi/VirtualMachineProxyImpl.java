@@ -33,7 +33,10 @@ import com.sun.jdi.*;
 import com.sun.jdi.event.EventQueue;
 import com.sun.jdi.request.EventRequestManager;
 import com.sun.tools.jdi.VoidValueImpl;
+import gnu.trove.THashMap;
+import gnu.trove.TIntObjectHashMap;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
@@ -54,6 +57,11 @@ public class VirtualMachineProxyImpl implements JdiTimer, VirtualMachineProxy {
   private boolean myAllThreadsDirty = true;
   private List<ReferenceType> myAllClasses;
   private Map<ReferenceType, List<ReferenceType>> myNestedClassesCache = new HashMap<ReferenceType, List<ReferenceType>>();
+  // allClasses() sorted by name, is used to look up nested classes without iterating all classes
+  private ReferenceType[] mySortedClasses;
+  private String[] mySortedClassNames;
+  // line tables don't change until the class is redefined, so they survive clearCaches()
+  private final Map<ReferenceType, Map<String, LineLocations>> myLineLocations = new WeakHashMap<ReferenceType, Map<String, LineLocations>>();
 
   public Throwable mySuspendLogger = new Throwable();
   private final boolean myVersionHigher_15;
@@ -88,7 +96,7 @@ public class VirtualMachineProxyImpl implements JdiTimer, VirtualMachineProxy {
   public List<ReferenceType> nestedTypes(ReferenceType refType) {
     List<ReferenceType> nestedTypes = myNestedClassesCache.get(refType);
     if (nestedTypes == null) {
-      final List<ReferenceType> list = refType.nestedTypes();
+      final List<ReferenceType> list = allNestedTypes(refType);
       final int size = list.size();
       if (size > 0) {
         final Set<ReferenceType> candidates = new HashSet<ReferenceType>();
@@ -129,6 +137,119 @@ public class VirtualMachineProxyImpl implements JdiTimer, VirtualMachineProxy {
     return myAllClasses;
   }
 
+  /**
+   * Same as {@link ReferenceType#nestedTypes()} (i.e. includes nested classes of all depths) but uses the index over
+   * {@link #allClasses()} instead of iterating all loaded classes on every call.
+   */
+  private List<ReferenceType> allNestedTypes(ReferenceType refType) {
+    if (mySortedClasses == null) {
+      final List<ReferenceType> allClasses = allClasses();
+      final ReferenceType[] classes = allClasses.toArray(new ReferenceType[allClasses.size()]);
+      Arrays.sort(classes, new Comparator<ReferenceType>() {
+        public int compare(ReferenceType o1, ReferenceType o2) {
+          return o1.name().compareTo(o2.name());
+        }
+      });
+      final String[] names = new String[classes.length];
+      for (int i = 0; i < classes.length; i++) {
+        names[i] = classes[i].name();
+      }
+      mySortedClasses = classes;
+      mySortedClassNames = names;
+    }
+
+    final String outerName = refType.name();
+    final int outerLength = outerName.length();
+    // '#' and '$' are adjacent chars, so all nested classes names follow the outer name + '#' in the sorted array
+    int i = Arrays.binarySearch(mySortedClassNames, outerName + '#');
+    if (i < 0) {
+      i = -i - 1;
+    }
+    List<ReferenceType> result = null;
+    for (; i < mySortedClassNames.length; i++) {
+      final String name = mySortedClassNames[i];
+      if (name.length() <= outerLength || !name.startsWith(outerName)) break;
+      final char c = name.charAt(outerLength);
+      if (c != '#' && c != '$') break;
+      if (result == null) {
+        result = new ArrayList<ReferenceType>();
+      }
+      result.add(mySortedClasses[i]);
+    }
+    return result == null ? Collections.<ReferenceType>emptyList() : result;
+  }
+
+  /**
+   * Same as {@link ReferenceType#locationsOfLine(String, String, int)} for all source names but the line table of the type
+   * is retrieved only once and is kept until the type is {@link #redefineClasses(Map) redefined}.
+   *
+   * @param stratum    stratum to use, <code>null</code> means the default stratum of the type
+   * @return  unmodifiable view of the cached locations
+   */
+  @NotNull
+  public List<Location> locationsOfLine(@NotNull ReferenceType type, @Nullable String stratum, int lineNumber)
+    throws AbsentInformationException {
+    final List<Location> locations = getLineLocations(type, stratum).myByLine.get(lineNumber);
+    return locations == null ? Collections.<Location>emptyList() : Collections.unmodifiableList(locations);
+  }
+
+  /**
+   * @return  minimal and maximal line numbers which have executable code within the given type, according to its line table
+   * @see #locationsOfLine(ReferenceType, String, int)
+   */
+  @NotNull
+  public int[] getLinesRange(@NotNull ReferenceType type, @Nullable String stratum) throws AbsentInformationException {
+    final LineLocations locations = getLineLocations(type, stratum);
+    return new int[]{locations.myMinLine, locations.myMaxLine};
+  }
+
+  @NotNull
+  private LineLocations getLineLocations(@NotNull ReferenceType type, @Nullable String stratum) throws AbsentInformationException {
+    final String stratumKey = stratum == null ? type.defaultStratum() : stratum;
+    Map<String, LineLocations> byStratum = myLineLocations.get(type);
+    if (byStratum == null) {
+      byStratum = new THashMap<String, LineLocations>(1);
+      myLineLocations.put(type, byStratum);
+    }
+    LineLocations locations = byStratum.get(stratumKey);
+    if (locations == null) {
+      locations = new LineLocations(type, stratumKey);
+      byStratum.put(stratumKey, locations);
+    }
+    if (locations.myByLine == null) {
+      throw new AbsentInformationException();
+    }
+    return locations;
+  }
+
+  private static class LineLocations {
+    // null if the line information is absent
+    private final TIntObjectHashMap<List<Location>> myByLine;
+    private int myMinLine = Integer.MAX_VALUE;
+    private int myMaxLine = Integer.MIN_VALUE;
+
+    private LineLocations(ReferenceType type, String stratum) {
+      TIntObjectHashMap<List<Location>> byLine = new TIntObjectHashMap<List<Location>>();
+      try {
+        for (Location location : type.allLineLocations(stratum, null)) {
+          final int line = location.lineNumber(stratum);
+          List<Location> locations = byLine.get(line);
+          if (locations == null) {
+            locations = new ArrayList<Location>(1);
+            byLine.put(line, locations);
+          }
+          locations.add(location);
+          myMinLine = Math.min(myMinLine, line);
+          myMaxLine = Math.max(myMaxLine, line);
+        }
+      }
+      catch (AbsentInformationException ignored) {
+        byLine = null;
+      }
+      myByLine = byLine;
+    }
+  }
+
   public String toString() {
     return myVirtualMachine.toString();
   }
@@ -139,6 +260,9 @@ public class VirtualMachineProxyImpl implements JdiTimer, VirtualMachineProxy {
       myVirtualMachine.redefineClasses(map);
     }
     finally {
+      for (ReferenceType type : map.keySet()) {
+        myLineLocations.remove(type);
+      }
       clearCaches();
     }
   }
@@ -609,6 +733,8 @@ public class VirtualMachineProxyImpl implements JdiTimer, VirtualMachineProxy {
     }
 
     myAllClasses = null;
+    mySortedClasses = null;
+    mySortedClassNames = null;
     if (!myNestedClassesCache.isEmpty()) {
       myNestedClassesCache = new HashMap<ReferenceType, List<ReferenceType>>(myNestedClassesCache.size());
     }
@@ -69,6 +69,10 @@ public abstract class ValueDescriptorImpl extends NodeDescriptorImpl implements
 
   private boolean myShowIdLabel = true;
 
+  // value retrieved in advance together with values of other descriptors, is consumed by the next setContext() call
+  private Value myPrefetchedValue;
+  private boolean myHasPrefetchedValue;
+
   protected ValueDescriptorImpl(Project project, Value value) {
     myProject = project;
     myValue = value;
@@ -146,6 +150,16 @@ public abstract class ValueDescriptorImpl extends NodeDescriptorImpl implements
 
   public abstract Value calcValue(EvaluationContextImpl evaluationContext) throws EvaluateException;
 
+  /**
+   * Makes the next {@link #setContext(EvaluationContextImpl)} call use the given value instead of {@link #calcValue calculating} it.
+   * Is used by renderers which retrieve values of several children with a single request to the VM.
+   */
+  public void setPrefetchedValue(@Nullable Value value) {
+    DebuggerManagerThreadImpl.assertIsManagerThread();
+    myPrefetchedValue = value;
+    myHasPrefetchedValue = true;
+  }
+
   public final void setContext(EvaluationContextImpl evaluationContext) {
     DebuggerManagerThreadImpl.assertIsManagerThread();
     if (Patches.IBM_JDK_DISABLE_COLLECTION_BUG) {
@@ -153,7 +167,14 @@ public abstract class ValueDescriptorImpl extends NodeDescriptorImpl implements
     }
     Value value;
     try {
-      value = calcValue(evaluationContext);
+      if (myHasPrefetchedValue) {
+        value = myPrefetchedValue;
+        myHasPrefetchedValue = false;
+        myPrefetchedValue = null;
+      }
+      else {
+        value = calcValue(evaluationContext);
+      }
 
       if(!myIsNew) {
         try {
@@ -24,6 +24,7 @@ import com.intellij.debugger.ui.impl.watch.ArrayElementDescriptorImpl;
 import com.intellij.debugger.ui.impl.watch.MessageDescriptor;
 import com.intellij.debugger.ui.impl.watch.NodeManagerImpl;
 import com.intellij.debugger.ui.impl.watch.ValueDescriptorImpl;
+import com.intellij.debugger.ui.tree.ArrayElementDescriptor;
 import com.intellij.debugger.ui.tree.DebuggerTreeNode;
 import com.intellij.debugger.ui.tree.NodeDescriptor;
 import com.intellij.debugger.ui.tree.NodeDescriptorFactory;
@@ -38,10 +39,7 @@ import com.intellij.psi.JavaPsiFacade;
 import com.intellij.psi.PsiElementFactory;
 import com.intellij.psi.PsiExpression;
 import com.intellij.util.IncorrectOperationException;
-import com.sun.jdi.ArrayReference;
-import com.sun.jdi.ArrayType;
-import com.sun.jdi.Type;
-import com.sun.jdi.Value;
+import com.sun.jdi.*;
 import org.jdom.Element;
 import org.jetbrains.annotations.NonNls;
 
@@ -119,9 +117,12 @@ public class ArrayRenderer extends NodeRendererImpl{
         int end  = array.length() - 1 < END_INDEX   ? array.length() - 1 : END_INDEX;
 
         int idx;
+        ArrayValues values = new ArrayValues(array, start, end);
 
         for (idx = start; idx <= end; idx++) {
-          DebuggerTreeNode arrayItemNode = nodeManager.createNode(descriptorFactory.getArrayItemDescriptor(builder.getParentDescriptor(), array, idx), evaluationContext);
+          ArrayElementDescriptor descriptor = descriptorFactory.getArrayItemDescriptor(builder.getParentDescriptor(), array, idx);
+          values.prefetch(descriptor, idx, true);
+          DebuggerTreeNode arrayItemNode = nodeManager.createNode(descriptor, evaluationContext);
 
           if (ViewsGeneralSettings.getInstance().HIDE_NULL_ARRAY_ELEMENTS && ((ValueDescriptorImpl)arrayItemNode.getDescriptor()).isNull()) continue;
           if(added >= (ENTRIES_LIMIT  + 1)/ 2) break;
@@ -133,7 +134,9 @@ public class ArrayRenderer extends NodeRendererImpl{
 
         List<DebuggerTreeNode> childrenTail = new ArrayList<DebuggerTreeNode>();
         for (idx = end; idx >= start; idx--) {
-          DebuggerTreeNode arrayItemNode = nodeManager.createNode(descriptorFactory.getArrayItemDescriptor(builder.getParentDescriptor(), array, idx), evaluationContext);
+          ArrayElementDescriptor descriptor = descriptorFactory.getArrayItemDescriptor(builder.getParentDescriptor(), array, idx);
+          values.prefetch(descriptor, idx, false);
+          DebuggerTreeNode arrayItemNode = nodeManager.createNode(descriptor, evaluationContext);
 
           if (ViewsGeneralSettings.getInstance().HIDE_NULL_ARRAY_ELEMENTS && ((ValueDescriptorImpl)arrayItemNode.getDescriptor()).isNull()) continue;
           if(added >= ENTRIES_LIMIT) break;
@@ -209,6 +212,49 @@ public class ArrayRenderer extends NodeRendererImpl{
     return value instanceof ArrayReference && ((ArrayReference)value).length() > 0;
   }
 
+  /**
+   * Retrieves values of the array elements by pages instead of one request to the VM per element.
+   */
+  private static class ArrayValues {
+    private static final int PAGE_SIZE = 100;
+
+    private final ArrayReference myArray;
+    private final int myStart;
+    private final int myEnd;
+    private List<Value> myPage;
+    private int myPageStart;
+    private boolean myFailed;
+
+    private ArrayValues(ArrayReference array, int start, int end) {
+      myArray = array;
+      myStart = start;
+      myEnd = end;
+    }
+
+    /**
+     * @param forward    <code>true</code> if elements are iterated in ascending order, defines the page to retrieve
+     */
+    public void prefetch(NodeDescriptor descriptor, int index, boolean forward) {
+      if (myFailed || !(descriptor instanceof ValueDescriptorImpl)) {
+        return;
+      }
+      if (myPage == null || index < myPageStart || index >= myPageStart + myPage.size()) {
+        final int pageStart = forward ? index : Math.max(myStart, index - PAGE_SIZE + 1);
+        final int pageEnd = forward ? Math.min(myEnd, index + PAGE_SIZE - 1) : index;
+        try {
+          myPage = myArray.getValues(pageStart, pageEnd - pageStart + 1);
+          myPageStart = pageStart;
+        }
+        catch (ObjectCollectedException e) {
+          // descriptors will report the problem themselves
+          myFailed = true;
+          return;
+        }
+      }
+      ((ValueDescriptorImpl)descriptor).setPrefetchedValue(myPage.get(index - myPageStart));
+    }
+  }
+
   public boolean isApplicable(Type type) {
     return (type instanceof ArrayType);
   }
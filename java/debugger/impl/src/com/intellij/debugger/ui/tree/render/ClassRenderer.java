@@ -47,6 +47,7 @@ import org.jetbrains.annotations.Nullable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * User: lex
@@ -162,11 +163,25 @@ public class ClassRenderer extends NodeRendererImpl{
       // default ObjectReference processing
       final List<Field> fields = refType.allFields();
       if (fields.size() > 0) {
+        final List<Field> fieldsToDisplay = new ArrayList<Field>(fields.size());
         for (final Field field : fields) {
-          if (!shouldDisplay(evaluationContext, objRef, field)) {
-            continue;
+          if (shouldDisplay(evaluationContext, objRef, field)) {
+            fieldsToDisplay.add(field);
           }
-          children.add(nodeManager.createNode(nodeDescriptorFactory.getFieldDescriptor(parentDescriptor, objRef, field), evaluationContext));
+        }
+        // retrieve values of all fields by a single request instead of one request per field
+        Map<Field, Value> values = null;
+        try {
+          values = objRef.getValues(fieldsToDisplay);
+        }
+        catch (ObjectCollectedException ignored) {
+        }
+        for (final Field field : fieldsToDisplay) {
+          final FieldDescriptor fieldDescriptor = nodeDescriptorFactory.getFieldDescriptor(parentDescriptor, objRef, field);
+          if (values != null && fieldDescriptor instanceof ValueDescriptorImpl) {
+            ((ValueDescriptorImpl)fieldDescriptor).setPrefetchedValue(values.get(field));
+          }
+          children.add(nodeManager.createNode(fieldDescriptor, evaluationContext));
         }
 
         if(SORT_ASCENDING) {
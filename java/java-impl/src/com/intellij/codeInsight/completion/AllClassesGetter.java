@@ -16,6 +16,7 @@
 package com.intellij.codeInsight.completion;
 
 import com.intellij.codeInsight.CodeInsightUtilBase;
+import com.intellij.codeInsight.completion.impl.CamelHumpMatcher;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
@@ -171,7 +172,7 @@ public class AllClassesGetter {
                                         Project project,
                                         GlobalSearchScope scope,
                                         Processor<PsiClass> processor) {
-    AllClassesSearch.search(scope, project, new Condition<String>() {
+    AllClassesSearch.search(scope, project, getStartMatchFirstLetter(prefixMatcher), new Condition<String>() {
       @Override
       public boolean value(String s) {
         return prefixMatcher.isStartMatch(s);
@@ -186,6 +187,16 @@ public class AllClassesGetter {
   }
 
 
+  /**
+   * @return  letter which the names start-matching the prefix begin with in either case, 0 if it's not known. Names starting
+   *          with underscores before the letter aren't included, they're found as ordinary matches.
+   */
+  private static char getStartMatchFirstLetter(PrefixMatcher prefixMatcher) {
+    if (!(prefixMatcher instanceof CamelHumpMatcher) && !(prefixMatcher instanceof PlainPrefixMatcher)) return 0;
+    String prefix = prefixMatcher.getPrefix();
+    return !prefix.isEmpty() && Character.isLetter(prefix.charAt(0)) ? prefix.charAt(0) : 0;
+  }
+
   private static String getPackagePrefix(final PsiElement context, final int offset) {
     final String fileText = context.getContainingFile().getText();
     int i = offset - 1;
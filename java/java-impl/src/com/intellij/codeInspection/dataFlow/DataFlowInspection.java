@@ -39,6 +39,7 @@ import com.intellij.openapi.actionSystem.PlatformDataKeys;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.Pair;
 import com.intellij.pom.java.LanguageLevel;
 import com.intellij.psi.*;
@@ -63,6 +64,10 @@ import java.util.List;
 public class DataFlowInspection extends BaseLocalInspectionTool {
   private static final Logger LOG = Logger.getInstance("#com.intellij.codeInspection.dataFlow.DataFlowInspection");
   @NonNls private static final String SHORT_NAME = "ConstantConditions";
+  /**
+   * (out-of-code-block modification count, text hash) of a code block which has been analyzed with no problems found
+   */
+  private static final Key<Pair<Long, Integer>> NO_PROBLEMS_STAMP = Key.create("DFA_NO_PROBLEMS_STAMP");
   public boolean SUGGEST_NULLABLE_ANNOTATIONS = false;
   public boolean DONT_REPORT_TRUE_ASSERT_STATEMENTS = false;
 
@@ -92,11 +97,16 @@ public class DataFlowInspection extends BaseLocalInspectionTool {
 
   private void analyzeCodeBlock(@Nullable final PsiElement scope, ProblemsHolder holder) {
     if (scope == null) return;
+    final Pair<Long, Integer> stamp = getAnalysisStamp(scope);
+    if (stamp != null && stamp.equals(scope.getUserData(NO_PROBLEMS_STAMP))) return;
+
     final StandardDataFlowRunner dfaRunner = new StandardDataFlowRunner(SUGGEST_NULLABLE_ANNOTATIONS);
     final StandardInstructionVisitor visitor = new DataFlowInstructionVisitor(dfaRunner);
     final RunnerResult rc = dfaRunner.analyzeMethod(scope, visitor);
+    final boolean problemsDetected = rc == RunnerResult.OK && dfaRunner.problemsDetected(visitor);
+    scope.putUserData(NO_PROBLEMS_STAMP, rc == RunnerResult.OK && !problemsDetected ? stamp : null);
     if (rc == RunnerResult.OK) {
-      if (dfaRunner.problemsDetected(visitor)) {
+      if (problemsDetected) {
         createDescription(dfaRunner, holder, visitor);
       }
     }
@@ -111,6 +121,21 @@ public class DataFlowInspection extends BaseLocalInspectionTool {
     }
   }
 
+  /**
+   * The analysis of a code block depends only on its own text and on declarations outside code blocks,
+   * so a block with an unchanged text needs no re-analysis until an out-of-code-block change happens.
+   * Blocks of local and anonymous classes also depend on the enclosing method body and aren't cached.
+   */
+  @Nullable
+  private Pair<Long, Integer> getAnalysisStamp(@NotNull PsiElement scope) {
+    PsiClass containingClass = PsiTreeUtil.getParentOfType(scope, PsiClass.class);
+    if (containingClass != null && PsiUtil.isLocalOrAnonymousClass(containingClass)) return null;
+
+    long modificationCount = scope.getManager().getModificationTracker().getOutOfCodeBlockModificationCount();
+    int textHash = 31 * scope.getText().hashCode() + (SUGGEST_NULLABLE_ANNOTATIONS ? 1 : 0);
+    return Pair.create(modificationCount, textHash);
+  }
+
   @Nullable
   private static LocalQuickFix[] createNPEFixes(PsiExpression qualifier, PsiExpression expression) {
     if (qualifier == null || expression == null) return null;
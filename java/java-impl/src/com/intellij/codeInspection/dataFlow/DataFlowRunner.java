@@ -114,7 +114,7 @@ public class DataFlowRunner {
         return RunnerResult.TOO_COMPLEX;
       }
 
-      final ArrayList<DfaInstructionState> queue = new ArrayList<DfaInstructionState>();
+      final ArrayDeque<DfaInstructionState> queue = new ArrayDeque<DfaInstructionState>();
       for (final DfaMemoryState initialState : initialStates) {
         queue.add(new DfaInstructionState(myInstructions[0], initialState));
       }
@@ -130,7 +130,7 @@ public class DataFlowRunner {
         }
         ProgressManager.checkCanceled();
 
-        DfaInstructionState instructionState = queue.remove(0);
+        DfaInstructionState instructionState = queue.removeFirst();
         if (LOG.isDebugEnabled()) {
           LOG.debug(instructionState.toString());
         }
@@ -172,8 +172,14 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
   }
 
   public int hashCode() {
-    return 0;
-    //return myEqClasses.hashCode() + myStack.hashCode() + myVariableStates.hashCode();
+    // only the parts compared directly in equals(): equivalence classes are compared modulo permutation.
+    // Used for the hashed duplicate detection of processed states in Instruction, equal states only
+    int result = myStateSize;
+    result = 31 * result + myDistinctClasses.size();
+    result = 31 * result + myStack.hashCode();
+    result = 31 * result + myOffsetStack.hashCode();
+    result = 31 * result + myVariableStates.hashCode();
+    return result;
   }
 
   private void appendClass(StringBuffer buf, int aClassIndex) {
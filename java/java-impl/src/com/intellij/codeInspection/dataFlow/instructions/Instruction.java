@@ -28,16 +28,20 @@ import com.intellij.codeInspection.dataFlow.DataFlowRunner;
 import com.intellij.codeInspection.dataFlow.DfaInstructionState;
 import com.intellij.codeInspection.dataFlow.DfaMemoryState;
 import com.intellij.codeInspection.dataFlow.InstructionVisitor;
-import com.intellij.openapi.progress.ProgressManager;
-
-import java.util.ArrayList;
+import gnu.trove.THashSet;
 
 public abstract class Instruction {
   private int myIndex;
-  private final ArrayList<DfaMemoryState> myProcessedStates;
+  /**
+   * States this instruction has been processed with, hashed so that the duplicate check doesn't compare the incoming state with
+   * every processed one. Only equal states are detected: states aren't joined and a state isn't checked for being subsumed by
+   * a more general processed one, so each distinct state is still processed separately, up to
+   * {@link DataFlowRunner#MAX_STATES_PER_BRANCH}.
+   */
+  private final THashSet<DfaMemoryState> myProcessedStates;
 
   protected Instruction() {
-    myProcessedStates = new ArrayList<DfaMemoryState>();
+    myProcessedStates = new THashSet<DfaMemoryState>();
   }
 
   protected final DfaInstructionState[] nextInstruction(DataFlowRunner runner, DfaMemoryState stateBefore) {
@@ -47,14 +51,7 @@ public abstract class Instruction {
   public abstract DfaInstructionState[] accept(DataFlowRunner runner, DfaMemoryState stateBefore, InstructionVisitor visitor);
 
   public boolean isMemoryStateProcessed(DfaMemoryState dfaMemState) {
-    for (DfaMemoryState state : myProcessedStates) {
-      ProgressManager.checkCanceled();
-      if (dfaMemState.equals(state)) {
-        return true;
-      }
-    }
-
-    return false;
+    return myProcessedStates.contains(dfaMemState);
   }
 
   public boolean setMemoryStateProcessed(DfaMemoryState dfaMemState) {
@@ -17,8 +17,10 @@ package com.intellij.psi.impl;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.psi.*;
+import com.intellij.psi.impl.source.PsiJavaFileImpl;
 import com.intellij.psi.impl.source.jsp.jspXml.JspDirective;
 import com.intellij.psi.util.PsiModificationTracker;
+import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.psi.xml.XmlFile;
 import org.jetbrains.annotations.NotNull;
 
@@ -72,7 +74,13 @@ public class JavaCodeBlockModificationListener implements PsiTreeChangePreproces
         if (parent != null && isClassOwner(parent.getContainingFile()) ||
             isClassOwner(child1) || isClassOwner(child2) || isSourceDir(parent) ||
             (parent != null && isClassOwner(parent.getParent()))) {
-          myModificationTracker.incCounter();
+          PsiFile file = parent == null ? null : parent.getContainingFile();
+          if (file instanceof PsiJavaFileImpl && isFileLocalChange(parent, child1, child2)) {
+            JavaFileStructureTracker.fileStructureChanged(file, myModificationTracker);
+          }
+          else {
+            myModificationTracker.incCounter();
+          }
         }
         else {
           myModificationTracker.incOutOfCodeBlockModificationCounter();
@@ -89,6 +97,27 @@ public class JavaCodeBlockModificationListener implements PsiTreeChangePreproces
     }
   }
 
+  /**
+   * @return true if the change can't add, remove or rename classes visible from other files, nor move them to another package
+   */
+  private static boolean isFileLocalChange(@NotNull PsiElement parent, final PsiElement child1, final PsiElement child2) {
+    if (parent instanceof PsiFileSystemItem || isClassOwner(child1) || isClassOwner(child2)) return false;
+    if (PsiTreeUtil.getParentOfType(parent, PsiPackageStatement.class, false) != null) return false;
+    if (parent instanceof PsiIdentifier && parent.getParent() instanceof PsiClass) return false;
+    if (parent instanceof PsiClass) {
+      return child1 != parent && isMemberLevelElement(child1) && isMemberLevelElement(child2);
+    }
+    return true;
+  }
+
+  private static boolean isMemberLevelElement(final PsiElement element) {
+    return element == null ||
+           element instanceof PsiMethod || element instanceof PsiField || element instanceof PsiClassInitializer ||
+           element instanceof PsiModifierList || element instanceof PsiReferenceList || element instanceof PsiTypeParameterList ||
+           element instanceof PsiWhiteSpace || element instanceof PsiComment ||
+           element instanceof PsiJavaToken && !(element instanceof PsiIdentifier);
+  }
+
   private static boolean isSourceDir(PsiElement element) {
     return element instanceof PsiDirectory && JavaDirectoryService.getInstance().getPackage((PsiDirectory)element) != null;
   }
@@ -92,6 +92,23 @@ public abstract class PsiShortNamesCache {
    */
   public abstract void getAllClassNames(@NotNull HashSet<String> dest);
 
+  /**
+   * Processes the names of classes in the project and (optionally) libraries which start with the letter in either case.
+   * The same name may be processed more than once.
+   *
+   * @return false if the processor has stopped the processing
+   */
+  public boolean processClassNamesStartingWith(char letter, @NotNull Processor<String> processor) {
+    char upper = Character.toUpperCase(letter);
+    char lower = Character.toLowerCase(letter);
+    for (String name : getAllClassNames()) {
+      if (name.isEmpty()) continue;
+      char first = name.charAt(0);
+      if ((first == upper || first == lower) && !processor.process(name)) return false;
+    }
+    return true;
+  }
+
   /**
    * Returns the list of all methods with the specified name in the specified scope.
    *
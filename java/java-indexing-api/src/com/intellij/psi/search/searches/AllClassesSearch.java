@@ -35,14 +35,23 @@ public class AllClassesSearch extends ExtensibleQueryFactory<PsiClass, AllClasse
     private final SearchScope myScope;
     private final Project myProject;
     private final Condition<String> myShortNameCondition;
+    private final char myFirstLetter;
 
     public SearchParameters(final SearchScope scope, final Project project) {
       this(scope, project, Condition.TRUE);
     }
 
     public SearchParameters(final SearchScope scope, final Project project, final Condition<String> shortNameCondition) {
+      this(scope, project, (char)0, shortNameCondition);
+    }
+
+    /**
+     * @param firstLetter  letter which all short names accepted by the condition start with in either case, 0 if there is none
+     */
+    public SearchParameters(final SearchScope scope, final Project project, char firstLetter, final Condition<String> shortNameCondition) {
       myScope = scope;
       myProject = project;
+      myFirstLetter = firstLetter;
       myShortNameCondition = shortNameCondition;
     }
 
@@ -57,6 +66,13 @@ public class AllClassesSearch extends ExtensibleQueryFactory<PsiClass, AllClasse
     public boolean nameMatches(String name) {
       return myShortNameCondition.value(name);
     }
+
+    /**
+     * @return  letter which all matching short names start with in either case, 0 if they may start with anything
+     */
+    public char getFirstLetter() {
+      return myFirstLetter;
+    }
   }
 
   public static Query<PsiClass> search(SearchScope scope, Project project) {
@@ -66,4 +82,12 @@ public class AllClassesSearch extends ExtensibleQueryFactory<PsiClass, AllClasse
   public static Query<PsiClass> search(SearchScope scope, Project project, Condition<String> shortNameCondition) {
     return INSTANCE.createQuery(new SearchParameters(scope, project, shortNameCondition));
   }
+
+  /**
+   * Searches for the classes whose short names start with the letter in either case and satisfy the condition. Unlike
+   * {@link #search(SearchScope, Project, Condition)} this doesn't need to look at the names starting with other letters.
+   */
+  public static Query<PsiClass> search(SearchScope scope, Project project, char firstLetter, Condition<String> shortNameCondition) {
+    return INSTANCE.createQuery(new SearchParameters(scope, project, firstLetter, shortNameCondition));
+  }
 }
\ No newline at end of file
@@ -100,6 +100,14 @@ public class CompositeShortNamesCache extends PsiShortNamesCache {
     }
   }
 
+  @Override
+  public boolean processClassNamesStartingWith(char letter, @NotNull Processor<String> processor) {
+    for (PsiShortNamesCache cache : myCaches) {
+      if (!cache.processClassNamesStartingWith(letter, processor)) return false;
+    }
+    return true;
+  }
+
   @Override
   @NotNull
   public PsiMethod[] getMethodsByName(@NotNull String name, @NotNull GlobalSearchScope scope) {
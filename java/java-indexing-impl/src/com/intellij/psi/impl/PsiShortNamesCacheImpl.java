@@ -110,6 +110,18 @@ public class PsiShortNamesCacheImpl extends PsiShortNamesCache {
     set.addAll(JavaShortClassNameIndex.getInstance().getAllKeys(myManager.getProject()));
   }
 
+  @Override
+  public boolean processClassNamesStartingWith(char letter, @NotNull Processor<String> processor) {
+    StubIndex index = StubIndex.getInstance();
+    char upper = Character.toUpperCase(letter);
+    char lower = Character.toLowerCase(letter);
+    if (!index.processKeysWithPrefix(JavaStubIndexKeys.CLASS_SHORT_NAMES, myManager.getProject(), String.valueOf(upper), processor)) {
+      return false;
+    }
+    return upper == lower ||
+           index.processKeysWithPrefix(JavaStubIndexKeys.CLASS_SHORT_NAMES, myManager.getProject(), String.valueOf(lower), processor);
+  }
+
   @Override
   @NotNull
   public PsiMethod[] getMethodsByName(@NotNull String name, @NotNull final GlobalSearchScope scope) {
@@ -31,14 +31,18 @@ import com.intellij.psi.search.LocalSearchScope;
 import com.intellij.psi.search.PsiShortNamesCache;
 import com.intellij.psi.search.SearchScope;
 import com.intellij.psi.search.searches.AllClassesSearch;
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.CommonProcessors;
 import com.intellij.util.Processor;
 import com.intellij.util.QueryExecutor;
+import gnu.trove.THashSet;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 
 public class AllClassesSearchExecutor implements QueryExecutor<PsiClass, AllClassesSearch.SearchParameters> {
   @Override
@@ -59,10 +63,16 @@ public class AllClassesSearchExecutor implements QueryExecutor<PsiClass, AllClas
   private static boolean processAllClassesInGlobalScope(final GlobalSearchScope scope, final Processor<PsiClass> processor, AllClassesSearch.SearchParameters parameters) {
     final PsiShortNamesCache cache = PsiShortNamesCache.getInstance(parameters.getProject());
 
+    final char firstLetter = parameters.getFirstLetter();
     final String[] names = ApplicationManager.getApplication().runReadAction(new Computable<String[]>() {
       @Override
       public String[] compute() {
-        return cache.getAllClassNames();
+        if (firstLetter == 0) {
+          return cache.getAllClassNames();
+        }
+        Set<String> result = new THashSet<String>();
+        cache.processClassNamesStartingWith(firstLetter, new CommonProcessors.CollectProcessor<String>(result));
+        return ArrayUtil.toStringArray(result);
       }
     });
 
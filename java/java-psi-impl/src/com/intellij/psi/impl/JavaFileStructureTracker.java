@@ -0,0 +1,118 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.impl;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.ModificationTracker;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Splits {@link com.intellij.psi.util.PsiModificationTracker#JAVA_STRUCTURE_MODIFICATION_COUNT} into the structure changes of
+ * single java files (members changed, imports edited) and the rest (classes added, removed or renamed, packages changed, roots changed),
+ * so that caches depending on a few classes (like member maps of {@link PsiClassImplUtil}) survive the structure changes of
+ * unrelated files.
+ */
+public class JavaFileStructureTracker {
+  private static final Key<FileTracker> FILE_TRACKER_KEY = Key.create("JAVA_FILE_STRUCTURE_TRACKER");
+  private static final Key<AtomicLong> LOCAL_CHANGES_KEY = Key.create("JAVA_FILE_LOCAL_STRUCTURE_CHANGES");
+
+  private JavaFileStructureTracker() {
+  }
+
+  private static class FileTracker implements ModificationTracker {
+    private final PsiFile myFile;
+    private volatile long myCount;
+
+    private FileTracker(@NotNull PsiFile file) {
+      myFile = file;
+    }
+
+    @Override
+    public long getModificationCount() {
+      return myFile.isValid() ? myCount : -1;
+    }
+  }
+
+  private static class NonLocalTracker implements ModificationTracker {
+    private final PsiManager myManager;
+    private final AtomicLong myLocalChanges;
+
+    private NonLocalTracker(@NotNull PsiManager manager, @NotNull AtomicLong localChanges) {
+      myManager = manager;
+      myLocalChanges = localChanges;
+    }
+
+    @Override
+    public long getModificationCount() {
+      return myManager.getModificationTracker().getJavaStructureModificationCount() - myLocalChanges.get();
+    }
+  }
+
+  /**
+   * @return the tracker of structure changes inside the given java file; it is also changed when the file is invalidated
+   */
+  @NotNull
+  public static ModificationTracker getFileTracker(@NotNull PsiFile file) {
+    FileTracker tracker = file.getUserData(FILE_TRACKER_KEY);
+    if (tracker == null) {
+      synchronized (FILE_TRACKER_KEY) {
+        tracker = file.getUserData(FILE_TRACKER_KEY);
+        if (tracker == null) {
+          tracker = new FileTracker(file);
+          file.putUserData(FILE_TRACKER_KEY, tracker);
+        }
+      }
+    }
+    return tracker;
+  }
+
+  /**
+   * @return the tracker of java structure changes which are not local to a single file
+   */
+  @NotNull
+  public static ModificationTracker getNonLocalTracker(@NotNull Project project) {
+    return new NonLocalTracker(PsiManager.getInstance(project), getLocalChanges(project));
+  }
+
+  /**
+   * Registers the structure change which affects only the given file, and increments the java structure modification count.
+   */
+  public static void fileStructureChanged(@NotNull PsiFile file, @NotNull PsiModificationTrackerImpl modificationTracker) {
+    ((FileTracker)getFileTracker(file)).myCount++;
+    getLocalChanges(file.getProject()).incrementAndGet();
+    modificationTracker.incCounter();
+  }
+
+  @NotNull
+  private static AtomicLong getLocalChanges(@NotNull Project project) {
+    AtomicLong changes = project.getUserData(LOCAL_CHANGES_KEY);
+    if (changes == null) {
+      synchronized (LOCAL_CHANGES_KEY) {
+        changes = project.getUserData(LOCAL_CHANGES_KEY);
+        if (changes == null) {
+          changes = new AtomicLong();
+          project.putUserData(LOCAL_CHANGES_KEY, changes);
+        }
+      }
+    }
+    return changes;
+  }
+}
@@ -27,6 +27,7 @@ import com.intellij.psi.*;
 import com.intellij.psi.filters.OrFilter;
 import com.intellij.psi.impl.compiled.ClsElementImpl;
 import com.intellij.psi.impl.source.PsiImmediateClassType;
+import com.intellij.psi.impl.source.PsiJavaFileImpl;
 import com.intellij.psi.infos.MethodCandidateInfo;
 import com.intellij.psi.scope.ElementClassFilter;
 import com.intellij.psi.scope.ElementClassHint;
@@ -41,10 +42,12 @@ import com.intellij.psi.search.SearchScope;
 import com.intellij.psi.util.*;
 import com.intellij.ui.IconDeferrer;
 import com.intellij.ui.RowIcon;
+import com.intellij.util.ArrayUtil;
 import com.intellij.util.Function;
 import com.intellij.util.IncorrectOperationException;
 import com.intellij.util.NullableFunction;
 import com.intellij.util.SmartList;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.HashSet;
 import gnu.trove.THashMap;
 import gnu.trove.THashSet;
@@ -54,6 +57,8 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author ik
@@ -62,6 +67,8 @@ import java.util.*;
 public class PsiClassImplUtil {
   private static final Logger LOG = Logger.getInstance("#com.intellij.psi.impl.PsiClassImplUtil");
   private static final Key<ParameterizedCachedValue<MembersMap, PsiClass>> MAP_IN_CLASS_KEY = Key.create("MAP_KEY");
+  private static final AtomicInteger ourMapsBuilt = new AtomicInteger();
+  private static final AtomicLong ourMembersInBuiltMaps = new AtomicLong();
 
   private PsiClassImplUtil() {
   }
@@ -420,10 +427,64 @@ public class PsiClassImplUtil {
     @Override
     public CachedValueProvider.Result<MembersMap> compute(@NotNull PsiClass myClass) {
       MembersMap map = buildAllMaps(myClass);
-      return new CachedValueProvider.Result<MembersMap>(map, PsiModificationTracker.OUT_OF_CODE_BLOCK_MODIFICATION_COUNT);
+      ourMapsBuilt.incrementAndGet();
+      for (Map<String, List<Pair<PsiMember, PsiSubstitutor>>> byName : map.values()) {
+        ourMembersInBuiltMaps.addAndGet(byName.get(ALL).size());
+      }
+      return new CachedValueProvider.Result<MembersMap>(map, getHierarchyDependencies(myClass));
     }
   }
 
+  /**
+   * The members of a class depend on its own structure, on the structure of its supertypes, and on the structure of its containing
+   * classes and their supertypes (supertypes are resolved in their scope). For java source files these are tracked file by file,
+   * so that a change invalidates the maps of the changed classes and their inheritors only.
+   */
+  @NotNull
+  private static Object[] getHierarchyDependencies(@NotNull PsiClass aClass) {
+    List<Object> dependencies = new ArrayList<Object>();
+    dependencies.add(JavaFileStructureTracker.getNonLocalTracker(aClass.getProject()));
+    boolean dependsOnOtherSources = false;
+    Set<PsiFile> files = new THashSet<PsiFile>();
+    Set<PsiClass> visited = new THashSet<PsiClass>();
+    List<PsiClass> queue = new ArrayList<PsiClass>();
+    queue.add(aClass);
+    while (!queue.isEmpty()) {
+      PsiClass psiClass = queue.remove(queue.size() - 1);
+      if (!visited.add(psiClass)) continue;
+      PsiFile file = psiClass.getContainingFile();
+      if (file instanceof PsiJavaFileImpl && file.isPhysical()) {
+        if (files.add(file)) {
+          dependencies.add(JavaFileStructureTracker.getFileTracker(file));
+        }
+      }
+      else if (!(file instanceof PsiCompiledElement)) {
+        // changes of compiled classes come with roots changes; changes in other languages are only counted as out of code block ones
+        dependsOnOtherSources = true;
+      }
+      ContainerUtil.addAll(queue, psiClass.getSupers());
+      ContainerUtil.addIfNotNull(psiClass.getContainingClass(), queue);
+    }
+    if (dependsOnOtherSources) {
+      dependencies.add(PsiModificationTracker.OUT_OF_CODE_BLOCK_MODIFICATION_COUNT);
+    }
+    return ArrayUtil.toObjectArray(dependencies);
+  }
+
+  /**
+   * @return the number of member maps built since the start, for diagnostics
+   */
+  public static int getBuiltMembersMapCount() {
+    return ourMapsBuilt.get();
+  }
+
+  /**
+   * @return the total number of members in the member maps built since the start, for diagnostics
+   */
+  public static long getMembersInBuiltMapsCount() {
+    return ourMembersInBuiltMaps.get();
+  }
+
   public static boolean processDeclarationsInClass(@NotNull PsiClass aClass,
                                                    @NotNull final PsiScopeProcessor processor,
                                                    @NotNull ResolveState state,
@@ -38,6 +38,7 @@ import org.jetbrains.annotations.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 
@@ -209,6 +210,95 @@ public class DirectoryIndexTest extends IdeaTestCase {
     checkPackage("pack2", myPack2Dir);
   }
 
+  public void testNearestRootWins() throws Exception {
+    VirtualFile nested = myPack1Dir.createChildDirectory(this, "nested");
+    VirtualFile sub = nested.createChildDirectory(this, "sub");
+    checkPackage("pack1.nested.sub", sub);
+
+    PsiTestUtil.addSourceRoot(myModule, nested, true);
+
+    checkInfo(nested, myModule, true, true, false, false, "", myModule);
+    checkInfo(sub, myModule, true, true, false, false, "sub", myModule);
+    checkPackage("pack1", myPack1Dir);
+    checkPackage("pack1.nested");
+    checkPackage("pack1.nested.sub");
+    checkPackage("sub", sub);
+    myIndex.checkConsistency();
+  }
+
+  public void testModuleSourcesWinOverLibrarySourcesForPackage() throws Exception {
+    ModuleRootModificationUtil.addModuleLibrary(myModule, "libInSources", Collections.<String>emptyList(),
+                                                singletonList(myPack1Dir.getUrl()));
+
+    assertEquals("pack1", myIndex.getPackageName(myPack1Dir));
+    checkPackage("", myFileLibSrc, myFileLibCls, mySrcDir1, myTestSrc1, myLibSrcDir, myLibClsDir, mySrcDir2);
+    checkPackage("pack1", myPack1Dir);
+    myIndex.checkConsistency();
+  }
+
+  public void testDottedDirectoryNames() throws Exception {
+    VirtualFile dotted = mySrcDir1.createChildDirectory(this, "a.b");
+    VirtualFile dottedChild = dotted.createChildDirectory(this, "c");
+    VirtualFile a = mySrcDir1.createChildDirectory(this, "a");
+    VirtualFile ab = a.createChildDirectory(this, "b");
+
+    assertEquals("a.b", myIndex.getPackageName(dotted));
+    checkPackage("a", a);
+    checkPackage("a.b", dotted, ab);
+    checkPackage("a.b.c", dottedChild);
+    myIndex.checkConsistency();
+  }
+
+  public void testAddAndRemoveSourceRoot() throws Exception {
+    VirtualFile newSrc = myModule1Dir.createChildDirectory(this, "newSrc");
+    VirtualFile pack1 = newSrc.createChildDirectory(this, "pack1");
+    VirtualFile pack3 = newSrc.createChildDirectory(this, "pack3");
+    checkPackage("pack1", myPack1Dir);
+    checkPackage("pack3");
+
+    PsiTestUtil.addSourceRoot(myModule, newSrc);
+
+    checkPackage("pack1", myPack1Dir, pack1);
+    checkPackage("pack3", pack3);
+    myIndex.checkConsistency();
+
+    PsiTestUtil.removeSourceRoot(myModule, newSrc);
+
+    checkPackage("pack1", myPack1Dir);
+    checkPackage("pack3");
+    myIndex.checkConsistency();
+  }
+
+  public void testPackagesFollowDirectoryChanges() throws Exception {
+    // build the package directories before the changes
+    checkPackage("pack1", myPack1Dir);
+    checkPackage("pack2", myPack2Dir);
+
+    VirtualFile sub = myPack1Dir.createChildDirectory(this, "sub");
+    VirtualFile subSub = sub.createChildDirectory(this, "subSub");
+    checkPackage("pack1.sub", sub);
+    checkPackage("pack1.sub.subSub", subSub);
+
+    sub.move(this, myPack2Dir);
+    checkPackage("pack1.sub");
+    checkPackage("pack1.sub.subSub");
+    checkPackage("pack2.sub", sub);
+    checkPackage("pack2.sub.subSub", subSub);
+    myIndex.checkConsistency();
+
+    sub.rename(this, "renamed");
+    checkPackage("pack2.sub");
+    checkPackage("pack2.renamed", sub);
+    checkPackage("pack2.renamed.subSub", subSub);
+    myIndex.checkConsistency();
+
+    sub.delete(this);
+    checkPackage("pack2.renamed");
+    checkPackage("pack2.renamed.subSub");
+    checkPackage("pack2", myPack2Dir);
+    myIndex.checkConsistency();
+  }
+
   public void testCreateDir() throws Exception {
     String path = mySrcDir1.getPath().replace('/', File.separatorChar);
     assertTrue(new File(path + File.separatorChar + "dir1" + File.separatorChar + "dir2").mkdirs());
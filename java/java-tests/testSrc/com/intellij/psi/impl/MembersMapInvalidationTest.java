@@ -0,0 +1,97 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.impl;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+
+public class MembersMapInvalidationTest extends LightCodeInsightFixtureTestCase {
+  private PsiClass myBase;
+  private PsiClass myDerived;
+  private PsiClass myUnrelated;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myBase = myFixture.addClass("package p; public class Base { public void foo(int i) {} }");
+    myDerived = myFixture.addClass("package p; public class Derived extends Base { public void bar() {} }");
+    myUnrelated = myFixture.addClass("package p; public class Unrelated { public void baz() { int i = 0; } }");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myBase = null;
+    myDerived = null;
+    myUnrelated = null;
+    super.tearDown();
+  }
+
+  private void replace(PsiClass aClass, final String from, final String to) {
+    final PsiDocumentManager documentManager = PsiDocumentManager.getInstance(getProject());
+    final Document document = documentManager.getDocument(aClass.getContainingFile());
+    assertNotNull(document);
+    new WriteCommandAction.Simple(getProject()) {
+      @Override
+      protected void run() throws Throwable {
+        int offset = document.getText().indexOf(from);
+        document.replaceString(offset, offset + from.length(), to);
+        documentManager.commitAllDocuments();
+      }
+    }.execute();
+  }
+
+  private void computeAllMaps() {
+    PsiClassImplUtil.getAllMethods(myBase);
+    PsiClassImplUtil.getAllMethods(myDerived);
+    PsiClassImplUtil.getAllMethods(myUnrelated);
+  }
+
+  private void assertRebuilt(int expected) {
+    int before = PsiClassImplUtil.getBuiltMembersMapCount();
+    computeAllMaps();
+    assertEquals(expected, PsiClassImplUtil.getBuiltMembersMapCount() - before);
+  }
+
+  public void testSignatureChangeInvalidatesClassAndInheritors() {
+    computeAllMaps();
+    assertRebuilt(0);
+
+    replace(myBase, "foo(int i)", "foo(long i)");
+    assertRebuilt(2);
+    assertEquals("long", myDerived.findMethodsByName("foo", true)[0].getParameterList().getParameters()[0].getType().getCanonicalText());
+  }
+
+  public void testChangeInInheritorKeepsBase() {
+    computeAllMaps();
+    replace(myDerived, "bar()", "bar(String s)");
+    assertRebuilt(1);
+  }
+
+  public void testChangeInCodeBlockKeepsAll() {
+    computeAllMaps();
+    replace(myUnrelated, "int i = 0;", "int i = 1;");
+    assertRebuilt(0);
+  }
+
+  public void testNewClassInvalidatesAll() {
+    computeAllMaps();
+    myFixture.addClass("package p; public class Another {}");
+    assertRebuilt(3);
+  }
+}
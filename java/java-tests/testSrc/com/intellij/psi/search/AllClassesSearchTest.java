@@ -0,0 +1,59 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.search;
+
+import com.intellij.openapi.util.Condition;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.search.searches.AllClassesSearch;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.intellij.util.CommonProcessors;
+import gnu.trove.THashSet;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class AllClassesSearchTest extends LightCodeInsightFixtureTestCase {
+  public void testClassNamesStartingWithLetter() {
+    myFixture.addClass("public class Foo {}");
+    myFixture.addClass("public class foobar {}");
+    myFixture.addClass("public class Bar {}");
+
+    Set<String> names = new THashSet<String>();
+    PsiShortNamesCache.getInstance(getProject()).processClassNamesStartingWith('f', new CommonProcessors.CollectProcessor<String>(names));
+    assertTrue(names.contains("Foo"));
+    assertTrue(names.contains("foobar"));
+    assertFalse(names.contains("Bar"));
+  }
+
+  public void testSearchByFirstLetter() {
+    myFixture.addClass("public class Foo {}");
+    myFixture.addClass("public class FooBar {}");
+    myFixture.addClass("public class BarFoo {}");
+
+    Set<String> names = new HashSet<String>();
+    GlobalSearchScope scope = GlobalSearchScope.projectScope(getProject());
+    for (PsiClass psiClass : AllClassesSearch.search(scope, getProject(), 'f', new Condition<String>() {
+      @Override
+      public boolean value(String name) {
+        return name.contains("Foo");
+      }
+    }).findAll()) {
+      names.add(psiClass.getName());
+    }
+    assertEquals(new HashSet<String>(Arrays.asList("Foo", "FooBar")), names);
+  }
+}
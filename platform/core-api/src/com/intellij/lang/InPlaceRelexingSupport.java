@@ -0,0 +1,37 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.lang;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Implemented by {@linkplain ParserDefinition parser definitions} of languages whose files may be updated by text-only leaf
+ * patching: when a change doesn't alter the types and the order of tokens, only the text of some of them, the changed leaves get
+ * the new text and the tree is kept as is. Such a change is found by relexing the text around it, so the lexer must be restartable
+ * in its initial state at any token where it's in that state, the same way lexers of editor highlighters are.
+ * <p/>
+ * Changes which insert, remove or retype tokens aren't handled this way, they are reparsed as usual.
+ */
+public interface InPlaceRelexingSupport {
+  /**
+   * Tells if the parser builds the same tree when the text of the leaf is changed, keeping the leaf type. For whitespaces and
+   * comments this includes the decisions of {@linkplain WhitespacesAndCommentsBinder binders} of the elements around the leaf.
+   *
+   * @param leaf     leaf of the current tree
+   * @param newText  text of the token relexed in place of the leaf
+   */
+  boolean canChangeLeafText(@NotNull ASTNode leaf, @NotNull CharSequence newText);
+}
@@ -47,9 +47,7 @@ import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Field;
 import java.util.AbstractList;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -70,7 +68,9 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
   private IElementType[] myLexTypes;
   private int myCurrentLexeme;
 
-  private final MyList myProduction = new MyList();
+  // markers in the order of production, linked through ProductionMarker.myPrevProduction/myNextProduction
+  private ProductionMarker myFirstProduction;
+  private ProductionMarker myLastProduction;
 
   private final Lexer myLexer;
   private final TokenSet myWhitespaces;
@@ -250,11 +250,8 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
   @Override
   @Nullable
   public LighterASTNode getLatestDoneMarker() {
-    int index = myProduction.size() - 1;
-    while (index >= 0) {
-      ProductionMarker marker = myProduction.get(index);
+    for (ProductionMarker marker = myLastProduction; marker != null; marker = marker.myPrevProduction) {
       if (marker instanceof DoneMarker) return ((DoneMarker)marker).myStart;
-      --index;
     }
     return null;
   }
@@ -273,10 +270,13 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     protected WhitespacesAndCommentsBinder myEdgeTokenBinder;
     protected ProductionMarker myParent;
     protected ProductionMarker myNext;
+    protected ProductionMarker myPrevProduction;
+    protected ProductionMarker myNextProduction;
 
     public void clean() {
       myLexemeIndex = 0;
       myParent = myNext = null;
+      myPrevProduction = myNextProduction = null;
     }
 
     public void remapTokenType(IElementType type) {
@@ -399,8 +399,7 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     @Override
     public void doneBefore(final IElementType type, final Marker before, final String errorMessage) {
       final StartMarker marker = (StartMarker)before;
-      myBuilder.myProduction.add(myBuilder.myProduction.lastIndexOf(marker),
-                                 new ErrorItem(myBuilder, errorMessage, marker.myLexemeIndex));
+      myBuilder.insertProduction(new ErrorItem(myBuilder, errorMessage, marker.myLexemeIndex), marker);
       doneBefore(type, before);
     }
 
@@ -441,15 +440,79 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
   }
 
   private Marker precede(final StartMarker marker) {
-    int idx = myProduction.lastIndexOf(marker);
-    if (idx < 0) {
+    if (!isInProduction(marker)) {
       LOG.error("Cannot precede dropped or rolled-back marker");
     }
     StartMarker pre = createMarker(marker.myLexemeIndex);
-    myProduction.add(idx, pre);
+    insertProduction(pre, marker);
     return pre;
   }
 
+  private boolean isInProduction(@NotNull ProductionMarker marker) {
+    return marker == myFirstProduction || marker.myPrevProduction != null;
+  }
+
+  private void addProduction(@NotNull ProductionMarker marker) {
+    marker.myPrevProduction = myLastProduction;
+    if (myLastProduction == null) {
+      myFirstProduction = marker;
+    }
+    else {
+      myLastProduction.myNextProduction = marker;
+    }
+    myLastProduction = marker;
+  }
+
+  private void insertProduction(@NotNull ProductionMarker marker, @NotNull ProductionMarker before) {
+    ProductionMarker prev = before.myPrevProduction;
+    marker.myPrevProduction = prev;
+    marker.myNextProduction = before;
+    before.myPrevProduction = marker;
+    if (prev == null) {
+      myFirstProduction = marker;
+    }
+    else {
+      prev.myNextProduction = marker;
+    }
+  }
+
+  private void removeProduction(@NotNull ProductionMarker marker) {
+    ProductionMarker prev = marker.myPrevProduction;
+    ProductionMarker next = marker.myNextProduction;
+    if (prev == null) {
+      myFirstProduction = next;
+    }
+    else {
+      prev.myNextProduction = next;
+    }
+    if (next == null) {
+      myLastProduction = prev;
+    }
+    else {
+      next.myPrevProduction = prev;
+    }
+    marker.myPrevProduction = marker.myNextProduction = null;
+  }
+
+  /**
+   * Removes the marker and all the markers produced after it.
+   */
+  private void truncateProduction(@NotNull ProductionMarker marker) {
+    myLastProduction = marker.myPrevProduction;
+    if (myLastProduction == null) {
+      myFirstProduction = null;
+    }
+    else {
+      myLastProduction.myNextProduction = null;
+    }
+    // unlink the removed markers so that they aren't taken for produced ones
+    while (marker != null) {
+      ProductionMarker next = marker.myNextProduction;
+      marker.myPrevProduction = marker.myNextProduction = null;
+      marker = next;
+    }
+  }
+
   private abstract static class Token extends Node {
     protected PsiBuilderImpl myBuilder;
     private IElementType myTokenType;
@@ -804,12 +867,12 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
 
   @Override
   public Marker mark() {
-    if (!myProduction.isEmpty()) {
+    if (myFirstProduction != null) {
       skipWhitespace();
     }
     StartMarker marker = createMarker(myCurrentLexeme);
 
-    myProduction.add(marker);
+    addProduction(marker);
     return marker;
   }
 
@@ -833,30 +896,27 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     return myCurrentLexeme >= myLexemeCount;
   }
 
-  @SuppressWarnings({"SuspiciousMethodCalls"})
   private void rollbackTo(Marker marker) {
     myCurrentLexeme = ((StartMarker)marker).myLexemeIndex;
     myTokenTypeChecked = true;
-    int idx = myProduction.lastIndexOf(marker);
-    if (idx < 0) {
+    if (!isInProduction((StartMarker)marker)) {
       LOG.error("The marker must be added before rolled back to.");
     }
-    myProduction.removeRange(idx, myProduction.size());
+    truncateProduction((StartMarker)marker);
     START_MARKERS.recycle((StartMarker)marker);
     clearCachedTokenType();
   }
 
-  @SuppressWarnings({"SuspiciousMethodCalls"})
   public void drop(Marker marker) {
     final DoneMarker doneMarker = ((StartMarker)marker).myDoneMarker;
     if (doneMarker != null) {
-      myProduction.remove(myProduction.lastIndexOf(doneMarker));
+      removeProduction(doneMarker);
       DONE_MARKERS.recycle(doneMarker);
     }
-    final boolean removed = myProduction.remove(myProduction.lastIndexOf(marker)) == marker;
-    if (!removed) {
+    if (!isInProduction((StartMarker)marker)) {
       LOG.error("The marker must be added before it is dropped.");
     }
+    removeProduction((StartMarker)marker);
     START_MARKERS.recycle((StartMarker)marker);
   }
 
@@ -868,21 +928,18 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     if (tieToTheLeft) ((StartMarker)marker).myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
 
     ((StartMarker)marker).myDoneMarker = doneMarker;
-    myProduction.add(doneMarker);
+    addProduction(doneMarker);
   }
 
-  @SuppressWarnings({"SuspiciousMethodCalls"})
   public void errorBefore(Marker marker, String message, Marker before) {
     doValidityChecks(marker, before);
 
-    int beforeIndex = myProduction.lastIndexOf(before);
-
     DoneWithErrorMarker doneMarker = new DoneWithErrorMarker((StartMarker)marker, ((StartMarker)before).myLexemeIndex, message);
     boolean tieToTheLeft = isEmpty(((StartMarker)marker).myLexemeIndex, ((StartMarker)before).myLexemeIndex);
     if (tieToTheLeft) ((StartMarker)marker).myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
 
     ((StartMarker)marker).myDoneMarker = doneMarker;
-    myProduction.add(beforeIndex, doneMarker);
+    insertProduction(doneMarker, (StartMarker)before);
   }
 
   public void done(final Marker marker) {
@@ -896,15 +953,12 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     if (tieToTheLeft) ((StartMarker)marker).myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
 
     ((StartMarker)marker).myDoneMarker = doneMarker;
-    myProduction.add(doneMarker);
+    addProduction(doneMarker);
   }
 
-  @SuppressWarnings({"SuspiciousMethodCalls"})
   public void doneBefore(Marker marker, Marker before) {
     doValidityChecks(marker, before);
 
-    int beforeIndex = myProduction.lastIndexOf(before);
-
     DoneMarker doneMarker = DONE_MARKERS.alloc();
     doneMarker.myLexemeIndex = ((StartMarker)before).myLexemeIndex;
     doneMarker.myStart = (StartMarker)marker;
@@ -913,7 +967,7 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     if (tieToTheLeft) ((StartMarker)marker).myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
 
     ((StartMarker)marker).myDoneMarker = doneMarker;
-    myProduction.add(beforeIndex, doneMarker);
+    insertProduction(doneMarker, (StartMarker)before);
   }
 
   private boolean isEmpty(final int startIdx, final int endIdx) {
@@ -929,7 +983,7 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     ((StartMarker)marker).myDoneMarker.myCollapse = true;
   }
 
-  @SuppressWarnings({"UseOfSystemOutOrSystemErr", "SuspiciousMethodCalls", "ThrowableResultOfMethodCallIgnored"})
+  @SuppressWarnings({"UseOfSystemOutOrSystemErr", "ThrowableResultOfMethodCallIgnored"})
   private void doValidityChecks(final Marker marker, @Nullable final Marker before) {
     final DoneMarker doneMarker = ((StartMarker)marker).myDoneMarker;
     if (doneMarker != null) {
@@ -938,47 +992,46 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
 
     if (!myDebugMode) return;
 
-    int idx = myProduction.lastIndexOf(marker);
-    if (idx < 0) {
+    if (!isInProduction((StartMarker)marker)) {
       LOG.error("Marker has never been added.");
     }
 
-    int endIdx = myProduction.size();
-    if (before != null) {
-      endIdx = myProduction.lastIndexOf(before);
-      if (endIdx < 0) {
-        LOG.error("'Before' marker has never been added.");
-      }
-      if (idx > endIdx) {
-        LOG.error("'Before' marker precedes this one.");
+    if (before != null && !isInProduction((StartMarker)before)) {
+      LOG.error("'Before' marker has never been added.");
+    }
+    if (before == marker) return;
+
+    StartMarker notDone = null;
+    ProductionMarker item = before != null ? ((StartMarker)before).myPrevProduction : myLastProduction;
+    while (item != null && item != marker) {
+      if (item instanceof StartMarker && ((StartMarker)item).myDoneMarker == null) {
+        notDone = (StartMarker)item;
       }
+      item = item.myPrevProduction;
+    }
+    if (item == null) {
+      LOG.error("'Before' marker precedes this one.");
     }
 
-    for (int i = endIdx - 1; i > idx; i--) {
-      Object item = myProduction.get(i);
-      if (item instanceof StartMarker) {
-        StartMarker otherMarker = (StartMarker)item;
-        if (otherMarker.myDoneMarker == null) {
-          final Throwable debugAllocOther = otherMarker.myDebugAllocationPosition;
-          final Throwable debugAllocThis = ((StartMarker)marker).myDebugAllocationPosition;
-          if (debugAllocOther != null) {
-            Throwable currentTrace = new Throwable();
-            ExceptionUtil.makeStackTraceRelative(debugAllocThis, currentTrace).printStackTrace(System.err);
-            ExceptionUtil.makeStackTraceRelative(debugAllocOther, currentTrace).printStackTrace(System.err);
-          }
-          LOG.error("Another not done marker added after this one. Must be done before this.");
-        }
+    if (notDone != null) {
+      final Throwable debugAllocOther = notDone.myDebugAllocationPosition;
+      final Throwable debugAllocThis = ((StartMarker)marker).myDebugAllocationPosition;
+      if (debugAllocOther != null) {
+        Throwable currentTrace = new Throwable();
+        ExceptionUtil.makeStackTraceRelative(debugAllocThis, currentTrace).printStackTrace(System.err);
+        ExceptionUtil.makeStackTraceRelative(debugAllocOther, currentTrace).printStackTrace(System.err);
       }
+      LOG.error("Another not done marker added after this one. Must be done before this.");
     }
   }
 
   @Override
   public void error(String messageText) {
-    final ProductionMarker lastMarker = myProduction.get(myProduction.size() - 1);
+    final ProductionMarker lastMarker = myLastProduction;
     if (lastMarker instanceof ErrorItem && lastMarker.myLexemeIndex == myCurrentLexeme) {
       return;
     }
-    myProduction.add(new ErrorItem(this, messageText, myCurrentLexeme));
+    addProduction(new ErrorItem(this, messageText, myCurrentLexeme));
   }
 
   @Override
@@ -987,7 +1040,9 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
       return buildTree();
     }
     finally {
-      for (ProductionMarker marker : myProduction) {
+      ProductionMarker next;
+      for (ProductionMarker marker = myFirstProduction; marker != null; marker = next) {
+        next = marker.myNextProduction;
         if (marker instanceof StartMarker) {
           START_MARKERS.recycle((StartMarker)marker);
         }
@@ -1085,20 +1140,18 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     myTokenTypeChecked = true;
     balanceWhiteSpaces();
 
-    if (myProduction.isEmpty()) {
+    if (myFirstProduction == null) {
       LOG.error("Parser produced no markers. Text:\n" + myText);
     }
 
-    final StartMarker rootMarker = (StartMarker)myProduction.get(0);
+    final StartMarker rootMarker = (StartMarker)myFirstProduction;
     rootMarker.myParent = rootMarker.myFirstChild = rootMarker.myLastChild = rootMarker.myNext = null;
     StartMarker curNode = rootMarker;
     final Stack<StartMarker> nodes = ContainerUtil.newStack();
     nodes.push(rootMarker);
 
     @SuppressWarnings({"MultipleVariablesInDeclaration"}) int lastErrorIndex = -1, maxDepth = 0, curDepth = 0;
-    for (int i = 1; i < myProduction.size(); i++) {
-      final ProductionMarker item = myProduction.get(i);
-
+    for (ProductionMarker item = rootMarker.myNextProduction; item != null; item = item.myNextProduction) {
       if (curNode == null) LOG.error("Unexpected end of the production");
 
       item.myParent = curNode;
@@ -1154,14 +1207,15 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     RelativeTokenTypesView wsTokens = null;
     RelativeTokenTextView tokenTextGetter = null;
 
-    for (int i = 1, size = myProduction.size() - 1; i < size; i++) {
-      final ProductionMarker item = myProduction.get(i);
-
+    if (myFirstProduction == null) return;
+    for (ProductionMarker item = myFirstProduction.myNextProduction;
+         item != null && item != myLastProduction;
+         item = item.myNextProduction) {
       if (item instanceof StartMarker && ((StartMarker)item).myDoneMarker == null) {
         LOG.error(UNBALANCED_MESSAGE);
       }
 
-      final int prevProductionLexIndex = myProduction.get(i - 1).myLexemeIndex;
+      final int prevProductionLexIndex = item.myPrevProduction.myLexemeIndex;
       int idx = item.myLexemeIndex;
       while (idx > prevProductionLexIndex && whitespaceOrComment(myLexTypes[idx - 1])) idx--;
       final int wsStartIndex = idx;
@@ -1646,65 +1700,6 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     return ASTFactory.leaf(type, text);
   }
 
-  /**
-   * just to make removeRange method available.
-   */
-  private static class MyList extends ArrayList<ProductionMarker> {
-    private static final Field ourElementDataField;
-
-    static {
-      Field f;
-      try {
-        f = ArrayList.class.getDeclaredField("elementData");
-        f.setAccessible(true);
-      }
-      catch(NoSuchFieldException e) {
-        // IBM J9 does not have the field
-        f = null;
-
-      }
-      ourElementDataField = f;
-    }
-
-    private Object[] cachedElementData;
-
-    @Override
-    public void removeRange(final int fromIndex, final int toIndex) {
-      super.removeRange(fromIndex, toIndex);
-    }
-
-    MyList() {
-      super(256);
-    }
-
-    @Override
-    public int lastIndexOf(final Object o) {
-      if (cachedElementData == null) return super.lastIndexOf(o);
-      for (int i = size() - 1; i >= 0; i--) {
-        if (cachedElementData[i] == o) return i;
-      }
-      return -1;
-    }
-
-    @Override
-    public void ensureCapacity(final int minCapacity) {
-      if (cachedElementData == null || minCapacity >= cachedElementData.length) {
-        super.ensureCapacity(minCapacity);
-        initCachedField();
-      }
-    }
-
-    private void initCachedField() {
-      if (ourElementDataField == null) return;
-      try {
-        cachedElementData = (Object[])ourElementDataField.get(this);
-      }
-      catch (Exception e) {
-        LOG.error(e);
-      }
-    }
-  }
-
   @SuppressWarnings("unchecked")
   @Override
   public <T> T getUserDataUnprotected(@NotNull final Key<T> key) {
@@ -39,7 +39,7 @@ import java.util.concurrent.locks.ReentrantLock;
 /**
  * @author cdr
  */
-abstract class CharArray implements CharSequenceBackedByArray, Dumpable {
+abstract class CharArray extends TextStorage implements CharSequenceBackedByArray, Dumpable {
   private static final Logger LOG = Logger.getInstance("#" + CharArray.class.getName());
 
   @SuppressWarnings("UseOfArchaicSystemPropertyAccessors")
@@ -155,16 +155,6 @@ abstract class CharArray implements CharSequenceBackedByArray, Dumpable {
     return beforeChangedUpdate(offset, oldString, newString, wholeTextReplaced);
   }
 
-  @NotNull
-  protected abstract DocumentEvent beforeChangedUpdate(int offset,
-                                                       @Nullable CharSequence oldString,
-                                                       @Nullable CharSequence newString,
-                                                       boolean wholeTextReplaced);
-  protected abstract void afterChangedUpdate(@NotNull DocumentEvent event, long newModificationStamp);
-
-  protected abstract void assertWriteAccess();
-  protected abstract void assertReadAccess();
-
   private void setText(@NotNull CharSequence chars) {
     assertConsistency();
     myOriginalSequence = chars.toString();
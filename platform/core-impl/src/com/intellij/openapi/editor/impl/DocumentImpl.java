@@ -51,6 +51,11 @@ import java.util.List;
 public class DocumentImpl extends UserDataHolderBase implements DocumentEx {
   private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.editor.impl.DocumentImpl");
   public static boolean CHECK_DOCUMENT_CONSISTENCY = ApplicationManager.getApplication().isUnitTestMode();
+  /**
+   * Store document text in an {@link ImmutableTextStorage immutable rope} instead of a {@link CharArray single array}
+   */
+  @SuppressWarnings("UseOfArchaicSystemPropertyAccessors")
+  static boolean USE_IMMUTABLE_TEXT = Boolean.getBoolean("idea.document.immutable.text");
 
   private final List<DocumentListener> myDocumentListeners = ContainerUtil.createLockFreeCopyOnWriteList();
   private final RangeMarkerTree<RangeMarkerEx> myRangeMarkers = new RangeMarkerTree<RangeMarkerEx>(this);
@@ -58,7 +63,7 @@ public class DocumentImpl extends UserDataHolderBase implements DocumentEx {
   private ReadonlyFragmentModificationHandler myReadonlyFragmentModificationHandler;
 
   private final LineSet myLineSet = new LineSet();
-  private final CharArray myText;
+  private final TextStorage myText;
 
   private boolean myIsReadOnly = false;
   private boolean isStripTrailingSpacesEnabled = true;
@@ -86,7 +91,7 @@ public class DocumentImpl extends UserDataHolderBase implements DocumentEx {
 
   public DocumentImpl(@NotNull CharSequence chars, boolean forUseInNonAWTThread) {
     assertValidSeparators(chars);
-    myText = new MyCharArray(CharArrayUtil.fromSequence(chars), chars.length());
+    myText = USE_IMMUTABLE_TEXT ? new MyImmutableTextStorage(chars) : new MyCharArray(CharArrayUtil.fromSequence(chars), chars.length());
     myLineSet.documentCreated(this);
     setCyclicBufferSize(0);
     setModificationStamp(LocalTimeCounter.currentTime());
@@ -863,11 +868,45 @@ public class DocumentImpl extends UserDataHolderBase implements DocumentEx {
 
     @Override
     protected void assertReadAccess() {
-      if (myAssertThreading) {
-        final Application application = ApplicationManager.getApplication();
-        if (application != null) {
-          application.assertReadAccessAllowed();
-        }
+      assertReadAccessToText();
+    }
+  }
+
+  private class MyImmutableTextStorage extends ImmutableTextStorage {
+    private MyImmutableTextStorage(@NotNull CharSequence chars) {
+      super(chars);
+    }
+
+    @Override
+    @NotNull
+    protected DocumentEvent beforeChangedUpdate(int offset,
+                                                CharSequence oldString,
+                                                CharSequence newString,
+                                                boolean wholeTextReplaced) {
+      return DocumentImpl.this.beforeChangedUpdate(offset, oldString, newString, wholeTextReplaced);
+    }
+
+    @Override
+    protected void afterChangedUpdate(@NotNull DocumentEvent event, long newModificationStamp) {
+      ((DocumentImpl)event.getDocument()).changedUpdate(event, newModificationStamp);
+    }
+
+    @Override
+    protected void assertWriteAccess() {
+      DocumentImpl.this.assertWriteAccess();
+    }
+
+    @Override
+    protected void assertReadAccess() {
+      assertReadAccessToText();
+    }
+  }
+
+  private void assertReadAccessToText() {
+    if (myAssertThreading) {
+      final Application application = ApplicationManager.getApplication();
+      if (application != null) {
+        application.assertReadAccessAllowed();
       }
     }
   }
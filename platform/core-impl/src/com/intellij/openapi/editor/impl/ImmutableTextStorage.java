@@ -0,0 +1,151 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.editor.impl;
+
+import com.intellij.diagnostic.Dumpable;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.util.LocalTimeCounter;
+import com.intellij.util.text.ImmutableText;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+
+/**
+ * Document text storage backed by an {@link ImmutableText immutable rope}.
+ * <p/>
+ * Unlike {@link CharArray}, modifications take <code>O(log n)</code> time and don't copy the whole text, and
+ * {@link #getCharArray() the current text} is an immutable snapshot which stays valid after subsequent modifications.
+ * Hence, there is no need to defer changes during bulk updates.
+ */
+abstract class ImmutableTextStorage extends TextStorage implements Dumpable {
+  private volatile ImmutableText myText;
+  private volatile Reference<String> myStringRef; // buffers String value - for not to generate it every time
+  private volatile int myBufferSize;
+  private volatile boolean myDeferredChangeMode;
+
+  ImmutableTextStorage(@NotNull CharSequence text) {
+    myText = ImmutableText.valueOf(text);
+  }
+
+  @Override
+  public int length() {
+    return myText.length();
+  }
+
+  @NotNull
+  @Override
+  public ImmutableText getCharArray() {
+    return myText;
+  }
+
+  @NotNull
+  @Override
+  public char[] getChars() {
+    assertReadAccess();
+    return myText.getChars();
+  }
+
+  @NotNull
+  @Override
+  public CharSequence substring(int start, int end) {
+    assertReadAccess();
+    return myText.subtext(start, end);
+  }
+
+  @Override
+  public void insert(@NotNull CharSequence s, int startIndex) {
+    DocumentEvent event = startChange(startIndex, null, s, false);
+    setText(myText.insert(startIndex, s));
+    afterChangedUpdate(event, LocalTimeCounter.currentTime());
+    trimToSize();
+  }
+
+  @Override
+  public void remove(int startIndex, int endIndex, @NotNull CharSequence toDelete) {
+    DocumentEvent event = startChange(startIndex, toDelete, null, false);
+    setText(myText.delete(startIndex, endIndex));
+    afterChangedUpdate(event, LocalTimeCounter.currentTime());
+  }
+
+  @Override
+  public void replace(int startOffset,
+                      int endOffset,
+                      @NotNull CharSequence toDelete,
+                      @NotNull CharSequence newString,
+                      long newModificationStamp,
+                      boolean wholeTextReplaced) {
+    DocumentEvent event = startChange(startOffset, toDelete, newString, wholeTextReplaced);
+    setText(myText.replace(startOffset, endOffset, newString));
+    afterChangedUpdate(event, newModificationStamp);
+  }
+
+  @NotNull
+  private DocumentEvent startChange(int offset, CharSequence oldString, CharSequence newString, boolean wholeTextReplaced) {
+    assertWriteAccess();
+    return beforeChangedUpdate(offset, oldString, newString, wholeTextReplaced);
+  }
+
+  private void setText(@NotNull ImmutableText text) {
+    myText = text;
+    myStringRef = null;
+  }
+
+  @Override
+  public void setBufferSize(int bufferSize) {
+    assert bufferSize >= 0 : bufferSize;
+    myBufferSize = bufferSize;
+  }
+
+  private void trimToSize() {
+    int bufferSize = myBufferSize;
+    if (bufferSize != 0 && length() > bufferSize) {
+      int endIndex = length() - bufferSize;
+      remove(0, endIndex, myText.subtext(0, endIndex));
+    }
+  }
+
+  @Override
+  public boolean isDeferredChangeMode() {
+    return myDeferredChangeMode;
+  }
+
+  @Override
+  public void setDeferredChangeMode(boolean deferredChangeMode) {
+    // modifications are cheap already, so they are always applied immediately
+    myDeferredChangeMode = deferredChangeMode;
+  }
+
+  @NotNull
+  @Override
+  public String toString() {
+    Reference<String> ref = myStringRef;
+    String str = ref == null ? null : ref.get();
+    if (str == null) {
+      str = myText.toString();
+      myStringRef = new SoftReference<String>(str);
+    }
+    return str;
+  }
+
+  @NonNls
+  @NotNull
+  @Override
+  public String dumpState() {
+    return "immutable text, length: " + length() + ", buffer size: " + myBufferSize + ", bulk mode: " + myDeferredChangeMode;
+  }
+}
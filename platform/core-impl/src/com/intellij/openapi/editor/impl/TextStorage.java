@@ -0,0 +1,77 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.editor.impl;
+
+import com.intellij.openapi.editor.event.DocumentEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Mutable text of a {@link DocumentImpl document}. Every modification is surrounded by
+ * {@link #beforeChangedUpdate(int, CharSequence, CharSequence, boolean)} and {@link #afterChangedUpdate(DocumentEvent, long)} callbacks.
+ *
+ * @see CharArray
+ * @see ImmutableTextStorage
+ */
+abstract class TextStorage {
+  public abstract int length();
+
+  /**
+   * @return    sequence which holds the current text
+   */
+  @NotNull
+  public abstract CharSequence getCharArray();
+
+  @NotNull
+  public abstract char[] getChars();
+
+  @NotNull
+  public abstract CharSequence substring(int start, int end);
+
+  public abstract void insert(@NotNull CharSequence s, int startIndex);
+
+  public abstract void remove(int startIndex, int endIndex, @NotNull CharSequence toDelete);
+
+  public abstract void replace(int startOffset,
+                               int endOffset,
+                               @NotNull CharSequence toDelete,
+                               @NotNull CharSequence newString,
+                               long newModificationStamp,
+                               boolean wholeTextReplaced);
+
+  /**
+   * @param bufferSize    max text length to keep, older text is removed from the start; <code>0</code> means unbounded
+   */
+  public abstract void setBufferSize(int bufferSize);
+
+  public abstract boolean isDeferredChangeMode();
+
+  /**
+   * Is called when a massive change of the text starts or ends. Allows to postpone the actual text modification until the
+   * change ends if that's cheaper.
+   */
+  public abstract void setDeferredChangeMode(boolean deferredChangeMode);
+
+  @NotNull
+  protected abstract DocumentEvent beforeChangedUpdate(int offset,
+                                                       @Nullable CharSequence oldString,
+                                                       @Nullable CharSequence newString,
+                                                       boolean wholeTextReplaced);
+  protected abstract void afterChangedUpdate(@NotNull DocumentEvent event, long newModificationStamp);
+
+  protected abstract void assertWriteAccess();
+  protected abstract void assertReadAccess();
+}
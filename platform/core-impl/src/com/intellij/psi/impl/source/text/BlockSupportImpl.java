@@ -101,6 +101,11 @@ public class BlockSupportImpl extends BlockSupport {
       return makeFullParse(treeFileElement, newFileText, textLength, fileImpl, indicator);
     }
 
+    final DiffLog relexed = InPlaceRelexer.relex(fileImpl, treeFileElement, startOffset, endOffset, lengthShift, newFileText);
+    if (relexed != null) {
+      return relexed;
+    }
+
     final ASTNode leafAtStart = treeFileElement.findLeafElementAt(startOffset);
     final ASTNode leafAtEnd = treeFileElement.findLeafElementAt(endOffset);
     ASTNode node = leafAtStart != null && leafAtEnd != null ? TreeUtil.findCommonParent(leafAtStart, leafAtEnd) : treeFileElement;
@@ -132,7 +137,9 @@ public class BlockSupportImpl extends BlockSupport {
                 LOG.error("Inconsistent reparse: " + details + " type=" + elementType);
               }
 
-              return mergeTrees(fileImpl, node, chameleon, indicator);
+              DiffLog diffLog = mergeTrees(fileImpl, node, chameleon, indicator);
+              InPlaceRelexer.keepRestartPointsBefore(diffLog, treeFileElement, startOffset);
+              return diffLog;
             }
           }
         }
@@ -140,7 +147,9 @@ public class BlockSupportImpl extends BlockSupport {
       node = node.getTreeParent();
     }
 
-    return makeFullParse(node, newFileText, textLength, fileImpl, indicator);
+    DiffLog diffLog = makeFullParse(node, newFileText, textLength, fileImpl, indicator);
+    InPlaceRelexer.keepRestartPointsBefore(diffLog, treeFileElement, startOffset);
+    return diffLog;
   }
 
   private static void assertFileLength(PsiFile file, CharSequence newFileText, ASTNode node, IElementType elementType, int start, int end) {
@@ -50,6 +50,7 @@ public class DiffLog implements DiffTreeChangeBuilder<ASTNode,ASTNode> {
   }
 
   private final List<LogEntry> myEntries = new ArrayList<LogEntry>();
+  private final List<Runnable> myAfterChangeActions = new ArrayList<Runnable>();
 
   public TreeChangeEventImpl performActualPsiChange(PsiFile file) {
     final ASTDiffBuilder astDiffBuilder = new ASTDiffBuilder((PsiFileImpl) file);
@@ -57,10 +58,20 @@ public class DiffLog implements DiffTreeChangeBuilder<ASTNode,ASTNode> {
       entry.doActualPsiChange(file, astDiffBuilder);
     }
     file.subtreeChanged();
+    for (Runnable action : myAfterChangeActions) {
+      action.run();
+    }
 
     return astDiffBuilder.getEvent();
   }
 
+  /**
+   * Registers an action to run once the changes are applied to the tree, the action isn't run if the log is discarded.
+   */
+  public void appendAfterChangeAction(@NotNull Runnable action) {
+    myAfterChangeActions.add(action);
+  }
+
   @Override
   public void nodeReplaced(@NotNull ASTNode oldNode, @NotNull ASTNode newNode) {
     if (oldNode instanceof FileElement && newNode instanceof FileElement) {
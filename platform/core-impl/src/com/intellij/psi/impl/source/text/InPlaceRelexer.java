@@ -0,0 +1,292 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.impl.source.text;
+
+import com.intellij.lang.ASTFactory;
+import com.intellij.lang.InPlaceRelexingSupport;
+import com.intellij.lang.LanguageParserDefinitions;
+import com.intellij.lang.ParserDefinition;
+import com.intellij.lexer.Lexer;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.PsiCodeFragment;
+import com.intellij.psi.PsiWhiteSpace;
+import com.intellij.psi.impl.source.DummyHolder;
+import com.intellij.psi.impl.source.DummyHolderFactory;
+import com.intellij.psi.impl.source.PsiFileImpl;
+import com.intellij.psi.impl.source.tree.FileElement;
+import com.intellij.psi.impl.source.tree.LeafElement;
+import com.intellij.psi.impl.source.tree.PsiWhiteSpaceImpl;
+import com.intellij.psi.impl.source.tree.TreeElement;
+import com.intellij.psi.impl.source.tree.TreeUtil;
+import com.intellij.psi.text.BlockSupport;
+import com.intellij.psi.tree.CustomParsingType;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.ILazyParseableElementType;
+import com.intellij.psi.tree.TokenSet;
+import com.intellij.util.CharTable;
+import com.intellij.util.text.MergingCharSequence;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Text-only leaf patching: updates a file without reparse when a change keeps the types and the order of tokens and the language
+ * allows the changed leaves to get the new text, see {@link InPlaceRelexingSupport}. Any change of the token stream, i.e. inserted,
+ * removed or retyped tokens, is left to {@link BlockSupportImpl} to reparse.
+ * <p/>
+ * Like {@link com.intellij.openapi.editor.ex.util.LexerEditorHighlighter}, the old and the new texts are relexed from a restart
+ * point before the change until both lexers get into the initial state at the same token after the change. Restart points are
+ * token starts where the lexer is in its initial state. They are recorded while lexing and kept with the file element; the changes
+ * made by the relexer update them, any other change of the tree drops the ones after the changed range.
+ */
+final class InPlaceRelexer {
+  private static final Key<RestartPoints> RESTART_POINTS = Key.create("RELEXER_RESTART_POINTS");
+
+  /**
+   * Minimal distance between recorded restart points, so that they take little memory even in large files.
+   */
+  private static final int RESTART_POINT_STEP = 256;
+
+  /**
+   * Longer relexed ranges are left to the parser.
+   */
+  private static final int MAX_RELEXED_LENGTH = 16384;
+
+  private InPlaceRelexer() {
+  }
+
+  /**
+   * Restart points of the file tree with the given modification count. The text before {@link #myLexedEnd} has been lexed,
+   * the text after it may contain more restart points. Never modified, replaced as a whole.
+   */
+  private static class RestartPoints {
+    private final int myModificationCount;
+    private final int[] myOffsets;
+    private final int myLexedEnd;
+
+    private RestartPoints(int modificationCount, @NotNull int[] offsets, int lexedEnd) {
+      myModificationCount = modificationCount;
+      myOffsets = offsets;
+      myLexedEnd = lexedEnd;
+    }
+
+    /**
+     * @return the last restart point not after the offset
+     */
+    private int findBefore(int offset) {
+      int index = Arrays.binarySearch(myOffsets, offset);
+      return myOffsets[index >= 0 ? index : -index - 2];
+    }
+
+    @NotNull
+    private RestartPoints extend(@NotNull Lexer lexer, @NotNull CharSequence text, int offset, int initialState) {
+      if (offset < myLexedEnd) return this;
+
+      TIntArrayList offsets = new TIntArrayList(myOffsets);
+      int lastOffset = offsets.get(offsets.size() - 1);
+      lexer.start(text, lastOffset, text.length(), initialState);
+      while (lexer.getTokenType() != null && lexer.getTokenStart() <= offset) {
+        int start = lexer.getTokenStart();
+        if (lexer.getState() == initialState && start - lastOffset >= RESTART_POINT_STEP) {
+          offsets.add(start);
+          lastOffset = start;
+        }
+        lexer.advance();
+      }
+      int lexedEnd = lexer.getTokenType() == null ? text.length() : lexer.getTokenStart();
+      return new RestartPoints(myModificationCount, offsets.toNativeArray(), lexedEnd);
+    }
+
+    /**
+     * @return the points after the text from <code>restart</code> to <code>oldEnd</code> has been relexed, with the restart
+     *         points found there
+     */
+    @NotNull
+    private RestartPoints relexed(int restart, @NotNull TIntArrayList relexedOffsets, int oldEnd, int lengthShift, int modificationCount) {
+      TIntArrayList offsets = new TIntArrayList(myOffsets.length + relexedOffsets.size());
+      for (int offset : myOffsets) {
+        if (offset < restart) offsets.add(offset);
+      }
+      offsets.add(relexedOffsets.toNativeArray());
+      for (int offset : myOffsets) {
+        if (offset >= oldEnd) offsets.add(offset + lengthShift);
+      }
+      int lexedEnd = Math.max(myLexedEnd, oldEnd) + lengthShift;
+      return new RestartPoints(modificationCount, offsets.toNativeArray(), lexedEnd);
+    }
+
+    @NotNull
+    private RestartPoints truncated(int end, int modificationCount) {
+      TIntArrayList offsets = new TIntArrayList();
+      for (int offset : myOffsets) {
+        if (offset < end || offset == 0) offsets.add(offset);
+      }
+      return new RestartPoints(modificationCount, offsets.toNativeArray(), Math.min(myLexedEnd, end));
+    }
+  }
+
+  /**
+   * @return the log replacing the changed leaves, or null if the change can't be handled without reparse
+   */
+  @Nullable
+  static DiffLog relex(@NotNull PsiFileImpl fileImpl,
+                       @NotNull final FileElement treeFileElement,
+                       int startOffset,
+                       int endOffset,
+                       final int lengthShift,
+                       @NotNull CharSequence newFileText) {
+    if (fileImpl instanceof PsiCodeFragment || fileImpl.getUserData(BlockSupport.DO_NOT_REPARSE_INCREMENTALLY) != null) return null;
+    if (fileImpl.getViewProvider().getLanguages().size() != 1) return null;
+    final ParserDefinition parserDefinition = LanguageParserDefinitions.INSTANCE.forLanguage(fileImpl.getLanguage());
+    if (!(parserDefinition instanceof InPlaceRelexingSupport)) return null;
+    final InPlaceRelexingSupport relexingSupport = (InPlaceRelexingSupport)parserDefinition;
+
+    final int newEndOffset = endOffset + lengthShift;
+    if (endOffset - startOffset > MAX_RELEXED_LENGTH || newEndOffset - startOffset > MAX_RELEXED_LENGTH) return null;
+
+    final LeafElement changedLeaf = treeFileElement.findLeafElementAt(startOffset);
+    if (changedLeaf == null) return null;
+    final CharSequence oldChangedText = getText(changedLeaf, startOffset, endOffset);
+    if (oldChangedText == null) return null;
+    final CharSequence oldFileText = new MergingCharSequence(new MergingCharSequence(newFileText.subSequence(0, startOffset), oldChangedText),
+                                                             newFileText.subSequence(newEndOffset, newFileText.length()));
+
+    final Project project = fileImpl.getProject();
+    final Lexer oldLexer = parserDefinition.createLexer(project);
+    oldLexer.start(oldFileText);
+    final int initialState = oldLexer.getState();
+
+    // like in LexerEditorHighlighter, restart at least a token before the changed one, as its end may depend on the text after it
+    final TreeElement leafBefore = (TreeElement)TreeUtil.prevLeaf(changedLeaf);
+    final int target = leafBefore == null ? 0 : leafBefore.getStartOffset();
+    RestartPoints points = treeFileElement.getUserData(RESTART_POINTS);
+    if (points == null || points.myModificationCount != treeFileElement.getModificationCount()) {
+      points = new RestartPoints(treeFileElement.getModificationCount(), new int[]{0}, 0);
+    }
+    final RestartPoints oldPoints = points.extend(oldLexer, oldFileText, target, initialState);
+    if (oldPoints != points) {
+      treeFileElement.putUserData(RESTART_POINTS, oldPoints);
+    }
+    final int restart = oldPoints.findBefore(target);
+
+    LeafElement leaf = treeFileElement.findLeafElementAt(restart);
+    if (leaf == null || leaf.getStartOffset() != restart) return null;
+    int leafStart = restart;
+
+    final Lexer newLexer = parserDefinition.createLexer(project);
+    oldLexer.start(oldFileText, restart, oldFileText.length(), initialState);
+    newLexer.start(newFileText, restart, newFileText.length(), initialState);
+    final TokenSet whitespaces = parserDefinition.getWhitespaceTokens();
+    final List<LeafElement> changedLeaves = new ArrayList<LeafElement>();
+    final List<CharSequence> newTexts = new ArrayList<CharSequence>();
+    final TIntArrayList relexedPoints = new TIntArrayList();
+    int lastPoint = restart - RESTART_POINT_STEP;
+    final int oldEnd;
+    while (true) {
+      final IElementType oldType = oldLexer.getTokenType();
+      final IElementType newType = newLexer.getTokenType();
+      if (oldType == null || newType == null) {
+        if (oldType != newType) return null;
+        oldEnd = oldFileText.length();
+        break;
+      }
+      final int oldStart = oldLexer.getTokenStart();
+      final int newStart = newLexer.getTokenStart();
+      final boolean initial = newLexer.getState() == initialState;
+      if (oldStart >= endOffset && newStart == oldStart + lengthShift && initial && oldLexer.getState() == initialState) {
+        // the rest of the text is the same and is lexed the same way
+        oldEnd = oldStart;
+        break;
+      }
+      if (newStart - restart > MAX_RELEXED_LENGTH || oldType != newType || leaf == null) return null;
+
+      // the tree has to consist of the old tokens
+      final int oldTokenEnd = oldLexer.getTokenEnd();
+      if (leafStart != oldStart || leafStart + leaf.getTextLength() != oldTokenEnd) return null;
+      if (leaf.getElementType() != oldType && !(whitespaces.contains(oldType) && leaf instanceof PsiWhiteSpace)) return null;
+
+      final CharSequence newText = newFileText.subSequence(newStart, newLexer.getTokenEnd());
+      if (!StringUtil.equals(leaf.getChars(), newText)) {
+        final IElementType type = leaf.getElementType();
+        if (type instanceof ILazyParseableElementType || type instanceof CustomParsingType) return null;
+        if (!relexingSupport.canChangeLeafText(leaf, newText)) return null;
+        changedLeaves.add(leaf);
+        newTexts.add(newText);
+      }
+      if (initial && newStart - lastPoint >= RESTART_POINT_STEP) {
+        relexedPoints.add(newStart);
+        lastPoint = newStart;
+      }
+
+      leafStart = oldTokenEnd;
+      leaf = TreeUtil.nextLeaf(leaf, null);
+      oldLexer.advance();
+      newLexer.advance();
+    }
+    if (changedLeaves.isEmpty()) return null;
+
+    final CharTable charTable = treeFileElement.getCharTable();
+    final DiffLog diffLog = new DiffLog();
+    for (int i = 0; i < changedLeaves.size(); i++) {
+      final LeafElement oldLeaf = changedLeaves.get(i);
+      final CharSequence text = charTable.intern(newTexts.get(i));
+      final LeafElement newLeaf = oldLeaf instanceof PsiWhiteSpace ? new PsiWhiteSpaceImpl(text) : ASTFactory.leaf(oldLeaf.getElementType(), text);
+      final DummyHolder holder = DummyHolderFactory.createHolder(fileImpl.getManager(), null, oldLeaf.getTreeParent().getPsi(), charTable);
+      holder.getTreeElement().rawAddChildren(newLeaf);
+      diffLog.nodeReplaced(oldLeaf, newLeaf);
+    }
+    diffLog.appendAfterChangeAction(new Runnable() {
+      @Override
+      public void run() {
+        RestartPoints newPoints = oldPoints.relexed(restart, relexedPoints, oldEnd, lengthShift, treeFileElement.getModificationCount());
+        treeFileElement.putUserData(RESTART_POINTS, newPoints);
+      }
+    });
+    return diffLog;
+  }
+
+  /**
+   * Keeps the restart points before the offset once the tree is changed by the log.
+   */
+  static void keepRestartPointsBefore(@NotNull DiffLog diffLog, @NotNull final FileElement treeFileElement, final int offset) {
+    final RestartPoints points = treeFileElement.getUserData(RESTART_POINTS);
+    if (points == null || points.myModificationCount != treeFileElement.getModificationCount()) return;
+
+    diffLog.appendAfterChangeAction(new Runnable() {
+      @Override
+      public void run() {
+        treeFileElement.putUserData(RESTART_POINTS, points.truncated(offset, treeFileElement.getModificationCount()));
+      }
+    });
+  }
+
+  @Nullable
+  private static CharSequence getText(@NotNull LeafElement first, int startOffset, int endOffset) {
+    final int firstStart = first.getStartOffset();
+    final StringBuilder text = new StringBuilder();
+    for (TreeElement leaf = first; firstStart + text.length() < endOffset; leaf = TreeUtil.nextLeaf(leaf, null)) {
+      if (leaf == null) return null;
+      text.append(leaf.getChars());
+    }
+    return text.subSequence(startOffset - firstStart, endOffset - firstStart);
+  }
+}
@@ -87,13 +87,36 @@ public abstract class CachedValueBase<T> {
       if (isUpToDate(data)) {
         return value;
       }
-      if (dispose && value instanceof Disposable) {
-        Disposer.dispose((Disposable)value);
+      if (dispose) {
+        CachedValuesStatistics statistics = CachedValuesStatistics.getInstance();
+        if (statistics.isEnabled()) {
+          statistics.invalidated(getValueProvider(), findOutOfDateDependency(data));
+        }
+        if (value instanceof Disposable) {
+          Disposer.dispose((Disposable)value);
+        }
+      }
+    }
+    else if (dispose && myData != null) {
+      CachedValuesStatistics statistics = CachedValuesStatistics.getInstance();
+      if (statistics.isEnabled()) {
+        statistics.collected(getValueProvider());
       }
     }
     return null;
   }
 
+  @Nullable
+  private Object findOutOfDateDependency(@NotNull Data data) {
+    if (data.myTimeStamps == null) return null;
+
+    for (int i = 0; i < data.myDependencies.length; i++) {
+      Object dependency = data.myDependencies[i];
+      if (dependency != null && isDependencyOutOfDate(dependency, data.myTimeStamps[i])) return dependency;
+    }
+    return null;
+  }
+
   @Nullable
   private Data<T> getData() {
     final SoftReference<Data<T>> ref = myData;
@@ -168,6 +191,8 @@ public abstract class CachedValueBase<T> {
 
   public abstract boolean isFromMyProject(Project project);
 
+  public abstract Object getValueProvider();
+
   protected static class Data<T> implements Disposable {
     private final T myValue;
     private final Object[] myDependencies;
@@ -189,15 +214,23 @@ public abstract class CachedValueBase<T> {
 
   @Nullable
   protected <P> T getValueWithLock(P param) {
+    CachedValuesStatistics statistics = CachedValuesStatistics.getInstance();
     T value = getUpToDateOrNull(true);
     if (value != null) {
+      if (statistics.isEnabled()) {
+        statistics.hit(getValueProvider());
+      }
       return value == ObjectUtils.NULL ? null : value;
     }
 
     RecursionGuard.StackStamp stamp = RecursionManager.createGuard("cachedValue").markStack();
 
     // compute outside lock to avoid deadlock
+    long start = statistics.isEnabled() ? System.nanoTime() : 0;
     CachedValueProvider.Result<T> result = doCompute(param);
+    if (start != 0) {
+      statistics.computed(getValueProvider(), System.nanoTime() - start);
+    }
 
     if (stamp.mayCacheNow()) {
       return setValue(result);
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util;
+
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.ModificationTracker;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.containers.ConcurrentHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Hits, computations and invalidations of {@link CachedValueBase cached values} grouped by the class of the value provider.
+ * Nothing is collected until {@link #setEnabled(boolean) enabled}, either from the internal actions or with
+ * <code>-Didea.cached.values.statistics</code>.
+ */
+public class CachedValuesStatistics {
+  private static final CachedValuesStatistics ourInstance = new CachedValuesStatistics(Boolean.getBoolean("idea.cached.values.statistics"));
+
+  /**
+   * Upper bounds of the compute time histogram buckets, the last bucket has no bound.
+   */
+  private static final long[] BUCKET_BOUNDS_NANOS = {10000, 100000, 1000000, 10000000, 100000000};
+  private static final String[] BUCKET_NAMES = {"<10us", "<100us", "<1ms", "<10ms", "<100ms", ">=100ms"};
+
+  public static class Entry {
+    private final String myProvider;
+    private final AtomicLong myHits = new AtomicLong();
+    private final AtomicLong myComputes = new AtomicLong();
+    private final AtomicLong myComputeNanos = new AtomicLong();
+    private final AtomicLong myCollected = new AtomicLong();
+    private final AtomicLongArray myHistogram = new AtomicLongArray(BUCKET_NAMES.length);
+    private final ConcurrentMap<String, AtomicLong> myInvalidations = new ConcurrentHashMap<String, AtomicLong>();
+
+    private Entry(@NotNull String provider) {
+      myProvider = provider;
+    }
+
+    @NotNull
+    public String getProvider() {
+      return myProvider;
+    }
+
+    public long getHits() {
+      return myHits.get();
+    }
+
+    public long getComputes() {
+      return myComputes.get();
+    }
+
+    public long getComputeNanos() {
+      return myComputeNanos.get();
+    }
+
+    /**
+     * @return  how many times the value had to be computed again because the garbage collector cleared it
+     */
+    public long getCollected() {
+      return myCollected.get();
+    }
+
+    /**
+     * @return  numbers of computations by duration, see {@link CachedValuesStatistics#getBucketNames()}
+     */
+    @NotNull
+    public long[] getHistogram() {
+      long[] result = new long[myHistogram.length()];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = myHistogram.get(i);
+      }
+      return result;
+    }
+
+    /**
+     * @return  numbers of invalidations by the first outdated dependency: keys and modification trackers by their
+     *          <code>toString()</code>, like <code>MODIFICATION_COUNT</code>, other dependencies by their class
+     */
+    @NotNull
+    public Map<String, Long> getInvalidations() {
+      Map<String, Long> result = new TreeMap<String, Long>();
+      for (Map.Entry<String, AtomicLong> entry : myInvalidations.entrySet()) {
+        result.put(entry.getKey(), entry.getValue().get());
+      }
+      return result;
+    }
+
+    public double getHitRate() {
+      long hits = getHits();
+      long total = hits + getComputes();
+      return total == 0 ? 0 : (double)hits / total;
+    }
+
+    private void computed(long nanos) {
+      myComputes.incrementAndGet();
+      myComputeNanos.addAndGet(nanos);
+      int bucket = 0;
+      while (bucket < BUCKET_BOUNDS_NANOS.length && nanos >= BUCKET_BOUNDS_NANOS[bucket]) bucket++;
+      myHistogram.incrementAndGet(bucket);
+    }
+
+    private void invalidated(@NotNull String dependency) {
+      AtomicLong count = myInvalidations.get(dependency);
+      if (count == null) {
+        AtomicLong newCount = new AtomicLong();
+        count = myInvalidations.putIfAbsent(dependency, newCount);
+        if (count == null) count = newCount;
+      }
+      count.incrementAndGet();
+    }
+  }
+
+  private final ConcurrentMap<Class, Entry> myEntries = new ConcurrentHashMap<Class, Entry>();
+  private volatile boolean myEnabled;
+
+  public CachedValuesStatistics(boolean enabled) {
+    myEnabled = enabled;
+  }
+
+  @NotNull
+  public static CachedValuesStatistics getInstance() {
+    return ourInstance;
+  }
+
+  @NotNull
+  public static String[] getBucketNames() {
+    return BUCKET_NAMES.clone();
+  }
+
+  public boolean isEnabled() {
+    return myEnabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    myEnabled = enabled;
+  }
+
+  public void reset() {
+    myEntries.clear();
+  }
+
+  public void hit(@NotNull Object provider) {
+    getEntry(provider).myHits.incrementAndGet();
+  }
+
+  public void computed(@NotNull Object provider, long nanos) {
+    getEntry(provider).computed(nanos);
+  }
+
+  public void collected(@NotNull Object provider) {
+    getEntry(provider).myCollected.incrementAndGet();
+  }
+
+  /**
+   * @param dependency  the dependency which went out of date, <code>null</code> if the value was invalidated as a whole
+   */
+  public void invalidated(@NotNull Object provider, @Nullable Object dependency) {
+    getEntry(provider).invalidated(getDependencyName(dependency));
+  }
+
+  @NotNull
+  private static String getDependencyName(@Nullable Object dependency) {
+    if (dependency == null) return "<none>";
+    String className = dependency.getClass().getName();
+    if (dependency instanceof Key || dependency instanceof ModificationTracker) {
+      String text = dependency.toString();
+      // trackers which don't override toString() would make an entry per instance
+      if (!text.equals(className + "@" + Integer.toHexString(dependency.hashCode()))) return text;
+    }
+    return className;
+  }
+
+  @NotNull
+  private Entry getEntry(@NotNull Object provider) {
+    Class providerClass = provider.getClass();
+    Entry entry = myEntries.get(providerClass);
+    if (entry == null) {
+      Entry newEntry = new Entry(providerClass.getName());
+      entry = myEntries.putIfAbsent(providerClass, newEntry);
+      if (entry == null) entry = newEntry;
+    }
+    return entry;
+  }
+
+  /**
+   * @return  entries of all providers, the ones with the longest total compute time first
+   */
+  @NotNull
+  public List<Entry> getEntries() {
+    List<Entry> result = new ArrayList<Entry>(myEntries.values());
+    Collections.sort(result, new Comparator<Entry>() {
+      @Override
+      public int compare(Entry e1, Entry e2) {
+        long t1 = e1.getComputeNanos();
+        long t2 = e2.getComputeNanos();
+        return t1 < t2 ? 1 : t1 == t2 ? 0 : -1;
+      }
+    });
+    return result;
+  }
+
+  @NotNull
+  public String dump() {
+    StringBuilder builder = new StringBuilder();
+    builder.append(String.format("%10s %10s %6s %10s %10s", "computes", "hits", "hit %", "compute ms", "collected"));
+    for (String bucket : BUCKET_NAMES) {
+      builder.append(String.format(" %8s", bucket));
+    }
+    builder.append("  provider").append(SystemProperties.getLineSeparator());
+
+    for (Entry entry : getEntries()) {
+      builder.append(String.format("%10d %10d %6.1f %10d %10d", entry.getComputes(), entry.getHits(), entry.getHitRate() * 100,
+                                   entry.getComputeNanos() / 1000000, entry.getCollected()));
+      for (long count : entry.getHistogram()) {
+        builder.append(String.format(" %8d", count));
+      }
+      builder.append("  ").append(entry.getProvider()).append(SystemProperties.getLineSeparator());
+
+      for (Map.Entry<String, Long> invalidation : entry.getInvalidations().entrySet()) {
+        builder.append(String.format("%10d invalidated by %s", invalidation.getValue(), invalidation.getKey()));
+        builder.append(SystemProperties.getLineSeparator());
+      }
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Writes {@link #dump()} to a new file in the given directory.
+   *
+   * @return  the file written
+   */
+  @NotNull
+  public File export(@NotNull File directory) throws IOException {
+    File file = FileUtil.findSequentNonexistentFile(directory, "cachedValues-" + System.currentTimeMillis(), "txt");
+    FileUtil.writeToFile(file, dump());
+    return file;
+  }
+}
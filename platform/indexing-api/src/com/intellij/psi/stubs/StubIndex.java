@@ -22,11 +22,17 @@ package com.intellij.psi.stubs;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.codeStyle.MinusculeMatcher;
+import com.intellij.psi.codeStyle.NameUtil;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.PsiUtilCore;
+import com.intellij.util.PairProcessor;
 import com.intellij.util.Processor;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Collection;
+import java.util.*;
 
 public abstract class StubIndex {
   private static class StubIndexHolder {
@@ -50,4 +56,98 @@ public abstract class StubIndex {
 
   @NotNull
   public abstract <Key> Collection<Key> getAllKeys(@NotNull StubIndexKey<Key, ?> indexKey, @NotNull Project project);
+
+  /**
+   * Processes the keys which are not less than <code>from</code> and less than <code>to</code> in ascending order. Unlike
+   * {@link #getAllKeys(StubIndexKey, Project)} the implementation isn't required to collect all keys of the index to do that.
+   *
+   * @param to  exclusive upper bound, <code>null</code> means no bound
+   */
+  public boolean processKeysInRange(@NotNull StubIndexKey<String, ?> indexKey,
+                                    @NotNull Project project,
+                                    @NotNull String from,
+                                    @Nullable String to,
+                                    @NotNull Processor<String> processor) {
+    for (String key : getSortedKeys(indexKey, project)) {
+      if (key.compareTo(from) < 0) continue;
+      if (to != null && key.compareTo(to) >= 0) break;
+      if (!processor.process(key)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Processes the keys starting with the prefix in ascending order.
+   *
+   * @see #processKeysInRange(StubIndexKey, Project, String, String, Processor)
+   */
+  public boolean processKeysWithPrefix(@NotNull StubIndexKey<String, ?> indexKey,
+                                       @NotNull Project project,
+                                       @NotNull String prefix,
+                                       @NotNull Processor<String> processor) {
+    for (String key : getSortedKeys(indexKey, project)) {
+      if (key.startsWith(prefix) && !processor.process(key)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Processes the keys which are not less than <code>from</code> and less than <code>to</code> in ascending order together with
+   * the files of the scope having stubs with the key. Keys without such files are skipped. The implementation isn't required to
+   * load the stubs to do that.
+   *
+   * @param to     exclusive upper bound, <code>null</code> means no bound
+   * @param scope  <code>null</code> means all files of the project
+   */
+  public boolean processKeysWithFiles(@NotNull final StubIndexKey<String, ?> indexKey,
+                                      @NotNull final Project project,
+                                      @NotNull String from,
+                                      @Nullable String to,
+                                      @Nullable final GlobalSearchScope scope,
+                                      @NotNull final PairProcessor<String, List<VirtualFile>> processor) {
+    return processKeysInRange(indexKey, project, from, to, new Processor<String>() {
+      @Override
+      public boolean process(String key) {
+        Set<VirtualFile> files = new LinkedHashSet<VirtualFile>();
+        for (PsiElement element : get(indexKey, key, project, scope)) {
+          VirtualFile file = PsiUtilCore.getVirtualFile(element);
+          if (file != null) files.add(file);
+        }
+        return files.isEmpty() || processor.process(key, new ArrayList<VirtualFile>(files));
+      }
+    });
+  }
+
+  /**
+   * Processes the keys matching the camel-hump pattern from their start, for example <code>NPE</code> matches
+   * <code>NullPointerException</code>. Only the keys starting with the first letter of the pattern in either case are looked at.
+   */
+  public boolean processKeysMatchingCamelHumps(@NotNull StubIndexKey<String, ?> indexKey,
+                                               @NotNull Project project,
+                                               @NotNull String pattern,
+                                               @NotNull final Processor<String> processor) {
+    final MinusculeMatcher matcher = NameUtil.buildMatcher(pattern, NameUtil.MatchingCaseSensitivity.NONE);
+    Processor<String> matching = new Processor<String>() {
+      @Override
+      public boolean process(String key) {
+        return !matcher.matches(key) || processor.process(key);
+      }
+    };
+
+    char first = pattern.isEmpty() ? 0 : pattern.charAt(0);
+    if (!Character.isLetterOrDigit(first)) {
+      return processKeysInRange(indexKey, project, "", null, matching);
+    }
+    char upper = Character.toUpperCase(first);
+    char lower = Character.toLowerCase(first);
+    if (!processKeysWithPrefix(indexKey, project, String.valueOf(upper), matching)) return false;
+    return upper == lower || processKeysWithPrefix(indexKey, project, String.valueOf(lower), matching);
+  }
+
+  @NotNull
+  private List<String> getSortedKeys(@NotNull StubIndexKey<String, ?> indexKey, @NotNull Project project) {
+    List<String> keys = new ArrayList<String>(getAllKeys(indexKey, project));
+    Collections.sort(keys);
+    return keys;
+  }
 }
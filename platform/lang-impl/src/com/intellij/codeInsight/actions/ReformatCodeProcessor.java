@@ -80,18 +80,21 @@ public class ReformatCodeProcessor extends AbstractLayoutCodeProcessor {
   protected FutureTask<Boolean> preprocessFile(@NotNull final PsiFile file, final boolean processChangedTextOnly)
     throws IncorrectOperationException
   {
+    // Changed text is calculated here, i.e. under read action, in order not to query VCS from the write action which applies
+    // the changes. The ranges are copied, so that the changes of one file aren't reformatted in the files processed after it
+    final Collection<TextRange> ranges = new ArrayList<TextRange>(myRanges);
+    if (ranges.isEmpty() && processChangedTextOnly) {
+      ranges.addAll(FormatChangedTextUtil.getChanges(file));
+    }
     return new FutureTask<Boolean>(new Callable<Boolean>() {
       @Override
       public Boolean call() throws Exception {
         FormattingProgressTask.FORMATTING_CANCELLED_FLAG.set(false);
         try {
-          if (myRanges.isEmpty() && processChangedTextOnly) {
-            myRanges.addAll(FormatChangedTextUtil.getChanges(file));
-          }
-          if (myRanges.isEmpty()) {
-            myRanges.add(file.getTextRange());
+          if (ranges.isEmpty()) {
+            ranges.add(file.getTextRange());
           }
-          CodeStyleManager.getInstance(myProject).reformatText(file, myRanges);
+          CodeStyleManager.getInstance(myProject).reformatText(file, ranges);
           return !FormattingProgressTask.FORMATTING_CANCELLED_FLAG.get();
         }
         catch (IncorrectOperationException e) {
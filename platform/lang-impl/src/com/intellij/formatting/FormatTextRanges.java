@@ -20,6 +20,8 @@ import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -37,6 +39,7 @@ public class FormatTextRanges {
   public static class FormatTextRange {
     private TextRange myRange;
     private final boolean myProcessHeadingWhitespace;
+    private FormatTextRanges myOwner;
 
     public FormatTextRange(TextRange range, boolean processHeadingWhitespace) {
       myRange = range;
@@ -106,6 +109,9 @@ public class FormatTextRanges {
 
     public void setTextRange(TextRange range) {
       myRange = range;
+      if (myOwner != null) {
+        myOwner.mySortedRanges = null;
+      }
     }
 
     public TextRange getNonEmptyTextRange() {
@@ -122,6 +128,18 @@ public class FormatTextRanges {
 
   private final List<FormatTextRange> myRanges = new ArrayList<FormatTextRange>();
 
+  /**
+   * Aggregated ranges sorted by start offset; built lazily and dropped on every change of the ranges. The formatter asks about
+   * every block and white space of the file, so this lets it answer in logarithmic time when there are many ranges to reformat
+   * (e.g. VCS changes of a big file).
+   */
+  private FormatTextRange[] mySortedRanges;
+
+  /**
+   * <code>myMaxEndOffsets[i]</code> is the max end offset of <code>mySortedRanges[0..i]</code>.
+   */
+  private int[] myMaxEndOffsets;
+
   public FormatTextRanges() {
   }
 
@@ -130,7 +148,10 @@ public class FormatTextRanges {
   }
 
   public void add(TextRange range, boolean processHeadingWhitespace) {
-    myRanges.add(new FormatTextRange(range, processHeadingWhitespace));
+    FormatTextRange formatTextRange = new FormatTextRange(range, processHeadingWhitespace);
+    formatTextRange.myOwner = this;
+    myRanges.add(formatTextRange);
+    mySortedRanges = null;
   }
 
   /**
@@ -143,6 +164,16 @@ public class FormatTextRanges {
    *                             <code>false</code> if given range intersects at least one of aggregated ranges
    */
   public boolean isWhitespaceReadOnly(TextRange range) {
+    if (range != null && ensureSorted()) {
+      int last = findLastStartingAtOrBefore(range.getEndOffset());
+      for (int i = last; i >= 0 && mySortedRanges[i].getStartOffset() == range.getEndOffset(); i--) {
+        if (!mySortedRanges[i].isWhitespaceReadOnly(range)) {
+          return false;
+        }
+      }
+      int lastStartingBefore = findLastStartingAtOrBefore(range.getEndOffset() - 1);
+      return lastStartingBefore < 0 || myMaxEndOffsets[lastStartingBefore] <= range.getStartOffset();
+    }
     for (FormatTextRange formatTextRange : myRanges) {
       if (!formatTextRange.isWhitespaceReadOnly(range)) {
         return false;
@@ -162,6 +193,13 @@ public class FormatTextRanges {
    *                              <code>false</code> if given range intersects at least one of aggregated ranges
    */
   public boolean isReadOnly(TextRange range, boolean rootIsRightBlock) {
+    if (ensureSorted()) {
+      if (rootIsRightBlock && mySortedRanges[mySortedRanges.length - 1].getStartOffset() >= range.getEndOffset()) {
+        return false;
+      }
+      int last = findLastStartingAtOrBefore(range.getEndOffset());
+      return last < 0 || myMaxEndOffsets[last] < range.getStartOffset();
+    }
     for (FormatTextRange formatTextRange : myRanges) {
       if (!formatTextRange.isReadOnly(range, rootIsRightBlock)) {
         return false;
@@ -170,6 +208,60 @@ public class FormatTextRanges {
     return true;
   }
 
+  /**
+   * Builds the sorted view of the aggregated ranges if necessary.
+   *
+   * @return    <code>true</code> if the sorted view may be used; <code>false</code> if there are too few ranges for it to pay off
+   *            or some of them are undefined, and the ranges should be checked one by one
+   */
+  private boolean ensureSorted() {
+    if (mySortedRanges != null) {
+      return true;
+    }
+    if (myRanges.size() < 2) {
+      return false;
+    }
+    for (FormatTextRange range : myRanges) {
+      if (range.getTextRange() == null) {
+        return false;
+      }
+    }
+    FormatTextRange[] sorted = myRanges.toArray(new FormatTextRange[myRanges.size()]);
+    Arrays.sort(sorted, new Comparator<FormatTextRange>() {
+      @Override
+      public int compare(FormatTextRange o1, FormatTextRange o2) {
+        return o1.getStartOffset() - o2.getStartOffset();
+      }
+    });
+    int[] maxEndOffsets = new int[sorted.length];
+    int max = Integer.MIN_VALUE;
+    for (int i = 0; i < sorted.length; i++) {
+      max = Math.max(max, sorted[i].getTextRange().getEndOffset());
+      maxEndOffsets[i] = max;
+    }
+    myMaxEndOffsets = maxEndOffsets;
+    mySortedRanges = sorted;
+    return true;
+  }
+
+  /**
+   * @return    index of the last sorted range which starts at or before the given offset; <code>-1</code> if there is no such range
+   */
+  private int findLastStartingAtOrBefore(int offset) {
+    int low = 0;
+    int high = mySortedRanges.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (mySortedRanges[mid].getStartOffset() <= offset) {
+        low = mid + 1;
+      }
+      else {
+        high = mid - 1;
+      }
+    }
+    return high;
+  }
+
   public List<FormatTextRange> getRanges() {
     return myRanges;
   }
@@ -16,6 +16,7 @@
 package com.intellij.openapi.module.impl;
 
 import com.intellij.ProjectTopics;
+import com.intellij.concurrency.JobLauncher;
 import com.intellij.notification.Notification;
 import com.intellij.notification.NotificationType;
 import com.intellij.notification.Notifications;
@@ -25,6 +26,7 @@ import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
 import com.intellij.openapi.components.StoragePathMacros;
 import com.intellij.openapi.components.StorageScheme;
+import com.intellij.openapi.components.impl.stores.PreloadedDocuments;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleType;
@@ -34,9 +36,14 @@ import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectBundle;
 import com.intellij.openapi.project.impl.ProjectLifecycleListener;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Processor;
 import com.intellij.util.messages.MessageBus;
 import com.intellij.util.messages.MessageBusConnection;
 import com.intellij.util.messages.MessageHandler;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.lang.reflect.Method;
@@ -109,6 +116,28 @@ public class ModuleManagerComponent extends ModuleManagerImpl {
     }
   }
 
+  @Override
+  protected boolean isConcurrentLoadingEnabled() {
+    return Registry.is("project.concurrent.module.loading");
+  }
+
+  @Override
+  protected void prepareModuleFilesConcurrently(@NotNull List<VirtualFile> moduleFiles, @Nullable ProgressIndicator progressIndicator) {
+    final PreloadedDocuments documents = PreloadedDocuments.install(myProject);
+    JobLauncher.getInstance().invokeConcurrentlyUnderProgress(moduleFiles, progressIndicator, false, new Processor<VirtualFile>() {
+      @Override
+      public boolean process(VirtualFile file) {
+        documents.preload(file);
+        return true;
+      }
+    });
+  }
+
+  @Override
+  protected void discardPreparedModuleFiles() {
+    PreloadedDocuments.uninstall(myProject);
+  }
+
   @Override
   protected ModuleEx createModule(String filePath) {
     return new ModuleImpl(filePath, myProject);
@@ -25,18 +25,14 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.*;
 import com.intellij.openapi.startup.StartupManager;
 import com.intellij.openapi.util.Condition;
-import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.Pair;
-import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.*;
 import com.intellij.openapi.vfs.impl.BulkVirtualFileListenerAdapter;
-import com.intellij.openapi.vfs.newvfs.ManagingFS;
 import com.intellij.openapi.vfs.newvfs.NewVirtualFile;
 import com.intellij.util.*;
 import com.intellij.util.messages.MessageBusConnection;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -44,10 +40,9 @@ import java.util.List;
  */
 public class DirectoryIndexComponent extends DirectoryIndexImpl {
   private final MessageBusConnection myConnection;
-  private final ManagingFS myManagingFS;
   private final PackageSink mySink;
 
-  public DirectoryIndexComponent(@NotNull Project project, @NotNull StartupManager startupManager, @NotNull ManagingFS managingFS) {
+  public DirectoryIndexComponent(@NotNull Project project, @NotNull StartupManager startupManager) {
     super(project);
     myConnection = project.getMessageBus().connect(project);
     startupManager.registerPreStartupActivity(new Runnable() {
@@ -56,7 +51,6 @@ public class DirectoryIndexComponent extends DirectoryIndexImpl {
         initialize();
       }
     });
-    myManagingFS = managingFS;
     mySink = new PackageSink();
   }
 
@@ -74,7 +68,7 @@ public class DirectoryIndexComponent extends DirectoryIndexImpl {
         public boolean execute(@NotNull final Pair<IndexState, List<VirtualFile>> stateAndDirs,
                                @NotNull final Processor<VirtualFile> consumer) {
           for (VirtualFile dir : stateAndDirs.second) {
-            DirectoryInfo info = stateAndDirs.first.myDirToInfoMap.get(getId(dir));
+            DirectoryInfo info = stateAndDirs.first.getInfo(dir);
             assert info != null;
 
             if (!info.isInLibrarySource() || info.isInModuleSource() || info.hasLibraryClassRoot()) {
@@ -91,16 +85,7 @@ public class DirectoryIndexComponent extends DirectoryIndexImpl {
       dispatchPendingEvents();
 
       IndexState state = myState;
-      int[] allDirs = state.getDirsForPackage(packageName);
-      if (allDirs == null) allDirs = ArrayUtil.EMPTY_INT_ARRAY;
-
-      List<VirtualFile> files = new ArrayList<VirtualFile>(allDirs.length);
-      for (int dir : allDirs) {
-        VirtualFile file = myManagingFS.findFileById(dir);
-        if (file != null) {
-          files.add(file);
-        }
-      }
+      List<VirtualFile> files = state.getDirsForPackage(packageName);
 
       Query<VirtualFile> query = includeLibrarySources ? new CollectionQuery<VirtualFile>(files) : createQuery(Pair.create(state, files));
       return new FilteredQuery<VirtualFile>(query, IS_VALID);
@@ -124,6 +109,7 @@ public class DirectoryIndexComponent extends DirectoryIndexImpl {
     myConnection.subscribe(FileTypeManager.TOPIC, new FileTypeListener.Adapter() {
       @Override
       public void fileTypesChanged(FileTypeEvent event) {
+        // ignored directories may change anywhere
         doInitialize();
       }
     });
@@ -131,7 +117,7 @@ public class DirectoryIndexComponent extends DirectoryIndexImpl {
     myConnection.subscribe(ProjectTopics.PROJECT_ROOTS, new ModuleRootAdapter() {
       @Override
       public void rootsChanged(ModuleRootEvent event) {
-        doInitialize();
+        updateRoots();
       }
     });
 
@@ -156,131 +142,40 @@ public class DirectoryIndexComponent extends DirectoryIndexImpl {
   }
 
   private class MyVirtualFileListener extends VirtualFileAdapter {
-    private final Key<List<VirtualFile>> FILES_TO_RELEASE_KEY = Key.create("DirectoryIndexImpl.MyVirtualFileListener.FILES_TO_RELEASE_KEY");
-
     @Override
     public void fileCreated(VirtualFileEvent event) {
       VirtualFile file = event.getFile();
-
-      if (!file.isDirectory()) return;
-
-      VirtualFile parent = file.getParent();
-      if (parent == null) return;
-
-      myState = updateStateWithNewFile(file, parent);
-    }
-
-    @NotNull
-    private IndexState updateStateWithNewFile(@NotNull VirtualFile file, @NotNull VirtualFile parent) {
-      final IndexState originalState = myState;
-      IndexState state = originalState;
-      int parentId = getId(parent);
-      DirectoryInfo parentInfo = originalState.myDirToInfoMap.get(parentId);
-
-      // fill info for all nested roots
-      for (Module eachModule : ModuleManager.getInstance(myProject).getModules()) {
-        for (ContentEntry eachRoot : getContentEntries(eachModule)) {
-          if (parentInfo != null) {
-            VirtualFile contFile = eachRoot.getFile();
-            if (contFile != null && contFile.equals(parentInfo.getContentRoot())) continue;
-          }
-
-          String url = eachRoot.getUrl();
-          if (FileUtil.startsWith(url, file.getUrl())) {
-            String rel = FileUtil.getRelativePath(file.getUrl(), url, '/');
-            if (rel != null) {
-              VirtualFile f = file.findFileByRelativePath(rel);
-              if (f != null) {
-                if (state == originalState) state = state.copy();
-                state.fillMapWithModuleContent(f, eachModule, f, null);
-              }
-            }
-          }
-        }
-      }
-
-      if (parentInfo == null) return state;
-
-      Module module = parentInfo.getModule();
-
-      for (DirectoryIndexExcludePolicy policy : myExcludePolicies) {
-        if (policy.isExcludeRoot(file)) return state;
-      }
-
-      if (state == originalState) state = state.copy();
-      state.fillMapWithModuleContent(file, module, parentInfo.getContentRoot(), null);
-
-      String parentPackage = state.myDirToPackageName.get(parentId);
-
-      if (module != null) {
-        if (parentInfo.isInModuleSource()) {
-          String newDirPackageName = getPackageNameForSubdir(parentPackage, file.getName());
-          state.fillMapWithModuleSource(file, module, newDirPackageName, parentInfo.getSourceRoot(), parentInfo.isTestSource(), null);
-        }
-      }
-
-      if (parentInfo.hasLibraryClassRoot()) {
-        String newDirPackageName = getPackageNameForSubdir(parentPackage, file.getName());
-        state.fillMapWithLibraryClasses(file, newDirPackageName, parentInfo.getLibraryClassRoot(), null);
-      }
-
-      if (parentInfo.isInLibrarySource()) {
-        String newDirPackageName = getPackageNameForSubdir(parentPackage, file.getName());
-        state.fillMapWithLibrarySources(file, newDirPackageName, parentInfo.getSourceRoot(), null);
-      }
-
-      OrderEntry[] entries = parentInfo.getOrderEntries();
-      if (entries.length != 0) {
-        state.fillMapWithOrderEntries(file, entries, null, null, null, parentInfo, null);
+      if (file.isDirectory()) {
+        directoryAdded(file);
       }
-      return state;
     }
 
-    @Override
-    public void beforeFileDeletion(VirtualFileEvent event) {
-      VirtualFile file = event.getFile();
-      if (!file.isDirectory()) return;
-      if (!myState.myDirToInfoMap.containsKey(getId(file))) return;
-
-      final IndexState state = myState.copy();
-
-      ArrayList<VirtualFile> list = new ArrayList<VirtualFile>();
-      addDirsRecursively(state, list, file);
-      file.putUserData(FILES_TO_RELEASE_KEY, list);
-      myState = state;
-    }
-
-    private void addDirsRecursively(IndexState state, ArrayList<VirtualFile> list, VirtualFile dir) {
-      if (!(dir instanceof NewVirtualFile) || !state.myDirToInfoMap.containsKey(getId(dir))) return;
-
-      list.add(dir);
-
-      for (VirtualFile child : ((NewVirtualFile)dir).getCachedChildren()) {
-        if (child.isDirectory()) {
-          addDirsRecursively(state, list, child);
+    private void directoryAdded(@NotNull VirtualFile dir) {
+      IndexState state = myState;
+      if (state.isRootOrRootAncestor(dir)) {
+        // a configured root (or a directory containing some) has appeared
+        updateRoots();
+        return;
+      }
+
+      VirtualFile parent = dir.getParent();
+      if (parent != null && state.getInfo(parent) != null) {
+        for (DirectoryIndexExcludePolicy policy : myExcludePolicies) {
+          if (policy.isExcludeRoot(dir)) {
+            myState = state.withExcludeRoot(dir);
+            return;
+          }
         }
       }
+      state.dirAdded(dir);
     }
 
     @Override
     public void fileDeleted(VirtualFileEvent event) {
       VirtualFile file = event.getFile();
-      List<VirtualFile> list = file.getUserData(FILES_TO_RELEASE_KEY);
-      if (list == null) return;
-
-      IndexState copy = null;
-      for (VirtualFile dir : list) {
-        int id = getId(dir);
-        if (myState.myDirToInfoMap.containsKey(id)) {
-          if (copy == null) copy = myState.copy();
-
-          copy.myDirToInfoMap.remove(id);
-          copy.setPackageName(id, null);
-        }
-      }
-
-      if (copy != null) {
-        myState = copy;
+      VirtualFile parent = event.getParent();
+      if (file.isDirectory() && parent != null) {
+        myState.dirRemoved(parent, file.getName(), file);
       }
     }
 
@@ -288,7 +183,7 @@ public class DirectoryIndexComponent extends DirectoryIndexImpl {
     public void fileMoved(VirtualFileMoveEvent event) {
       VirtualFile file = event.getFile();
       if (file.isDirectory()) {
-        doInitialize();
+        directoryMoved(file, event.getOldParent(), file.getName());
       }
     }
 
@@ -296,10 +191,23 @@ public class DirectoryIndexComponent extends DirectoryIndexImpl {
     public void propertyChanged(VirtualFilePropertyEvent event) {
       if (VirtualFile.PROP_NAME.equals(event.getPropertyName())) {
         VirtualFile file = event.getFile();
-        if (file.isDirectory()) {
-          doInitialize();
+        VirtualFile parent = file.getParent();
+        if (file.isDirectory() && parent != null) {
+          directoryMoved(file, parent, (String)event.getOldValue());
         }
       }
     }
+
+    private void directoryMoved(@NotNull VirtualFile dir, @NotNull VirtualFile oldParent, @NotNull String oldName) {
+      IndexState state = myState;
+      state.dirRemoved(oldParent, oldName, dir);
+      if (state.containsRoots(dir)) {
+        // the roots have moved along with the directory
+        updateRoots();
+        myState.dirAdded(dir);
+        return;
+      }
+      directoryAdded(dir);
+    }
   }
 }
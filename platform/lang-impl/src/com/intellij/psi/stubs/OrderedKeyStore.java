@@ -0,0 +1,101 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.stubs;
+
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.Processor;
+import gnu.trove.THashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Sorted keys of a String-keyed stub index. Keys are only added, so the store may still contain keys whose values were removed
+ * from the index, the same way {@link StubIndex#getAllKeys} does.
+ * <p/>
+ * Keys added after the last query are kept aside and merged into the sorted array by the next query. The sorted array is never
+ * changed after it's created, so queries iterate it without holding the lock.
+ */
+final class OrderedKeyStore {
+  private String[] mySortedKeys;
+  private final Set<String> myAddedKeys = new THashSet<String>();
+
+  OrderedKeyStore(@NotNull Collection<String> keys) {
+    mySortedKeys = ArrayUtil.toStringArray(keys);
+    Arrays.sort(mySortedKeys);
+  }
+
+  synchronized void addAll(@NotNull Collection<String> keys) {
+    for (String key : keys) {
+      if (Arrays.binarySearch(mySortedKeys, key) < 0) {
+        myAddedKeys.add(key);
+      }
+    }
+  }
+
+  @NotNull
+  private synchronized String[] getSortedKeys() {
+    if (!myAddedKeys.isEmpty()) {
+      String[] added = ArrayUtil.toStringArray(myAddedKeys);
+      Arrays.sort(added);
+      myAddedKeys.clear();
+
+      String[] merged = new String[mySortedKeys.length + added.length];
+      int i = 0, j = 0, k = 0;
+      while (i < mySortedKeys.length && j < added.length) {
+        merged[k++] = mySortedKeys[i].compareTo(added[j]) < 0 ? mySortedKeys[i++] : added[j++];
+      }
+      while (i < mySortedKeys.length) merged[k++] = mySortedKeys[i++];
+      while (j < added.length) merged[k++] = added[j++];
+      mySortedKeys = merged;
+    }
+    return mySortedKeys;
+  }
+
+  /**
+   * Processes the keys which are not less than <code>from</code> and less than <code>to</code> in ascending order.
+   *
+   * @param to  exclusive upper bound, <code>null</code> means no bound
+   */
+  boolean processRange(@NotNull String from, @Nullable String to, @NotNull Processor<String> processor) {
+    String[] keys = getSortedKeys();
+    for (int i = lowerBound(keys, from); i < keys.length; i++) {
+      if (to != null && keys[i].compareTo(to) >= 0) break;
+      if (!processor.process(keys[i])) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Processes the keys starting with the prefix in ascending order.
+   */
+  boolean processPrefix(@NotNull String prefix, @NotNull Processor<String> processor) {
+    String[] keys = getSortedKeys();
+    for (int i = lowerBound(keys, prefix); i < keys.length; i++) {
+      if (!keys[i].startsWith(prefix)) break;
+      if (!processor.process(keys[i])) return false;
+    }
+    return true;
+  }
+
+  private static int lowerBound(@NotNull String[] keys, @NotNull String key) {
+    int index = Arrays.binarySearch(keys, key);
+    return index >= 0 ? index : -index - 1;
+  }
+}
@@ -28,6 +28,7 @@ import com.intellij.openapi.components.*;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.extensions.Extensions;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.LowMemoryWatcher;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.newvfs.ManagingFS;
@@ -43,8 +44,10 @@ import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.tree.IStubFileElementType;
 import com.intellij.psi.util.PsiUtilCore;
 import com.intellij.util.CommonProcessors;
+import com.intellij.util.PairProcessor;
 import com.intellij.util.Processor;
 import com.intellij.util.SmartList;
+import com.intellij.util.containers.ConcurrentHashMap;
 import com.intellij.util.indexing.*;
 import com.intellij.util.io.DataExternalizer;
 import com.intellij.util.io.DataInputOutputUtil;
@@ -59,6 +62,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 
@@ -75,6 +79,19 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
   private static final Logger LOG = Logger.getInstance("#com.intellij.psi.stubs.StubIndexImpl");
   private final Map<StubIndexKey<?,?>, MyIndex<?>> myIndices = new THashMap<StubIndexKey<?,?>, MyIndex<?>>();
   private final TObjectIntHashMap<ID<?, ?>> myIndexIdToVersionMap = new TObjectIntHashMap<ID<?, ?>>();
+  /**
+   * Sorted keys of the String-keyed indices queried by ranges or prefixes, created on the first such query.
+   */
+  private final ConcurrentMap<StubIndexKey<?, ?>, OrderedKeyStore> myKeyStores = new ConcurrentHashMap<StubIndexKey<?, ?>, OrderedKeyStore>();
+  /**
+   * The key stores are built again from the indices on the next query, dropping them also drops the keys which lost their values
+   */
+  private final LowMemoryWatcher myKeyStoresReleaser = LowMemoryWatcher.register(new Runnable() {
+    @Override
+    public void run() {
+      myKeyStores.clear();
+    }
+  });
 
   private StubIndexState myPreviouslyRegistered;
 
@@ -382,6 +399,135 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
     return Collections.emptyList();
   }
 
+  @Override
+  public boolean processKeysInRange(@NotNull StubIndexKey<String, ?> indexKey,
+                                    @NotNull Project project,
+                                    @NotNull String from,
+                                    @Nullable String to,
+                                    @NotNull Processor<String> processor) {
+    OrderedKeyStore store = getKeyStore(indexKey, project);
+    return store == null || store.processRange(from, to, processor);
+  }
+
+  @Override
+  public boolean processKeysWithPrefix(@NotNull StubIndexKey<String, ?> indexKey,
+                                       @NotNull Project project,
+                                       @NotNull String prefix,
+                                       @NotNull Processor<String> processor) {
+    OrderedKeyStore store = getKeyStore(indexKey, project);
+    return store == null || store.processPrefix(prefix, processor);
+  }
+
+  @Override
+  public boolean processKeysWithFiles(@NotNull StubIndexKey<String, ?> indexKey,
+                                      @NotNull Project project,
+                                      @NotNull String from,
+                                      @Nullable String to,
+                                      @Nullable final GlobalSearchScope scope,
+                                      @NotNull final PairProcessor<String, List<VirtualFile>> processor) {
+    OrderedKeyStore store = getKeyStore(indexKey, project);
+    if (store == null) return true;
+
+    final PersistentFS fs = (PersistentFS)ManagingFS.getInstance();
+    final FileBasedIndexImpl.ProjectIndexableFilesFilter projectFilesFilter =
+      ((FileBasedIndexImpl)FileBasedIndex.getInstance()).projectIndexableFiles(project);
+    final MyIndex<String> index = getIndex(indexKey);
+    try {
+      try {
+        // see process()
+        FileBasedIndexImpl.disableUpToDateCheckForCurrentThread();
+        index.getReadLock().lock();
+        final StorageException[] exception = new StorageException[1];
+        boolean result = store.processRange(from, to, new Processor<String>() {
+          @Override
+          public boolean process(String key) {
+            final List<VirtualFile> files = new SmartList<VirtualFile>();
+            try {
+              index.getData(key).forEach(new ValueContainer.ContainerAction<StubIdList>() {
+                @Override
+                public boolean perform(int id, StubIdList value) {
+                  if (projectFilesFilter != null && !projectFilesFilter.contains(id)) return true;
+                  VirtualFile file = IndexInfrastructure.findFileByIdIfCached(fs, id);
+                  if (file != null && (scope == null || scope.contains(file))) {
+                    files.add(file);
+                  }
+                  return true;
+                }
+              });
+            }
+            catch (StorageException e) {
+              exception[0] = e;
+              return false;
+            }
+            return files.isEmpty() || processor.process(key, files);
+          }
+        });
+        if (exception[0] != null) throw exception[0];
+        return result;
+      }
+      finally {
+        index.getReadLock().unlock();
+        FileBasedIndexImpl.enableUpToDateCheckForCurrentThread();
+      }
+    }
+    catch (StorageException e) {
+      forceRebuild(e);
+    }
+    catch (RuntimeException e) {
+      final Throwable cause = FileBasedIndexImpl.getCauseToRebuildIndex(e);
+      if (cause != null) {
+        forceRebuild(cause);
+      }
+      else {
+        throw e;
+      }
+    }
+    return true;
+  }
+
+  @Nullable
+  private OrderedKeyStore getKeyStore(@NotNull StubIndexKey<String, ?> indexKey, @NotNull Project project) {
+    FileBasedIndex.getInstance().ensureUpToDate(StubUpdatingIndex.INDEX_ID, project, GlobalSearchScope.allScope(project));
+
+    OrderedKeyStore store = myKeyStores.get(indexKey);
+    if (store != null) return store;
+
+    final MyIndex<String> index = getIndex(indexKey);
+    // updates hold the write lock, so no keys are added to the index while the store is being filled
+    index.getReadLock().lock();
+    try {
+      store = myKeyStores.get(indexKey);
+      if (store == null) {
+        List<String> keys = new ArrayList<String>();
+        index.processAllKeys(new CommonProcessors.CollectProcessor<String>(keys));
+        store = new OrderedKeyStore(keys);
+        myKeyStores.put(indexKey, store);
+      }
+      return store;
+    }
+    catch (StorageException e) {
+      forceRebuild(e);
+    }
+    catch (RuntimeException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException || cause instanceof StorageException) {
+        forceRebuild(e);
+      }
+      throw e;
+    }
+    finally {
+      index.getReadLock().unlock();
+    }
+    return null;
+  }
+
+  @NotNull
+  private MyIndex<String> getIndex(@NotNull StubIndexKey<String, ?> indexKey) {
+    @SuppressWarnings("unchecked") // indices are registered with the key type of their index keys
+    MyIndex<String> index = (MyIndex<String>)myIndices.get(indexKey);
+    return index;
+  }
+
   @Override
   @NotNull
   public String getComponentName() {
@@ -400,6 +546,7 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
   }
 
   public void dispose() {
+    myKeyStoresReleaser.stop();
     for (UpdatableIndex index : myIndices.values()) {
       index.dispose();
     }
@@ -427,6 +574,7 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
 
 
   public void clearAllIndices() {
+    myKeyStores.clear();
     for (UpdatableIndex index : myIndices.values()) {
       try {
         index.clear();
@@ -482,6 +630,14 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
           return oldValues.keySet();
         }
       });
+
+      // the keys are added after the update so that a store created concurrently misses none of them
+      OrderedKeyStore store = myKeyStores.get(key);
+      if (store != null) {
+        @SuppressWarnings("unchecked") // key stores are created for String-keyed indices only
+        Collection<String> keys = (Collection<String>)newValues.keySet();
+        store.addAll(keys);
+      }
     }
     catch (StorageException e) {
       LOG.info(e);
@@ -171,6 +171,63 @@ public class ChangeList {
     v.finished();
   }
 
+  /**
+   * Same as {@link #accept(ChangeVisitor)}, but visits only the change sets which may affect the {@link ChangeCollectingVisitor#getPath()
+   * visitor's path}, if the storage is able to find them without reading all the change sets. The path is reverted by the visitor
+   * while going back in history, so the change sets are looked up again every time it's changed.
+   */
+  public void accept(ChangeCollectingVisitor v) {
+    try {
+      ChangeSet current;
+      synchronized (this) {
+        current = myCurrentChangeSet;
+      }
+      long olderThan = Long.MAX_VALUE;
+      if (current != null) {
+        current.accept(v);
+        olderThan = current.getId();
+      }
+
+      boolean mismatchFound = false;
+      lookup:
+      while (true) {
+        String path = v.getPath();
+        ChangeSetsIndex.Entries found;
+        synchronized (this) {
+          found = myStorage.getAffectingChangeSets(path, olderThan);
+        }
+        if (found == null) break;
+
+        for (int i = 0; i < found.size(); i++) {
+          ChangeSetHolder holder;
+          synchronized (this) {
+            holder = myStorage.readIndexedChangeSet(found.getId(i), found.getRecord(i));
+          }
+          if (holder == null) {
+            // the index is rebuilt by the next lookup, fall back to the full scan if it doesn't help
+            if (mismatchFound) break lookup;
+            mismatchFound = true;
+            continue lookup;
+          }
+
+          holder.changeSet.accept(v);
+          olderThan = holder.changeSet.getId();
+          if (!path.equals(v.getPath())) continue lookup;
+        }
+        return;
+      }
+
+      for (ChangeSet each : iterChanges()) {
+        if (each.getId() < olderThan) each.accept(v);
+      }
+    }
+    catch (ChangeVisitor.StopVisitingException e) {
+    }
+    finally {
+      v.finished();
+    }
+  }
+
   public synchronized void purgeObsolete(long period) {
     myStorage.purge(period, myIntervalBetweenActivities, new Consumer<ChangeSet>() {
       public void consume(ChangeSet changeSet) {
@@ -19,6 +19,7 @@ package com.intellij.history.core;
 import com.intellij.history.core.changes.ChangeSet;
 import com.intellij.util.Consumer;
 import gnu.trove.TIntHashSet;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public interface ChangeListStorage {
@@ -29,6 +30,20 @@ public interface ChangeListStorage {
   @Nullable
   ChangeSetHolder readPrevious(int id, TIntHashSet recursionGuard);
 
+  /**
+   * @return stored change sets older than the given one, which may affect the given path, starting from the most recent one;
+   *         <code>null</code> if they cannot be found without reading all the change sets
+   */
+  @Nullable
+  ChangeSetsIndex.Entries getAffectingChangeSets(@NotNull String path, long olderThanChangeSetId);
+
+  /**
+   * @return the change set found by {@link #getAffectingChangeSets(String, long)}, <code>null</code> if the record doesn't hold it anymore,
+   *         the change sets have to be looked up again in that case
+   */
+  @Nullable
+  ChangeSetHolder readIndexedChangeSet(long changeSetId, int record);
+
   void purge(long period, int intervalBetweenActivities, Consumer<ChangeSet> processor);
 
   void writeNextSet(ChangeSet changeSet);
@@ -29,7 +29,9 @@ import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.newvfs.ManagingFS;
 import com.intellij.util.Consumer;
+import com.intellij.util.io.PersistentHashMap;
 import com.intellij.util.io.storage.AbstractStorage;
+import gnu.trove.THashSet;
 import gnu.trove.TIntHashSet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -40,15 +42,20 @@ import java.io.File;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.MessageFormat;
+import java.util.Set;
 
 public class ChangeListStorageImpl implements ChangeListStorage {
   private static final int VERSION = 5;
   private static final String STORAGE_FILE = "changes";
+  private static final String INDEX_FILE = "index/paths";
 
   private final File myStorageDir;
   private LocalHistoryStorage myStorage;
   private long myLastId;
 
+  @Nullable private ChangeSetsIndex myIndex; // null if the index cannot be used
+  private boolean myIndexUpToDate;
+
   private boolean isCompletelyBroken = false;
 
   public ChangeListStorageImpl(File storageDir) throws IOException {
@@ -83,6 +90,72 @@ public class ChangeListStorageImpl implements ChangeListStorage {
 
     myLastId = result.getLastId();
     myStorage = result;
+
+    initIndex(storageDir);
+  }
+
+  private void initIndex(File storageDir) {
+    File file = new File(storageDir, INDEX_FILE);
+    try {
+      myIndex = new ChangeSetsIndex(file);
+    }
+    catch (IOException e) {
+      LocalHistoryLog.LOG.info("cannot open local history index, rebuilding...", e);
+      PersistentHashMap.deleteFilesStartingWith(file);
+      try {
+        myIndex = new ChangeSetsIndex(file);
+      }
+      catch (IOException ex) {
+        LocalHistoryLog.LOG.warn("cannot create local history index", ex);
+        myIndex = null;
+        return;
+      }
+    }
+
+    // the index is rebuilt on the first request if the storage has been modified without updating it
+    try {
+      myIndexUpToDate = myIndex.getLastId() == myStorage.getLastId();
+    }
+    catch (IOException e) {
+      myIndexUpToDate = false;
+    }
+  }
+
+  private void rebuildIndex() throws IOException {
+    LocalHistoryLog.LOG.info("building local history index...");
+    File file = new File(myStorageDir, INDEX_FILE);
+    closeIndex();
+    PersistentHashMap.deleteFilesStartingWith(file);
+    myIndex = new ChangeSetsIndex(file);
+
+    TIntHashSet recursionGuard = new TIntHashSet(1000);
+    int eachBlockId = myStorage.getLastRecord();
+    myIndex.startBatch();
+    while (eachBlockId != 0) {
+      myIndex.add(doReadBlock(eachBlockId).changeSet, eachBlockId);
+      eachBlockId = doReadPrevSafely(eachBlockId, recursionGuard);
+    }
+    myIndex.finishBatch();
+    myIndex.setLastId(myStorage.getLastId());
+    myIndexUpToDate = true;
+  }
+
+  private void dropIndex(IOException e) {
+    LocalHistoryLog.LOG.warn("local history index is broken, it won't be used till restart", e);
+    closeIndex();
+    PersistentHashMap.deleteFilesStartingWith(new File(myStorageDir, INDEX_FILE));
+  }
+
+  private void closeIndex() {
+    if (myIndex == null) return;
+    try {
+      myIndex.close();
+    }
+    catch (IOException e) {
+      LocalHistoryLog.LOG.warn("cannot close local history index", e);
+    }
+    myIndex = null;
+    myIndexUpToDate = false;
   }
 
   private static long getVFSTimestamp() {
@@ -109,6 +182,7 @@ public class ChangeListStorageImpl implements ChangeListStorage {
                               ",vfs timestamp:" + DateFormat.getDateTimeInstance().format(vfsTimestamp) + ")\n" + message, e);
 
     myStorage.dispose();
+    closeIndex();
     try {
       FileUtil.delete(myStorageDir);
       initStorage(myStorageDir);
@@ -151,6 +225,7 @@ public class ChangeListStorageImpl implements ChangeListStorage {
 
   public synchronized void close() {
     myStorage.dispose();
+    closeIndex();
   }
 
   public synchronized long nextId() {
@@ -193,6 +268,40 @@ public class ChangeListStorageImpl implements ChangeListStorage {
     }
   }
 
+  @Nullable
+  public synchronized ChangeSetsIndex.Entries getAffectingChangeSets(@NotNull String path, long olderThanChangeSetId) {
+    if (isCompletelyBroken || myIndex == null || path.isEmpty()) return null;
+
+    try {
+      if (!myIndexUpToDate) rebuildIndex();
+      return myIndex.getEntries(path, olderThanChangeSetId);
+    }
+    catch (IOException e) {
+      dropIndex(e);
+      return null;
+    }
+  }
+
+  @Nullable
+  public synchronized ChangeSetHolder readIndexedChangeSet(long changeSetId, int record) {
+    if (isCompletelyBroken) return null;
+
+    ChangeSetHolder result;
+    try {
+      result = doReadBlock(record);
+    }
+    catch (Throwable e) {
+      // the record may have been purged or reused while the index wasn't updated, the storage itself is checked by the full scan
+      result = null;
+    }
+    if (result == null || result.changeSet.getId() != changeSetId) {
+      LocalHistoryLog.LOG.info("local history index is out of date: record " + record + " doesn't hold change set " + changeSetId);
+      myIndexUpToDate = false;
+      return null;
+    }
+    return result;
+  }
+
   @NotNull
   private ChangeSetHolder doReadBlock(int id) throws IOException {
     DataInputStream in = myStorage.readStream(id);
@@ -208,7 +317,8 @@ public class ChangeListStorageImpl implements ChangeListStorage {
     if (isCompletelyBroken) return;
 
     try {
-      AbstractStorage.StorageDataOutput out = myStorage.writeStream(myStorage.createNextRecord(), true);
+      int record = myStorage.createNextRecord();
+      AbstractStorage.StorageDataOutput out = myStorage.writeStream(record, true);
       try {
         changeSet.write(out);
       }
@@ -217,12 +327,25 @@ public class ChangeListStorageImpl implements ChangeListStorage {
       }
       myStorage.setLastId(myLastId);
       myStorage.force();
+
+      updateIndex(changeSet, record);
     }
     catch (IOException e) {
       handleError(e, null);
     }
   }
 
+  private void updateIndex(ChangeSet changeSet, int record) {
+    if (myIndex == null || !myIndexUpToDate) return;
+    try {
+      myIndex.add(changeSet, record);
+      myIndex.setLastId(myLastId);
+    }
+    catch (IOException e) {
+      dropIndex(e);
+    }
+  }
+
   public synchronized void purge(long period, int intervalBetweenActivities, Consumer<ChangeSet> processor) {
     if (isCompletelyBroken) return;
 
@@ -233,19 +356,36 @@ public class ChangeListStorageImpl implements ChangeListStorage {
       if (firstObsoleteId == 0) return;
 
       int eachBlockId = firstObsoleteId;
+      long lastPurgedId = -1;
+      Set<String> purgedKeys = new THashSet<String>();
 
       while (eachBlockId != 0) {
-        processor.consume(doReadBlock(eachBlockId).changeSet);
+        ChangeSet changeSet = doReadBlock(eachBlockId).changeSet;
+        processor.consume(changeSet);
+        if (lastPurgedId == -1) lastPurgedId = changeSet.getId();
+        ChangeSetsIndex.collectKeys(changeSet, purgedKeys);
         eachBlockId = doReadPrevSafely(eachBlockId, recursionGuard);
       }
       myStorage.deleteRecordsUpTo(firstObsoleteId);
       myStorage.force();
+
+      purgeIndex(purgedKeys, lastPurgedId);
     }
     catch (IOException e) {
       handleError(e, null);
     }
   }
 
+  private void purgeIndex(Set<String> purgedKeys, long lastPurgedId) {
+    if (myIndex == null || !myIndexUpToDate) return;
+    try {
+      myIndex.removeUpTo(purgedKeys, lastPurgedId);
+    }
+    catch (IOException e) {
+      dropIndex(e);
+    }
+  }
+
   private int findFirstObsoleteBlock(long period, int intervalBetweenActivities, TIntHashSet recursionGuard) throws IOException {
     long prevTimestamp = 0;
     long length = 0;
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.history.core;
+
+import com.intellij.history.core.changes.Change;
+import com.intellij.history.core.changes.ChangeSet;
+import com.intellij.history.core.changes.PutLabelChange;
+import com.intellij.history.core.changes.StructuralChange;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.PersistentHashMap;
+import gnu.trove.THashMap;
+import gnu.trove.THashSet;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongArrayList;
+import gnu.trove.TLongIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistent index of the stored change sets by the paths they affect, which allows to collect the history of a file or a directory
+ * without reading all the change sets.
+ * <p/>
+ * A change set is registered under the 'subtree' keys of every affected path and all its parents, and under the 'exact' key of every
+ * affected path. So the change sets affecting a path or anything under it are found by its 'subtree' key, and the change sets affecting
+ * its parents are found by their 'exact' keys. Change sets with labels are registered under a separate key, since labels affect
+ * whole projects.
+ * <p/>
+ * Keys are lower-cased regardless of the file system case sensitivity: extra change sets found on case-sensitive file systems
+ * are filtered out by the caller anyway.
+ * <p/>
+ * Record ids of the {@link LocalHistoryStorage} are reused after purging, so every entry holds the id of the change set as well.
+ * <p/>
+ * Entries have a fixed size and a value is just a sequence of them, so a new change set is appended to the keys it affects
+ * without reading their values.
+ */
+class ChangeSetsIndex {
+  private static final String SUBTREE_PREFIX = "s";
+  private static final String PATH_PREFIX = "e";
+  private static final String LABELS_KEY = "l";
+  private static final String LAST_ID_KEY = "#";
+  private static final String FORMAT_KEY = "v";
+  private static final int FORMAT = 2;
+  private static final int ENTRY_SIZE = 12;
+
+  private final PersistentHashMap<String, Entries> myMap;
+  @Nullable private Map<String, Entries> myBatch;
+
+  ChangeSetsIndex(@NotNull File file) throws IOException {
+    myMap = new PersistentHashMap<String, Entries>(file, new EnumeratorStringDescriptor(), new EntriesExternalizer());
+    try {
+      checkFormat();
+    }
+    catch (IOException e) {
+      myMap.close();
+      throw e;
+    }
+  }
+
+  private void checkFormat() throws IOException {
+    if (myMap.containsMapping(FORMAT_KEY)) {
+      Entries format = myMap.get(FORMAT_KEY);
+      if (format.size() == 1 && format.getId(0) == FORMAT) return;
+    }
+    else if (!myMap.containsMapping(LAST_ID_KEY)) {
+      Entries format = new Entries();
+      format.add(FORMAT, 0);
+      myMap.put(FORMAT_KEY, format);
+      return;
+    }
+    throw new IOException("local history index format has changed");
+  }
+
+  /**
+   * @return the id {@link #setLastId(long) stored} along with the last indexed change set, or <code>-1</code> if nothing is indexed
+   */
+  public long getLastId() throws IOException {
+    Entries entries = myMap.get(LAST_ID_KEY);
+    return entries == null || entries.ids.isEmpty() ? -1 : entries.ids.get(0);
+  }
+
+  public void setLastId(long id) throws IOException {
+    Entries entries = new Entries();
+    entries.add(id, 0);
+    myMap.put(LAST_ID_KEY, entries);
+  }
+
+  /**
+   * Makes the following {@link #add(ChangeSet, int)} calls keep the entries in memory till {@link #finishBatch()},
+   * so that every key is written once when the whole index is built.
+   */
+  public void startBatch() {
+    myBatch = new THashMap<String, Entries>();
+  }
+
+  public void finishBatch() throws IOException {
+    Map<String, Entries> batch = myBatch;
+    myBatch = null;
+    for (Map.Entry<String, Entries> each : batch.entrySet()) {
+      myMap.put(each.getKey(), each.getValue());
+    }
+  }
+
+  public void add(@NotNull ChangeSet changeSet, final int record) throws IOException {
+    final long id = changeSet.getId();
+    for (String each : collectKeys(changeSet, new THashSet<String>())) {
+      if (myBatch != null) {
+        Entries entries = myBatch.get(each);
+        if (entries == null) {
+          entries = new Entries();
+          myBatch.put(each, entries);
+        }
+        entries.add(id, record);
+      }
+      else {
+        myMap.appendData(each, new PersistentHashMap.ValueDataAppender() {
+          @Override
+          public void append(DataOutput out) throws IOException {
+            writeEntry(out, id, record);
+          }
+        });
+      }
+    }
+  }
+
+  private static void writeEntry(@NotNull DataOutput out, long id, int record) throws IOException {
+    out.writeLong(id);
+    out.writeInt(record);
+  }
+
+  @NotNull
+  public static Set<String> collectKeys(@NotNull ChangeSet changeSet, @NotNull Set<String> result) {
+    for (Change each : changeSet.getChanges()) {
+      if (each instanceof PutLabelChange) {
+        result.add(LABELS_KEY);
+      }
+      else if (each instanceof StructuralChange) {
+        for (String path : ((StructuralChange)each).getAffectedPaths()) {
+          String normalized = normalize(path);
+          result.add(PATH_PREFIX + normalized);
+          for (String p = normalized; ; ) {
+            if (!result.add(SUBTREE_PREFIX + p)) break; // the parents are added already
+            String parent = Paths.getParentOf(p);
+            if (parent.isEmpty() || parent.equals(p)) break;
+            p = parent;
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Removes the given keys' entries of the change sets up to the given one inclusively.
+   */
+  public void removeUpTo(@NotNull Set<String> keys, long lastRemovedId) throws IOException {
+    for (String each : keys) {
+      Entries entries = myMap.get(each);
+      if (entries == null) continue;
+
+      Entries rest = new Entries();
+      for (int i = 0; i < entries.ids.size(); i++) {
+        if (entries.ids.get(i) > lastRemovedId) rest.add(entries.ids.get(i), entries.records.get(i));
+      }
+      if (rest.ids.isEmpty()) {
+        myMap.remove(each);
+      }
+      else if (rest.ids.size() < entries.ids.size()) {
+        myMap.put(each, rest);
+      }
+    }
+  }
+
+  /**
+   * @return change sets older than the given one, which may affect the given path or anything under it,
+   *         starting from the most recent one
+   */
+  @NotNull
+  public Entries getEntries(@NotNull String path, long olderThanId) throws IOException {
+    String normalized = normalize(path);
+
+    TLongIntHashMap found = new TLongIntHashMap();
+    collectRecords(SUBTREE_PREFIX + normalized, olderThanId, found);
+    collectRecords(LABELS_KEY, olderThanId, found);
+    for (String p = normalized; ; ) {
+      String parent = Paths.getParentOf(p);
+      if (parent.isEmpty() || parent.equals(p)) break;
+      collectRecords(PATH_PREFIX + parent, olderThanId, found);
+      p = parent;
+    }
+
+    long[] ids = found.keys();
+    Arrays.sort(ids);
+    Entries result = new Entries();
+    for (int i = ids.length - 1; i >= 0; i--) {
+      result.add(ids[i], found.get(ids[i]));
+    }
+    return result;
+  }
+
+  private void collectRecords(@NotNull String key, long olderThanId, @NotNull TLongIntHashMap result) throws IOException {
+    Entries entries = myMap.get(key);
+    if (entries == null) return;
+    for (int i = 0; i < entries.ids.size(); i++) {
+      long id = entries.ids.get(i);
+      if (id < olderThanId) result.put(id, entries.records.get(i));
+    }
+  }
+
+  @NotNull
+  private static String normalize(@NotNull String path) {
+    return StringUtil.toLowerCase(path);
+  }
+
+  public void close() throws IOException {
+    myMap.close();
+  }
+
+  /**
+   * Ids of change sets along with the storage records they are kept in.
+   */
+  static class Entries {
+    private final TLongArrayList ids = new TLongArrayList();
+    private final TIntArrayList records = new TIntArrayList();
+
+    private void add(long id, int record) {
+      ids.add(id);
+      records.add(record);
+    }
+
+    public int size() {
+      return ids.size();
+    }
+
+    public long getId(int index) {
+      return ids.get(index);
+    }
+
+    public int getRecord(int index) {
+      return records.get(index);
+    }
+  }
+
+  private static class EntriesExternalizer implements DataExternalizer<Entries> {
+    @Override
+    public void save(DataOutput out, Entries value) throws IOException {
+      for (int i = 0; i < value.ids.size(); i++) {
+        writeEntry(out, value.ids.get(i), value.records.get(i));
+      }
+    }
+
+    @Override
+    public Entries read(DataInput in) throws IOException {
+      // values are read from memory, the whole value is available
+      int size = ((InputStream)in).available();
+      if (size % ENTRY_SIZE != 0) throw new IOException("local history index value is corrupted, size: " + size);
+      Entries result = new Entries();
+      for (int i = 0; i < size / ENTRY_SIZE; i++) {
+        result.add(in.readLong(), in.readInt());
+      }
+      return result;
+    }
+  }
+}
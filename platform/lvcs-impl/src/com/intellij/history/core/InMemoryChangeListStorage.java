@@ -18,6 +18,7 @@ package com.intellij.history.core;
 import com.intellij.history.core.changes.ChangeSet;
 import com.intellij.util.Consumer;
 import gnu.trove.TIntHashSet;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
@@ -44,6 +45,19 @@ public class InMemoryChangeListStorage implements ChangeListStorage {
     return id == 0 ? null : new ChangeSetHolder(id -1, mySets.get(id - 1));
   }
 
+  @Override
+  @Nullable
+  public ChangeSetsIndex.Entries getAffectingChangeSets(@NotNull String path, long olderThanChangeSetId) {
+    return null;
+  }
+
+  @Override
+  @Nullable
+  public ChangeSetHolder readIndexedChangeSet(long changeSetId, int record) {
+    ChangeSet changeSet = mySets.get(record);
+    return changeSet.getId() == changeSetId ? new ChangeSetHolder(record, changeSet) : null;
+  }
+
   @Override
   public void writeNextSet(ChangeSet changeSet) {
     mySets.add(changeSet);
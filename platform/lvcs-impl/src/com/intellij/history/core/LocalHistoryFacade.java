@@ -153,6 +153,10 @@ public class LocalHistoryFacade {
     myChangeList.accept(v);
   }
 
+  public void accept(ChangeCollectingVisitor v) {
+    myChangeList.accept(v);
+  }
+
   public String revertUpTo(@NotNull final RootEntry root,
                            @NotNull String path,
                            final ChangeSet targetChangeSet,
@@ -64,7 +64,7 @@ public class RenameChange extends StructuralChange {
   }
 
   @Override
-  protected String[] getAffectedPaths() {
+  public String[] getAffectedPaths() {
     return new String[]{myPath, getOldPath()};
   }
 
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.internal;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.PlatformDataKeys;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.util.CachedValuesStatistics;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Starts collecting the cached values statistics, or stops and exports what was collected to the log directory.
+ */
+public class ToggleCachedValuesStatisticsAction extends AnAction implements DumbAware {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.internal.ToggleCachedValuesStatisticsAction");
+
+  public void actionPerformed(AnActionEvent e) {
+    CachedValuesStatistics statistics = CachedValuesStatistics.getInstance();
+    if (!statistics.isEnabled()) {
+      statistics.reset();
+      statistics.setEnabled(true);
+      return;
+    }
+
+    statistics.setEnabled(false);
+    try {
+      File file = statistics.export(new File(PathManager.getLogPath()));
+      Messages.showInfoMessage(PlatformDataKeys.PROJECT.getData(e.getDataContext()),
+                               "Cached values statistics saved to " + file.getPath(), "Cached Values Statistics");
+    }
+    catch (IOException ex) {
+      LOG.error(ex);
+    }
+  }
+
+  @Override
+  public void update(AnActionEvent e) {
+    e.getPresentation().setText(CachedValuesStatistics.getInstance().isEnabled()
+                                ? "Stop Collecting Cached Values Statistics"
+                                : "Start Collecting Cached Values Statistics");
+  }
+}
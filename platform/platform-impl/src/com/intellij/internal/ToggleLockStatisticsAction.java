@@ -0,0 +1,69 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.internal;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.PlatformDataKeys;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ex.ApplicationEx;
+import com.intellij.openapi.application.ex.LockStatistics;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.ui.DialogBuilder;
+import com.intellij.ui.components.JBScrollPane;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Starts collecting the application lock statistics, or stops and shows what was collected.
+ */
+public class ToggleLockStatisticsAction extends AnAction implements DumbAware {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.internal.ToggleLockStatisticsAction");
+
+  public void actionPerformed(AnActionEvent e) {
+    LockStatistics statistics = getStatistics();
+    if (!statistics.isEnabled()) {
+      statistics.reset();
+      statistics.setEnabled(true);
+      return;
+    }
+
+    statistics.setEnabled(false);
+    String report = statistics.dump();
+    LOG.info("Lock statistics:\n" + report);
+
+    JTextArea textArea = new JTextArea(report, 30, 120);
+    textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, textArea.getFont().getSize()));
+    textArea.setEditable(false);
+
+    DialogBuilder builder = new DialogBuilder(PlatformDataKeys.PROJECT.getData(e.getDataContext()));
+    builder.setTitle("Lock Statistics");
+    builder.setCenterPanel(new JBScrollPane(textArea));
+    builder.addOkAction();
+    builder.show();
+  }
+
+  @Override
+  public void update(AnActionEvent e) {
+    e.getPresentation().setText(getStatistics().isEnabled() ? "Stop Collecting Lock Statistics" : "Start Collecting Lock Statistics");
+  }
+
+  private static LockStatistics getStatistics() {
+    return ((ApplicationEx)ApplicationManager.getApplication()).getLockStatistics();
+  }
+}
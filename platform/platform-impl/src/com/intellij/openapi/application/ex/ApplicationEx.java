@@ -94,4 +94,24 @@ public interface ApplicationEx extends Application {
    * @return true if action was run while holding the lock, false if was unable to get the lock and action was not run
    */
   boolean tryRunReadAction(@NotNull Runnable action);
+
+  /**
+   * Runs the action holding the write-intent lock, which is taken by every write action too. Background threads keep running
+   * read actions while it is held, and the action may start write actions without giving the lock up.
+   * <p/>
+   * Write actions run on the event dispatch thread only, so the lock can only be taken there. A background thread can't
+   * hold it: it could never apply its changes, the write actions waiting for it would freeze the UI, and a write action it
+   * scheduled with <code>invokeAndWait()</code> would deadlock.
+   *
+   * @throws IllegalStateException if called outside of the event dispatch thread
+   */
+  void runWriteIntentReadAction(@NotNull Runnable action);
+
+  boolean isWriteIntentLockAcquired();
+
+  /**
+   * @return  wait and hold times of the read, write-intent and write locks, collected while they are enabled
+   */
+  @NotNull
+  LockStatistics getLockStatistics();
 }
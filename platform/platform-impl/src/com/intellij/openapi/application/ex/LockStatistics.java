@@ -0,0 +1,167 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.application.ex;
+
+import com.intellij.util.containers.ConcurrentHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wait and hold times of the application read, write-intent and write locks, grouped by the call site (usually the class of the
+ * action run under the lock). Nothing is collected until {@link #setEnabled(boolean) enabled}.
+ *
+ * @see ApplicationEx#getLockStatistics()
+ */
+public class LockStatistics {
+  public enum Kind {READ, WRITE_INTENT, WRITE}
+
+  public static class Entry {
+    private final Kind myKind;
+    private final String mySite;
+    private final AtomicLong myCount = new AtomicLong();
+    private final AtomicLong myWaitNanos = new AtomicLong();
+    private final AtomicLong myMaxWaitNanos = new AtomicLong();
+    private final AtomicLong myHoldNanos = new AtomicLong();
+    private final AtomicLong myMaxHoldNanos = new AtomicLong();
+
+    private Entry(@NotNull Kind kind, @NotNull String site) {
+      myKind = kind;
+      mySite = site;
+    }
+
+    private void add(long waitNanos, long holdNanos) {
+      myCount.incrementAndGet();
+      myWaitNanos.addAndGet(waitNanos);
+      myHoldNanos.addAndGet(holdNanos);
+      updateMax(myMaxWaitNanos, waitNanos);
+      updateMax(myMaxHoldNanos, holdNanos);
+    }
+
+    private static void updateMax(@NotNull AtomicLong max, long value) {
+      long current;
+      while ((current = max.get()) < value && !max.compareAndSet(current, value)) ;
+    }
+
+    @NotNull
+    public Kind getKind() {
+      return myKind;
+    }
+
+    @NotNull
+    public String getSite() {
+      return mySite;
+    }
+
+    public long getCount() {
+      return myCount.get();
+    }
+
+    public long getWaitNanos() {
+      return myWaitNanos.get();
+    }
+
+    public long getMaxWaitNanos() {
+      return myMaxWaitNanos.get();
+    }
+
+    public long getHoldNanos() {
+      return myHoldNanos.get();
+    }
+
+    public long getMaxHoldNanos() {
+      return myMaxHoldNanos.get();
+    }
+  }
+
+  private final ConcurrentMap<String, Entry>[] myEntries;
+  private volatile boolean myEnabled;
+
+  @SuppressWarnings("unchecked")
+  public LockStatistics(boolean enabled) {
+    myEnabled = enabled;
+    myEntries = new ConcurrentMap[Kind.values().length];
+    for (int i = 0; i < myEntries.length; i++) {
+      myEntries[i] = new ConcurrentHashMap<String, Entry>();
+    }
+  }
+
+  public boolean isEnabled() {
+    return myEnabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    myEnabled = enabled;
+  }
+
+  public void reset() {
+    for (ConcurrentMap<String, Entry> entries : myEntries) {
+      entries.clear();
+    }
+  }
+
+  public void record(@NotNull Kind kind, @NotNull String site, long waitNanos, long holdNanos) {
+    ConcurrentMap<String, Entry> entries = myEntries[kind.ordinal()];
+    Entry entry = entries.get(site);
+    if (entry == null) {
+      Entry newEntry = new Entry(kind, site);
+      entry = entries.putIfAbsent(site, newEntry);
+      if (entry == null) entry = newEntry;
+    }
+    entry.add(waitNanos, holdNanos);
+  }
+
+  /**
+   * @return  entries of all kinds, the ones with the longest total wait and hold time first
+   */
+  @NotNull
+  public List<Entry> getEntries() {
+    List<Entry> result = new ArrayList<Entry>();
+    for (ConcurrentMap<String, Entry> entries : myEntries) {
+      result.addAll(entries.values());
+    }
+    Collections.sort(result, new Comparator<Entry>() {
+      @Override
+      public int compare(Entry e1, Entry e2) {
+        long t1 = e1.getWaitNanos() + e1.getHoldNanos();
+        long t2 = e2.getWaitNanos() + e2.getHoldNanos();
+        return t1 < t2 ? 1 : t1 == t2 ? 0 : -1;
+      }
+    });
+    return result;
+  }
+
+  @NotNull
+  public String dump() {
+    StringBuilder builder = new StringBuilder();
+    builder.append(String.format("%-12s %8s %10s %10s %10s %10s  %s%n", "lock", "count", "wait ms", "max wait", "hold ms", "max hold", "site"));
+    for (Entry entry : getEntries()) {
+      builder.append(String.format("%-12s %8d %10d %10d %10d %10d  %s%n", entry.getKind(), entry.getCount(),
+                                   toMillis(entry.getWaitNanos()), toMillis(entry.getMaxWaitNanos()),
+                                   toMillis(entry.getHoldNanos()), toMillis(entry.getMaxHoldNanos()), entry.getSite()));
+    }
+    return builder.toString();
+  }
+
+  private static long toMillis(long nanos) {
+    return nanos / 1000000;
+  }
+}
@@ -25,6 +25,7 @@ import com.intellij.idea.StartupUtil;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.*;
 import com.intellij.openapi.application.ex.ApplicationEx;
+import com.intellij.openapi.application.ex.LockStatistics;
 import com.intellij.openapi.command.CommandProcessor;
 import com.intellij.openapi.components.ComponentConfig;
 import com.intellij.openapi.components.RoamingType;
@@ -79,6 +80,7 @@ import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @SuppressWarnings({"AssignmentToStaticFieldFromInstanceMethod"})
@@ -90,6 +92,12 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
   // writer thread will be always at the queue head and therefore, java.util.concurrent.locks.ReentrantReadWriteLock.NonfairSync.readerShouldBlock()
   // will return true if the write action is pending, exactly as we need
   private final ReentrantReadWriteLock myLock = new ReentrantReadWriteLock(false);
+  // taken by write actions before myLock.writeLock(), and by threads preparing a write: they get read access without blocking
+  // the readers, and no other thread can start a write action meanwhile
+  private final ReentrantLock myWriteIntentLock = new ReentrantLock();
+
+  private static final long NOT_MEASURED = Long.MIN_VALUE;
+  private final LockStatistics myLockStatistics = new LockStatistics(Boolean.getBoolean("idea.lock.statistics"));
 
   private final ModalityInvokator myInvokator = new ModalityInvokatorImpl();
 
@@ -910,17 +918,20 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
     }
     else {
       assertReadActionAllowed();
+      long requested = lockRequested();
       try {
         myLock.readLock().lockInterruptibly();
       }
       catch (InterruptedException e) {
         throw new RuntimeInterruptedException(e);
       }
+      long acquired = lockAcquired(requested);
       try {
         action.run();
       }
       finally {
         myLock.readLock().unlock();
+        lockReleased(LockStatistics.Kind.READ, action.getClass(), requested, acquired);
       }
     }
   }
@@ -931,17 +942,20 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
     }
     else {
       assertReadActionAllowed();
+      long requested = lockRequested();
       try {
         myLock.readLock().lockInterruptibly();
       }
       catch (InterruptedException e) {
         throw new RuntimeInterruptedException(e);
       }
+      long acquired = lockAcquired(requested);
       try {
         return computation.compute();
       }
       finally {
         myLock.readLock().unlock();
+        lockReleased(LockStatistics.Kind.READ, computation.getClass(), requested, acquired);
       }
     }
   }
@@ -1125,8 +1139,10 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
      //if we are inside read action, do not try to acquire read lock again since it will deadlock if there is a pending writeAction
     boolean mustAcquire = !isReadAccessAllowed();
 
+    long requested = NOT_MEASURED;
     if (mustAcquire) {
       LOG.assertTrue(myTestModeFlag || !Thread.holdsLock(PsiLock.LOCK), "Thread must not hold PsiLock while performing readAction");
+      requested = lockRequested();
       try {
         // timed version of tryLock() respects fairness unlike the no-args method
         if (!myLock.readLock().tryLock(0, TimeUnit.MILLISECONDS)) return false;
@@ -1135,6 +1151,7 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
         throw new RuntimeInterruptedException(e);
       }
     }
+    long acquired = lockAcquired(requested);
 
     try {
       action.run();
@@ -1142,11 +1159,80 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
     finally {
       if (mustAcquire) {
         myLock.readLock().unlock();
+        lockReleased(LockStatistics.Kind.READ, action.getClass(), requested, acquired);
       }
     }
     return true;
   }
 
+  @Override
+  public void runWriteIntentReadAction(@NotNull Runnable action) {
+    if (myWriteIntentLock.isHeldByCurrentThread()) {
+      action.run();
+      return;
+    }
+
+    // write actions run on the event dispatch thread only: a background holder could never apply its changes,
+    // and the write actions waiting for it would freeze the UI
+    if (!isDispatchThread()) {
+      throw new IllegalStateException("Write-intent lock can be acquired on the event dispatch thread only");
+    }
+    assertReadActionAllowed();
+    long requested = lockRequested();
+    try {
+      myWriteIntentLock.lockInterruptibly();
+    }
+    catch (InterruptedException e) {
+      throw new RuntimeInterruptedException(e);
+    }
+    long acquired = lockAcquired(requested);
+    try {
+      action.run();
+    }
+    finally {
+      myWriteIntentLock.unlock();
+      lockReleased(LockStatistics.Kind.WRITE_INTENT, action.getClass(), requested, acquired);
+    }
+  }
+
+  @Override
+  public boolean isWriteIntentLockAcquired() {
+    return myWriteIntentLock.isHeldByCurrentThread();
+  }
+
+  @NotNull
+  @Override
+  public LockStatistics getLockStatistics() {
+    return myLockStatistics;
+  }
+
+  private long lockRequested() {
+    return myLockStatistics.isEnabled() ? System.nanoTime() : NOT_MEASURED;
+  }
+
+  private static long lockAcquired(long requested) {
+    return requested == NOT_MEASURED ? NOT_MEASURED : System.nanoTime();
+  }
+
+  /**
+   * @param site  class of the action run under the lock, or description of the code acquiring it
+   */
+  private void lockReleased(@NotNull LockStatistics.Kind kind, @Nullable Object site, long requested, long acquired) {
+    if (requested == NOT_MEASURED) return;
+    String siteName = site instanceof Class ? ((Class)site).getName() : String.valueOf(site);
+    myLockStatistics.record(kind, siteName, acquired - requested, System.nanoTime() - acquired);
+  }
+
+  @NotNull
+  private static String getCallerSite() {
+    for (StackTraceElement element : new Throwable().getStackTrace()) {
+      if (!element.getClassName().startsWith(ApplicationImpl.class.getName())) {
+        return element.getClassName() + "." + element.getMethodName();
+      }
+    }
+    return "<unknown>";
+  }
+
   public boolean tryToApplyActivationState(boolean active, Window window) {
     final Component frame = UIUtil.findUltimateParent(window);
 
@@ -1194,8 +1280,28 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
     return new WriteAccessToken(clazz);
   }
 
+  private boolean tryLockForWrite() {
+    if (!myWriteIntentLock.tryLock()) return false;
+    if (myLock.writeLock().tryLock()) return true;
+    myWriteIntentLock.unlock();
+    return false;
+  }
+
+  private void lockForWrite() throws InterruptedException {
+    myWriteIntentLock.lockInterruptibly();
+    try {
+      myLock.writeLock().lockInterruptibly();
+    }
+    catch (InterruptedException e) {
+      myWriteIntentLock.unlock();
+      throw e;
+    }
+  }
+
   private class WriteAccessToken extends AccessToken {
     private final Class clazz;
+    private final long myRequested;
+    private final long myAcquired;
 
     public WriteAccessToken(Class _clazz) {
       clazz = _clazz;
@@ -1206,8 +1312,9 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
       final AtomicBoolean stopped = new AtomicBoolean(false);
 
       LOG.assertTrue(isWriteAccessAllowed() || !Thread.holdsLock(PsiLock.LOCK), "Thread must not hold PsiLock while performing writeAction");
+      myRequested = lockRequested();
       try {
-        if (!myLock.writeLock().tryLock()) {
+        if (!tryLockForWrite()) {
           if (ourDumpThreadsOnLongWriteActionWaiting > 0) {
             executeOnPooledThread(new Runnable() {
               @Override
@@ -1225,7 +1332,7 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
               }
             });
           }
-          myLock.writeLock().lockInterruptibly();
+          lockForWrite();
         }
         acquired();
       }
@@ -1233,6 +1340,7 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
         throw new RuntimeInterruptedException(e);
       }
       stopped.set(true);
+      myAcquired = lockAcquired(myRequested);
 
       myWriteActionsStack.push(_clazz);
 
@@ -1248,7 +1356,9 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
       }
       finally {
         myLock.writeLock().unlock();
+        myWriteIntentLock.unlock();
         released();
+        lockReleased(LockStatistics.Kind.WRITE, clazz, myRequested, myAcquired);
       }
     }
 
@@ -1292,8 +1402,14 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
   }
 
   private class ReadAccessToken extends AccessToken {
+    private final String mySite;
+    private final long myRequested;
+    private final long myAcquired;
+
     private ReadAccessToken() {
       assertReadActionAllowed();
+      myRequested = lockRequested();
+      mySite = myRequested == NOT_MEASURED ? null : getCallerSite();
       try {
         myLock.readLock().lockInterruptibly();
         acquired();
@@ -1301,12 +1417,14 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
       catch (InterruptedException e) {
         throw new RuntimeInterruptedException(e);
       }
+      myAcquired = lockAcquired(myRequested);
     }
 
     @Override
     public void finish() {
       myLock.readLock().unlock();
       released();
+      lockReleased(LockStatistics.Kind.READ, mySite, myRequested, myAcquired);
     }
   }
 
@@ -26,7 +26,9 @@ import com.intellij.openapi.components.StateStorageException;
 import com.intellij.openapi.components.TrackingPathMacroSubstitutor;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.options.StreamProvider;
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.*;
 import com.intellij.openapi.vfs.tracker.VirtualFileTracker;
@@ -47,6 +49,7 @@ import java.io.InputStream;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class FileBasedStorage extends XmlElementStorage {
   private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.components.impl.stores.FileBasedStorage");
@@ -56,7 +59,9 @@ public class FileBasedStorage extends XmlElementStorage {
   protected final String myRootElementName;
 
   private static boolean myConfigDirectoryRefreshed = false;
+  private static final AtomicBoolean ourSnapshotsPruned = new AtomicBoolean();
   private volatile VirtualFile myCachedVirtualFile;
+  @Nullable private final Project myProject;
 
   public FileBasedStorage(@Nullable TrackingPathMacroSubstitutor pathMacroManager,
                           StreamProvider streamProvider,
@@ -83,6 +88,8 @@ public class FileBasedStorage extends XmlElementStorage {
     myFilePath = filePath;
     myFile = FileSystem.FILE_SYSTEM.createFile(myFilePath);
 
+    myProject = (Project)picoContainer.getComponentInstanceOfType(Project.class);
+
     VirtualFileTracker virtualFileTracker = (VirtualFileTracker)picoContainer.getComponentInstanceOfType(VirtualFileTracker.class);
     MessageBus messageBus = (MessageBus)picoContainer.getComponentInstanceOfType(MessageBus.class);
     if (virtualFileTracker != null && messageBus != null) {
@@ -260,7 +267,7 @@ public class FileBasedStorage extends XmlElementStorage {
         return processReadException(null);
       }
       else {
-        return loadDocumentImpl(file);
+        return loadDocument(file, PreloadedDocuments.getInstance(myProject));
       }
     }
     catch (final JDOMException e) {
@@ -296,7 +303,55 @@ public class FileBasedStorage extends XmlElementStorage {
     return isProjectOrModuleFile() && !contentTruncated ? "Please correct the file content" : "File content will be recreated";
   }
 
-  private static Document loadDocumentImpl(final VirtualFile file) throws IOException, JDOMException {
+  /**
+   * Takes the document of the file preloaded while the project is loaded, reads the file if there is none.
+   */
+  static Document loadDocument(@NotNull VirtualFile file, @Nullable PreloadedDocuments preloadedDocuments)
+    throws IOException, JDOMException {
+    Document document = preloadedDocuments == null ? null : preloadedDocuments.take(file);
+    return document != null ? document : loadDocumentImpl(file);
+  }
+
+  static Document loadDocumentImpl(final VirtualFile file) throws IOException, JDOMException {
+    if (!isSnapshotsEnabled()) {
+      return parseDocument(file);
+    }
+
+    if (ourSnapshotsPruned.compareAndSet(false, true)) {
+      ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+        @Override
+        public void run() {
+          StorageSnapshots.pruneOrphans();
+        }
+      });
+    }
+
+    byte[] content = file.contentsToByteArray();
+    final File snapshot = StorageSnapshots.getSnapshotFile(file.getPath());
+    Document document = StorageSnapshots.read(snapshot, file.getPath(), content);
+    if (document != null) {
+      return document;
+    }
+
+    document = JDOMUtil.loadDocument(VfsUtilCore.byteStreamSkippingBOM(content, file));
+    final byte[] bytes = StorageSnapshots.encode(document, file.getPath(), content);
+    if (bytes != null) {
+      ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+        @Override
+        public void run() {
+          StorageSnapshots.write(snapshot, bytes);
+        }
+      });
+    }
+    return document;
+  }
+
+  private static boolean isSnapshotsEnabled() {
+    Application application = ApplicationManager.getApplication();
+    return !application.isUnitTestMode() && Registry.is("config.storage.snapshots");
+  }
+
+  private static Document parseDocument(final VirtualFile file) throws IOException, JDOMException {
     InputStream stream = file.getInputStream();
     try {
       return JDOMUtil.loadDocument(stream);
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.components.impl.stores;
+
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.UserDataHolder;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.containers.ConcurrentHashMap;
+import org.jdom.Document;
+import org.jdom.JDOMException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Documents of storage files parsed in advance, while the components of a project are loaded. A {@link FileBasedStorage} of
+ * the project takes the document of its file instead of reading the file, provided the file hasn't changed since.
+ * <p/>
+ * Installed on the project for the time of loading only: whoever {@linkplain #install(UserDataHolder) installs} the documents
+ * must {@linkplain #uninstall(UserDataHolder) uninstall} them in a finally block, the documents which weren't taken are dropped.
+ */
+public class PreloadedDocuments {
+  private static final Key<PreloadedDocuments> KEY = Key.create("PRELOADED_DOCUMENTS");
+
+  private final Map<String, PreloadedDocument> myDocuments = new ConcurrentHashMap<String, PreloadedDocument>();
+
+  @NotNull
+  public static PreloadedDocuments install(@NotNull UserDataHolder project) {
+    PreloadedDocuments documents = new PreloadedDocuments();
+    project.putUserData(KEY, documents);
+    return documents;
+  }
+
+  public static void uninstall(@NotNull UserDataHolder project) {
+    project.putUserData(KEY, null);
+  }
+
+  @Nullable
+  public static PreloadedDocuments getInstance(@Nullable UserDataHolder project) {
+    return project == null ? null : project.getUserData(KEY);
+  }
+
+  /**
+   * Parses the file. Can be called from any thread; files which can't be parsed are left to the storage to report the problem.
+   */
+  public void preload(@NotNull VirtualFile file) {
+    if (file.isDirectory() || file.getLength() == 0) return;
+    long timeStamp = file.getTimeStamp();
+    long length = file.getLength();
+    try {
+      myDocuments.put(file.getPath(), new PreloadedDocument(FileBasedStorage.loadDocumentImpl(file), timeStamp, length));
+    }
+    catch (IOException ignored) {
+    }
+    catch (JDOMException ignored) {
+    }
+  }
+
+  /**
+   * @return the document of the file if it's preloaded and the file hasn't changed since, the document isn't kept any longer
+   */
+  @Nullable
+  Document take(@NotNull VirtualFile file) {
+    PreloadedDocument preloaded = myDocuments.remove(file.getPath());
+    return preloaded != null && preloaded.isUpToDate(file) ? preloaded.myDocument : null;
+  }
+
+  private static class PreloadedDocument {
+    private final Document myDocument;
+    private final long myTimeStamp;
+    private final long myLength;
+
+    private PreloadedDocument(@NotNull Document document, long timeStamp, long length) {
+      myDocument = document;
+      myTimeStamp = timeStamp;
+      myLength = length;
+    }
+
+    private boolean isUpToDate(@NotNull VirtualFile file) {
+      return file.getTimeStamp() == myTimeStamp && file.getLength() == myLength;
+    }
+  }
+}
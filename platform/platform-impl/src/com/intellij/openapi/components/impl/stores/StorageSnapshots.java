@@ -0,0 +1,297 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.components.impl.stores;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import com.intellij.util.io.DataInputOutputUtil;
+import gnu.trove.TObjectIntHashMap;
+import org.jdom.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary copies of parsed storage files, kept in the system directory. A file whose content has the same length and
+ * digest as when its copy was written is read from the copy instead of being parsed as XML. Copies of files which don't exist
+ * any longer are removed by {@link #pruneOrphans()}.
+ * <p/>
+ * Only elements, attributes, texts, CDATA sections and comments without namespaces are supported, documents with anything else
+ * aren't copied.
+ */
+public class StorageSnapshots {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.components.impl.stores.StorageSnapshots");
+
+  private static final int VERSION = 3;
+
+  private static final String SUFFIX = ".bin";
+  private static final int DIGEST_LENGTH = 16;
+
+  private static final byte ELEMENT = 0;
+  private static final byte TEXT = 1;
+  private static final byte CDATA = 2;
+  private static final byte COMMENT = 3;
+  private static final byte END = 4;
+
+  private StorageSnapshots() {
+  }
+
+  @NotNull
+  public static File getSnapshotFile(@NotNull String filePath) {
+    String name = new File(filePath).getName() + "." + Integer.toHexString(FileUtil.pathHashCode(filePath)) + SUFFIX;
+    return new File(getSnapshotsDirectory(), name);
+  }
+
+  @NotNull
+  private static File getSnapshotsDirectory() {
+    return new File(PathManager.getSystemPath() + File.separator + "storage-snapshots");
+  }
+
+  /**
+   * @param content  current content of the file
+   * @return  the document stored in the snapshot, <code>null</code> if there is no snapshot or it was written for another
+   *          version of the file
+   */
+  @Nullable
+  public static Document read(@NotNull File snapshot, @NotNull String filePath, @NotNull byte[] content) {
+    if (!snapshot.isFile()) return null;
+    try {
+      return decode(FileUtil.loadFileBytes(snapshot), filePath, content);
+    }
+    catch (IOException e) {
+      LOG.debug(e);
+      return null;
+    }
+  }
+
+  /**
+   * Deletes the snapshots of files which don't exist any longer and the snapshots written by other versions.
+   */
+  public static void pruneOrphans() {
+    pruneOrphans(getSnapshotsDirectory());
+  }
+
+  public static void pruneOrphans(@NotNull File directory) {
+    File[] snapshots = directory.listFiles();
+    if (snapshots == null) return;
+    for (File snapshot : snapshots) {
+      if (!snapshot.getName().endsWith(SUFFIX)) continue;
+      String filePath = readFilePath(snapshot);
+      if (filePath == null || !new File(filePath).isFile()) {
+        FileUtil.delete(snapshot);
+      }
+    }
+  }
+
+  @Nullable
+  private static String readFilePath(@NotNull File snapshot) {
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)));
+      try {
+        return DataInputOutputUtil.readINT(in) == VERSION ? readText(in) : null;
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.debug(e);
+      return null;
+    }
+  }
+
+  /**
+   * @param bytes  result of {@link #encode(Document, String, byte[])}
+   */
+  public static void write(@NotNull File snapshot, @NotNull byte[] bytes) {
+    try {
+      FileUtil.writeToFile(snapshot, bytes);
+    }
+    catch (IOException e) {
+      LOG.debug(e);
+      FileUtil.delete(snapshot);
+    }
+  }
+
+  /**
+   * @return  the snapshot content, <code>null</code> if the document has content which isn't supported
+   */
+  @Nullable
+  public static byte[] encode(@NotNull Document document, @NotNull String filePath, @NotNull byte[] content) {
+    if (document.getDocType() != null || document.getContentSize() != 1) return null;
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      DataInputOutputUtil.writeINT(out, VERSION);
+      writeText(out, filePath);
+      DataInputOutputUtil.writeINT(out, content.length);
+      out.write(digest(content));
+      if (!writeElement(out, document.getRootElement(), new TObjectIntHashMap<String>())) return null;
+      out.close();
+    }
+    catch (IOException e) {
+      LOG.error(e);
+      return null;
+    }
+    return bytes.toByteArray();
+  }
+
+  @Nullable
+  public static Document decode(@NotNull byte[] bytes, @NotNull String filePath, @NotNull byte[] content) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    if (DataInputOutputUtil.readINT(in) != VERSION ||
+        !filePath.equals(readText(in)) ||
+        DataInputOutputUtil.readINT(in) != content.length) {
+      return null;
+    }
+    byte[] digest = new byte[DIGEST_LENGTH];
+    in.readFully(digest);
+    if (!Arrays.equals(digest, digest(content))) return null;
+    if (in.readByte() != ELEMENT) throw new IOException("Corrupted snapshot of " + filePath);
+    return new Document(readElement(in, new ArrayList<String>()));
+  }
+
+  @NotNull
+  private static byte[] digest(@NotNull byte[] content) {
+    try {
+      return MessageDigest.getInstance("MD5").digest(content);
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static boolean writeElement(@NotNull DataOutput out, @NotNull Element element, @NotNull TObjectIntHashMap<String> names)
+    throws IOException {
+    if (element.getNamespace() != Namespace.NO_NAMESPACE || !element.getAdditionalNamespaces().isEmpty()) return false;
+
+    out.writeByte(ELEMENT);
+    writeName(out, element.getName(), names);
+    List attributes = element.getAttributes();
+    DataInputOutputUtil.writeINT(out, attributes.size());
+    for (Object o : attributes) {
+      Attribute attribute = (Attribute)o;
+      if (attribute.getNamespace() != Namespace.NO_NAMESPACE) return false;
+      writeName(out, attribute.getName(), names);
+      writeText(out, attribute.getValue());
+    }
+
+    for (Object o : element.getContent()) {
+      if (o instanceof Element) {
+        if (!writeElement(out, (Element)o, names)) return false;
+      }
+      else if (o instanceof CDATA) {
+        out.writeByte(CDATA);
+        writeText(out, ((CDATA)o).getText());
+      }
+      else if (o instanceof Text) {
+        out.writeByte(TEXT);
+        writeText(out, ((Text)o).getText());
+      }
+      else if (o instanceof Comment) {
+        out.writeByte(COMMENT);
+        writeText(out, ((Comment)o).getText());
+      }
+      else {
+        return false;
+      }
+    }
+    out.writeByte(END);
+    return true;
+  }
+
+  private static void writeName(@NotNull DataOutput out, @NotNull String name, @NotNull TObjectIntHashMap<String> names)
+    throws IOException {
+    int index = names.get(name);
+    if (index == 0) {
+      DataInputOutputUtil.writeINT(out, 0);
+      writeText(out, name);
+      names.put(name, names.size() + 1);
+    }
+    else {
+      DataInputOutputUtil.writeINT(out, index);
+    }
+  }
+
+  @NotNull
+  private static Element readElement(@NotNull DataInput in, @NotNull List<String> names) throws IOException {
+    Element element = new Element(readName(in, names));
+    int attributeCount = DataInputOutputUtil.readINT(in);
+    for (int i = 0; i < attributeCount; i++) {
+      String name = readName(in, names);
+      element.setAttribute(name, readText(in));
+    }
+
+    while (true) {
+      byte kind = in.readByte();
+      switch (kind) {
+        case ELEMENT:
+          element.addContent(readElement(in, names));
+          break;
+        case TEXT:
+          element.addContent(new Text(readText(in)));
+          break;
+        case CDATA:
+          element.addContent(new CDATA(readText(in)));
+          break;
+        case COMMENT:
+          element.addContent(new Comment(readText(in)));
+          break;
+        case END:
+          return element;
+        default:
+          throw new IOException("Unexpected content kind: " + kind);
+      }
+    }
+  }
+
+  /**
+   * Texts are stored in UTF-8 after their byte length, settings files are mostly ASCII.
+   */
+  private static void writeText(@NotNull DataOutput out, @NotNull String text) throws IOException {
+    byte[] bytes = text.getBytes(CharsetToolkit.UTF8_CHARSET);
+    DataInputOutputUtil.writeINT(out, bytes.length);
+    out.write(bytes);
+  }
+
+  @NotNull
+  private static String readText(@NotNull DataInput in) throws IOException {
+    byte[] bytes = new byte[DataInputOutputUtil.readINT(in)];
+    in.readFully(bytes);
+    return new String(bytes, CharsetToolkit.UTF8_CHARSET);
+  }
+
+  @NotNull
+  private static String readName(@NotNull DataInput in, @NotNull List<String> names) throws IOException {
+    int index = DataInputOutputUtil.readINT(in);
+    if (index == 0) {
+      String name = readText(in);
+      names.add(name);
+      return name;
+    }
+    if (index > names.size()) throw new IOException("Unknown name: " + index);
+    return names.get(index - 1);
+  }
+}
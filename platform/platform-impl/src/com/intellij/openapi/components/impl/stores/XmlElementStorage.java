@@ -311,8 +311,7 @@ public abstract class XmlElementStorage implements StateStorage, Disposable {
     private synchronized void setState(final String componentName, final Element element)  {
       if (element.getAttributes().isEmpty() && element.getChildren().isEmpty()) return;
 
-      myStorageData.setState(componentName, element);
-      int hash = JDOMUtil.getTreeHash(element);
+      int hash = myStorageData.setState(componentName, element);
 
       try {
         Object oldElementState = myStorageComponentStates.get(componentName);
@@ -553,20 +552,18 @@ public abstract class XmlElementStorage implements StateStorage, Disposable {
     final StorageData oldLoadedData = myLoadedData;
 
     if (oldLoadedData != null) {
-      Set<String> componentsToRetain = new HashSet<String>(oldLoadedData.myComponentStates.keySet());
+      Set<String> componentsToRetain = new HashSet<String>(oldLoadedData.getComponentNames());
       componentsToRetain.addAll(changedComponents);
 
       // add empty configuration tags for removed components
       for (String componentToRetain : componentsToRetain) {
-        if (!storageData.myComponentStates.containsKey(componentToRetain) && myStorageComponentStates.containsKey(componentToRetain)) {
-          Element emptyElement = new Element("component");
+        if (!storageData.hasState(componentToRetain) && myStorageComponentStates.containsKey(componentToRetain)) {
           LOG.info("Create empty component element for " + componentsToRetain);
-          emptyElement.setAttribute(StorageData.NAME, componentToRetain);
-          storageData.myComponentStates.put(componentToRetain, emptyElement);
+          storageData.addEmptyStateIfAbsent(componentToRetain);
         }
       }
 
-      storageData.myComponentStates.keySet().retainAll(componentsToRetain);
+      storageData.retainStates(componentsToRetain);
     }
     
     myLoadedData = storageData;
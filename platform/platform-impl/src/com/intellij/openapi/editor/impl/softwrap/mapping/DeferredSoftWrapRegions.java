@@ -0,0 +1,103 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.editor.impl.softwrap.mapping;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.TextRange;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Document regions which soft wraps are not calculated yet during viewport-first recalculation, kept in processing order:
+ * the region after the viewport goes first as its processing doesn't shift the viewport, the region above the viewport goes next.
+ * <p/>
+ * Not thread-safe.
+ */
+class DeferredSoftWrapRegions {
+  private final List<TextRange> myRegions = new ArrayList<TextRange>();
+
+  /**
+   * Remembers the parts of the document outside of the given range as not processed.
+   *
+   * @param processed    range which soft wraps are calculated right away
+   * @param documentEnd  offset of the last document symbol
+   */
+  void deferOutsideOf(@NotNull TextRange processed, int documentEnd) {
+    if (processed.getEndOffset() < documentEnd) {
+      myRegions.add(new TextRange(processed.getEndOffset() + 1, documentEnd));
+    }
+    if (processed.getStartOffset() > 0) {
+      myRegions.add(new TextRange(0, processed.getStartOffset() - 1));
+    }
+  }
+
+  boolean isEmpty() {
+    return myRegions.isEmpty();
+  }
+
+  void clear() {
+    myRegions.clear();
+  }
+
+  @NotNull
+  List<TextRange> getRegions() {
+    return myRegions;
+  }
+
+  /**
+   * Removes the next chunk of at most <code>chunkLines</code> logical lines from the first region.
+   *
+   * @return  the chunk to process, <code>null</code> if the first region is beyond the document end
+   */
+  @Nullable
+  TextRange takeNextChunk(@NotNull Document document, int chunkLines) {
+    TextRange region = myRegions.remove(0);
+    int documentEnd = document.getTextLength() - 1;
+    if (region.getStartOffset() > documentEnd) {
+      return null;
+    }
+    region = new TextRange(region.getStartOffset(), Math.min(region.getEndOffset(), documentEnd));
+    int lastLine = document.getLineNumber(region.getEndOffset());
+    int chunkLastLine = document.getLineNumber(region.getStartOffset()) + chunkLines;
+    int chunkEnd = region.getEndOffset();
+    if (chunkLastLine < lastLine) {
+      chunkEnd = document.getLineEndOffset(chunkLastLine);
+      myRegions.add(0, new TextRange(chunkEnd + 1, region.getEndOffset()));
+    }
+    return new TextRange(region.getStartOffset(), chunkEnd);
+  }
+
+  /**
+   * Updates offsets of the regions according to the document change. A region touched by the change is extended to cover
+   * the changed text.
+   */
+  void update(int changeStart, int oldLength, int newLength) {
+    int changeEnd = changeStart + oldLength;
+    int diff = newLength - oldLength;
+    for (int i = myRegions.size() - 1; i >= 0; i--) {
+      TextRange region = myRegions.get(i);
+      if (changeStart > region.getEndOffset()) {
+        continue;
+      }
+      int start = changeEnd <= region.getStartOffset() ? region.getStartOffset() + diff : Math.min(region.getStartOffset(), changeStart);
+      int end = Math.max(start, region.getEndOffset() + diff);
+      myRegions.set(i, new TextRange(start, end));
+    }
+  }
+}
@@ -17,6 +17,8 @@ package com.intellij.openapi.editor.impl.softwrap.mapping;
 
 import com.intellij.diagnostic.Dumpable;
 import com.intellij.diagnostic.LogMessageEx;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.application.ex.ApplicationManagerEx;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.*;
@@ -31,7 +33,9 @@ import com.intellij.openapi.editor.ex.util.EditorUtil;
 import com.intellij.openapi.editor.impl.*;
 import com.intellij.openapi.editor.impl.softwrap.*;
 import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.SystemProperties;
 import org.intellij.lang.annotations.JdkConstants;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -71,6 +75,20 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
     CUSTOM
   }
 
+  /**
+   * Complete soft wraps recalculation for large documents (e.g. on visible area width change) may take a while. When this mode is on,
+   * only the lines around the viewport are processed synchronously and the rest of the document is processed by
+   * {@link #DEFERRED_CHUNK_LINES chunks} at subsequent EDT events. Mappings for the not yet processed regions are computed as if
+   * they contain no soft wraps meanwhile.
+   */
+  private static final boolean VIEWPORT_FIRST = SystemProperties.getBooleanProperty("idea.editor.soft.wraps.viewport.first", false);
+
+  /** Min document length to use {@link #VIEWPORT_FIRST viewport-first} recalculation for. */
+  private static final int VIEWPORT_FIRST_THRESHOLD = 100000;
+
+  /** Number of logical lines processed synchronously around the viewport and at a single deferred recalculation step. */
+  private static final int DEFERRED_CHUNK_LINES = 1000;
+
   private final List<SoftWrapAwareDocumentParsingListener> myListeners            = new ArrayList<SoftWrapAwareDocumentParsingListener>();
   private final List<IncrementalCacheUpdateEvent>          myActiveEvents         = new ArrayList<IncrementalCacheUpdateEvent>();
   private final CacheUpdateEventsStorage                   myEventsStorage        = new CacheUpdateEventsStorage();
@@ -105,6 +123,10 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
   private boolean                        myInProgress;
   private boolean                        myHasLinesWithFailedWrap;
 
+  /** Document regions which soft wraps are not calculated yet during {@link #VIEWPORT_FIRST viewport-first} recalculation. */
+  private final DeferredSoftWrapRegions myDeferredRegions = new DeferredSoftWrapRegions();
+  private int myDeferredRecalculationStamp;
+
   public SoftWrapApplianceManager(@NotNull SoftWrapsStorage storage,
                                   @NotNull EditorEx editor,
                                   @NotNull SoftWrapPainter painter,
@@ -132,6 +154,7 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
   }
 
   public void reset() {
+    cancelDeferredRecalculation();
     myEventsStorage.release();
     myEventsStorage.add(myEditor.getDocument(), new IncrementalCacheUpdateEvent(myEditor.getDocument()));
     for (SoftWrapAwareDocumentParsingListener listener : myListeners) {
@@ -140,6 +163,7 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
   }
   
   public void release() {
+    cancelDeferredRecalculation();
     myEventsStorage.release();
     myLineWrapPositionStrategy = null;
   }
@@ -851,30 +875,116 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
       softWrapsBefore = getNumberOfSoftWrapsBefore(anchorOffset);
     }
 
+    TextRange viewportRange = VIEWPORT_FIRST && myEditor.getDocument().getTextLength() >= VIEWPORT_FIRST_THRESHOLD
+                              ? getViewportLinesRange() : null;
+
     // Drop information about processed lines.
     reset();
     myStorage.removeAll();
     myVisibleAreaWidth = currentVisibleAreaWidth;
+    if (viewportRange != null) {
+      deferRecalculationOutsideOf(viewportRange);
+    }
     final boolean result = recalculateSoftWraps();
     if (!result) {
       return false;
     }
 
-    // Adjust viewport's 'y' coordinate if necessary.
-    if (softWrapsBefore >= 0) {
-      int softWrapsNow = getNumberOfSoftWrapsBefore(anchorOffset);
-      if (softWrapsNow != softWrapsBefore) {
-        scrollingModel.disableAnimation();
-        try {
-          scrollingModel.scrollVertically(yScrollOffset + (softWrapsNow - softWrapsBefore) * myEditor.getLineHeight());
+    adjustVerticalScrollOffset(anchorOffset, softWrapsBefore, yScrollOffset);
+    updateLastTopLeftCornerOffset();
+    if (!myDeferredRegions.isEmpty()) {
+      scheduleDeferredRecalculation();
+    }
+    return result;
+  }
+
+  /**
+   * Scrolls the editor in order for the text at the given anchor offset to stay at the same place of the viewport if soft wraps
+   * number before it has changed.
+   */
+  private void adjustVerticalScrollOffset(int anchorOffset, int softWrapsBefore, int yScrollOffset) {
+    if (softWrapsBefore < 0) {
+      return;
+    }
+    int softWrapsNow = getNumberOfSoftWrapsBefore(anchorOffset);
+    if (softWrapsNow != softWrapsBefore) {
+      ScrollingModelEx scrollingModel = myEditor.getScrollingModel();
+      scrollingModel.disableAnimation();
+      try {
+        scrollingModel.scrollVertically(yScrollOffset + (softWrapsNow - softWrapsBefore) * myEditor.getLineHeight());
+      }
+      finally {
+        scrollingModel.enableAnimation();
+      }
+    }
+  }
+
+  /**
+   * @return    range of the logical lines shown at the viewport, extended by {@link #DEFERRED_CHUNK_LINES} lines to each side
+   */
+  @NotNull
+  private TextRange getViewportLinesRange() {
+    Document document = myEditor.getDocument();
+    Rectangle visibleArea = myEditor.getScrollingModel().getVisibleArea();
+    int lineHeight = myEditor.getLineHeight();
+    int firstLine = myEditor.visualToLogicalPosition(new VisualPosition(visibleArea.y / lineHeight, 0)).line;
+    int lastLine = myEditor.visualToLogicalPosition(new VisualPosition((visibleArea.y + visibleArea.height) / lineHeight + 1, 0)).line;
+    int maxLine = Math.max(0, document.getLineCount() - 1);
+    firstLine = Math.min(maxLine, Math.max(0, firstLine - DEFERRED_CHUNK_LINES));
+    lastLine = Math.min(maxLine, lastLine + DEFERRED_CHUNK_LINES);
+    return new TextRange(document.getLineStartOffset(firstLine), document.getLineEndOffset(lastLine));
+  }
+
+  /**
+   * Replaces pending complete document recalculation by recalculation of the given range and remembers the rest of the document
+   * to be processed later.
+   */
+  private void deferRecalculationOutsideOf(@NotNull TextRange range) {
+    Document document = myEditor.getDocument();
+    int documentEnd = Math.max(0, document.getTextLength() - 1);
+    myEventsStorage.release();
+    myEventsStorage.add(document, new IncrementalCacheUpdateEvent(document, range.getStartOffset(), Math.min(range.getEndOffset(), documentEnd)));
+    myDeferredRegions.deferOutsideOf(range, documentEnd);
+  }
+
+  private void cancelDeferredRecalculation() {
+    myDeferredRegions.clear();
+    myDeferredRecalculationStamp++;
+  }
+
+  private void scheduleDeferredRecalculation() {
+    final int stamp = myDeferredRecalculationStamp;
+    ApplicationManager.getApplication().invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        if (stamp != myDeferredRecalculationStamp || myEditor.isDisposed() || myDeferredRegions.isEmpty()) {
+          return;
+        }
+        if (!myInProgress) {
+          recalculateNextDeferredChunk();
         }
-        finally {
-          scrollingModel.enableAnimation();
+        if (!myDeferredRegions.isEmpty()) {
+          scheduleDeferredRecalculation();
         }
       }
+    }, ModalityState.any());
+  }
+
+  private void recalculateNextDeferredChunk() {
+    Document document = myEditor.getDocument();
+    TextRange chunk = myDeferredRegions.takeNextChunk(document, DEFERRED_CHUNK_LINES);
+    if (chunk == null) {
+      return;
+    }
+
+    int anchorOffset = myLastTopLeftCornerOffset;
+    int softWrapsBefore = anchorOffset > chunk.getStartOffset() ? getNumberOfSoftWrapsBefore(anchorOffset) : -1;
+    int yScrollOffset = myEditor.getScrollingModel().getVerticalScrollOffset();
+    myEventsStorage.add(document, new IncrementalCacheUpdateEvent(document, chunk.getStartOffset(), chunk.getEndOffset()));
+    if (recalculateSoftWraps()) {
+      adjustVerticalScrollOffset(anchorOffset, softWrapsBefore, yScrollOffset);
+      updateLastTopLeftCornerOffset();
     }
-    updateLastTopLeftCornerOffset();
-    return result;
   }
 
   private void updateLastTopLeftCornerOffset() {
@@ -1009,6 +1119,9 @@ public class SoftWrapApplianceManager implements SoftWrapFoldingListener, Docume
   @Override
   public void beforeDocumentChange(DocumentEvent event) {
     myEventsStorage.add(event.getDocument(), new IncrementalCacheUpdateEvent(event));
+    if (!myDeferredRegions.isEmpty()) {
+      myDeferredRegions.update(event.getOffset(), event.getOldLength(), event.getNewLength());
+    }
   }
 
   @Override
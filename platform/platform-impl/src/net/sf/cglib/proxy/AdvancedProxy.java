@@ -5,13 +5,13 @@ import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.util.ArrayUtil;
 import com.intellij.util.containers.ConcurrentWeakValueHashMap;
 import net.sf.cglib.core.CodeGenerationException;
+import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.Arrays;
-import java.util.Map;
+import java.util.*;
 
 /**
  * @author peter
@@ -68,6 +68,25 @@ public class AdvancedProxy {
     }
   };
 
+  private static final ProxyRefDispatcher HANDLER_DISPATCHER = new ProxyRefDispatcher() {
+    public Object loadObject(Object proxy) throws Exception {
+      return getInvocationHandler(proxy);
+    }
+  };
+
+  /**
+   * Supplies the callbacks which single proxy methods are compiled to, see
+   * {@link AdvancedProxy#createDispatchingProxy}.
+   */
+  public interface DirectCallFactory {
+    /**
+     * @return  the callback the proxy method calls instead of the invocation handler, <code>null</code> to keep the invocation handler.
+     *          The callback is shared by all proxies of the class, {@link #getInvocationHandler(Object)} gives the proxy's handler.
+     */
+    @Nullable
+    InvocationHandler createDirectCall(Method method);
+  }
+
   public static InvocationHandler getInvocationHandler(Object proxy) {
     return (InvocationHandler)((Factory) proxy).getCallback(0);
   }
@@ -76,6 +95,24 @@ public class AdvancedProxy {
     return createProxy(superClass, otherInterfaces, handler, ArrayUtil.EMPTY_OBJECT_ARRAY);
   }
 
+  /**
+   * Same as {@link #createProxy(InvocationHandler, Class, Class[])}, but the abstract proxy methods declared in classes or interfaces
+   * implemented by {@code dispatchTarget} are generated as direct calls to the handler, bypassing {@link InvocationHandler#invoke}
+   * and reflection. Other abstract methods for which {@code directCalls} returns a callback are compiled to calls of that callback,
+   * the rest still go through the invocation handler.
+   *
+   * @param dispatchTarget a class of the handler
+   * @param directCalls    proxy classes are shared between handlers with the same dispatch target and direct call factory
+   */
+  public static <T> T createDispatchingProxy(final InvocationHandler handler,
+                                             final Class<? extends InvocationHandler> dispatchTarget,
+                                             @Nullable final DirectCallFactory directCalls,
+                                             final Class<T> superClass,
+                                             final Class... otherInterfaces) {
+    assert dispatchTarget.isInstance(handler) : handler;
+    return doCreateProxy(superClass, otherInterfaces, handler, true, dispatchTarget, directCalls, ArrayUtil.EMPTY_OBJECT_ARRAY);
+  }
+
   public static <T> T createProxy(final Class<T> superClass, final Class... otherInterfaces) {
     return createProxy(superClass, otherInterfaces, new InvocationHandler() {
       public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
@@ -94,19 +131,69 @@ public class AdvancedProxy {
                                   final Class[] interfaces,
                                   final InvocationHandler handler,
                                   final boolean interceptObjectMethods, final Object... constructorArgs) {
-    try {
-      final Callback[] callbacks = new Callback[]{handler, NoOp.INSTANCE};
+    return doCreateProxy(superClass, interfaces, handler, interceptObjectMethods, null, null, constructorArgs);
+  }
 
-      final ProxyDescription key = new ProxyDescription(superClass, interfaces);
+  private static <T> T doCreateProxy(final Class<T> superClass,
+                                     final Class[] interfaces,
+                                     final InvocationHandler handler,
+                                     final boolean interceptObjectMethods,
+                                     @Nullable final Class<?> dispatchTarget,
+                                     @Nullable final DirectCallFactory directCalls,
+                                     final Object... constructorArgs) {
+    try {
+      final ProxyDescription key = new ProxyDescription(superClass, interfaces, dispatchTarget, directCalls);
       Factory factory = ourFactories.get(key);
       if (factory != null) {
+        final Callback[] callbacks;
+        if (dispatchTarget == null) {
+          callbacks = new Callback[]{handler, NoOp.INSTANCE};
+        }
+        else {
+          // the direct calls are the same for all the proxies of the class
+          callbacks = factory.getCallbacks().clone();
+          callbacks[0] = handler;
+        }
         return (T)factory.newInstance(getConstructorParameterTypes(factory.getClass(), constructorArgs), constructorArgs, callbacks);
       }
 
       AdvancedEnhancer e = new AdvancedEnhancer();
       e.setInterfaces(interfaces);
-      e.setCallbacks(callbacks);
-      e.setCallbackFilter(interceptObjectMethods ? WITH_OBJECT_METHODS_FILTER : NO_OBJECT_METHODS_FILTER);
+      final CallbackFilter filter = interceptObjectMethods ? WITH_OBJECT_METHODS_FILTER : NO_OBJECT_METHODS_FILTER;
+      if (dispatchTarget == null) {
+        e.setCallbacks(new Callback[]{handler, NoOp.INSTANCE});
+        e.setCallbackFilter(filter);
+      }
+      else {
+        final List<Callback> callbacks = new ArrayList<Callback>(Arrays.<Callback>asList(handler, NoOp.INSTANCE, HANDLER_DISPATCHER));
+        final Map<String, Integer> directCallIndices = new HashMap<String, Integer>();
+        if (directCalls != null) {
+          for (Method method : collectAbstractMethods(superClass, interfaces)) {
+            if (isDispatchedToHandler(method, dispatchTarget)) continue;
+            final InvocationHandler directCall = directCalls.createDirectCall(method);
+            if (directCall != null) {
+              directCallIndices.put(getSignature(method), callbacks.size());
+              callbacks.add(directCall);
+            }
+          }
+        }
+        e.setCallbacks(callbacks.toArray(new Callback[callbacks.size()]));
+        e.setCallbackFilter(new CallbackFilter() {
+          public int accept(Method method) {
+            int index = filter.accept(method);
+            if (index == 0) {
+              if (isDispatchedToHandler(method, dispatchTarget)) {
+                return 2;
+              }
+              final Integer directCallIndex = directCallIndices.get(getSignature(method));
+              if (directCallIndex != null) {
+                return directCallIndex;
+              }
+            }
+            return index;
+          }
+        });
+      }
       if (superClass != null) {
         e.setSuperclass(superClass);
         factory = (Factory)e.create(getConstructorParameterTypes(superClass, constructorArgs), constructorArgs);
@@ -144,6 +231,35 @@ public class AdvancedProxy {
     }
   }
 
+  private static boolean isDispatchedToHandler(final Method method, final Class<?> dispatchTarget) {
+    return method.getDeclaringClass() != Object.class && method.getDeclaringClass().isAssignableFrom(dispatchTarget);
+  }
+
+  private static String getSignature(final Method method) {
+    return method.getName() + Arrays.toString(method.getParameterTypes());
+  }
+
+  private static Collection<Method> collectAbstractMethods(@Nullable final Class superClass, final Class[] interfaces) {
+    final Map<String, Method> methods = new LinkedHashMap<String, Method>();
+    final List<Class> allInterfaces = new ArrayList<Class>(Arrays.asList(interfaces));
+    for (Class aClass = superClass; aClass != null; aClass = aClass.getSuperclass()) {
+      for (Method method : aClass.getDeclaredMethods()) {
+        if ((method.getModifiers() & Modifier.ABSTRACT) != 0 && !methods.containsKey(getSignature(method))) {
+          methods.put(getSignature(method), method);
+        }
+      }
+      allInterfaces.addAll(Arrays.asList(aClass.getInterfaces()));
+    }
+    for (Class anInterface : allInterfaces) {
+      for (Method method : anInterface.getMethods()) {
+        if (!methods.containsKey(getSignature(method))) {
+          methods.put(getSignature(method), method);
+        }
+      }
+    }
+    return methods.values();
+  }
+
   private static Class[] getConstructorParameterTypes(final Class aClass, final Object... constructorArgs) {
     if (constructorArgs.length == 0) return ArrayUtil.EMPTY_CLASS_ARRAY;
 
@@ -166,10 +282,17 @@ public class AdvancedProxy {
   private static class ProxyDescription {
     private final Class mySuperClass;
     private final Class[] myInterfaces;
+    private final Class myDispatchTarget;
+    private final DirectCallFactory myDirectCalls;
 
-    public ProxyDescription(final Class superClass, final Class[] interfaces) {
+    public ProxyDescription(final Class superClass,
+                            final Class[] interfaces,
+                            @Nullable final Class dispatchTarget,
+                            @Nullable final DirectCallFactory directCalls) {
       mySuperClass = superClass;
       myInterfaces = interfaces;
+      myDispatchTarget = dispatchTarget;
+      myDirectCalls = directCalls;
     }
 
     public String toString() {
@@ -184,6 +307,8 @@ public class AdvancedProxy {
 
       if (!Arrays.equals(myInterfaces, that.myInterfaces)) return false;
       if (mySuperClass != null ? !mySuperClass.equals(that.mySuperClass) : that.mySuperClass != null) return false;
+      if (myDispatchTarget != that.myDispatchTarget) return false;
+      if (myDirectCalls != that.myDirectCalls) return false;
 
       return true;
     }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.formatting;
+
+import com.intellij.openapi.util.TextRange;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FormatTextRangesTest {
+
+  @Test
+  public void singleRange() {
+    FormatTextRanges ranges = new FormatTextRanges(new TextRange(10, 20), true);
+    assertTrue(ranges.isReadOnly(new TextRange(0, 5), false));
+    assertFalse(ranges.isReadOnly(new TextRange(0, 5), true));
+    assertFalse(ranges.isReadOnly(new TextRange(5, 10), false));
+    assertTrue(ranges.isReadOnly(new TextRange(21, 30), false));
+    assertFalse(ranges.isWhitespaceReadOnly(new TextRange(9, 10)));
+    assertTrue(ranges.isWhitespaceReadOnly(new TextRange(20, 21)));
+  }
+
+  @Test
+  public void headingWhitespace() {
+    FormatTextRanges ranges = new FormatTextRanges();
+    ranges.add(new TextRange(10, 20), false);
+    ranges.add(new TextRange(30, 40), true);
+    assertTrue(ranges.isWhitespaceReadOnly(new TextRange(8, 10)));
+    assertFalse(ranges.isWhitespaceReadOnly(new TextRange(28, 30)));
+    assertFalse(ranges.isWhitespaceReadOnly(new TextRange(18, 22)));
+    assertTrue(ranges.isWhitespaceReadOnly(new TextRange(40, 42)));
+  }
+
+  @Test
+  public void changedRangeIsTakenIntoAccount() {
+    FormatTextRanges ranges = new FormatTextRanges();
+    ranges.add(new TextRange(10, 20), true);
+    ranges.add(new TextRange(30, 40), true);
+    assertTrue(ranges.isReadOnly(new TextRange(50, 60), false));
+
+    ranges.getRanges().get(0).setTextRange(new TextRange(45, 55));
+    assertFalse(ranges.isReadOnly(new TextRange(50, 60), false));
+    assertTrue(ranges.isReadOnly(new TextRange(10, 20), false));
+  }
+
+  @Test
+  public void manyRangesAgreeWithRangeByRangeCheck() {
+    Random random = new Random(42);
+    for (int attempt = 0; attempt < 200; attempt++) {
+      FormatTextRanges ranges = new FormatTextRanges();
+      int count = 2 + random.nextInt(10);
+      for (int i = 0; i < count; i++) {
+        int start = random.nextInt(100);
+        ranges.add(new TextRange(start, start + random.nextInt(15)), random.nextBoolean());
+      }
+      for (int i = 0; i < 100; i++) {
+        int start = random.nextInt(120);
+        TextRange range = new TextRange(start, start + random.nextInt(10));
+        boolean rootIsRightBlock = random.nextBoolean();
+        String message = ranges + " vs " + range;
+        assertEquals(message, isReadOnly(ranges, range, rootIsRightBlock), ranges.isReadOnly(range, rootIsRightBlock));
+        assertEquals(message, isWhitespaceReadOnly(ranges, range), ranges.isWhitespaceReadOnly(range));
+      }
+    }
+  }
+
+  private static boolean isReadOnly(FormatTextRanges ranges, TextRange range, boolean rootIsRightBlock) {
+    for (FormatTextRanges.FormatTextRange formatTextRange : ranges.getRanges()) {
+      if (!formatTextRange.isReadOnly(range, rootIsRightBlock)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isWhitespaceReadOnly(FormatTextRanges ranges, TextRange range) {
+    for (FormatTextRanges.FormatTextRange formatTextRange : ranges.getRanges()) {
+      if (!formatTextRange.isWhitespaceReadOnly(range)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.history.core;
+
+import com.intellij.history.core.changes.ChangeSet;
+import com.intellij.history.core.changes.CreateFileChange;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.io.PersistentHashMap;
+import gnu.trove.THashSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class ChangeSetsIndexTest extends LocalHistoryTestCase {
+  private File myDir;
+  private ChangeSetsIndex myIndex;
+
+  @Before
+  public void setUp() throws IOException {
+    myDir = FileUtil.createTempDirectory("index", null);
+    myIndex = new ChangeSetsIndex(new File(myDir, "paths"));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    myIndex.close();
+    FileUtil.delete(myDir);
+  }
+
+  @Test
+  public void testFindingChangeSetsByPath() throws IOException {
+    ChangeSet cs1 = cs(new CreateFileChange(nextId(), "dir/a"));
+    ChangeSet cs2 = cs(new CreateFileChange(nextId(), "dir/b"));
+    ChangeSet cs3 = cs(new CreateFileChange(nextId(), "other/c"));
+    myIndex.add(cs1, 1);
+    myIndex.add(cs2, 2);
+    myIndex.add(cs3, 3);
+
+    assertEntries(myIndex.getEntries("dir", Long.MAX_VALUE), cs2, 2, cs1, 1);
+    assertEntries(myIndex.getEntries("dir/a", Long.MAX_VALUE), cs1, 1);
+    assertEntries(myIndex.getEntries("dir", cs2.getId()), cs1, 1);
+  }
+
+  @Test
+  public void testEntriesSurviveReopening() throws IOException {
+    ChangeSet cs1 = cs(new CreateFileChange(nextId(), "dir/a"));
+    ChangeSet cs2 = cs(new CreateFileChange(nextId(), "dir/a"));
+    myIndex.add(cs1, 1);
+    myIndex.add(cs2, 2);
+    myIndex.close();
+    myIndex = new ChangeSetsIndex(new File(myDir, "paths"));
+
+    assertEntries(myIndex.getEntries("dir/a", Long.MAX_VALUE), cs2, 2, cs1, 1);
+  }
+
+  @Test
+  public void testBatch() throws IOException {
+    ChangeSet cs1 = cs(new CreateFileChange(nextId(), "dir/a"));
+    ChangeSet cs2 = cs(new CreateFileChange(nextId(), "dir/b"));
+    myIndex.startBatch();
+    myIndex.add(cs2, 2);
+    myIndex.add(cs1, 1);
+    assertEquals(0, myIndex.getEntries("dir", Long.MAX_VALUE).size());
+    myIndex.finishBatch();
+
+    assertEntries(myIndex.getEntries("dir", Long.MAX_VALUE), cs2, 2, cs1, 1);
+  }
+
+  @Test
+  public void testRemoving() throws IOException {
+    ChangeSet cs1 = cs(new CreateFileChange(nextId(), "dir/a"));
+    ChangeSet cs2 = cs(new CreateFileChange(nextId(), "dir/b"));
+    myIndex.add(cs1, 1);
+    myIndex.add(cs2, 2);
+
+    myIndex.removeUpTo(ChangeSetsIndex.collectKeys(cs1, new THashSet<String>()), cs1.getId());
+
+    assertEntries(myIndex.getEntries("dir", Long.MAX_VALUE), cs2, 2);
+    assertEquals(0, myIndex.getEntries("dir/a", Long.MAX_VALUE).size());
+  }
+
+  @Test
+  public void testIndexGrowsLinearly() throws IOException {
+    int count = 2000;
+    for (int i = 0; i < count; i++) {
+      myIndex.add(cs(new CreateFileChange(nextId(), "dir/f" + i)), i + 1);
+    }
+    myIndex.close();
+    long size = new File(myDir, "paths" + PersistentHashMap.DATA_FILE_EXTENSION).length();
+    // every change set adds 3 entries: 'subtree' keys of the file and the directory, 'exact' key of the file
+    assertTrue("index values take " + size + " bytes", size < count * 3 * 12 * 2);
+
+    myIndex = new ChangeSetsIndex(new File(myDir, "paths"));
+    assertEquals(count, myIndex.getEntries("dir", Long.MAX_VALUE).size());
+  }
+
+  private static void assertEntries(ChangeSetsIndex.Entries entries, Object... expected) {
+    assertEquals(expected.length / 2, entries.size());
+    for (int i = 0; i < entries.size(); i++) {
+      assertEquals(((ChangeSet)expected[i * 2]).getId(), entries.getId(i));
+      assertEquals(expected[i * 2 + 1], entries.getRecord(i));
+    }
+  }
+}
@@ -283,6 +283,29 @@ public class RevisionsAndDiffsTest extends IntegrationTestCase {
     assertEquals(myRoot.getPath() + "/dir/file.txt", rr.get(2).findEntry().getPath());
   }
 
+  public void testRevisionsInRenamedDirWithUnrelatedChanges() throws IOException {
+    VirtualFile dir = createDirectory("dir");
+    VirtualFile f = createFile("dir/file.txt", "one");
+    VirtualFile other = createFile("other.txt");
+    setContent(other, "1");
+    dir.rename("dir", "newDir");
+    setContent(other, "2");
+    createDirectory("dir");
+    createFile("dir/file.txt", "another");
+    setContent(f, "two");
+
+    List<Revision> rr = getRevisionsFor(f);
+    assertEquals(4, rr.size());
+
+    assertContent("two", rr.get(0).findEntry());
+    assertContent("one", rr.get(1).findEntry());
+    assertEquals(myRoot.getPath() + "/newDir/file.txt", rr.get(1).findEntry().getPath());
+    assertEquals(myRoot.getPath() + "/dir/file.txt", rr.get(2).findEntry().getPath());
+    assertContent("one", rr.get(2).findEntry());
+
+    assertEquals(5, getRevisionsFor(dir).size());
+  }
+
   public void testGettingDifferenceBetweenRevisions() throws IOException {
     VirtualFile f = createFile("file.txt", "one");
     setContent(f, "two");
@@ -28,7 +28,9 @@ import com.intellij.psi.impl.source.tree.ASTStructure;
 import com.intellij.psi.tree.*;
 import com.intellij.testFramework.LightPlatformTestCase;
 import com.intellij.testFramework.PlatformTestCase;
+import com.intellij.testFramework.PlatformTestUtil;
 import com.intellij.util.ThreeState;
+import com.intellij.util.ThrowableRunnable;
 import com.intellij.util.diff.DiffTree;
 import com.intellij.util.diff.DiffTreeChangeBuilder;
 import com.intellij.util.diff.FlyweightCapableTreeStructure;
@@ -541,6 +543,44 @@ public class PsiBuilderQuickTest extends LightPlatformTestCase {
            "    PsiElement(OTHER)('}')\n");
   }
 
+  public void testPrecedeHeavyParsingPerformance() {
+    final StringBuilder text = new StringBuilder("a");
+    for (int i = 0; i < 50000; i++) {
+      text.append("+1");
+    }
+    final Parser parser = new Parser() {
+      @Override
+      public void parse(PsiBuilder builder) {
+        PsiBuilder.Marker left = builder.mark();
+        builder.advanceLexer();
+        left.done(LETTER);
+        while (builder.getTokenType() == OTHER) {
+          final PsiBuilder.Marker binary = left.precede();
+          builder.advanceLexer();
+          final PsiBuilder.Marker attempt = builder.mark();
+          builder.advanceLexer();
+          attempt.rollbackTo();
+          final PsiBuilder.Marker operand = builder.mark();
+          builder.advanceLexer();
+          operand.done(DIGIT);
+          binary.done(OTHER);
+          left = binary;
+        }
+      }
+    };
+
+    PlatformTestUtil.startPerformanceTest("precede-heavy parsing", 1000, new ThrowableRunnable() {
+      @Override
+      public void run() throws Throwable {
+        final PsiBuilder builder = createBuilder(text);
+        final PsiBuilder.Marker root = builder.mark();
+        parser.parse(builder);
+        root.done(ROOT);
+        assertEquals(text.length(), builder.getLightTree().getRoot().getEndOffset());
+      }
+    }).cpuBound().assertTiming();
+  }
+
   @SuppressWarnings("ConstantConditions")
   private static PsiBuilderImpl createBuilder(CharSequence text) {
     ParserDefinition parserDefinition = new ParserDefinition() {
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.application.ex;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+public class LockStatisticsTest extends TestCase {
+  public void testEntriesAreGroupedByKindAndSite() {
+    LockStatistics statistics = new LockStatistics(true);
+    statistics.record(LockStatistics.Kind.READ, "a", 10, 100);
+    statistics.record(LockStatistics.Kind.READ, "a", 30, 50);
+    statistics.record(LockStatistics.Kind.WRITE, "a", 1000, 1000);
+    statistics.record(LockStatistics.Kind.READ, "b", 1, 1);
+
+    List<LockStatistics.Entry> entries = statistics.getEntries();
+    assertEquals(3, entries.size());
+
+    LockStatistics.Entry write = entries.get(0);
+    assertEquals(LockStatistics.Kind.WRITE, write.getKind());
+    assertEquals(1, write.getCount());
+
+    LockStatistics.Entry read = entries.get(1);
+    assertEquals(LockStatistics.Kind.READ, read.getKind());
+    assertEquals("a", read.getSite());
+    assertEquals(2, read.getCount());
+    assertEquals(40, read.getWaitNanos());
+    assertEquals(30, read.getMaxWaitNanos());
+    assertEquals(150, read.getHoldNanos());
+    assertEquals(100, read.getMaxHoldNanos());
+
+    assertEquals("b", entries.get(2).getSite());
+  }
+
+  public void testReset() {
+    LockStatistics statistics = new LockStatistics(true);
+    statistics.record(LockStatistics.Kind.WRITE_INTENT, "a", 1, 1);
+    statistics.reset();
+    assertTrue(statistics.getEntries().isEmpty());
+  }
+}
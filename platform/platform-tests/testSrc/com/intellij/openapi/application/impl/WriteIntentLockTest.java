@@ -0,0 +1,120 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.application.impl;
+
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ex.ApplicationEx;
+import com.intellij.openapi.application.ex.ApplicationManagerEx;
+import com.intellij.testFramework.LightPlatformTestCase;
+import com.intellij.util.ui.UIUtil;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class WriteIntentLockTest extends LightPlatformTestCase {
+  private static final long TIMEOUT_MILLIS = 10000;
+
+  public void testUpgradeToWriteAction() {
+    final ApplicationEx application = ApplicationManagerEx.getApplicationEx();
+    final AtomicBoolean written = new AtomicBoolean();
+    application.runWriteIntentReadAction(new Runnable() {
+      @Override
+      public void run() {
+        assertTrue(application.isWriteIntentLockAcquired());
+        application.runWriteAction(new Runnable() {
+          @Override
+          public void run() {
+            assertTrue(application.isWriteAccessAllowed());
+            written.set(true);
+          }
+        });
+        assertTrue(application.isWriteIntentLockAcquired());
+        assertFalse(application.isWriteAccessAllowed());
+      }
+    });
+    assertTrue(written.get());
+    assertFalse(application.isWriteIntentLockAcquired());
+  }
+
+  public void testReadersAreNotBlockedByWriteIntentHolder() throws Exception {
+    final ApplicationEx application = ApplicationManagerEx.getApplicationEx();
+    application.runWriteIntentReadAction(new Runnable() {
+      @Override
+      public void run() {
+        Future<?> reader = application.executeOnPooledThread(new Runnable() {
+          @Override
+          public void run() {
+            application.runReadAction(new Runnable() {
+              @Override
+              public void run() {
+              }
+            });
+          }
+        });
+        try {
+          reader.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+  }
+
+  public void testBackgroundThreadApplyingChangesThroughEventDispatchThread() throws Exception {
+    final ApplicationEx application = ApplicationManagerEx.getApplicationEx();
+    final AtomicBoolean rejected = new AtomicBoolean();
+    final AtomicBoolean written = new AtomicBoolean();
+    Future<?> worker = application.executeOnPooledThread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          application.runWriteIntentReadAction(new Runnable() {
+            @Override
+            public void run() {
+            }
+          });
+        }
+        catch (IllegalStateException e) {
+          rejected.set(true);
+        }
+
+        application.invokeAndWait(new Runnable() {
+          @Override
+          public void run() {
+            application.runWriteAction(new Runnable() {
+              @Override
+              public void run() {
+                written.set(true);
+              }
+            });
+          }
+        }, ModalityState.defaultModalityState());
+      }
+    });
+
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (!worker.isDone()) {
+      assertTrue("write action scheduled from a background thread hasn't finished", System.currentTimeMillis() < deadline);
+      UIUtil.dispatchAllInvocationEvents();
+      Thread.sleep(10);
+    }
+    worker.get();
+    assertTrue(rejected.get());
+    assertTrue(written.get());
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.components.impl;
+
+import com.intellij.openapi.components.impl.stores.StorageSnapshots;
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import junit.framework.TestCase;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.jdom.Text;
+
+import java.io.File;
+
+import static com.intellij.openapi.util.JDOMBuilder.*;
+
+public class StorageSnapshotsTest extends TestCase {
+  private static final String PATH = "/project/.idea/misc.xml";
+  private static final byte[] CONTENT = "<project version=\"4\"/>".getBytes();
+
+  public void testRoundTrip() throws Exception {
+    Document document = document(tag("project", attr("version", "4"),
+                                     tag("component", attr("name", "a"), tag("option", attr("name", "x"), attr("value", "1"))),
+                                     tag("component", attr("name", "b"), tag("text", new Text("some text")))));
+    byte[] bytes = StorageSnapshots.encode(document, PATH, CONTENT);
+    assertNotNull(bytes);
+
+    Document decoded = StorageSnapshots.decode(bytes, PATH, CONTENT);
+    assertNotNull(decoded);
+    assertTrue(JDOMUtil.areElementsEqual(document.getRootElement(), decoded.getRootElement()));
+  }
+
+  public void testTextsAreStoredInUtf8() throws Exception {
+    String value = StringUtil.repeat("path/to/module", 100);
+    String nonAscii = "\u00e9t\u00e9 \u043b\u0435\u0442\u043e \u590f";
+    Document document = document(tag("project", tag("component", attr("name", "a"), attr("value", value), new Text(nonAscii))));
+    byte[] bytes = StorageSnapshots.encode(document, PATH, CONTENT);
+    assertNotNull(bytes);
+    assertTrue(bytes.length < value.length() + PATH.length() + 100);
+
+    Document decoded = StorageSnapshots.decode(bytes, PATH, CONTENT);
+    assertNotNull(decoded);
+    assertTrue(JDOMUtil.areElementsEqual(document.getRootElement(), decoded.getRootElement()));
+    assertEquals(nonAscii, decoded.getRootElement().getChild("component").getText());
+  }
+
+  public void testOutdatedSnapshot() throws Exception {
+    byte[] bytes = StorageSnapshots.encode(document(tag("project")), PATH, CONTENT);
+    assertNotNull(bytes);
+
+    assertNull(StorageSnapshots.decode(bytes, PATH, "<project version=\"4\"/>\n".getBytes()));
+    assertNull(StorageSnapshots.decode(bytes, "/other/misc.xml", CONTENT));
+  }
+
+  public void testContentChangeOfSameLength() throws Exception {
+    byte[] bytes = StorageSnapshots.encode(document(tag("project")), PATH, CONTENT);
+    assertNotNull(bytes);
+
+    assertNull(StorageSnapshots.decode(bytes, PATH, "<project version=\"5\"/>".getBytes()));
+  }
+
+  public void testNamespacesAreNotSupported() throws Exception {
+    Element root = new Element("project", Namespace.getNamespace("urn:test"));
+    assertNull(StorageSnapshots.encode(new Document(root), PATH, CONTENT));
+  }
+
+  public void testOrphansArePruned() throws Exception {
+    File directory = FileUtil.createTempDirectory("snapshots", null);
+    try {
+      File existing = new File(directory, "misc.xml");
+      FileUtil.writeToFile(existing, CONTENT);
+      File kept = writeSnapshot(directory, existing.getPath());
+      File orphan = writeSnapshot(directory, new File(directory, "deleted.xml").getPath());
+      File corrupted = new File(directory, "corrupted.xml.0.bin");
+      FileUtil.writeToFile(corrupted, new byte[]{1});
+
+      StorageSnapshots.pruneOrphans(directory);
+      assertTrue(kept.exists());
+      assertFalse(orphan.exists());
+      assertFalse(corrupted.exists());
+      assertTrue(existing.exists());
+    }
+    finally {
+      FileUtil.delete(directory);
+    }
+  }
+
+  private static File writeSnapshot(File directory, String filePath) {
+    File snapshot = new File(directory, new File(filePath).getName() + "." + filePath.hashCode() + ".bin");
+    byte[] bytes = StorageSnapshots.encode(document(tag("project")), filePath, CONTENT);
+    assertNotNull(bytes);
+    StorageSnapshots.write(snapshot, bytes);
+    return snapshot;
+  }
+}
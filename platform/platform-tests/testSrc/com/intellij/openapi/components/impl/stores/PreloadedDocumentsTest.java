@@ -0,0 +1,71 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.components.impl.stores;
+
+import com.intellij.openapi.util.UserDataHolderBase;
+import com.intellij.testFramework.LightPlatformTestCase;
+import com.intellij.testFramework.LightVirtualFile;
+import org.jdom.Document;
+
+public class PreloadedDocumentsTest extends LightPlatformTestCase {
+  public void testPreloadedDocumentIsTakenBeforeReadingFile() throws Exception {
+    LightVirtualFile file = new LightVirtualFile("a.iml", "<module version=\"4\"/>");
+    PreloadedDocuments documents = new PreloadedDocuments();
+    documents.preload(file);
+    // same length and time stamp, the preloaded document is still considered up to date
+    file.setContent(this, "<module version=\"5\"/>", false);
+
+    Document loaded = FileBasedStorage.loadDocument(file, documents);
+    assertEquals("4", loaded.getRootElement().getAttributeValue("version"));
+
+    loaded = FileBasedStorage.loadDocument(file, documents);
+    assertEquals("5", loaded.getRootElement().getAttributeValue("version"));
+  }
+
+  public void testFileIsReadWithoutPreloadedDocuments() throws Exception {
+    LightVirtualFile file = new LightVirtualFile("a.iml", "<module version=\"4\"/>");
+    Document loaded = FileBasedStorage.loadDocument(file, null);
+    assertEquals("4", loaded.getRootElement().getAttributeValue("version"));
+  }
+
+  public void testChangedFileIsReadAgain() throws Exception {
+    LightVirtualFile file = new LightVirtualFile("a.iml", "<module version=\"4\"/>");
+    PreloadedDocuments documents = new PreloadedDocuments();
+    documents.preload(file);
+    file.setContent(this, "<module version=\"40\"/>", false);
+
+    Document loaded = FileBasedStorage.loadDocument(file, documents);
+    assertEquals("40", loaded.getRootElement().getAttributeValue("version"));
+  }
+
+  public void testUnparsableFileIsLeftToStorage() throws Exception {
+    LightVirtualFile file = new LightVirtualFile("a.iml", "<module");
+    PreloadedDocuments documents = new PreloadedDocuments();
+    documents.preload(file);
+    assertNull(documents.take(file));
+  }
+
+  public void testDocumentsAreKeptPerProject() {
+    UserDataHolderBase project = new UserDataHolderBase();
+    UserDataHolderBase otherProject = new UserDataHolderBase();
+    PreloadedDocuments documents = PreloadedDocuments.install(project);
+    assertSame(documents, PreloadedDocuments.getInstance(project));
+    assertNull(PreloadedDocuments.getInstance(otherProject));
+
+    PreloadedDocuments.uninstall(project);
+    assertNull(PreloadedDocuments.getInstance(project));
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.editor.impl.softwrap.mapping;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.api.Invocation;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.jmock.lib.action.CustomAction;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class DeferredSoftWrapRegionsTest {
+
+  private DeferredSoftWrapRegions myRegions;
+  private Mockery myMockery;
+
+  @Before
+  public void setUp() {
+    myRegions = new DeferredSoftWrapRegions();
+    myMockery = new JUnit4Mockery() {{
+      setImposteriser(ClassImposteriser.INSTANCE);
+    }};
+  }
+
+  private Document createDocument(final String text) {
+    final Document document = myMockery.mock(Document.class);
+    myMockery.checking(new Expectations() {{
+      allowing(document).getTextLength(); will(returnValue(text.length()));
+
+      allowing(document).getLineNumber(with(any(int.class))); will(new CustomAction("getLineNumber()") {
+        @Override
+        public Object invoke(Invocation invocation) throws Throwable {
+          return StringUtil.countNewLines(text.substring(0, (Integer)invocation.getParameter(0)));
+        }
+      });
+
+      allowing(document).getLineEndOffset(with(any(int.class))); will(new CustomAction("getLineEndOffset()") {
+        @Override
+        public Object invoke(Invocation invocation) throws Throwable {
+          int line = (Integer)invocation.getParameter(0);
+          int offset = 0;
+          for (int i = 0; i < line; i++) {
+            offset = text.indexOf('\n', offset) + 1;
+          }
+          int end = text.indexOf('\n', offset);
+          return end < 0 ? text.length() : end;
+        }
+      });
+    }});
+    return document;
+  }
+
+  @Test
+  public void regionAfterViewportIsProcessedFirst() {
+    myRegions.deferOutsideOf(new TextRange(10, 20), 99);
+    assertEquals(Arrays.asList(new TextRange(21, 99), new TextRange(0, 9)), myRegions.getRegions());
+  }
+
+  @Test
+  public void nothingDeferredForWholeDocument() {
+    myRegions.deferOutsideOf(new TextRange(0, 99), 99);
+    assertTrue(myRegions.isEmpty());
+  }
+
+  @Test
+  public void regionIsSplitToChunks() {
+    Document document = createDocument("0\n1\n2\n3\n4\n5\n6\n7\n8\n9");
+    myRegions.deferOutsideOf(new TextRange(0, 1), document.getTextLength() - 1);
+
+    assertEquals(new TextRange(2, 7), myRegions.takeNextChunk(document, 2));
+    assertEquals(new TextRange(8, 13), myRegions.takeNextChunk(document, 2));
+    assertEquals(new TextRange(14, 18), myRegions.takeNextChunk(document, 2));
+    assertTrue(myRegions.isEmpty());
+  }
+
+  @Test
+  public void regionIsTrimmedToDocumentEnd() {
+    Document document = createDocument("0\n1\n2");
+    myRegions.deferOutsideOf(new TextRange(0, 1), 10);
+    assertEquals(new TextRange(2, 4), myRegions.takeNextChunk(document, 100));
+
+    myRegions.deferOutsideOf(new TextRange(0, 5), 10);
+    assertNull(myRegions.takeNextChunk(document, 100));
+    assertTrue(myRegions.isEmpty());
+  }
+
+  @Test
+  public void regionsAreShiftedByChangeBefore() {
+    myRegions.deferOutsideOf(new TextRange(10, 20), 99);
+    myRegions.update(12, 0, 5);
+    assertEquals(Arrays.asList(new TextRange(26, 104), new TextRange(0, 9)), myRegions.getRegions());
+
+    myRegions.update(15, 3, 0);
+    assertEquals(Arrays.asList(new TextRange(23, 101), new TextRange(0, 9)), myRegions.getRegions());
+  }
+
+  @Test
+  public void regionIsExtendedByChangeInside() {
+    myRegions.deferOutsideOf(new TextRange(10, 20), 99);
+    myRegions.update(5, 2, 10);
+    assertEquals(Arrays.asList(new TextRange(29, 107), new TextRange(0, 17)), myRegions.getRegions());
+  }
+
+  @Test
+  public void regionIsExtendedByOverlappingChange() {
+    myRegions.deferOutsideOf(new TextRange(10, 20), 99);
+    myRegions.update(18, 5, 1);
+    assertEquals(Arrays.asList(new TextRange(18, 95), new TextRange(0, 9)), myRegions.getRegions());
+  }
+
+  @Test
+  public void removedRegionCollapses() {
+    myRegions.deferOutsideOf(new TextRange(10, 20), 99);
+    myRegions.update(0, 10, 0);
+    assertEquals(Arrays.asList(new TextRange(11, 89), new TextRange(0, 0)), myRegions.getRegions());
+  }
+}
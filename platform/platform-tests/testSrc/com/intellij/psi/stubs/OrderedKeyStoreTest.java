@@ -0,0 +1,113 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.stubs;
+
+import com.intellij.mock.MockProjectEx;
+import com.intellij.openapi.extensions.Extensions;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.testFramework.UsefulTestCase;
+import com.intellij.util.CommonProcessors;
+import com.intellij.util.Processor;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+public class OrderedKeyStoreTest extends UsefulTestCase {
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    Extensions.registerAreaClass("IDEA_PROJECT", null);
+  }
+
+  public void testRangeAndPrefix() {
+    OrderedKeyStore store = new OrderedKeyStore(Arrays.asList("foo", "bar", "fooBar", "baz"));
+    store.addAll(Arrays.asList("foo", "food", "a"));
+
+    assertEquals(Arrays.asList("a", "bar", "baz", "foo", "fooBar", "food"), collectRange(store, "", null));
+    assertEquals(Arrays.asList("bar", "baz"), collectRange(store, "b", "foo"));
+    assertEquals(Arrays.asList("baz", "foo"), collectRange(store, "bat", "fooA"));
+    assertEquals(Arrays.asList("foo", "fooBar", "food"), collectPrefix(store, "foo"));
+    assertEquals(Arrays.asList("food"), collectPrefix(store, "food"));
+    assertTrue(collectPrefix(store, "x").isEmpty());
+  }
+
+  public void testProcessingStops() {
+    OrderedKeyStore store = new OrderedKeyStore(Arrays.asList("a", "b", "c"));
+    CommonProcessors.FindFirstProcessor<String> processor = new CommonProcessors.FindFirstProcessor<String>();
+    assertFalse(store.processRange("", null, processor));
+    assertEquals("a", processor.getFoundValue());
+  }
+
+  public void testCamelHumps() {
+    StubIndex index = new MyStubIndex(Arrays.asList("NullPointerException", "nullPointer", "NotPresentElement", "MyNullPointerException",
+                                                    "IllegalStateException"));
+    List<String> keys = new ArrayList<String>();
+    index.processKeysMatchingCamelHumps(MyStubIndex.KEY, new MockProjectEx(getTestRootDisposable()), "NPE",
+                                        new CommonProcessors.CollectProcessor<String>(keys));
+    assertEquals(Arrays.asList("NotPresentElement", "NullPointerException"), keys);
+  }
+
+  private static List<String> collectRange(OrderedKeyStore store, String from, String to) {
+    List<String> result = new ArrayList<String>();
+    store.processRange(from, to, new CommonProcessors.CollectProcessor<String>(result));
+    return result;
+  }
+
+  private static List<String> collectPrefix(OrderedKeyStore store, String prefix) {
+    List<String> result = new ArrayList<String>();
+    store.processPrefix(prefix, new CommonProcessors.CollectProcessor<String>(result));
+    return result;
+  }
+
+  private static class MyStubIndex extends StubIndex {
+    private static final StubIndexKey<String, PsiElement> KEY = StubIndexKey.createIndexKey("OrderedKeyStoreTest.names");
+
+    private final Collection<String> myKeys;
+
+    private MyStubIndex(Collection<String> keys) {
+      myKeys = keys;
+    }
+
+    @Override
+    public <Key, Psi extends PsiElement> Collection<Psi> get(@NotNull StubIndexKey<Key, Psi> indexKey,
+                                                             @NotNull Key key,
+                                                             @NotNull Project project,
+                                                             GlobalSearchScope scope) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <Key, Psi extends PsiElement> boolean process(@NotNull StubIndexKey<Key, Psi> indexKey,
+                                                         @NotNull Key key,
+                                                         @NotNull Project project,
+                                                         GlobalSearchScope scope,
+                                                         @NotNull Processor<? super Psi> processor) {
+      throw new UnsupportedOperationException();
+    }
+
+    @NotNull
+    @Override
+    public <Key> Collection<Key> getAllKeys(@NotNull StubIndexKey<Key, ?> indexKey, @NotNull Project project) {
+      //noinspection unchecked
+      return (Collection<Key>)myKeys;
+    }
+  }
+}
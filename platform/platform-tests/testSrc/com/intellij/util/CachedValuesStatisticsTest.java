@@ -0,0 +1,131 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.ModificationTracker;
+import com.intellij.psi.util.CachedValueProvider;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CachedValuesStatisticsTest extends TestCase {
+  public void testHistogram() {
+    CachedValuesStatistics statistics = new CachedValuesStatistics(true);
+    String provider = "provider";
+    statistics.computed(provider, 5000);
+    statistics.computed(provider, 50000000);
+    statistics.computed(provider, 500000000);
+    statistics.hit(provider);
+
+    List<CachedValuesStatistics.Entry> entries = statistics.getEntries();
+    assertEquals(1, entries.size());
+    CachedValuesStatistics.Entry entry = entries.get(0);
+    assertEquals(String.class.getName(), entry.getProvider());
+    assertEquals(3, entry.getComputes());
+    assertEquals(1, entry.getHits());
+    assertEquals(550005000, entry.getComputeNanos());
+    assertTrue(Arrays.equals(new long[]{1, 0, 0, 0, 1, 1}, entry.getHistogram()));
+  }
+
+  public void testCachedValueIsRecorded() {
+    CachedValuesStatistics statistics = CachedValuesStatistics.getInstance();
+    boolean wasEnabled = statistics.isEnabled();
+    statistics.reset();
+    statistics.setEnabled(true);
+    try {
+      MyTracker tracker = new MyTracker();
+      CachedValueImpl<String> value = new CachedValueImpl<String>(new MyProvider(tracker)) {
+        @Override
+        public boolean isFromMyProject(Project project) {
+          return false;
+        }
+      };
+      value.getValue();
+      value.getValue();
+      tracker.myCount++;
+      value.getValue();
+
+      CachedValuesStatistics.Entry entry = findEntry(statistics, MyProvider.class.getName());
+      assertNotNull(entry);
+      assertEquals(2, entry.getComputes());
+      assertEquals(1, entry.getHits());
+      assertEquals(Collections.singletonMap(MyTracker.class.getName(), 1L), entry.getInvalidations());
+    }
+    finally {
+      statistics.setEnabled(wasEnabled);
+      statistics.reset();
+    }
+  }
+
+  public void testInvalidationsByDependency() {
+    CachedValuesStatistics statistics = new CachedValuesStatistics(true);
+    String provider = "provider";
+    statistics.invalidated(provider, Key.create("MY_KEY"));
+    statistics.invalidated(provider, Key.create("MY_KEY"));
+    statistics.invalidated(provider, new MyTracker() {
+      @Override
+      public String toString() {
+        return "my tracker";
+      }
+    });
+    statistics.invalidated(provider, new MyTracker());
+    statistics.invalidated(provider, "dependency");
+    statistics.invalidated(provider, null);
+
+    Map<String, Long> expected = new HashMap<String, Long>();
+    expected.put("MY_KEY", 2L);
+    expected.put("my tracker", 1L);
+    expected.put(MyTracker.class.getName(), 1L);
+    expected.put(String.class.getName(), 1L);
+    expected.put("<none>", 1L);
+    assertEquals(expected, statistics.getEntries().get(0).getInvalidations());
+  }
+
+  private static CachedValuesStatistics.Entry findEntry(CachedValuesStatistics statistics, String provider) {
+    for (CachedValuesStatistics.Entry entry : statistics.getEntries()) {
+      if (entry.getProvider().equals(provider)) return entry;
+    }
+    return null;
+  }
+
+  private static class MyTracker implements ModificationTracker {
+    private long myCount;
+
+    @Override
+    public long getModificationCount() {
+      return myCount;
+    }
+  }
+
+  private static class MyProvider implements CachedValueProvider<String> {
+    private final MyTracker myTracker;
+
+    private MyProvider(MyTracker tracker) {
+      myTracker = tracker;
+    }
+
+    @Override
+    public Result<String> compute() {
+      return Result.create("value", myTracker);
+    }
+  }
+}
@@ -25,6 +25,8 @@ import com.intellij.openapi.extensions.Extensions;
 import com.intellij.openapi.util.JDOMUtil;
 import com.intellij.util.ArrayUtil;
 import gnu.trove.THashMap;
+import gnu.trove.TObjectIntHashMap;
+import gnu.trove.TObjectIntProcedure;
 import org.jdom.Attribute;
 import org.jdom.Element;
 import org.jetbrains.annotations.NonNls;
@@ -39,18 +41,30 @@ public class StorageData {
   @NonNls public static final String COMPONENT = "component";
   @NonNls public static final String NAME = "name";
 
-  final Map<String, Element> myComponentStates;
+  private final Map<String, Element> myComponentStates;
+  /**
+   * Tree hashes of the component states computed so far, so that a change of one component doesn't make {@link #getHash()} walk
+   * the states of all the others again. Every method changing a state must drop or update its hash, that's why the states are
+   * changed only through the methods of this class.
+   * <p/>
+   * Whether a state has changed is still decided by its tree hash, not by a modification counter of the component: an
+   * externalization session starts from the data as loaded from the file, so a component skipped because its counter didn't
+   * change would get its loaded state written back instead of the one saved last.
+   */
+  private final TObjectIntHashMap<String> myComponentHashes;
   protected final String myRootElementName;
   private Integer myHash;
 
   public StorageData(final String rootElementName) {
     myComponentStates = new THashMap<String, Element>();
+    myComponentHashes = new TObjectIntHashMap<String>();
     myRootElementName = rootElementName;
   }
 
   StorageData(StorageData storageData) {
     myRootElementName = storageData.myRootElementName;
     myComponentStates = new THashMap<String, Element>(storageData.myComponentStates);
+    myComponentHashes = new TObjectIntHashMap<String>(storageData.myComponentHashes);
   }
 
 
@@ -77,6 +91,7 @@ public class StorageData {
           }
 
           myComponentStates.put(name, element);
+          myComponentHashes.remove(name);
         }
       }
     }
@@ -117,17 +132,51 @@ public class StorageData {
     if (e != null) {
       assert e.getAttributeValue(NAME) != null : "No name attribute for component: " + name + " in " + this;
       e.removeAttribute(NAME);
+      myComponentHashes.remove(name);
     }
 
     return e;
   }
 
+  /**
+   * Keeps an empty state of the component, if it has none, so that the component is reset when the data is reloaded.
+   */
+  void addEmptyStateIfAbsent(@NotNull String componentName) {
+    if (myComponentStates.containsKey(componentName)) return;
+    Element emptyElement = new Element(COMPONENT);
+    emptyElement.setAttribute(NAME, componentName);
+    myComponentStates.put(componentName, emptyElement);
+    myComponentHashes.remove(componentName);
+    clearHash();
+  }
+
+  void retainStates(@NotNull Collection<String> componentNames) {
+    if (myComponentStates.keySet().retainAll(componentNames)) {
+      myComponentHashes.retainEntries(new TObjectIntProcedure<String>() {
+        @Override
+        public boolean execute(String componentName, int hash) {
+          return myComponentStates.containsKey(componentName);
+        }
+      });
+      clearHash();
+    }
+  }
+
+  @NotNull
+  Set<String> getComponentNames() {
+    return Collections.unmodifiableSet(myComponentStates.keySet());
+  }
+
   void removeState(final String componentName) {
     myComponentStates.remove(componentName);
+    myComponentHashes.remove(componentName);
     clearHash();
   }
 
-  void setState(@NotNull final String componentName, final Element element) {
+  /**
+   * @return  tree hash of the new state, kept for {@link #getHash()} so that the state isn't walked again
+   */
+  int setState(@NotNull final String componentName, final Element element) {
     element.setName(COMPONENT);
 
     //componentName should be first!
@@ -145,7 +194,24 @@ public class StorageData {
     }
 
     myComponentStates.put(componentName, element);
+    int hash = JDOMUtil.getTreeHash(element);
+    myComponentHashes.put(componentName, hash);
     clearHash();
+    return hash;
+  }
+
+  /**
+   * @return  tree hash of the component state, computed once after the state is loaded or changed
+   */
+  private int getComponentHash(@NotNull String componentName) {
+    if (myComponentHashes.containsKey(componentName)) {
+      return myComponentHashes.get(componentName);
+    }
+    Element element = myComponentStates.get(componentName);
+    if (element == null) return 0;
+    int hash = JDOMUtil.getTreeHash(element);
+    myComponentHashes.put(componentName, hash);
+    return hash;
   }
 
   @Override
@@ -165,7 +231,7 @@ public class StorageData {
 
     for (String name : myComponentStates.keySet()) {
       result = 31*result + name.hashCode();
-      result = 31*result + JDOMUtil.getTreeHash(myComponentStates.get(name));
+      result = 31*result + getComponentHash(name);
     }
 
     return result;
@@ -191,6 +257,8 @@ public class StorageData {
       // some configurations want to collapse path elements in writeExternal so make sure paths are expanded
       if (substitutor != null) {
         substitutor.expandPaths(e2);
+        storageData.myComponentHashes.remove(componentName);
+        storageData.clearHash();
       }
 
       if (!JDOMUtil.areElementsEqual(e1, e2)) {
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.module.impl;
+
+import com.intellij.openapi.util.Pair;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Collects durations of the module loading phases and of the slowest modules for the log.
+ */
+class ModuleLoadingTimeline {
+  private static final int SLOWEST_MODULES_TO_REPORT = 10;
+
+  private final long myStart = System.currentTimeMillis();
+  private long myPhaseStart = myStart;
+  private final List<Pair<String, Long>> myPhases = new ArrayList<Pair<String, Long>>();
+  private final List<Pair<String, Long>> myModules = new ArrayList<Pair<String, Long>>();
+
+  void phaseFinished(@NotNull String phase) {
+    long now = System.currentTimeMillis();
+    myPhases.add(Pair.create(phase, now - myPhaseStart));
+    myPhaseStart = now;
+  }
+
+  void moduleLoaded(@NotNull String moduleName, long millis) {
+    myModules.add(Pair.create(moduleName, millis));
+  }
+
+  @NotNull
+  String getReport() {
+    StringBuilder report = new StringBuilder();
+    report.append(myModules.size()).append(" module(s) loaded in ").append(myPhaseStart - myStart).append(" ms:");
+    for (Pair<String, Long> phase : myPhases) {
+      report.append("\n  ").append(phase.first).append(": ").append(phase.second).append(" ms");
+    }
+
+    List<Pair<String, Long>> slowest = new ArrayList<Pair<String, Long>>(myModules);
+    Collections.sort(slowest, new Comparator<Pair<String, Long>>() {
+      @Override
+      public int compare(Pair<String, Long> o1, Pair<String, Long> o2) {
+        return o2.second.compareTo(o1.second);
+      }
+    });
+    if (!slowest.isEmpty()) {
+      report.append("\n  slowest modules:");
+      for (Pair<String, Long> module : slowest.subList(0, Math.min(SLOWEST_MODULES_TO_REPORT, slowest.size()))) {
+        report.append(' ').append(module.first).append(" (").append(module.second).append(" ms)");
+      }
+    }
+    return report.toString();
+  }
+}
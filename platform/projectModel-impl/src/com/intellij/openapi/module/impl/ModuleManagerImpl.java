@@ -216,31 +216,24 @@ public abstract class ModuleManagerImpl extends ModuleManager implements Project
       final List<Module> modulesWithUnknownTypes = new ArrayList<Module>();
       List<ModuleLoadingErrorDescription> errors = new ArrayList<ModuleLoadingErrorDescription>();
 
-      for (final ModulePath modulePath : myModulePaths) {
-        try {
-          final Module module = moduleModel.loadModuleInternal(modulePath.getPath(), progressIndicator);
-          if (isUnknownModuleType(module)) {
-            modulesWithUnknownTypes.add(module);
-          }
-          final String groupPathString = modulePath.getModuleGroup();
-          if (groupPathString != null) {
-            final String[] groupPath = groupPathString.split(MODULE_GROUP_SEPARATOR);
-            moduleModel.setModuleGroupPath(module, groupPath); //model should be updated too
-          }
-          myFailedModulePaths.remove(modulePath);
-        }
-        catch (final IOException e) {
-          errors.add(ModuleLoadingErrorDescription.create(ProjectBundle.message("module.cannot.load.error", modulePath.getPath(), e.getMessage()),
-                                                       modulePath, this));
-        }
-        catch (final ModuleWithNameAlreadyExists moduleWithNameAlreadyExists) {
-          errors.add(ModuleLoadingErrorDescription.create(moduleWithNameAlreadyExists.getMessage(), modulePath, this));
+      boolean prepareConcurrently = myModulePaths.size() > 1 && isConcurrentLoadingEnabled();
+      ModuleLoadingTimeline timeline = prepareConcurrently ? new ModuleLoadingTimeline() : null;
+      try {
+        if (prepareConcurrently) {
+          prepareModuleFiles(progressIndicator);
+          timeline.phaseFinished("module files refreshed and read");
         }
-        catch (StateStorageException e) {
-          errors.add(ModuleLoadingErrorDescription.create(ProjectBundle.message("module.cannot.load.error", modulePath.getPath(), e.getMessage()),
-                                                       modulePath, this));
+        createModules(moduleModel, progressIndicator, !prepareConcurrently, timeline, modulesWithUnknownTypes, errors);
+      }
+      finally {
+        if (prepareConcurrently) {
+          discardPreparedModuleFiles();
         }
       }
+      if (timeline != null) {
+        timeline.phaseFinished("modules created");
+        LOG.info(timeline.getReport());
+      }
 
       fireErrors(errors);
 
@@ -248,6 +241,104 @@ public abstract class ModuleManagerImpl extends ModuleManager implements Project
     }
   }
 
+  private void createModules(@NotNull ModuleModelImpl moduleModel,
+                             @Nullable ProgressIndicator progressIndicator,
+                             boolean refreshModuleFiles,
+                             @Nullable ModuleLoadingTimeline timeline,
+                             @NotNull List<Module> modulesWithUnknownTypes,
+                             @NotNull List<ModuleLoadingErrorDescription> errors) {
+    for (final ModulePath modulePath : myModulePaths) {
+      long start = System.currentTimeMillis();
+      try {
+        final Module module = moduleModel.loadModuleInternal(modulePath.getPath(), progressIndicator, refreshModuleFiles);
+        if (timeline != null) {
+          timeline.moduleLoaded(module.getName(), System.currentTimeMillis() - start);
+        }
+        if (isUnknownModuleType(module)) {
+          modulesWithUnknownTypes.add(module);
+        }
+        final String groupPathString = modulePath.getModuleGroup();
+        if (groupPathString != null) {
+          final String[] groupPath = groupPathString.split(MODULE_GROUP_SEPARATOR);
+          moduleModel.setModuleGroupPath(module, groupPath); //model should be updated too
+        }
+        myFailedModulePaths.remove(modulePath);
+      }
+      catch (final IOException e) {
+        errors.add(ModuleLoadingErrorDescription.create(ProjectBundle.message("module.cannot.load.error", modulePath.getPath(), e.getMessage()),
+                                                     modulePath, this));
+      }
+      catch (final ModuleWithNameAlreadyExists moduleWithNameAlreadyExists) {
+        errors.add(ModuleLoadingErrorDescription.create(moduleWithNameAlreadyExists.getMessage(), modulePath, this));
+      }
+      catch (StateStorageException e) {
+        errors.add(ModuleLoadingErrorDescription.create(ProjectBundle.message("module.cannot.load.error", modulePath.getPath(), e.getMessage()),
+                                                     modulePath, this));
+      }
+    }
+  }
+
+  /**
+   * Refreshes all module files at once and lets {@link #prepareModuleFilesConcurrently(List, ProgressIndicator)} read them
+   * before the modules are created one by one.
+   */
+  private void prepareModuleFiles(@Nullable ProgressIndicator progressIndicator) {
+    final List<VirtualFile> files = new ArrayList<VirtualFile>(myModulePaths.size());
+    for (ModulePath modulePath : myModulePaths) {
+      VirtualFile file = StandardFileSystems.local().findFileByPath(resolveShortWindowsName(modulePath.getPath()));
+      if (file != null) {
+        files.add(file);
+      }
+    }
+
+    ApplicationManager.getApplication().invokeAndWait(new Runnable() {
+      @Override
+      public void run() {
+        for (VirtualFile file : files) {
+          file.refresh(false, false);
+        }
+      }
+    }, ModalityState.defaultModalityState());
+
+    List<VirtualFile> validFiles = new ArrayList<VirtualFile>(files.size());
+    for (VirtualFile file : files) {
+      if (file.isValid()) {
+        validFiles.add(file);
+      }
+    }
+    prepareModuleFilesConcurrently(validFiles, progressIndicator);
+  }
+
+  /**
+   * Whether module files should be refreshed at once and read concurrently before the modules are created, see
+   * {@link #prepareModuleFilesConcurrently(List, ProgressIndicator)}.
+   */
+  protected boolean isConcurrentLoadingEnabled() {
+    return false;
+  }
+
+  /**
+   * Reads and parses the module files in advance, so that creating the modules doesn't wait for the disk.
+   */
+  protected void prepareModuleFilesConcurrently(@NotNull List<VirtualFile> moduleFiles, @Nullable ProgressIndicator progressIndicator) {
+  }
+
+  /**
+   * Drops whatever {@link #prepareModuleFilesConcurrently(List, ProgressIndicator)} has kept for the files which haven't been loaded.
+   * Called when loading is over, even if it has failed.
+   */
+  protected void discardPreparedModuleFiles() {
+  }
+
+  private static String resolveShortWindowsName(String filePath) {
+    try {
+      return FileUtil.resolveShortWindowsName(filePath);
+    }
+    catch (IOException ignored) {
+      return filePath;
+    }
+  }
+
   protected boolean isUnknownModuleType(Module module) {
     return false;
   }
@@ -665,15 +756,6 @@ public abstract class ModuleManagerImpl extends ModuleManager implements Project
       return module;
     }
 
-    private String resolveShortWindowsName(String filePath) {
-      try {
-        return FileUtil.resolveShortWindowsName(filePath);
-      }
-      catch (IOException ignored) {
-        return filePath;
-      }
-    }
-
     @Nullable
     private ModuleEx getModuleByFilePath(String filePath) {
       final Collection<Module> modules = myPathToModule.values();
@@ -690,14 +772,14 @@ public abstract class ModuleManagerImpl extends ModuleManager implements Project
     public Module loadModule(@NotNull String filePath) throws InvalidDataException, IOException, ModuleWithNameAlreadyExists {
       assertWritable();
       try {
-        return loadModuleInternal(filePath, null);
+        return loadModuleInternal(filePath, null, true);
       }
       catch (StateStorageException e) {
         throw new IOException(ProjectBundle.message("module.corrupted.file.error", FileUtil.toSystemDependentName(filePath), e.getMessage()));
       }
     }
 
-    private Module loadModuleInternal(String filePath, @Nullable ProgressIndicator progressIndicator)
+    private Module loadModuleInternal(String filePath, @Nullable ProgressIndicator progressIndicator, boolean refreshModuleFile)
       throws ModuleWithNameAlreadyExists, IOException, StateStorageException {
 
       final VirtualFile moduleFile = StandardFileSystems.local().findFileByPath(resolveShortWindowsName(filePath));
@@ -721,12 +803,14 @@ public abstract class ModuleManagerImpl extends ModuleManager implements Project
 
       ModuleEx module = getModuleByFilePath(moduleFile.getPath());
       if (module == null) {
-        ApplicationManager.getApplication().invokeAndWait(new Runnable() {
-          @Override
-          public void run() {
-            moduleFile.refresh(false, false);
-          }
-        }, ModalityState.defaultModalityState());
+        if (refreshModuleFile) {
+          ApplicationManager.getApplication().invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+              moduleFile.refresh(false, false);
+            }
+          }, ModalityState.defaultModalityState());
+        }
         module = createAndLoadModule(moduleFile.getPath());
         module.loadModuleComponents();
         initModule(module);
@@ -32,11 +32,12 @@ import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.openapi.vfs.VirtualFileVisitor;
 import com.intellij.openapi.vfs.VirtualFileWithId;
 import com.intellij.util.ArrayUtil;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.MultiMap;
-import com.intellij.util.containers.Stack;
 import gnu.trove.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -44,9 +45,17 @@ import org.jetbrains.annotations.TestOnly;
 
 import java.util.*;
 
+/**
+ * Keeps information only for the roots of the project: content, exclude, source and library roots, and the roots order entries
+ * are attached to. A directory gets the information of the nearest root above it (with the package name derived from the path to
+ * that root), so the index takes memory proportional to the number of roots, and rebuilding it on roots change doesn't walk
+ * the directories under them.
+ */
 public abstract class DirectoryIndexImpl extends DirectoryIndex {
   private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.roots.impl.DirectoryIndexImpl");
 
+  private static final int ROOT_CACHE_SIZE = 4096; // must be a power of two
+
   protected final Project myProject;
   protected final DirectoryIndexExcludePolicy[] myExcludePolicies;
   protected volatile IndexState myState;
@@ -79,34 +88,41 @@ public abstract class DirectoryIndexImpl extends DirectoryIndex {
     assert !myDisposed;
 
     final IndexState oldState = myState;
-    myState = myState.copy();
-
-    myState.doInitialize(reverseAllSets);
-
-    int[] keySet = myState.myDirToInfoMap.keys();
-    assert keySet.length == oldState.myDirToInfoMap.keys().length;
-    for (int file : keySet) {
-      DirectoryInfo info1 = myState.myDirToInfoMap.get(file);
-      DirectoryInfo info2 = oldState.myDirToInfoMap.get(file);
-      assert info1.equals(info2);
-      info1.assertConsistency();
-    }
-
-    assert myState.myPackageNameToDirsMap.size() == oldState.myPackageNameToDirsMap.size();
-    myState.myPackageNameToDirsMap.forEachEntry(new TObjectIntProcedure<String>() {
-      @Override
-      public boolean execute(String packageName, int i) {
-        int[] dirs = oldState.getDirsForPackage(packageName);
-        int[] dirs1 = myState.getDirsForPackage(packageName);
+    final IndexState newState = new IndexState();
+    newState.doInitialize(reverseAllSets);
+    myState = newState;
 
-        TIntHashSet set1 = new TIntHashSet();
-        set1.addAll(dirs);
-        TIntHashSet set2 = new TIntHashSet();
-        set2.addAll(dirs1);
-        assert set1.equals(set2);
-        return true;
+    List<VirtualFile> roots = new ArrayList<VirtualFile>();
+    for (IndexState state : new IndexState[]{oldState, newState}) {
+      for (Object root : state.myRoots.getValues()) {
+        roots.add(((Root)root).myFile);
       }
-    });
+    }
+    for (VirtualFile root : roots) {
+      if (!root.isValid()) continue;
+      VfsUtilCore.visitChildrenRecursively(root, new VirtualFileVisitor() {
+        @Override
+        public boolean visitFile(@NotNull VirtualFile file) {
+          if (!file.isDirectory() && oldState.myRoots.get(getId(file)) == null && newState.myRoots.get(getId(file)) == null) {
+            return false;
+          }
+          DirectoryInfo info1 = oldState.getInfo(file);
+          DirectoryInfo info2 = newState.getInfo(file);
+          assert Comparing.equal(info1, info2) : file + ": " + info1 + " vs " + info2;
+          if (info2 != null) {
+            info2.assertConsistency();
+          }
+          String packageName = newState.getPackageName(file);
+          assert Comparing.equal(oldState.getPackageName(file), packageName) : file;
+          if (packageName != null) {
+            Set<VirtualFile> dirs1 = new HashSet<VirtualFile>(oldState.getDirsForPackage(packageName));
+            Set<VirtualFile> dirs2 = new HashSet<VirtualFile>(newState.getDirsForPackage(packageName));
+            assert dirs1.equals(dirs2) : packageName + ": " + dirs1 + " vs " + dirs2;
+          }
+          return true;
+        }
+      });
+    }
   }
 
   @Override
@@ -128,7 +144,7 @@ public abstract class DirectoryIndexImpl extends DirectoryIndex {
     myInitialized = true;
     long l = System.currentTimeMillis();
     doInitialize();
-    LOG.info("Directory index initialized in " + (System.currentTimeMillis() - l) + " ms, indexed " + myState.myDirToInfoMap.size() + " directories");
+    LOG.info("Directory index initialized in " + (System.currentTimeMillis() - l) + " ms, indexed " + myState.myRoots.size() + " roots");
   }
 
   protected void doInitialize() {
@@ -137,6 +153,18 @@ public abstract class DirectoryIndexImpl extends DirectoryIndex {
     myState = newState;
   }
 
+  /**
+   * Rebuilds the index after a change of roots. Roles and information of the roots are computed again, but package directories
+   * and lookups of the directories under the roots which are not affected by the change are taken from the current index.
+   */
+  protected void updateRoots() {
+    IndexState oldState = myState;
+    IndexState newState = new IndexState();
+    newState.doInitialize(false);
+    newState.reuseFrom(oldState);
+    myState = newState;
+  }
+
   private boolean isExcludeRootForModule(@NotNull Module module, VirtualFile excludeRoot) {
     for (DirectoryIndexExcludePolicy policy : myExcludePolicies) {
       if (policy.isExcludeRootForModule(module, excludeRoot)) return true;
@@ -164,7 +192,7 @@ public abstract class DirectoryIndexImpl extends DirectoryIndex {
     dispatchPendingEvents();
 
     if (!(dir instanceof VirtualFileWithId)) return null;
-    return myState.myDirToInfoMap.get(getId(dir));
+    return myState.getInfo(dir);
   }
 
   @Override
@@ -177,7 +205,7 @@ public abstract class DirectoryIndexImpl extends DirectoryIndex {
   public String getPackageName(@NotNull VirtualFile dir) {
     checkAvailability();
     if (!(dir instanceof VirtualFileWithId)) return null;
-    return myState.myDirToPackageName.get(getId(dir));
+    return myState.getPackageName(dir);
   }
 
   protected void dispatchPendingEvents() {
@@ -198,325 +226,643 @@ public abstract class DirectoryIndexImpl extends DirectoryIndex {
     return parentPackageName.isEmpty() ? subdirName : parentPackageName + "." + subdirName;
   }
 
-  protected class IndexState {
-    final TIntObjectHashMap<Set<String>> myExcludeRootsMap = new TIntObjectHashMap<Set<String>>();
-    final TIntHashSet myProjectExcludeRoots = new TIntHashSet();
-    final TIntObjectHashMap<DirectoryInfo> myDirToInfoMap = new TIntObjectHashMap<DirectoryInfo>();
-    final TObjectIntHashMap<String> myPackageNameToDirsMap = new TObjectIntHashMap<String>();
-    final List<int[]> multiDirPackages = new ArrayList<int[]>(Arrays.asList(new int[]{-1}));
-    final TIntObjectHashMap<String> myDirToPackageName = new TIntObjectHashMap<String>();
+  @Nullable
+  private static VirtualFile findRootFile(@Nullable VirtualFile file, @NotNull String url) {
+    // pointers may be not updated yet when the index is rebuilt on file creation
+    if (file != null && file.isValid()) return file;
+    return VirtualFileManager.getInstance().findFileByUrl(url);
+  }
 
-    public IndexState() { }
+  /**
+   * Source of order entries: the entries are added to all directories under {@link #myRoot} until the first one
+   * {@link #accepts(Root) not accepting} them.
+   */
+  private static class OrderEntrySource {
+    private enum Kind {MODULE_SOURCES, DEPENDENCY, LIBRARY_CLASSES, LIBRARY_SOURCES}
+
+    private final Kind myKind;
+    private final VirtualFile myRoot;
+    private final Module myModule;
+    private final OrderEntry[] myEntries;
+
+    private OrderEntrySource(@NotNull Kind kind, @NotNull VirtualFile root, @Nullable Module module, @NotNull OrderEntry[] entries) {
+      myKind = kind;
+      myRoot = root;
+      myModule = module;
+      myEntries = entries;
+    }
 
-    @Nullable
-    public int[] getDirsForPackage(String packageName) {
-      int i = myPackageNameToDirsMap.get(packageName);
-      return i == 0 ? null : i > 0 ? new int[]{i} : multiDirPackages.get(-i);
+    private boolean accepts(@NotNull Root root) {
+      switch (myKind) {
+        case MODULE_SOURCES:
+          return myModule.equals(root.myModule) && root.myModuleSourceRoot != null;
+        case DEPENDENCY:
+          return root.isInProject();
+        case LIBRARY_CLASSES:
+          return myRoot.equals(root.myLibraryClassRoot) && root.myModuleSourceRoot == null;
+        case LIBRARY_SOURCES:
+          return myRoot.equals(root.myLibrarySourceRoot) && root.myModuleSourceRoot == null && root.myLibraryClassRoot == null;
+      }
+      return false;
     }
+  }
 
-    private void removeDirFromPackage(@NotNull String packageName, int dirId) {
-      int i = myPackageNameToDirsMap.get(packageName);
-      assert i != 0;
-      int[] oldPackageDirs = i > 0 ? new int[]{i} : multiDirPackages.get(-i);
-      int index = ArrayUtil.find(oldPackageDirs, dirId);
-      assert index != -1;
-      oldPackageDirs = ArrayUtil.remove(oldPackageDirs, index);
+  private static class SourceFolderInfo {
+    private final Module myModule;
+    private final String myPackagePrefix;
+    private final boolean myTestSource;
 
-      if (oldPackageDirs.length == 0) {
-        myPackageNameToDirsMap.remove(packageName);
-        if (i < 0) {
-          multiDirPackages.set(-i, null);
-        }
-      }
-      else {
-        assert i < 0;
-        multiDirPackages.set(-i, oldPackageDirs);
-      }
+    private SourceFolderInfo(@NotNull Module module, @NotNull String packagePrefix, boolean testSource) {
+      myModule = module;
+      myPackagePrefix = packagePrefix;
+      myTestSource = testSource;
     }
+  }
 
-    private void addDirToPackage(@NotNull String packageName, int dirId) {
-      int i = myPackageNameToDirsMap.get(packageName);
+  /**
+   * A file where the information of the index may change. Roles of the root are collected first, then the information is
+   * {@link IndexState#computeRoot(Root, Map, Map) computed} from the nearest root above and the roles; after that the root isn't
+   * modified anymore.
+   */
+  private static class Root {
+    private final VirtualFile myFile;
+
+    private Module myContentRootOf;
+    private List<VirtualFile> myExcludedFrom; // content roots (or the file itself) whose content roots above don't contain the file
+    private List<SourceFolderInfo> mySourceFolders;
+    private boolean myIsLibrarySourceRoot;
+    private boolean myIsLibraryClassRoot;
+    private List<OrderEntrySource> myOrderEntrySources;
+
+    private boolean myComputed;
+    private Module myModule;
+    private VirtualFile myContentRoot;
+    private VirtualFile myModuleSourceRoot;
+    private boolean myTestSource;
+    private String myModulePackage;
+    private VirtualFile myLibrarySourceRoot;
+    private String myLibrarySourcePackage;
+    private VirtualFile myLibraryClassRoot;
+    private String myLibraryClassPackage;
+    private List<OrderEntrySource> myActiveSources = Collections.emptyList();
+    private DirectoryInfo myInfo;
+    private String myPackageName;
+
+    private Root(@NotNull VirtualFile file) {
+      myFile = file;
+    }
 
-      if (i < 0) {
-        // add another dir to the list of existing dirs
-        int[] ids = multiDirPackages.get(-i);
-        int[] newIds = ArrayUtil.append(ids, dirId);
-        multiDirPackages.set(-i, newIds);
-      }
-      else if (i > 0) {
-        // two dirs instead of one
-        int newIndex = multiDirPackages.size();
-        multiDirPackages.add(new int[]{i, dirId});
-        myPackageNameToDirsMap.put(packageName, -newIndex);
-      }
-      else {
-        // create new dir mapping
-        myPackageNameToDirsMap.put(packageName, dirId);
-      }
+    private boolean isInProject() {
+      return myModule != null || myLibraryClassRoot != null || myLibrarySourceRoot != null;
     }
 
-    @NotNull
-    private DirectoryInfo getOrCreateDirInfo(int dirId) {
-      DirectoryInfo info = myDirToInfoMap.get(dirId);
-      if (info == null) {
-        info = new DirectoryInfo(null, null,null,null,(byte)0,null);
-        myDirToInfoMap.put(dirId, info);
+    private boolean isExcludedFrom(@Nullable VirtualFile contentRoot) {
+      if (myExcludedFrom == null || contentRoot == null) return false;
+      for (VirtualFile file : myExcludedFrom) {
+        if (VfsUtilCore.isAncestor(contentRoot, file, false)) return true;
       }
-      return info;
+      return false;
     }
 
-    private DirectoryInfo storeInfo(DirectoryInfo info, int dirId) {
-      myDirToInfoMap.put(dirId, info);
-      return info;
+    private void addExcludedFrom(@NotNull VirtualFile file) {
+      if (myExcludedFrom == null) myExcludedFrom = new ArrayList<VirtualFile>(1);
+      myExcludedFrom.add(file);
     }
 
-    void fillMapWithModuleContent(@NotNull VirtualFile root,
-                                  final Module module,
-                                  final VirtualFile contentRoot,
-                                  @Nullable final ProgressIndicator progress) {
-      final int contentRootId = contentRoot == null ? 0 : getId(contentRoot);
-      VfsUtilCore.visitChildrenRecursively(root, new DirectoryVisitor() {
-        @Override
-        protected DirectoryInfo updateInfo(@NotNull VirtualFile file) {
-          if (progress != null) {
-            progress.checkCanceled();
-          }
-          if (isExcluded(contentRootId, file)) return null;
-          if (isIgnored(file)) return null;
+    private void addSourceFolder(@NotNull SourceFolderInfo info) {
+      if (mySourceFolders == null) mySourceFolders = new ArrayList<SourceFolderInfo>(1);
+      mySourceFolders.add(info);
+    }
 
-          DirectoryInfo info = getOrCreateDirInfo(getId(file));
+    private void addOrderEntrySource(@NotNull OrderEntrySource source) {
+      if (myOrderEntrySources == null) myOrderEntrySources = new ArrayList<OrderEntrySource>(1);
+      myOrderEntrySources.add(source);
+    }
 
-          if (info.getModule() != null) { // module contents overlap
-            VirtualFile dir = file.getParent();
-            DirectoryInfo parentInfo = dir == null ? null : myDirToInfoMap.get(getId(dir));
-            if (parentInfo == null || !info.getModule().equals(parentInfo.getModule())) return null;
-          }
+    /**
+     * @param parent  nearest root above the file, <code>null</code> if there is none or an ignored directory is between them
+     * @param names   names of the directories from the file (inclusive) up to the parent (exclusive)
+     */
+    private void inheritFrom(@Nullable Root parent, @NotNull List<String> names) {
+      if (parent == null) return;
+      myModule = parent.myModule;
+      myContentRoot = parent.myContentRoot;
+      myModuleSourceRoot = parent.myModuleSourceRoot;
+      myTestSource = parent.myTestSource;
+      myModulePackage = derivePackage(parent.myModulePackage, names);
+      myLibrarySourceRoot = parent.myLibrarySourceRoot;
+      myLibrarySourcePackage = derivePackage(parent.myLibrarySourcePackage, names);
+      myLibraryClassRoot = parent.myLibraryClassRoot;
+      myLibraryClassPackage = derivePackage(parent.myLibraryClassPackage, names);
+      myActiveSources = parent.myActiveSources;
+    }
 
-          return info;
+    private void applyRoles() {
+      if (myFile.isDirectory()) {
+        Module parentModule = myModule;
+        if (myContentRootOf != null) {
+          myModule = myContentRootOf;
+          myContentRoot = myFile;
+        }
+        if (isExcludedFrom(myContentRoot)) {
+          myModule = null;
+          myContentRoot = null;
+        }
+        if (myModule == null || !myModule.equals(parentModule)) {
+          myModuleSourceRoot = null;
+          myTestSource = false;
+          myModulePackage = null;
         }
+        if (mySourceFolders != null && myModule != null) {
+          for (SourceFolderInfo folder : mySourceFolders) {
+            if (folder.myModule.equals(myModule)) {
+              myModuleSourceRoot = myFile;
+              myTestSource = folder.myTestSource;
+              myModulePackage = folder.myPackagePrefix;
+              break;
+            }
+          }
+        }
+      }
+      if (myIsLibrarySourceRoot) {
+        myLibrarySourceRoot = myFile;
+        myLibrarySourcePackage = "";
+      }
+      if (myIsLibraryClassRoot) {
+        myLibraryClassRoot = myFile;
+        myLibraryClassPackage = "";
+      }
 
-        @Override
-        protected void afterChildrenVisited(@NotNull VirtualFile file, @NotNull DirectoryInfo info) {
-          info = info.withModule(module).withContentRoot(contentRoot);
-          storeInfo(info, getId(file));
+      if (!myFile.isDirectory()) {
+        myActiveSources = Collections.emptyList();
+        return;
+      }
+      List<OrderEntrySource> active = null;
+      for (OrderEntrySource source : myActiveSources) {
+        if (!source.accepts(this)) {
+          active = new ArrayList<OrderEntrySource>(myActiveSources.size());
+          break;
         }
-      });
+      }
+      if (active != null) {
+        for (OrderEntrySource source : myActiveSources) {
+          if (source.accepts(this)) active.add(source);
+        }
+      }
+      if (myOrderEntrySources != null) {
+        for (OrderEntrySource source : myOrderEntrySources) {
+          if (source.accepts(this)) {
+            if (active == null) active = new ArrayList<OrderEntrySource>(myActiveSources);
+            active.add(source);
+          }
+        }
+      }
+      if (active != null) {
+        myActiveSources = active.isEmpty() ? Collections.<OrderEntrySource>emptyList() : active;
+      }
     }
 
-    private abstract class DirectoryVisitor extends VirtualFileVisitor {
-      private final Stack<DirectoryInfo> myDirectoryInfoStack = new Stack<DirectoryInfo>();
-
-      @Override
-      public boolean visitFile(@NotNull VirtualFile file) {
-        if (!file.isDirectory()) return false;
-        DirectoryInfo info = updateInfo(file);
-        if (info != null) {
-          myDirectoryInfoStack.push(info);
-          return true;
+    @Nullable
+    private DirectoryInfo createInfo() {
+      if (!isInProject()) return null;
+
+      OrderEntry[] entries = null;
+      if (!myActiveSources.isEmpty()) {
+        Set<OrderEntry> set = new LinkedHashSet<OrderEntry>();
+        for (OrderEntrySource source : myActiveSources) {
+          ContainerUtil.addAll(set, source.myEntries);
         }
-        return false;
+        entries = toSortedArray(set);
       }
+      VirtualFile sourceRoot = myModuleSourceRoot != null ? myModuleSourceRoot : myLibrarySourceRoot;
+      return new DirectoryInfo(myModule, myContentRoot, sourceRoot, myLibraryClassRoot, (byte)0, entries)
+        .withInModuleSource(myModuleSourceRoot != null)
+        .withTestSource(myTestSource)
+        .withInLibrarySource(myLibrarySourceRoot != null);
+    }
 
-      @Override
-      public void afterChildrenVisited(@NotNull VirtualFile file) {
-        afterChildrenVisited(file, myDirectoryInfoStack.pop());
+    @Nullable
+    private static String derivePackage(@Nullable String packageName, @NotNull List<String> names) {
+      for (int i = names.size() - 1; i >= 0 && packageName != null; i--) {
+        packageName = getPackageNameForSubdir(packageName, names.get(i));
       }
+      return packageName;
+    }
+  }
 
-      @Nullable
-      protected abstract DirectoryInfo updateInfo(@NotNull VirtualFile file);
+  private static class CachedRoot {
+    private final VirtualFile myDir;
+    private final Root myRoot;
 
-      protected void afterChildrenVisited(@NotNull VirtualFile file, @NotNull DirectoryInfo info) {}
-    }
-    
-    private boolean isExcluded(int root, @NotNull VirtualFile dir) {
-      if (root == 0) return false;
-      Set<String> excludes = myExcludeRootsMap.get(root);
-      return excludes != null && excludes.contains(dir.getUrl());
+    private CachedRoot(@NotNull VirtualFile dir, @Nullable Root root) {
+      myDir = dir;
+      myRoot = root;
     }
+  }
 
-    private void initModuleContents(@NotNull Module module, boolean reverseAllSets, @NotNull ProgressIndicator progress) {
-      progress.checkCanceled();
-      progress.setText2(ProjectBundle.message("project.index.processing.module.content.progress", module.getName()));
+  /**
+   * Directories which get their package from a root, by package name: the root itself and the directories under it down to
+   * the nested roots.
+   */
+  private static class PackageDirs {
+    private final TreeMap<String, List<VirtualFile>> myDirs = new TreeMap<String, List<VirtualFile>>();
 
-      ModuleRootManager rootManager = ModuleRootManager.getInstance(module);
-      VirtualFile[] contentRoots = rootManager.getContentRoots();
-      if (reverseAllSets) {
-        contentRoots = ArrayUtil.reverseArray(contentRoots);
+    @NotNull
+    private List<VirtualFile> get(@NotNull String packageName) {
+      List<VirtualFile> dirs = myDirs.get(packageName);
+      return dirs == null ? Collections.<VirtualFile>emptyList() : dirs;
+    }
+
+    private void add(@NotNull String packageName, @NotNull VirtualFile dir) {
+      List<VirtualFile> dirs = myDirs.get(packageName);
+      if (dirs == null) {
+        dirs = new ArrayList<VirtualFile>(1);
+        myDirs.put(packageName, dirs);
       }
+      dirs.add(dir);
+    }
 
-      for (final VirtualFile contentRoot : contentRoots) {
-        fillMapWithModuleContent(contentRoot, module, contentRoot, progress);
+    /**
+     * Removes the directory of the given package together with the directories under it, and the ones which are not valid anymore.
+     */
+    private void remove(@NotNull String packageName, @NotNull VirtualFile dir) {
+      // directories under the given one have packages starting with its package and a dot
+      Map<String, List<VirtualFile>> candidates = packageName.isEmpty() ? myDirs : myDirs.subMap(packageName, true, packageName + ".\uffff", true);
+      for (Iterator<Map.Entry<String, List<VirtualFile>>> iterator = candidates.entrySet().iterator(); iterator.hasNext(); ) {
+        Map.Entry<String, List<VirtualFile>> entry = iterator.next();
+        if (!packageName.isEmpty() && !entry.getKey().equals(packageName) && !entry.getKey().startsWith(packageName + ".")) continue;
+
+        List<VirtualFile> dirs = entry.getValue();
+        for (Iterator<VirtualFile> dirIterator = dirs.iterator(); dirIterator.hasNext(); ) {
+          VirtualFile file = dirIterator.next();
+          if (!file.isValid() || VfsUtilCore.isAncestor(dir, file, false)) {
+            dirIterator.remove();
+          }
+        }
+        if (dirs.isEmpty()) {
+          iterator.remove();
+        }
       }
     }
+  }
 
-    private void initModuleSources(@NotNull Module module, boolean reverseAllSets, @NotNull ProgressIndicator progress) {
-      progress.checkCanceled();
-      progress.setText2(ProjectBundle.message("project.index.processing.module.sources.progress", module.getName()));
+  protected class IndexState {
+    final TIntObjectHashMap<Root> myRoots;
+    final TIntHashSet myProjectExcludeRoots;
+    /**
+     * Urls of the configured content, exclude and source roots and of all their ancestors, to find out if a newly created directory
+     * affects the index.
+     */
+    final Set<String> myRootUrls;
+    private Map<String, List<Root>> myRootsByPackage = Collections.emptyMap();
+
+    private final CachedRoot[] myRootCache = new CachedRoot[ROOT_CACHE_SIZE];
+    /**
+     * Package directories of the roots by root file id, built on the first package query which may find something under the root.
+     */
+    private final TIntObjectHashMap<PackageDirs> myPackageDirs = new TIntObjectHashMap<PackageDirs>();
+
+    public IndexState() {
+      this(new TIntObjectHashMap<Root>(), new TIntHashSet(), new THashSet<String>());
+    }
 
-      ContentEntry[] contentEntries = getContentEntries(module);
+    private IndexState(@NotNull TIntObjectHashMap<Root> roots, @NotNull TIntHashSet projectExcludeRoots, @NotNull Set<String> rootUrls) {
+      myRoots = roots;
+      myProjectExcludeRoots = projectExcludeRoots;
+      myRootUrls = rootUrls;
+    }
 
-      if (reverseAllSets) {
-        contentEntries = ArrayUtil.reverseArray(contentEntries);
+    /**
+     * @return  the index where the given newly created directory is excluded from all content roots above it
+     */
+    @NotNull
+    IndexState withExcludeRoot(@NotNull VirtualFile dir) {
+      if (myRoots.containsKey(getId(dir))) return this; // computed roots are shared between states and never modified
+
+      IndexState state = new IndexState(myRoots.clone(), myProjectExcludeRoots, myRootUrls);
+      Root root = state.getOrCreateRoot(dir);
+      root.addExcludedFrom(dir);
+      state.computeRoot(root, new THashMap<DirectoryInfo, DirectoryInfo>(), createEntriesInterner());
+      state.myRootsByPackage = myRootsByPackage; // an excluded directory doesn't belong to any package
+      state.reuseFrom(this);
+      return state;
+    }
+
+    /**
+     * Takes the package directories and the cached lookups from the index before a change of roots, for the roots which have
+     * the same package and the same nested roots in both indices.
+     */
+    void reuseFrom(@NotNull IndexState oldState) {
+      TIntHashSet affected = new TIntHashSet();
+      collectParentsOfChangedRoots(oldState, affected);
+      oldState.collectParentsOfChangedRoots(this, affected);
+
+      synchronized (oldState.myPackageDirs) {
+        for (TIntObjectIterator<PackageDirs> iterator = oldState.myPackageDirs.iterator(); iterator.hasNext(); ) {
+          iterator.advance();
+          int id = iterator.key();
+          Root root = myRoots.get(id);
+          if (root != null && !affected.contains(id) && Comparing.equal(root.myPackageName, oldState.myRoots.get(id).myPackageName)) {
+            myPackageDirs.put(id, iterator.value());
+          }
+        }
       }
 
-      for (ContentEntry contentEntry : contentEntries) {
-        SourceFolder[] sourceFolders = contentEntry.getSourceFolders();
-        if (reverseAllSets) {
-          sourceFolders = ArrayUtil.reverseArray(sourceFolders);
+      for (int i = 0; i < ROOT_CACHE_SIZE; i++) {
+        CachedRoot cached = oldState.myRootCache[i];
+        if (cached == null || cached.myRoot == null) continue;
+        int id = getId(cached.myRoot.myFile);
+        Root root = myRoots.get(id);
+        if (root != null && !affected.contains(id)) {
+          myRootCache[i] = new CachedRoot(cached.myDir, root);
         }
-        for (SourceFolder sourceFolder : sourceFolders) {
-          VirtualFile dir = sourceFolder.getFile();
-          if (dir != null) {
-            fillMapWithModuleSource(dir, module, sourceFolder.getPackagePrefix(), dir, sourceFolder.isTestSource(), progress);
+      }
+    }
+
+    /**
+     * Adds the nearest roots (in both indices) above the roots of this index which the other one doesn't have.
+     */
+    private void collectParentsOfChangedRoots(@NotNull IndexState other, @NotNull TIntHashSet result) {
+      for (Object value : myRoots.getValues()) {
+        VirtualFile file = ((Root)value).myFile;
+        if (other.myRoots.containsKey(getId(file))) continue;
+
+        boolean foundHere = false;
+        boolean foundInOther = false;
+        for (VirtualFile f = file.getParent(); f != null && !(foundHere && foundInOther); f = f.getParent()) {
+          int id = getId(f);
+          if (!foundHere && myRoots.containsKey(id)) {
+            foundHere = true;
+            result.add(id);
+          }
+          if (!foundInOther && other.myRoots.containsKey(id)) {
+            foundInOther = true;
+            result.add(id);
           }
         }
       }
     }
 
-    protected void fillMapWithModuleSource(@NotNull final VirtualFile dir,
-                                           @NotNull final Module module,
-                                           @NotNull final String packageName,
-                                           @NotNull final VirtualFile sourceRoot,
-                                           final boolean isTestSource,
-                                           @Nullable final ProgressIndicator progress) {
-      VfsUtilCore.visitChildrenRecursively(dir, new DirectoryVisitor() {
-        private final Stack<String> myPackages = new Stack<String>();
+    boolean isRootOrRootAncestor(@NotNull VirtualFile dir) {
+      return myRootUrls.contains(dir.getUrl());
+    }
 
-        @Override
-        protected DirectoryInfo updateInfo(@NotNull VirtualFile file) {
-          if (progress != null) {
-            progress.checkCanceled();
-          }
-          int id = getId(file);
-          DirectoryInfo info = myDirToInfoMap.get(id);
-          if (info == null) return null;
-          if (!module.equals(info.getModule())) return null;
-
-          if (info.isInModuleSource()) { // module sources overlap
-            String definedPackage = myDirToPackageName.get(id);
-            if (definedPackage != null && definedPackage.isEmpty()) return null; // another source root starts here
-          }
+    /**
+     * @return  true if the given directory is a root or contains one
+     */
+    boolean containsRoots(@NotNull VirtualFile dir) {
+      for (Object root : myRoots.getValues()) {
+        if (VfsUtilCore.isAncestor(dir, ((Root)root).myFile, false)) return true;
+      }
+      return false;
+    }
 
-          info = info.withInModuleSource(true)
-          .withTestSource(isTestSource)
-          .withSourceRoot(sourceRoot);
-          storeInfo(info, id);
+    /**
+     * Adds a directory created or moved under the roots, together with the directories under it, to the package directories
+     * which are built already.
+     */
+    void dirAdded(@NotNull VirtualFile dir) {
+      Root root = findRoot(dir);
+      if (root == null || root.myPackageName == null) return;
+
+      PackageDirs dirs;
+      synchronized (myPackageDirs) {
+        dirs = myPackageDirs.get(getId(root.myFile));
+      }
+      String packageName = getPackageName(dir);
+      if (dirs != null && packageName != null) {
+        synchronized (dirs) {
+          dirs.remove(packageName, dir); // the package may have been queried after the directory appeared
+          collectPackageDirs(dir, packageName, dirs, false);
+        }
+      }
+    }
 
-          String currentPackage = myPackages.isEmpty() ? packageName : getPackageNameForSubdir(myPackages.peek(), file.getName());
-          myPackages.push(currentPackage);
-          setPackageName(id, currentPackage);
-          return info;
+    /**
+     * Forgets a directory deleted or moved from the given parent, and the directories under it.
+     *
+     * @param name  name of the directory in the parent
+     */
+    void dirRemoved(@NotNull VirtualFile parent, @NotNull String name, @NotNull VirtualFile dir) {
+      for (int i = 0; i < ROOT_CACHE_SIZE; i++) {
+        CachedRoot cached = myRootCache[i];
+        if (cached != null && (!cached.myDir.isValid() || VfsUtilCore.isAncestor(dir, cached.myDir, false))) {
+          myRootCache[i] = null;
         }
+      }
 
-        @Override
-        protected void afterChildrenVisited(@NotNull VirtualFile file, @NotNull DirectoryInfo info) {
-          super.afterChildrenVisited(file, info);
-          myPackages.pop();
+      Root root = findRoot(parent);
+      if (root == null || root.myPackageName == null) return;
+
+      PackageDirs dirs;
+      synchronized (myPackageDirs) {
+        dirs = myPackageDirs.get(getId(root.myFile));
+      }
+      String packageName = getPackageNameForSubdir(getPackageName(parent), name);
+      if (dirs != null && packageName != null) {
+        synchronized (dirs) {
+          dirs.remove(packageName, dir);
         }
-      });
+      }
     }
 
-    private void initLibrarySources(Module module, ProgressIndicator progress) {
-      progress.checkCanceled();
-      progress.setText2(ProjectBundle.message("project.index.processing.library.sources.progress", module.getName()));
+    @Nullable
+    DirectoryInfo getInfo(@NotNull VirtualFile dir) {
+      Root root = findRoot(dir);
+      return root == null ? null : root.myInfo;
+    }
 
-      for (OrderEntry orderEntry : getOrderEntries(module)) {
-        if (orderEntry instanceof LibraryOrSdkOrderEntry) {
-          VirtualFile[] sourceRoots = ((LibraryOrSdkOrderEntry)orderEntry).getRootFiles(OrderRootType.SOURCES);
-          for (final VirtualFile sourceRoot : sourceRoots) {
-            fillMapWithLibrarySources(sourceRoot, "", sourceRoot, progress);
-          }
+    @Nullable
+    String getPackageName(@NotNull VirtualFile dir) {
+      Root root = findRoot(dir);
+      if (root == null || root.myPackageName == null) return null;
+
+      List<String> names = null;
+      int rootId = getId(root.myFile);
+      for (VirtualFile f = dir; getId(f) != rootId; f = f.getParent()) {
+        if (names == null) names = new ArrayList<String>();
+        names.add(f.getName());
+      }
+      return names == null ? root.myPackageName : Root.derivePackage(root.myPackageName, names);
+    }
+
+    /**
+     * @return  the nearest root at or above the given file, <code>null</code> if there is none or there is an ignored directory
+     *          between them
+     */
+    @Nullable
+    private Root findRoot(@NotNull VirtualFile dir) {
+      int id = getId(dir);
+      if (!dir.isDirectory()) {
+        return myRoots.get(id);
+      }
+
+      int slot = id & (ROOT_CACHE_SIZE - 1);
+      CachedRoot cached = myRootCache[slot];
+      if (cached != null && cached.myDir == dir) {
+        return cached.myRoot;
+      }
+
+      Root result = null;
+      for (VirtualFile f = dir; f != null; f = f.getParent()) {
+        Root root = myRoots.get(getId(f));
+        if (root != null) {
+          result = root;
+          break;
         }
+        if (isIgnored(f)) break;
       }
+      myRootCache[slot] = new CachedRoot(dir, result);
+      return result;
     }
 
-    protected void fillMapWithLibrarySources(@NotNull final VirtualFile dir,
-                                             @Nullable final String packageName,
-                                             @NotNull final VirtualFile sourceRoot,
-                                             @Nullable final ProgressIndicator progress) {
-      VfsUtilCore.visitChildrenRecursively(dir, new VirtualFileVisitor<String>() {
-        { setValueForChildren(packageName); }
+    @NotNull
+    public List<VirtualFile> getDirsForPackage(@NotNull String packageName) {
+      // every directory of the package is under a root whose package is a prefix of it
+      List<VirtualFile> result = new ArrayList<VirtualFile>();
+      addPackageDirs(myRootsByPackage.get(""), packageName, result);
+      for (int dot = packageName.indexOf('.'); dot >= 0; dot = packageName.indexOf('.', dot + 1)) {
+        addPackageDirs(myRootsByPackage.get(packageName.substring(0, dot)), packageName, result);
+      }
+      if (!packageName.isEmpty()) {
+        addPackageDirs(myRootsByPackage.get(packageName), packageName, result);
+      }
+      return result.isEmpty() ? Collections.<VirtualFile>emptyList() : Collections.unmodifiableList(result);
+    }
 
-        @Override
-        public boolean visitFile(@NotNull VirtualFile file) {
-          if (progress != null) progress.checkCanceled();
-          int dirId = getId(file);
-          if (!file.isDirectory() && dirId != getId(dir)|| isIgnored(file)) return false;
-          DirectoryInfo info = getOrCreateDirInfo(dirId);
-
-          if (info.isInLibrarySource()) { // library sources overlap
-            String definedPackage = myDirToPackageName.get(dirId);
-            if (definedPackage != null && definedPackage.isEmpty()) return false; // another library source root starts here
+    private void addPackageDirs(@Nullable List<Root> roots, @NotNull String packageName, @NotNull List<VirtualFile> result) {
+      if (roots == null) return;
+      for (Root root : roots) {
+        if (root.myFile.isValid()) {
+          PackageDirs dirs = getPackageDirs(root);
+          synchronized (dirs) {
+            result.addAll(dirs.get(packageName));
           }
+        }
+      }
+    }
 
-          info = info.withInLibrarySource(true)
-          .withSourceRoot(sourceRoot);
-          storeInfo(info, dirId);
+    @NotNull
+    private PackageDirs getPackageDirs(@NotNull Root root) {
+      int id = getId(root.myFile);
+      synchronized (myPackageDirs) {
+        PackageDirs dirs = myPackageDirs.get(id);
+        if (dirs != null) return dirs;
+      }
 
-          final String packageName = getCurrentValue();
-          final String newPackageName = Comparing.equal(file, dir) ? packageName : getPackageNameForSubdir(packageName, file.getName());
-          setPackageName(dirId, newPackageName);
-          setValueForChildren(newPackageName);
+      // the walk is done outside of the lock, so that it can be cancelled and doesn't block the queries for other roots;
+      // if the root is walked by several threads at once, the directories found first are kept
+      PackageDirs dirs = new PackageDirs();
+      collectPackageDirs(root.myFile, root.myPackageName, dirs, true);
+      synchronized (myPackageDirs) {
+        PackageDirs published = myPackageDirs.get(id);
+        if (published != null) return published;
+        myPackageDirs.put(id, dirs);
+        return dirs;
+      }
+    }
 
-          return true;
+    /**
+     * @param cancellable  whether the walk may be interrupted, it mustn't be when the directories already published are updated
+     */
+    private void collectPackageDirs(@NotNull VirtualFile dir, @NotNull String packageName, @NotNull PackageDirs result,
+                                    boolean cancellable) {
+      if (cancellable) ProgressIndicatorProvider.checkCanceled();
+      result.add(packageName, dir);
+      if (!dir.isDirectory()) return;
+      for (VirtualFile child : dir.getChildren()) {
+        // nested roots have package directories of their own, ignored directories have no package
+        if (child.isDirectory() && !myRoots.containsKey(getId(child)) && !isIgnored(child)) {
+          collectPackageDirs(child, getPackageNameForSubdir(packageName, child.getName()), result, cancellable);
         }
-      });
+      }
     }
 
-    private void initLibraryClasses(Module module, ProgressIndicator progress) {
+    @NotNull
+    private Root getOrCreateRoot(@NotNull VirtualFile file) {
+      int id = getId(file);
+      Root root = myRoots.get(id);
+      if (root == null) {
+        root = new Root(file);
+        myRoots.put(id, root);
+      }
+      return root;
+    }
+
+    private void addRootUrl(@Nullable String url) {
+      while (url != null && myRootUrls.add(url)) {
+        int slash = url.lastIndexOf('/');
+        url = slash > url.indexOf("://") + 2 ? url.substring(0, slash) : null;
+      }
+    }
+
+    private void initContentRoots(@NotNull Module module, boolean reverseAllSets, @NotNull ProgressIndicator progress) {
       progress.checkCanceled();
-      progress.setText2(ProjectBundle.message("project.index.processing.library.classes.progress", module.getName()));
+      progress.setText2(ProjectBundle.message("project.index.processing.module.content.progress", module.getName()));
 
-      for (OrderEntry orderEntry : getOrderEntries(module)) {
-        if (orderEntry instanceof LibraryOrSdkOrderEntry) {
-          VirtualFile[] classRoots = ((LibraryOrSdkOrderEntry)orderEntry).getRootFiles(OrderRootType.CLASSES);
-          for (final VirtualFile classRoot : classRoots) {
-            fillMapWithLibraryClasses(classRoot, "", classRoot, progress);
+      ContentEntry[] contentEntries = getContentEntries(module);
+      if (reverseAllSets) {
+        contentEntries = ArrayUtil.reverseArray(contentEntries);
+      }
+
+      for (ContentEntry contentEntry : contentEntries) {
+        addRootUrl(contentEntry.getUrl());
+        VirtualFile contentRoot = findRootFile(contentEntry.getFile(), contentEntry.getUrl());
+        if (contentRoot instanceof VirtualFileWithId) {
+          Root root = getOrCreateRoot(contentRoot);
+          if (root.myContentRootOf == null) { // module contents overlap
+            root.myContentRootOf = module;
           }
         }
       }
     }
 
-    protected void fillMapWithLibraryClasses(@NotNull final VirtualFile dir,
-                                             @NotNull final String packageName,
-                                             @NotNull final VirtualFile classRoot,
-                                             @Nullable final ProgressIndicator progress) {
-      VfsUtilCore.visitChildrenRecursively(dir, new VirtualFileVisitor<String>() {
-        { setValueForChildren(packageName); }
+    private void initModuleSources(@NotNull Module module, boolean reverseAllSets, @NotNull ProgressIndicator progress) {
+      progress.checkCanceled();
+      progress.setText2(ProjectBundle.message("project.index.processing.module.sources.progress", module.getName()));
 
-        @Override
-        public boolean visitFile(@NotNull VirtualFile file) {
-          if (progress != null) progress.checkCanceled();
-          if (!file.isDirectory() && !Comparing.equal(file, dir) || isIgnored(file)) return false;
+      ContentEntry[] contentEntries = getContentEntries(module);
 
-          int dirId = getId(file);
-          DirectoryInfo info = getOrCreateDirInfo(dirId);
+      if (reverseAllSets) {
+        contentEntries = ArrayUtil.reverseArray(contentEntries);
+      }
 
-          if (info.hasLibraryClassRoot()) { // library classes overlap
-            String definedPackage = myDirToPackageName.get(dirId);
-            if (definedPackage != null && definedPackage.isEmpty()) return false; // another library root starts here
+      for (ContentEntry contentEntry : contentEntries) {
+        SourceFolder[] sourceFolders = contentEntry.getSourceFolders();
+        if (reverseAllSets) {
+          sourceFolders = ArrayUtil.reverseArray(sourceFolders);
+        }
+        for (SourceFolder sourceFolder : sourceFolders) {
+          addRootUrl(sourceFolder.getUrl());
+          VirtualFile dir = findRootFile(sourceFolder.getFile(), sourceFolder.getUrl());
+          if (dir instanceof VirtualFileWithId) {
+            getOrCreateRoot(dir).addSourceFolder(new SourceFolderInfo(module, sourceFolder.getPackagePrefix(), sourceFolder.isTestSource()));
           }
+        }
+      }
+    }
 
-          info = info.withLibraryClassRoot(classRoot);
-          storeInfo(info, dirId);
+    private void initLibraryRoots(@NotNull Module module, @NotNull ProgressIndicator progress) {
+      progress.checkCanceled();
+      progress.setText2(ProjectBundle.message("project.index.processing.library.classes.progress", module.getName()));
 
-          final String packageName = getCurrentValue();
-          final String childPackageName = Comparing.equal(file, dir) ? packageName : getPackageNameForSubdir(packageName, file.getName());
-          if (!info.isInModuleSource() && !info.isInLibrarySource()) {
-            setPackageName(dirId, childPackageName);
+      for (OrderEntry orderEntry : getOrderEntries(module)) {
+        if (orderEntry instanceof LibraryOrSdkOrderEntry) {
+          LibraryOrSdkOrderEntry entry = (LibraryOrSdkOrderEntry)orderEntry;
+          for (VirtualFile sourceRoot : entry.getRootFiles(OrderRootType.SOURCES)) {
+            getOrCreateRoot(sourceRoot).myIsLibrarySourceRoot = true;
+          }
+          for (VirtualFile classRoot : entry.getRootFiles(OrderRootType.CLASSES)) {
+            getOrCreateRoot(classRoot).myIsLibraryClassRoot = true;
           }
-          setValueForChildren(childPackageName);
-
-          return true;
         }
-      });
+      }
     }
 
     private void initOrderEntries(@NotNull Module module,
                                   @NotNull MultiMap<VirtualFile, OrderEntry> depEntries,
                                   @NotNull MultiMap<VirtualFile, OrderEntry> libClassRootEntries,
-                                  @NotNull MultiMap<VirtualFile, OrderEntry> libSourceRootEntries,
-                                  @NotNull ProgressIndicator progress) {
+                                  @NotNull MultiMap<VirtualFile, OrderEntry> libSourceRootEntries) {
       for (OrderEntry orderEntry : getOrderEntries(module)) {
         if (orderEntry instanceof ModuleOrderEntry) {
           final Module depModule = ((ModuleOrderEntry)orderEntry).getModule();
@@ -538,7 +884,7 @@ public abstract class DirectoryIndexImpl extends DirectoryIndex {
 
           VirtualFile[] sourceRoots = ((ModuleSourceOrderEntry)orderEntry).getRootModel().getSourceRoots();
           for (VirtualFile sourceRoot : sourceRoots) {
-            fillMapWithOrderEntries(sourceRoot, oneEntryList, entryModule, null, null, null, progress);
+            addOrderEntrySource(OrderEntrySource.Kind.MODULE_SOURCES, sourceRoot, entryModule, oneEntryList);
           }
         }
         else if (orderEntry instanceof LibraryOrSdkOrderEntry) {
@@ -555,94 +901,19 @@ public abstract class DirectoryIndexImpl extends DirectoryIndex {
       }
     }
 
-    private void fillMapWithOrderEntries(@NotNull MultiMap<VirtualFile, OrderEntry> depEntries,
-                                         @NotNull MultiMap<VirtualFile, OrderEntry> libClassRootEntries,
-                                         @NotNull MultiMap<VirtualFile, OrderEntry> libSourceRootEntries,
-                                         @NotNull ProgressIndicator progress) {
-      for (Map.Entry<VirtualFile, Collection<OrderEntry>> mapEntry : depEntries.entrySet()) {
-        VirtualFile vRoot = mapEntry.getKey();
-        Collection<OrderEntry> entries = mapEntry.getValue();
-        fillMapWithOrderEntries(vRoot, toSortedArray(entries), null, null, null, null, progress);
-      }
-
-      for (Map.Entry<VirtualFile, Collection<OrderEntry>> mapEntry : libClassRootEntries.entrySet()) {
-        final VirtualFile vRoot = mapEntry.getKey();
-        final Collection<OrderEntry> entries = mapEntry.getValue();
-        fillMapWithOrderEntries(vRoot, toSortedArray(entries), null, vRoot, null, null, progress);
-      }
-
-      for (Map.Entry<VirtualFile, Collection<OrderEntry>> mapEntry : libSourceRootEntries.entrySet()) {
-        final VirtualFile vRoot = mapEntry.getKey();
-        final Collection<OrderEntry> entries = mapEntry.getValue();
-        fillMapWithOrderEntries(vRoot, toSortedArray(entries), null, null, vRoot, null, progress);
+    private void addOrderEntrySources(@NotNull MultiMap<VirtualFile, OrderEntry> rootsToEntries, @NotNull OrderEntrySource.Kind kind) {
+      for (Map.Entry<VirtualFile, Collection<OrderEntry>> mapEntry : rootsToEntries.entrySet()) {
+        addOrderEntrySource(kind, mapEntry.getKey(), null, toSortedArray(mapEntry.getValue()));
       }
     }
 
-    protected void setPackageName(int dirId, String newPackageName) {
-      String oldPackageName = myDirToPackageName.get(dirId);
-      if (oldPackageName != null) {
-        removeDirFromPackage(oldPackageName, dirId);
-      }
-
-      if (newPackageName != null) {
-        addDirToPackage(newPackageName, dirId);
-
-        myDirToPackageName.put(dirId, newPackageName);
+    private void addOrderEntrySource(@NotNull OrderEntrySource.Kind kind,
+                                     @NotNull VirtualFile root,
+                                     @Nullable Module module,
+                                     @NotNull OrderEntry[] entries) {
+      if (root instanceof VirtualFileWithId) {
+        getOrCreateRoot(root).addOrderEntrySource(new OrderEntrySource(kind, root, module, entries));
       }
-      else {
-        myDirToPackageName.remove(dirId);
-      }
-    }
-
-    // orderEntries must be sorted BY_OWNER_MODULE
-    protected void fillMapWithOrderEntries(@NotNull VirtualFile root,
-                                           @NotNull final OrderEntry[] orderEntries,
-                                           @Nullable final Module module,
-                                           @Nullable final VirtualFile libraryClassRoot,
-                                           @Nullable final VirtualFile librarySourceRoot,
-                                           @Nullable final DirectoryInfo parentInfo,
-                                           @Nullable final ProgressIndicator progress) {
-      VfsUtilCore.visitChildrenRecursively(root, new DirectoryVisitor() {
-        private final Stack<OrderEntry[]> myEntries = new Stack<OrderEntry[]>();
-
-        @Override
-        protected DirectoryInfo updateInfo(@NotNull VirtualFile dir) {
-          if (progress != null) {
-            progress.checkCanceled();
-          }
-          if (isIgnored(dir)) return null;
-
-          int dirId = getId(dir);
-          DirectoryInfo info = myDirToInfoMap.get(dirId); // do not create it here!
-          if (info == null) return null;
-
-          if (module != null) {
-            if (info.getModule() != module) return null;
-            if (!info.isInModuleSource()) return null;
-          }
-          else if (libraryClassRoot != null) {
-            if (!libraryClassRoot.equals(info.getLibraryClassRoot())) return null;
-            if (info.isInModuleSource()) return null;
-          }
-          else if (librarySourceRoot != null) {
-            if (!info.isInLibrarySource()) return null;
-            if (!librarySourceRoot.equals(info.getSourceRoot())) return null;
-            if (info.hasLibraryClassRoot()) return null;
-          }
-
-          OrderEntry[] oldParentEntries = myEntries.isEmpty() ? null : myEntries.peek();
-          OrderEntry[] oldEntries = info.getOrderEntries();
-          myEntries.push(oldEntries);
-          info = info.withOrderEntries(orderEntries, parentInfo, oldParentEntries);
-          storeInfo(info, dirId);
-          return info;
-        }
-
-        @Override
-        protected void afterChildrenVisited(@NotNull VirtualFile file, @NotNull DirectoryInfo info) {
-          myEntries.pop();
-        }
-      });
     }
 
     protected void doInitialize(boolean reverseAllSets/* for testing order independence*/) {
@@ -657,18 +928,14 @@ public abstract class DirectoryIndexImpl extends DirectoryIndex {
       Module[] modules = ModuleManager.getInstance(myProject).getModules();
       if (reverseAllSets) modules = ArrayUtil.reverseArray(modules);
 
-      initExcludedDirMap(modules, progress);
+      initExcludeRoots(modules, progress);
 
       for (Module module : modules) {
-        initModuleContents(module, reverseAllSets, progress);
+        initContentRoots(module, reverseAllSets, progress);
       }
-      // Important! Because module's contents may overlap,
-      // first modules should be marked and only after that sources markup
-      // should be added. (src markup depends on module markup)
       for (Module module : modules) {
         initModuleSources(module, reverseAllSets, progress);
-        initLibrarySources(module, progress);
-        initLibraryClasses(module, progress);
+        initLibraryRoots(module, progress);
       }
 
       progress.checkCanceled();
@@ -678,48 +945,96 @@ public abstract class DirectoryIndexImpl extends DirectoryIndex {
       MultiMap<VirtualFile, OrderEntry> libClassRootEntries = new MultiMap<VirtualFile, OrderEntry>();
       MultiMap<VirtualFile, OrderEntry> libSourceRootEntries = new MultiMap<VirtualFile, OrderEntry>();
       for (Module module : modules) {
-        initOrderEntries(module, depEntries, libClassRootEntries, libSourceRootEntries, progress);
+        initOrderEntries(module, depEntries, libClassRootEntries, libSourceRootEntries);
       }
-      fillMapWithOrderEntries(depEntries, libClassRootEntries, libSourceRootEntries, progress);
+      addOrderEntrySources(depEntries, OrderEntrySource.Kind.DEPENDENCY);
+      addOrderEntrySources(libClassRootEntries, OrderEntrySource.Kind.LIBRARY_CLASSES);
+      addOrderEntrySources(libSourceRootEntries, OrderEntrySource.Kind.LIBRARY_SOURCES);
 
-      internDirectoryInfos();
+      computeRoots(progress);
+
+      progress.popState();
     }
 
-    private void internDirectoryInfos() {
-      final Map<DirectoryInfo, DirectoryInfo> diInterner = new THashMap<DirectoryInfo, DirectoryInfo>();
-      final Map<OrderEntry[], OrderEntry[]> oeInterner = new THashMap<OrderEntry[], OrderEntry[]>(new TObjectHashingStrategy<OrderEntry[]>() {
-        @Override
-        public int computeHashCode(OrderEntry[] object) {
-          return Arrays.hashCode(object);
+    private void computeRoots(@NotNull ProgressIndicator progress) {
+      Map<DirectoryInfo, DirectoryInfo> infoInterner = new THashMap<DirectoryInfo, DirectoryInfo>();
+      Map<OrderEntry[], OrderEntry[]> entriesInterner = createEntriesInterner();
+      for (Object root : myRoots.getValues()) {
+        progress.checkCanceled();
+        computeRoot((Root)root, infoInterner, entriesInterner);
+      }
+      indexRootsByPackage();
+    }
+
+    private void computeRoot(@NotNull Root root,
+                             @NotNull Map<DirectoryInfo, DirectoryInfo> infoInterner,
+                             @NotNull Map<OrderEntry[], OrderEntry[]> entriesInterner) {
+      if (root.myComputed) return;
+
+      // an ignored directory cuts off everything above it, the same as if it was not in the project at all
+      if (!isIgnored(root.myFile)) {
+        Root parent = null;
+        List<String> names = new ArrayList<String>();
+        names.add(root.myFile.getName());
+        for (VirtualFile f = root.myFile.getParent(); f != null; f = f.getParent()) {
+          parent = myRoots.get(getId(f));
+          if (parent != null || isIgnored(f)) break;
+          names.add(f.getName());
         }
+        if (parent != null && root.myFile.isDirectory()) {
+          computeRoot(parent, infoInterner, entriesInterner);
+          root.inheritFrom(parent, names);
+        }
+        root.applyRoles();
+      }
 
-        @Override
-        public boolean equals(OrderEntry[] o1, OrderEntry[] o2) {
-          return Arrays.equals(o1, o2);
+      DirectoryInfo info = root.createInfo();
+      if (info != null) {
+        OrderEntry[] entries = info.getOrderEntries();
+        if (entries.length > 0) {
+          OrderEntry[] internedEntries = entriesInterner.get(entries);
+          if (internedEntries == null) {
+            entriesInterner.put(entries, entries);
+          }
+          else if (internedEntries != entries) {
+            info = info.withInternedEntries(internedEntries);
+          }
         }
-      });
+        DirectoryInfo interned = infoInterner.get(info);
+        if (interned == null) {
+          infoInterner.put(info, info);
+        }
+        else {
+          info = interned;
+        }
+      }
+      root.myInfo = info;
+      root.myPackageName = root.myModulePackage != null ? root.myModulePackage
+                           : root.myLibrarySourcePackage != null ? root.myLibrarySourcePackage
+                           : root.myLibraryClassPackage;
+      root.myComputed = true;
+    }
 
-      myDirToInfoMap.transformValues(new TObjectFunction<DirectoryInfo, DirectoryInfo>() {
+    private void indexRootsByPackage() {
+      final Map<String, List<Root>> rootsByPackage = new THashMap<String, List<Root>>();
+      myRoots.forEachValue(new TObjectProcedure<Root>() {
         @Override
-        public DirectoryInfo execute(DirectoryInfo info) {
-          DirectoryInfo interned = diInterner.get(info);
-          if (interned == null) {
-            OrderEntry[] entries = info.getOrderEntries();
-            OrderEntry[] internedEntries = oeInterner.get(entries);
-            if (internedEntries == null) {
-              oeInterner.put(entries, entries);
+        public boolean execute(Root root) {
+          if (root.myPackageName != null) {
+            List<Root> roots = rootsByPackage.get(root.myPackageName);
+            if (roots == null) {
+              roots = new ArrayList<Root>(1);
+              rootsByPackage.put(root.myPackageName, roots);
             }
-            else if (internedEntries != entries) {
-              info = info.withInternedEntries(internedEntries);
-            }
-            diInterner.put(info, interned = info);
+            roots.add(root);
           }
-          return interned;
+          return true;
         }
       });
+      myRootsByPackage = rootsByPackage;
     }
 
-    private void initExcludedDirMap(Module[] modules, ProgressIndicator progress) {
+    private void initExcludeRoots(Module[] modules, ProgressIndicator progress) {
       progress.checkCanceled();
       progress.setText2(ProjectBundle.message("project.index.building.exclude.roots.progress"));
 
@@ -728,90 +1043,52 @@ public abstract class DirectoryIndexImpl extends DirectoryIndex {
 
       for (Module module : modules) {
         for (ContentEntry contentEntry : getContentEntries(module)) {
-          VirtualFile contentRoot = contentEntry.getFile();
+          VirtualFile contentRoot = findRootFile(contentEntry.getFile(), contentEntry.getUrl());
           if (contentRoot == null) continue;
 
           ExcludeFolder[] excludeRoots = contentEntry.getExcludeFolders();
           for (ExcludeFolder excludeRoot : excludeRoots) {
+            addRootUrl(excludeRoot.getUrl());
+            VirtualFile excludeFile = findRootFile(excludeRoot.getFile(), excludeRoot.getUrl());
+            if (!(excludeFile instanceof VirtualFileWithId)) continue;
+
+            Root root = getOrCreateRoot(excludeFile);
             // Output paths should be excluded (if marked as such) regardless if they're under corresponding module's content root
-            if (excludeRoot.getFile() != null) {
-              if (!FileUtil.startsWith(contentRoot.getUrl(), excludeRoot.getUrl())) {
-                if (isExcludeRootForModule(module, excludeRoot.getFile())) {
-                  putForFileAndAllAncestors(excludeRoot.getFile(), excludeRoot.getUrl());
-                }
+            if (!FileUtil.startsWith(contentRoot.getUrl(), excludeRoot.getUrl())) {
+              if (isExcludeRootForModule(module, excludeFile)) {
+                root.addExcludedFrom(excludeFile);
               }
             }
 
-            putForFileAndAllAncestors(contentRoot, excludeRoot.getUrl());
+            root.addExcludedFrom(contentRoot);
           }
         }
       }
 
       for (DirectoryIndexExcludePolicy policy : myExcludePolicies) {
         for (VirtualFile file : policy.getExcludeRootsForProject()) {
-          putForFileAndAllAncestors(file, file.getUrl());
+          if (!(file instanceof VirtualFileWithId)) continue;
+          addRootUrl(file.getUrl());
+          getOrCreateRoot(file).addExcludedFrom(file);
           myProjectExcludeRoots.add(getId(file));
         }
       }
     }
+  }
 
-    private void putForFileAndAllAncestors(VirtualFile file, String value) {
-      TIntObjectHashMap<Set<String>> map = myExcludeRootsMap;
-      while (file != null) {
-        int id = getId(file);
-        Set<String> set = map.get(id);
-        if (set == null) {
-          set = new THashSet<String>();
-          map.put(id, set);
-        }
-        set.add(value);
-
-        file = file.getParent();
+  @NotNull
+  private static Map<OrderEntry[], OrderEntry[]> createEntriesInterner() {
+    return new THashMap<OrderEntry[], OrderEntry[]>(new TObjectHashingStrategy<OrderEntry[]>() {
+      @Override
+      public int computeHashCode(OrderEntry[] object) {
+        return Arrays.hashCode(object);
       }
-    }
-
-    @NotNull
-    public IndexState copy() {
-      final IndexState copy = new IndexState();
-
-      myExcludeRootsMap.forEachEntry(new TIntObjectProcedure<Set<String>>() {
-        @Override
-        public boolean execute(int id, Set<String> urls) {
-          copy.myExcludeRootsMap.put(id, new THashSet<String>(urls));
-          return true;
-        }
-      });
-
-      copy.myProjectExcludeRoots.addAll(myProjectExcludeRoots.toArray());
-      myDirToInfoMap.forEachEntry(new TIntObjectProcedure<DirectoryInfo>() {
-        @Override
-        public boolean execute(int id, DirectoryInfo info) {
-          copy.myDirToInfoMap.put(id, info);
-          return true;
-        }
-      });
-
 
-      myPackageNameToDirsMap.forEachEntry(new TObjectIntProcedure<String>() {
-        @Override
-        public boolean execute(String name, int id) {
-          copy.myPackageNameToDirsMap.put(name, id);
-          return true;
-        }
-      });
-      copy.multiDirPackages.clear();
-      copy.multiDirPackages.addAll(multiDirPackages);
-
-      myDirToPackageName.forEachEntry(new TIntObjectProcedure<String>() {
-        @Override
-        public boolean execute(int id, String name) {
-          copy.myDirToPackageName.put(id, name);
-          return true;
-        }
-      });
-
-      return copy;
-    }
+      @Override
+      public boolean equals(OrderEntry[] o1, OrderEntry[] o2) {
+        return Arrays.equals(o1, o2);
+      }
+    });
   }
 
   @NotNull
@@ -827,4 +1104,4 @@ public abstract class DirectoryIndexImpl extends DirectoryIndex {
   static int getId(@NotNull VirtualFile classRoot) {
     return ((VirtualFileWithId)classRoot).getId();
   }
-}
\ No newline at end of file
+}
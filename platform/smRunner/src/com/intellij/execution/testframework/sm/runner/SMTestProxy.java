@@ -60,6 +60,7 @@ public class SMTestProxy extends AbstractTestProxy {
   private final boolean myIsSuite;
   private boolean myIsEmptyIsCached = false; // is used for separating unknown and unset values
   private boolean myIsEmpty = true;
+  private int[] myDescendantTestsCount; // number of tests in the subtree by magnitude ordinal, is created on demand
   TestLocationProvider myLocator = null;
   private final boolean myPreservePresentableName;
   private Printer myPreferredPrinter = null;
@@ -170,6 +171,19 @@ public class SMTestProxy extends AbstractTestProxy {
     }
     myChildren.add(child);
 
+    // counters of container suites
+    final int[] childTestsCount = child.myDescendantTestsCount;
+    for (SMTestProxy suite = this; suite != null; suite = suite.myParent) {
+      if (!child.myIsSuite) {
+        suite.updateDescendantTestsCount(child.myState.getMagnitude(), 1);
+      }
+      if (childTestsCount != null) {
+        for (int i = 0; i < childTestsCount.length; i++) {
+          suite.getDescendantTestsCount()[i] += childTestsCount[i];
+        }
+      }
+    }
+
     // add printable
     //
     // add link to child's future output in correct place
@@ -260,19 +274,52 @@ public class SMTestProxy extends AbstractTestProxy {
 
   public List<SMTestProxy> getAllTests() {
     final List<SMTestProxy> allTests = new ArrayList<SMTestProxy>();
+    collectAllTests(allTests);
+    return allTests;
+  }
 
-    allTests.add(this);
-
+  private void collectAllTests(final List<SMTestProxy> result) {
+    result.add(this);
     for (SMTestProxy child : getChildren()) {
-      allTests.addAll(child.getAllTests());
+      child.collectAllTests(result);
     }
+  }
 
-    return allTests;
+  /**
+   * Number of tests (not suites) with given magnitude among all descendants of this proxy.
+   * Unlike iterating over {@link #getAllTests()} it doesn't depend on the size of the subtree,
+   * counters are updated on every state change of a test.
+   */
+  public int getDescendantTestsCount(@NotNull final TestStateInfo.Magnitude magnitude) {
+    return myDescendantTestsCount != null ? myDescendantTestsCount[magnitude.ordinal()] : 0;
   }
 
+  private int[] getDescendantTestsCount() {
+    if (myDescendantTestsCount == null) {
+      myDescendantTestsCount = new int[TestStateInfo.Magnitude.values().length];
+    }
+    return myDescendantTestsCount;
+  }
+
+  private void updateDescendantTestsCount(@NotNull final TestStateInfo.Magnitude magnitude, final int delta) {
+    getDescendantTestsCount()[magnitude.ordinal()] += delta;
+  }
+
+  private void setState(@NotNull final AbstractState state) {
+    final TestStateInfo.Magnitude oldMagnitude = myState.getMagnitude();
+    myState = state;
+
+    final TestStateInfo.Magnitude newMagnitude = state.getMagnitude();
+    if (!myIsSuite && oldMagnitude != newMagnitude) {
+      for (SMTestProxy suite = myParent; suite != null; suite = suite.myParent) {
+        suite.updateDescendantTestsCount(oldMagnitude, -1);
+        suite.updateDescendantTestsCount(newMagnitude, 1);
+      }
+    }
+  }
 
   public void setStarted() {
-    myState = !myIsSuite ? TestInProgressState.TEST : new SuiteInProgressState(this);
+    setState(!myIsSuite ? TestInProgressState.TEST : new SuiteInProgressState(this));
   }
 
   /**
@@ -332,10 +379,10 @@ public class SMTestProxy extends AbstractTestProxy {
 
     if (!isSuite()) {
       // if isn't in other finished state (ignored, failed or passed)
-      myState = TestPassedState.INSTANCE;
+      setState(TestPassedState.INSTANCE);
     } else {
       //Test Suite
-      myState = determineSuiteStateOnFinished();
+      setState(determineSuiteStateOnFinished());
     }
     // prints final state additional info
     fireOnNewPrintable(myState);
@@ -349,9 +396,9 @@ public class SMTestProxy extends AbstractTestProxy {
       ((TestFailedState) myState).addError(localizedMessage, stackTrace, myPrinter);
     }
     else {
-      myState = testError
-                ? new TestErrorState(localizedMessage, stackTrace)
-                : new TestFailedState(localizedMessage, stackTrace);
+      setState(testError
+               ? new TestErrorState(localizedMessage, stackTrace)
+               : new TestFailedState(localizedMessage, stackTrace));
       fireOnNewPrintable(myState);
     }
   }
@@ -361,15 +408,15 @@ public class SMTestProxy extends AbstractTestProxy {
                                       @NotNull final String actualText,
                                       @NotNull final String expectedText) {
     setStacktraceIfNotSet(stackTrace);
-    myState = new TestComparisionFailedState(localizedMessage, stackTrace,
-                                             actualText, expectedText);
+    setState(new TestComparisionFailedState(localizedMessage, stackTrace,
+                                            actualText, expectedText));
     fireOnNewPrintable(myState);
   }
 
   public void setTestIgnored(@NotNull final String ignoreComment,
                              @Nullable final String stackTrace) {
     setStacktraceIfNotSet(stackTrace);
-    myState = new TestIgnoredState(ignoreComment, stackTrace);
+    setState(new TestIgnoredState(ignoreComment, stackTrace));
     fireOnNewPrintable(myState);
   }
 
@@ -382,17 +429,19 @@ public class SMTestProxy extends AbstractTestProxy {
   }
 
   public List<? extends SMTestProxy> collectChildren() {
-    final List<? extends SMTestProxy> allChildren = getChildren();
-
     final List<SMTestProxy> result = ContainerUtilRt.newArrayList();
+    doCollectChildren(result);
+    return result;
+  }
+
+  private void doCollectChildren(final List<SMTestProxy> result) {
+    final List<? extends SMTestProxy> allChildren = getChildren();
 
     result.addAll(allChildren);
 
     for (SMTestProxy p: allChildren) {
-      result.addAll(p.collectChildren());
+      p.doCollectChildren(result);
     }
-
-    return result;
   }
 
   public List<? extends SMTestProxy> getChildren(@Nullable final Filter<? super SMTestProxy> filter) {
@@ -525,7 +574,7 @@ public class SMTestProxy extends AbstractTestProxy {
     if (myState.isFinal()) {
       return;
     }
-    myState = TerminatedState.INSTANCE;
+    setState(TerminatedState.INSTANCE);
     final List<? extends SMTestProxy> children = getChildren();
     for (SMTestProxy child : children) {
       child.setTerminated();
@@ -30,12 +30,14 @@ import com.intellij.execution.testframework.ui.TestResultsPanel;
 import com.intellij.execution.testframework.ui.TestsProgressAnimator;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.progress.util.ColorProgressBar;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.wm.IdeFocusManager;
 import com.intellij.ui.JBColor;
+import com.intellij.util.Alarm;
 import com.intellij.util.text.DateFormatUtil;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
@@ -61,6 +63,12 @@ public class SMTestRunnerResultsForm extends TestResultsPanel
 
   public static final Color DARK_YELLOW = JBColor.YELLOW.darker();
 
+  /**
+   * Status text and icon progress are refreshed not more often than this, otherwise they
+   * take most of the time of the event dispatch thread for large suites
+   */
+  private static final int PROGRESS_UPDATE_DELAY = 100;
+
   private SMTRunnerTestTreeView myTreeView;
 
   private TestsProgressAnimator myAnimator;
@@ -90,6 +98,15 @@ public class SMTestRunnerResultsForm extends TestResultsPanel
   private String myCurrentCustomProgressCategory;
   private final Set<String> myMentionedCategories = new LinkedHashSet<String>();
 
+  private final Alarm myProgressUpdateAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, this);
+  private final Runnable myProgressUpdate = new Runnable() {
+    @Override
+    public void run() {
+      updateStatusText();
+      doUpdateIconProgress();
+    }
+  };
+
   public SMTestRunnerResultsForm(final RunConfigurationBase runConfiguration,
                                  @NotNull final JComponent console,
                                  final TestConsoleProperties consoleProperties,
@@ -238,8 +255,9 @@ public class SMTestRunnerResultsForm extends TestResultsPanel
       myStatusLine.setFraction(1);
     }
 
+    myProgressUpdateAlarm.cancelAllRequests();
     updateStatusLabel(true);
-    updateIconProgress();
+    doUpdateIconProgress();
 
     myAnimator.stopMovie();
     myTreeBuilder.updateFromRoot();
@@ -498,6 +516,15 @@ public class SMTestRunnerResultsForm extends TestResultsPanel
       // else color will be according failed/passed tests
     }
 
+    if (testingFinished) {
+      updateStatusText();
+    }
+    else {
+      queueProgressUpdate();
+    }
+  }
+
+  private void updateStatusText() {
     // launchedAndFinished - is launched and not in progress. If we remove "launched' that onTestingStarted() before
     // initializing will be "launchedAndFinished"
     final boolean launchedAndFinished = myTestsRootNode.wasLaunched() && !myTestsRootNode.isInProgress();
@@ -515,6 +542,19 @@ public class SMTestRunnerResultsForm extends TestResultsPanel
   }
 
   private void updateIconProgress() {
+    queueProgressUpdate();
+  }
+
+  private void queueProgressUpdate() {
+    if (ApplicationManager.getApplication().isUnitTestMode()) {
+      myProgressUpdate.run();
+    }
+    else if (myProgressUpdateAlarm.getActiveRequestCount() == 0 && !myProgressUpdateAlarm.isDisposed()) {
+      myProgressUpdateAlarm.addRequest(myProgressUpdate, PROGRESS_UPDATE_DELAY);
+    }
+  }
+
+  private void doUpdateIconProgress() {
     final boolean isIndeterminate = myTestsTotal == 0;
     final int total = isIndeterminate ? 2 : myTestsTotal;
     final int count = isIndeterminate ? 1 : myTestsCurrentCount;
@@ -32,7 +32,6 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.List;
 import java.util.Set;
 
 import static com.intellij.execution.testframework.sm.runner.ui.SMPoolOfTestIcons.*;
@@ -281,46 +280,19 @@ public class TestsPresentationUtil {
 
   public static void appendSuiteStatusColorPresentation(final SMTestProxy proxy,
                                                         final ColoredTableCellRenderer renderer) {
-    int passedCount = 0;
-    int errorsCount = 0;
-    int failedCount = 0;
-    int ignoredCount = 0;
-
     if (proxy.isLeaf()) {
       // If suite is empty show <no tests> label and exit from method
       renderer.append(RESULTS_NO_TESTS, proxy.wasLaunched() ? PASSED_ATTRIBUTES : DEFFECT_ATTRIBUTES);
       return;
     }
 
-    final List<SMTestProxy> allTestCases = proxy.getAllTests();
-    for (SMTestProxy testOrSuite : allTestCases) {
-      // we should ignore test suites
-      if (testOrSuite.isSuite()) {
-        continue;
-      }
-      // if test check it state
-      switch (testOrSuite.getMagnitudeInfo()) {
-        case COMPLETE_INDEX:
-        case PASSED_INDEX:
-          passedCount++;
-          break;
-        case ERROR_INDEX:
-          errorsCount++;
-          break;
-        case FAILED_INDEX:
-          failedCount++;
-          break;
-        case IGNORED_INDEX:
-        case SKIPPED_INDEX:
-          ignoredCount++;
-          break;
-        case NOT_RUN_INDEX:
-        case TERMINATED_INDEX:
-        case RUNNING_INDEX:
-          //Do nothing
-          break;
-      }
-    }
+    // counters of tests in the subtree are maintained by proxies, suites are ignored
+    final int passedCount = proxy.getDescendantTestsCount(TestStateInfo.Magnitude.COMPLETE_INDEX)
+                            + proxy.getDescendantTestsCount(TestStateInfo.Magnitude.PASSED_INDEX);
+    final int errorsCount = proxy.getDescendantTestsCount(TestStateInfo.Magnitude.ERROR_INDEX);
+    final int failedCount = proxy.getDescendantTestsCount(TestStateInfo.Magnitude.FAILED_INDEX);
+    final int ignoredCount = proxy.getDescendantTestsCount(TestStateInfo.Magnitude.IGNORED_INDEX)
+                             + proxy.getDescendantTestsCount(TestStateInfo.Magnitude.SKIPPED_INDEX);
 
     final String separator = " ";
 
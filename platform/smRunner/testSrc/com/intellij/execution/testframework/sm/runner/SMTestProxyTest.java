@@ -713,6 +713,39 @@ public class SMTestProxyTest extends BaseSMTRunnerTestCase {
     assertOneElement(test21.getAllTests());
   }
 
+  public void testDescendantTestsCount() {
+    final SMTestProxy suite1 = createSuiteProxy("suite1", mySuite);
+    final SMTestProxy passedTest = createTestProxy("passed", suite1);
+    final SMTestProxy failedTest = createTestProxy("failed", suite1);
+    assertEquals(2, mySuite.getDescendantTestsCount(Magnitude.NOT_RUN_INDEX));
+    assertEquals(2, suite1.getDescendantTestsCount(Magnitude.NOT_RUN_INDEX));
+    assertEquals(0, passedTest.getDescendantTestsCount(Magnitude.NOT_RUN_INDEX));
+
+    passedTest.setStarted();
+    passedTest.setFinished();
+    failedTest.setStarted();
+    failedTest.setTestFailed("", "", false);
+    assertEquals(1, mySuite.getDescendantTestsCount(Magnitude.PASSED_INDEX));
+    assertEquals(1, mySuite.getDescendantTestsCount(Magnitude.FAILED_INDEX));
+    assertEquals(0, mySuite.getDescendantTestsCount(Magnitude.NOT_RUN_INDEX));
+    assertEquals(0, mySuite.getDescendantTestsCount(Magnitude.RUNNING_INDEX));
+
+    // subtree is added with its counters
+    final SMTestProxy suite2 = createSuiteProxy("suite2");
+    final SMTestProxy ignoredTest = createTestProxy("ignored", suite2);
+    ignoredTest.setTestIgnored("", null);
+    createTestProxy("notRun", suite2);
+    mySuite.addChild(suite2);
+    assertEquals(1, mySuite.getDescendantTestsCount(Magnitude.IGNORED_INDEX));
+    assertEquals(1, mySuite.getDescendantTestsCount(Magnitude.NOT_RUN_INDEX));
+    assertEquals(1, suite1.getDescendantTestsCount(Magnitude.PASSED_INDEX));
+    assertEquals(0, suite1.getDescendantTestsCount(Magnitude.IGNORED_INDEX));
+
+    mySuite.setTerminated();
+    assertEquals(1, mySuite.getDescendantTestsCount(Magnitude.TERMINATED_INDEX));
+    assertEquals(0, mySuite.getDescendantTestsCount(Magnitude.NOT_RUN_INDEX));
+  }
+
   public void testIsSuite() {
     assertFalse(mySimpleTest.isSuite());
 
@@ -17,6 +17,7 @@ package com.intellij.mock;
 
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ex.ApplicationEx;
+import com.intellij.openapi.application.ex.LockStatistics;
 import com.intellij.openapi.extensions.ExtensionPointName;
 import com.intellij.openapi.extensions.Extensions;
 import com.intellij.openapi.project.Project;
@@ -28,6 +29,7 @@ import javax.swing.*;
 import java.io.IOException;
 
 public class MockApplicationEx extends MockApplication implements ApplicationEx {
+  private final LockStatistics myLockStatistics = new LockStatistics(false);
 
   public MockApplicationEx(@NotNull Disposable parentDisposable) {
     super(parentDisposable);
@@ -126,4 +128,20 @@ public class MockApplicationEx extends MockApplication implements ApplicationEx
   public boolean tryRunReadAction(@NotNull Runnable runnable) {
     return false;
   }
+
+  @Override
+  public void runWriteIntentReadAction(@NotNull Runnable action) {
+    action.run();
+  }
+
+  @Override
+  public boolean isWriteIntentLockAcquired() {
+    return true;
+  }
+
+  @NotNull
+  @Override
+  public LockStatistics getLockStatistics() {
+    return myLockStatistics;
+  }
 }
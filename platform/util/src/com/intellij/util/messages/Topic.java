@@ -34,15 +34,24 @@ public class Topic<L> {
   private final String myDisplayName;
   private final Class<L> myListenerClass;
   private final BroadcastDirection myBroadcastDirection;
+  private final DeliveryMode myDeliveryMode;
 
   public Topic(@NonNls @NotNull String displayName, @NotNull Class<L> listenerClass) {
     this(displayName, listenerClass, BroadcastDirection.TO_CHILDREN);
   }
 
   public Topic(@NonNls @NotNull String displayName, @NotNull Class<L> listenerClass, final BroadcastDirection broadcastDirection) {
+    this(displayName, listenerClass, broadcastDirection, DeliveryMode.IMMEDIATE);
+  }
+
+  public Topic(@NonNls @NotNull String displayName,
+               @NotNull Class<L> listenerClass,
+               @NotNull BroadcastDirection broadcastDirection,
+               @NotNull DeliveryMode deliveryMode) {
     myDisplayName = displayName;
     myListenerClass = listenerClass;
     myBroadcastDirection = broadcastDirection;
+    myDeliveryMode = deliveryMode;
   }
 
   /**
@@ -86,6 +95,13 @@ public class Topic<L> {
     return new Topic<L>(displayName, listenerClass, direction);
   }
 
+  /**
+   * Creates a topic which messages are {@link DeliveryMode#BATCHED batched} and delivered outside of the publishing thread.
+   */
+  public static <L> Topic<L> createBatched(@NonNls @NotNull String displayName, @NotNull Class<L> listenerClass) {
+    return new Topic<L>(displayName, listenerClass, BroadcastDirection.TO_CHILDREN, DeliveryMode.BATCHED);
+  }
+
   /**
    * @return    broadcasting strategy configured for the current topic. Default value is {@link BroadcastDirection#TO_CHILDREN}
    * @see BroadcastDirection
@@ -94,6 +110,36 @@ public class Topic<L> {
     return myBroadcastDirection;
   }
 
+  /**
+   * @return    delivery strategy configured for the current topic. Default value is {@link DeliveryMode#IMMEDIATE}
+   * @see DeliveryMode
+   */
+  @NotNull
+  public DeliveryMode getDeliveryMode() {
+    return myDeliveryMode;
+  }
+
+  /**
+   * Defines when and on which thread subscribers of the topic receive published messages.
+   */
+  public enum DeliveryMode {
+
+    /**
+     * Every message is delivered to all subscribers on the publishing thread before the publisher call returns.
+     */
+    IMMEDIATE,
+
+    /**
+     * Messages are queued and delivered later, in publishing order, by a single batch which drains everything published
+     * since the previous batch. The batch runs on the delivery executor of the bus,
+     * i.e. generally not on the publishing thread, so subscribers must not rely on the state which was
+     * current at the moment of publishing and must not require any particular thread.
+     * <p/>
+     * Is intended for high-volume notifications whose subscribers perform expensive work which needn't be done synchronously.
+     */
+    BATCHED
+  }
+
   /**
    * {@link MessageBus Message buses} may be organised into {@link MessageBus#getParent() hierarchies}. That allows to provide
    * additional messaging features like <code>'broadcasting'</code>. Here it means that messages sent to particular topic within
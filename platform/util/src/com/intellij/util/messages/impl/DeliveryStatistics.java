@@ -0,0 +1,144 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.messages.impl;
+
+import com.intellij.util.ConcurrencyUtil;
+import com.intellij.util.messages.Topic;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accumulates number of delivered messages and time spent in subscribers, per topic and per listener class.
+ *
+ * @see MessageBusImpl#getDeliveryStatistics()
+ */
+public class DeliveryStatistics {
+  private final ConcurrentMap<String, Counter> myTopicCounters = new ConcurrentHashMap<String, Counter>();
+  private final ConcurrentMap<String, Counter> myListenerCounters = new ConcurrentHashMap<String, Counter>();
+
+  public static class Counter {
+    private final String myName;
+    private final AtomicLong myCount = new AtomicLong();
+    private final AtomicLong myTotalNanos = new AtomicLong();
+    private volatile long myMaxNanos;
+
+    private Counter(@NotNull String name) {
+      myName = name;
+    }
+
+    private void add(long nanos) {
+      myCount.incrementAndGet();
+      myTotalNanos.addAndGet(nanos);
+      if (nanos > myMaxNanos) {
+        myMaxNanos = nanos;
+      }
+    }
+
+    /**
+     * @return topic display name or <code>'topic:listener class'</code>
+     */
+    @NotNull
+    public String getName() {
+      return myName;
+    }
+
+    public long getCount() {
+      return myCount.get();
+    }
+
+    public long getTotalNanos() {
+      return myTotalNanos.get();
+    }
+
+    public long getMaxNanos() {
+      return myMaxNanos;
+    }
+
+    @NonNls
+    @Override
+    public String toString() {
+      return myName + ": " + getCount() + " messages, " + getTotalNanos() / 1000000 + "ms total, " + getMaxNanos() / 1000000 + "ms max";
+    }
+  }
+
+  void recordDelivery(@NotNull Topic topic, @NotNull Object handler, long nanos) {
+    String topicName = topic.getDisplayName();
+    getCounter(myTopicCounters, topicName).add(nanos);
+    getCounter(myListenerCounters, topicName + ":" + handler.getClass().getName()).add(nanos);
+  }
+
+  @NotNull
+  private static Counter getCounter(@NotNull ConcurrentMap<String, Counter> counters, @NotNull String name) {
+    Counter counter = counters.get(name);
+    if (counter == null) {
+      counter = ConcurrencyUtil.cacheOrGet(counters, name, new Counter(name));
+    }
+    return counter;
+  }
+
+  /**
+   * @return per-topic counters, the most time consuming first
+   */
+  @NotNull
+  public List<Counter> getTopicCounters() {
+    return sorted(myTopicCounters);
+  }
+
+  /**
+   * @return per-listener counters, the most time consuming first
+   */
+  @NotNull
+  public List<Counter> getListenerCounters() {
+    return sorted(myListenerCounters);
+  }
+
+  public void clear() {
+    myTopicCounters.clear();
+    myListenerCounters.clear();
+  }
+
+  @NotNull
+  private static List<Counter> sorted(@NotNull ConcurrentMap<String, Counter> counters) {
+    List<Counter> result = new ArrayList<Counter>(counters.values());
+    Collections.sort(result, new Comparator<Counter>() {
+      @Override
+      public int compare(Counter o1, Counter o2) {
+        long t1 = o1.getTotalNanos();
+        long t2 = o2.getTotalNanos();
+        return t1 < t2 ? 1 : t1 == t2 ? 0 : -1;
+      }
+    });
+    return result;
+  }
+
+  @NonNls
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    for (Counter counter : getListenerCounters()) {
+      builder.append(counter).append('\n');
+    }
+    return builder.toString();
+  }
+}
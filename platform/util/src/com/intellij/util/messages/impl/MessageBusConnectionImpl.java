@@ -110,6 +110,8 @@ public class MessageBusConnectionImpl implements MessageBusConnection {
     final Topic topic = message.getTopic();
     final Object handler = getHandler(topic);
 
+    final boolean collectStatistics = handler != null && myBus.isCollectingStatistics();
+    final long start = collectStatistics ? System.nanoTime() : 0;
     try {
       Method listenerMethod = message.getListenerMethod();
 
@@ -126,6 +128,11 @@ public class MessageBusConnectionImpl implements MessageBusConnection {
     catch(Throwable e) {
       LOG.error(e.getCause() == null ? e : e.getCause());
     }
+    finally {
+      if (collectStatistics) {
+        myBus.getDeliveryStatistics().recordDelivery(topic, handler, System.nanoTime() - start);
+      }
+    }
   }
 
   void scheduleMessageDelivery(Message message) {
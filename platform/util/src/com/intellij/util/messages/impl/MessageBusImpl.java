@@ -23,12 +23,14 @@ import com.intellij.openapi.Disposable;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.util.ConcurrencyUtil;
+import com.intellij.util.SystemProperties;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.messages.MessageBus;
 import com.intellij.util.messages.MessageBusConnection;
 import com.intellij.util.messages.Topic;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
@@ -39,6 +41,8 @@ import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MessageBusImpl implements MessageBus {
   private static final Logger LOG = Logger.getInstance("#com.intellij.util.messages.impl.MessageBusImpl");
@@ -52,10 +56,27 @@ public class MessageBusImpl implements MessageBus {
   private static final Object NA = new Object();
   private MessageBusImpl myParentBus;
 
+  private static final boolean ourCollectStatistics = SystemProperties.getBooleanProperty("idea.message.bus.statistics", false);
+  private static Executor ourDefaultBatchExecutor;
+  private final DeliveryStatistics myStatistics = new DeliveryStatistics();
+  private volatile boolean myCollectStatistics = ourCollectStatistics;
+
+  private final Queue<Message> myBatchQueue = new ConcurrentLinkedQueue<Message>();
+  private final AtomicBoolean myBatchScheduled = new AtomicBoolean();
+  private final Object myBatchLock = new Object();
+  private volatile Executor myBatchExecutor;
+  private final Runnable myBatchDelivery = new Runnable() {
+    @Override
+    public void run() {
+      myBatchScheduled.set(false);
+      flushBatchedMessages();
+    }
+  };
+
   //is used for debugging purposes
   @SuppressWarnings({"UnusedDeclaration", "FieldCanBeLocal"})
   private final Object myOwner;
-  private boolean myDisposed;
+  private volatile boolean myDisposed; // read by the batch delivery threads
 
   @SuppressWarnings("UnusedDeclaration")
   public MessageBusImpl() {
@@ -68,6 +89,7 @@ public class MessageBusImpl implements MessageBus {
     if (myParentBus != null) {
       myParentBus.notifyChildBusCreated(this);
       LOG.assertTrue(myParentBus.myChildBuses.contains(this));
+      myCollectStatistics = myParentBus.myCollectStatistics;
     }
   }
 
@@ -128,7 +150,13 @@ public class MessageBusImpl implements MessageBus {
       InvocationHandler handler = new InvocationHandler() {
         @Override
         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-          sendMessage(new Message(topic, method, args));
+          Message message = new Message(topic, method, args);
+          if (topic.getDeliveryMode() == Topic.DeliveryMode.BATCHED) {
+            enqueueBatchedMessage(message);
+          }
+          else {
+            sendMessage(message);
+          }
           return NA;
         }
       };
@@ -149,7 +177,13 @@ public class MessageBusImpl implements MessageBus {
       InvocationHandler handler = new InvocationHandler() {
         @Override
         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-          postMessage(new Message(topic, method, args));
+          Message message = new Message(topic, method, args);
+          if (topic.getDeliveryMode() == Topic.DeliveryMode.BATCHED) {
+            enqueueBatchedMessage(message);
+          }
+          else {
+            postMessage(message);
+          }
           return NA;
         }
       };
@@ -167,6 +201,7 @@ public class MessageBusImpl implements MessageBus {
       LOG.error("Not delivered events in the queue: " + jobs);
     }
     myMessageQueue.remove();
+    myBatchQueue.clear();
     if (myParentBus != null) {
       myParentBus.notifyChildBusDisposed(this);
       myParentBus = null;
@@ -174,6 +209,73 @@ public class MessageBusImpl implements MessageBus {
     myDisposed = true;
   }
 
+  /**
+   * Sets the executor which delivers messages of {@link Topic.DeliveryMode#BATCHED batched} topics published to this bus.
+   * If not set, the executor of the parent bus is used, or a shared background thread for the root bus.
+   */
+  public void setBatchDeliveryExecutor(@Nullable Executor executor) {
+    myBatchExecutor = executor;
+  }
+
+  @NotNull
+  private Executor getBatchDeliveryExecutor() {
+    Executor executor = myBatchExecutor;
+    if (executor != null) return executor;
+    if (myParentBus != null) return myParentBus.getBatchDeliveryExecutor();
+    return getDefaultBatchExecutor();
+  }
+
+  @NotNull
+  private static synchronized Executor getDefaultBatchExecutor() {
+    if (ourDefaultBatchExecutor == null) {
+      ourDefaultBatchExecutor = ConcurrencyUtil.newSingleThreadExecutor("MessageBus batch delivery");
+    }
+    return ourDefaultBatchExecutor;
+  }
+
+  private void enqueueBatchedMessage(@NotNull Message message) {
+    checkNotDisposed();
+    myBatchQueue.offer(message);
+    if (myBatchScheduled.compareAndSet(false, true)) {
+      getBatchDeliveryExecutor().execute(myBatchDelivery);
+    }
+  }
+
+  /**
+   * Synchronously delivers all messages of {@link Topic.DeliveryMode#BATCHED batched} topics which were published to this bus
+   * but weren't delivered yet. Messages are delivered on the calling thread, in publishing order.
+   */
+  public void flushBatchedMessages() {
+    synchronized (myBatchLock) {
+      Message message;
+      while (!myDisposed && (message = myBatchQueue.poll()) != null) {
+        sendMessage(message);
+      }
+    }
+  }
+
+  /**
+   * Enables or disables collecting of {@link #getDeliveryStatistics() delivery statistics} for this bus.
+   * Child buses created afterwards inherit the setting. Collecting is enabled for all buses by the
+   * <code>idea.message.bus.statistics</code> system property.
+   */
+  public void setCollectStatistics(boolean collect) {
+    myCollectStatistics = collect;
+  }
+
+  boolean isCollectingStatistics() {
+    return myCollectStatistics;
+  }
+
+  /**
+   * @return number of delivered messages and time spent in subscribers of this bus, per topic and per listener
+   * @see #setCollectStatistics(boolean)
+   */
+  @NotNull
+  public DeliveryStatistics getDeliveryStatistics() {
+    return myStatistics;
+  }
+
   private void checkNotDisposed() {
     LOG.assertTrue(!myDisposed, "Already disposed");
   }
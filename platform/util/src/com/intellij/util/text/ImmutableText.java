@@ -0,0 +1,316 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.text;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+
+/**
+ * Immutable char sequence stored as a balanced binary tree (rope) of small char array chunks.
+ * <p/>
+ * {@link #insert(int, CharSequence) Insertions}, {@link #delete(int, int) deletions}, {@link #subtext(int, int) sub-texts} and
+ * {@link #concat(ImmutableText) concatenations} take <code>O(log n)</code> time and share all unchanged chunks with the original text,
+ * so every text instance may be cheaply kept as a snapshot. Random access by {@link #charAt(int)} takes <code>O(log n)</code> as well,
+ * but sequential access is <code>O(1)</code> amortized as the last visited chunk is remembered.
+ * <p/>
+ * The balancing is based on the rope implementation of the Javolution <code>Text</code> class.
+ */
+public final class ImmutableText implements CharSequenceBackedByArray {
+  /**
+   * Maximum length of a leaf chunk. Leaves are merged on concatenation while their total length fits into this limit.
+   */
+  private static final int BLOCK_SIZE = 1 << 9;
+  private static final int BLOCK_MASK = ~(BLOCK_SIZE - 1);
+
+  public static final ImmutableText EMPTY = new ImmutableText(new char[0]);
+
+  /**
+   * Chunk data for a leaf, <code>null</code> for a composite node.
+   */
+  private final char[] myData;
+  private final int myCount;
+  private final ImmutableText myHead;
+  private final ImmutableText myTail;
+
+  private volatile Leaf myLastLeaf;
+  private volatile Reference<char[]> myArrayRef;
+
+  private static class Leaf {
+    private final char[] data;
+    private final int start;
+
+    private Leaf(@NotNull char[] data, int start) {
+      this.data = data;
+      this.start = start;
+    }
+  }
+
+  private ImmutableText(@NotNull char[] data) {
+    myData = data;
+    myCount = data.length;
+    myHead = null;
+    myTail = null;
+  }
+
+  private ImmutableText(@NotNull ImmutableText head, @NotNull ImmutableText tail) {
+    myData = null;
+    myCount = head.myCount + tail.myCount;
+    myHead = head;
+    myTail = tail;
+  }
+
+  /**
+   * @return text with the same content as the given sequence, which is returned as is if it's an immutable text already
+   */
+  @NotNull
+  public static ImmutableText valueOf(@NotNull CharSequence sequence) {
+    if (sequence instanceof ImmutableText) {
+      return (ImmutableText)sequence;
+    }
+    return valueOf(CharArrayUtil.fromSequence(sequence), 0, sequence.length());
+  }
+
+  @NotNull
+  private static ImmutableText valueOf(@NotNull char[] chars, int start, int end) {
+    int length = end - start;
+    if (length == 0) {
+      return EMPTY;
+    }
+    if (length <= BLOCK_SIZE) {
+      char[] data = new char[length];
+      System.arraycopy(chars, start, data, 0, length);
+      return new ImmutableText(data);
+    }
+    int half = ((length + BLOCK_SIZE) >> 1) & BLOCK_MASK;
+    return new ImmutableText(valueOf(chars, start, start + half), valueOf(chars, start + half, end));
+  }
+
+  @Override
+  public int length() {
+    return myCount;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= myCount) {
+      throw new IndexOutOfBoundsException("Wrong offset: " + index + "; count:" + myCount);
+    }
+    if (myData != null) {
+      return myData[index];
+    }
+    Leaf leaf = myLastLeaf;
+    if (leaf == null || index < leaf.start || index >= leaf.start + leaf.data.length) {
+      myLastLeaf = leaf = findLeaf(index);
+    }
+    return leaf.data[index - leaf.start];
+  }
+
+  @NotNull
+  private Leaf findLeaf(int index) {
+    ImmutableText node = this;
+    int start = 0;
+    while (node.myData == null) {
+      int headCount = node.myHead.myCount;
+      if (index - start < headCount) {
+        node = node.myHead;
+      }
+      else {
+        start += headCount;
+        node = node.myTail;
+      }
+    }
+    return new Leaf(node.myData, start);
+  }
+
+  @NotNull
+  @Override
+  public ImmutableText subSequence(int start, int end) {
+    return subtext(start, end);
+  }
+
+  /**
+   * @return text which holds the symbols of the current text in the given range
+   */
+  @NotNull
+  public ImmutableText subtext(int start, int end) {
+    if (start < 0 || start > end || end > myCount) {
+      throw new IndexOutOfBoundsException("Wrong range: [" + start + ", " + end + "); count:" + myCount);
+    }
+    if (start == 0 && end == myCount) {
+      return this;
+    }
+    if (start == end) {
+      return EMPTY;
+    }
+    if (myData != null) {
+      char[] data = new char[end - start];
+      System.arraycopy(myData, start, data, 0, end - start);
+      return new ImmutableText(data);
+    }
+    int headCount = myHead.myCount;
+    if (end <= headCount) {
+      return myHead.subtext(start, end);
+    }
+    if (start >= headCount) {
+      return myTail.subtext(start - headCount, end - headCount);
+    }
+    return myHead.subtext(start, headCount).concat(myTail.subtext(0, end - headCount));
+  }
+
+  @NotNull
+  public ImmutableText subtext(int start) {
+    return subtext(start, myCount);
+  }
+
+  /**
+   * @return text which has the given sequence inserted at the given offset of the current text
+   */
+  @NotNull
+  public ImmutableText insert(int offset, @NotNull CharSequence sequence) {
+    if (sequence.length() == 0) {
+      return this;
+    }
+    return subtext(0, offset).concat(valueOf(sequence)).concat(subtext(offset));
+  }
+
+  /**
+   * @return text which has the given range of the current text removed
+   */
+  @NotNull
+  public ImmutableText delete(int start, int end) {
+    if (start == end) {
+      return this;
+    }
+    return subtext(0, start).concat(subtext(end));
+  }
+
+  /**
+   * @return text which has the given range of the current text replaced by the given sequence
+   */
+  @NotNull
+  public ImmutableText replace(int start, int end, @NotNull CharSequence sequence) {
+    if (start == 0 && end == myCount) {
+      return valueOf(sequence);
+    }
+    return subtext(0, start).concat(valueOf(sequence)).concat(subtext(end));
+  }
+
+  @NotNull
+  public ImmutableText concat(@NotNull ImmutableText that) {
+    if (that.myCount == 0) {
+      return this;
+    }
+    if (myCount == 0) {
+      return that;
+    }
+
+    int length = myCount + that.myCount;
+    if (length <= BLOCK_SIZE) {
+      char[] data = new char[length];
+      getChars(data, 0);
+      that.getChars(data, myCount);
+      return new ImmutableText(data);
+    }
+
+    // Rotates the tree when one side is more than twice longer than the other one.
+    ImmutableText head = this;
+    ImmutableText tail = that;
+    if ((head.myCount << 1) < tail.myCount && tail.myData == null) {
+      if (tail.myHead.myCount > tail.myTail.myCount) {
+        tail = tail.rightRotation();
+      }
+      head = head.concat(tail.myHead);
+      tail = tail.myTail;
+    }
+    else if ((tail.myCount << 1) < head.myCount && head.myData == null) {
+      if (head.myTail.myCount > head.myHead.myCount) {
+        head = head.leftRotation();
+      }
+      tail = head.myTail.concat(tail);
+      head = head.myHead;
+    }
+    return new ImmutableText(head, tail);
+  }
+
+  @NotNull
+  private ImmutableText rightRotation() {
+    ImmutableText p = myHead;
+    if (p.myData != null) {
+      return this;
+    }
+    return new ImmutableText(p.myHead, new ImmutableText(p.myTail, myTail));
+  }
+
+  @NotNull
+  private ImmutableText leftRotation() {
+    ImmutableText q = myTail;
+    if (q.myData != null) {
+      return this;
+    }
+    return new ImmutableText(new ImmutableText(myHead, q.myHead), q.myTail);
+  }
+
+  /**
+   * Returns all symbols of the text as a single array. The array is built on the first call and then cached while memory allows,
+   * so it must not be modified.
+   */
+  @NotNull
+  @Override
+  public char[] getChars() {
+    if (myData != null) {
+      return myData;
+    }
+    Reference<char[]> ref = myArrayRef;
+    char[] array = ref == null ? null : ref.get();
+    if (array == null) {
+      array = new char[myCount];
+      getChars(array, 0);
+      myArrayRef = new SoftReference<char[]>(array);
+    }
+    return array;
+  }
+
+  @Override
+  public void getChars(@NotNull char[] dst, int dstOffset) {
+    if (myData != null) {
+      System.arraycopy(myData, 0, dst, dstOffset, myCount);
+      return;
+    }
+    Reference<char[]> ref = myArrayRef;
+    char[] array = ref == null ? null : ref.get();
+    if (array != null) {
+      System.arraycopy(array, 0, dst, dstOffset, myCount);
+      return;
+    }
+    myHead.getChars(dst, dstOffset);
+    myTail.getChars(dst, dstOffset + myHead.myCount);
+  }
+
+  /**
+   * @return depth of the underlying tree, leaves have zero depth
+   */
+  int getDepth() {
+    return myData != null ? 0 : 1 + Math.max(myHead.getDepth(), myTail.getDepth());
+  }
+
+  @NotNull
+  @Override
+  public String toString() {
+    return new String(getChars(), 0, myCount);
+  }
+}
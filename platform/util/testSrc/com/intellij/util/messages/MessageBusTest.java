@@ -20,10 +20,13 @@
 package com.intellij.util.messages;
 
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.messages.impl.DeliveryStatistics;
+import com.intellij.util.messages.impl.MessageBusImpl;
 import junit.framework.TestCase;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 public class MessageBusTest extends TestCase {
   private MessageBus myBus;
@@ -41,6 +44,7 @@ public class MessageBusTest extends TestCase {
 
   private static final Topic<T1Listener> TOPIC1 = new Topic<T1Listener>("T1", T1Listener.class);
   private static final Topic<T2Listener> TOPIC2 = new Topic<T2Listener>("T2", T2Listener.class);
+  private static final Topic<T1Listener> BATCHED_TOPIC = Topic.createBatched("T1 batched", T1Listener.class);
 
   private class T1Handler implements T1Listener {
     private final String id;
@@ -197,6 +201,74 @@ public class MessageBusTest extends TestCase {
                  "C2T1Handler:t12");
   }
   
+  public void testBatchedTopicIsDeliveredByExecutor() {
+    final List<Runnable> scheduled = new ArrayList<Runnable>();
+    MessageBusImpl bus = (MessageBusImpl)myBus;
+    bus.setBatchDeliveryExecutor(new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        scheduled.add(command);
+      }
+    });
+    myBus.connect().subscribe(BATCHED_TOPIC, new T1Handler("c"));
+
+    myBus.syncPublisher(BATCHED_TOPIC).t11();
+    myBus.syncPublisher(BATCHED_TOPIC).t12();
+    myBus.asyncPublisher(BATCHED_TOPIC).t11();
+    assertEvents();
+    assertEquals(1, scheduled.size());
+
+    scheduled.remove(0).run();
+    assertEvents("c:t11", "c:t12", "c:t11");
+
+    myBus.syncPublisher(BATCHED_TOPIC).t12();
+    assertEquals(1, scheduled.size());
+    bus.flushBatchedMessages();
+    assertEvents("c:t11", "c:t12", "c:t11", "c:t12");
+  }
+
+  public void testBatchedTopicIsBroadcastToChildren() {
+    MessageBusImpl bus = (MessageBusImpl)myBus;
+    bus.setBatchDeliveryExecutor(new Executor() {
+      @Override
+      public void execute(Runnable command) {
+      }
+    });
+    MessageBus child = MessageBusFactory.newMessageBus(this, myBus);
+    child.connect().subscribe(BATCHED_TOPIC, new T1Handler("child"));
+    myBus.connect().subscribe(BATCHED_TOPIC, new T1Handler("parent"));
+
+    myBus.syncPublisher(BATCHED_TOPIC).t11();
+    assertEvents();
+    bus.flushBatchedMessages();
+    assertEvents("parent:t11", "child:t11");
+  }
+
+  public void testDeliveryStatistics() {
+    MessageBusImpl bus = (MessageBusImpl)myBus;
+    bus.setCollectStatistics(true);
+    myBus.connect().subscribe(TOPIC1, new T1Handler("c1"));
+    myBus.connect().subscribe(TOPIC1, new T1Handler("c2"));
+    myBus.connect().subscribe(TOPIC2, new T2Handler("c3"));
+
+    myBus.syncPublisher(TOPIC1).t11();
+    myBus.syncPublisher(TOPIC1).t12();
+    myBus.syncPublisher(TOPIC2).t21();
+
+    DeliveryStatistics statistics = bus.getDeliveryStatistics();
+    assertEquals(2, statistics.getTopicCounters().size());
+    assertEquals(2, statistics.getListenerCounters().size());
+    for (DeliveryStatistics.Counter counter : statistics.getListenerCounters()) {
+      if (counter.getName().startsWith("T1:")) {
+        assertEquals(T1Handler.class.getName(), counter.getName().substring("T1:".length()));
+        assertEquals(4, counter.getCount());
+      }
+      else {
+        assertEquals(1, counter.getCount());
+      }
+    }
+  }
+
   private void assertEvents(String... expected) {
     String joinExpected = StringUtil.join(expected, "\n");
     String joinActual = StringUtil.join(myLog, "\n");
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.text;
+
+import com.intellij.openapi.util.text.StringUtil;
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class ImmutableTextTest extends TestCase {
+  public void testEmpty() {
+    ImmutableText text = ImmutableText.valueOf("");
+    assertSame(ImmutableText.EMPTY, text);
+    assertEquals(0, text.length());
+    assertEquals("", text.toString());
+    assertEquals("abc", text.insert(0, "abc").toString());
+  }
+
+  public void testSmallEditsStayInOneLeaf() {
+    ImmutableText text = ImmutableText.valueOf("abc");
+    text = text.insert(1, "XY").delete(0, 1).replace(3, 4, "Z");
+    assertEquals("XYbZ", text.toString());
+    assertEquals(0, text.getDepth());
+  }
+
+  public void testLargeTextIsBalanced() {
+    String string = StringUtil.repeat("0123456789\n", 100000);
+    ImmutableText text = ImmutableText.valueOf(string);
+    assertEquals(string, text.toString());
+    assertTrue(text.getDepth() < 20);
+
+    for (int i = 0; i < 10000; i++) {
+      text = text.insert(text.length(), "a");
+    }
+    assertEquals(string.length() + 10000, text.length());
+    assertTrue(String.valueOf(text.getDepth()), text.getDepth() < 40);
+  }
+
+  public void testSnapshotIsNotAffectedByModifications() {
+    String string = StringUtil.repeat("abcdef", 1000);
+    ImmutableText snapshot = ImmutableText.valueOf(string);
+    ImmutableText modified = snapshot.insert(3000, "inserted").delete(0, 100);
+    assertEquals(string, snapshot.toString());
+    assertEquals(string.substring(100, 3000) + "inserted" + string.substring(3000), modified.toString());
+  }
+
+  public void testRandomModifications() {
+    Random random = new Random(42);
+    StringBuilder expected = new StringBuilder(StringUtil.repeat("some text\n", 500));
+    ImmutableText text = ImmutableText.valueOf(expected);
+    for (int i = 0; i < 3000; i++) {
+      int start = random.nextInt(expected.length() + 1);
+      int end = Math.min(expected.length(), start + random.nextInt(1000));
+      String inserted = StringUtil.repeat(String.valueOf((char)('a' + random.nextInt(26))), random.nextInt(700));
+      switch (random.nextInt(3)) {
+        case 0:
+          expected.insert(start, inserted);
+          text = text.insert(start, inserted);
+          break;
+        case 1:
+          expected.delete(start, end);
+          text = text.delete(start, end);
+          break;
+        default:
+          expected.replace(start, end, inserted);
+          text = text.replace(start, end, inserted);
+      }
+      assertEquals(expected.length(), text.length());
+      if (expected.length() > 0) {
+        int offset = random.nextInt(expected.length());
+        assertEquals(expected.charAt(offset), text.charAt(offset));
+      }
+    }
+    assertEquals(expected.toString(), text.toString());
+
+    char[] chars = new char[text.length() + 2];
+    text.getChars(chars, 1);
+    assertEquals(expected.toString(), new String(chars, 1, text.length()));
+
+    int start = expected.length() / 3;
+    assertEquals(expected.substring(start, start * 2), text.subSequence(start, start * 2).toString());
+  }
+
+  public void testSequentialCharAt() {
+    String string = StringUtil.repeat("0123456789", 10000);
+    ImmutableText text = ImmutableText.valueOf(string).insert(5000, "x").delete(5000, 5001);
+    for (int i = 0; i < string.length(); i++) {
+      assertEquals(string.charAt(i), text.charAt(i));
+    }
+  }
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.annotate;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.io.*;
+import com.intellij.util.text.DateFormatUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * !! application-level
+ * <p/>
+ * Keeps annotations of files and the details of the annotating commits under the system directory, so that annotations survive
+ * restarts and can be brought up to date with new revisions without running <code>git blame</code> again.
+ * <p/>
+ * Annotations which haven't been used for a month, and the least recently used ones above the limit, are evicted once a day
+ * when the cache of a root is opened.
+ */
+public class GitAnnotationCache implements Disposable {
+  private static final Logger LOG = Logger.getInstance("#git4idea.annotate.GitAnnotationCache");
+  private static final int VERSION = 2;
+  private static final int MAX_AGE_DAYS = 30;
+  private static final int MAX_ANNOTATIONS = 5000;
+
+  private final File myDir;
+  private final Map<String, RootCache> myCaches = new HashMap<String, RootCache>();
+
+  public GitAnnotationCache() {
+    myDir = new File(new File(PathManager.getSystemPath(), "vcs"), "git_annotations");
+  }
+
+  public static GitAnnotationCache getInstance() {
+    return ServiceManager.getService(GitAnnotationCache.class);
+  }
+
+  /**
+   * Line revisions of a file in some revision. Lines refer to commits by indices in {@link #hashes}.
+   */
+  public static class LineRevisions {
+    @NotNull final String revision;
+    @NotNull final String[] hashes;
+    @NotNull final int[] lines;
+
+    LineRevisions(@NotNull String revision, @NotNull String[] hashes, @NotNull int[] lines) {
+      this.revision = revision;
+      this.hashes = hashes;
+      this.lines = lines;
+    }
+  }
+
+  public static class CommitInfo {
+    final long time;
+    @NotNull final String author;
+    @NotNull final String message;
+
+    CommitInfo(long time, @NotNull String author, @NotNull String message) {
+      this.time = time;
+      this.author = author;
+      this.message = message;
+    }
+  }
+
+  static class RootCache {
+    private final PersistentHashMap<String, StoredAnnotation> myAnnotations;
+    private final PersistentHashMap<String, CommitInfo> myCommits;
+
+    private RootCache(@NotNull File dir) throws IOException {
+      myAnnotations = new PersistentHashMap<String, StoredAnnotation>(new File(dir, "annotations"), new EnumeratorStringDescriptor(),
+                                                                      new StoredAnnotationExternalizer());
+      myCommits = new PersistentHashMap<String, CommitInfo>(new File(dir, "commits"), new EnumeratorStringDescriptor(),
+                                                            new CommitInfoExternalizer());
+    }
+
+    @Nullable
+    synchronized LineRevisions getAnnotation(@NotNull String key, int today) throws IOException {
+      StoredAnnotation stored = myAnnotations.get(key);
+      if (stored == null) return null;
+      if (stored.accessDay != today) {
+        myAnnotations.put(key, new StoredAnnotation(stored.annotation, today));
+      }
+      return stored.annotation;
+    }
+
+    synchronized void putAnnotation(@NotNull String key, @NotNull LineRevisions annotation, int today) throws IOException {
+      myAnnotations.put(key, new StoredAnnotation(annotation, today));
+    }
+
+    @Nullable
+    synchronized CommitInfo getCommit(@NotNull String hash) throws IOException {
+      return myCommits.get(hash);
+    }
+
+    synchronized void putCommits(@NotNull Map<String, CommitInfo> commits) throws IOException {
+      for (Map.Entry<String, CommitInfo> entry : commits.entrySet()) {
+        if (!myCommits.containsMapping(entry.getKey())) {
+          myCommits.put(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+
+    synchronized void close() {
+      try {
+        myAnnotations.close();
+        myCommits.close();
+      }
+      catch (IOException e) {
+        LOG.info(e);
+      }
+    }
+  }
+
+  private static class StoredAnnotation {
+    @NotNull private final LineRevisions annotation;
+    private final int accessDay;
+
+    private StoredAnnotation(@NotNull LineRevisions annotation, int accessDay) {
+      this.annotation = annotation;
+      this.accessDay = accessDay;
+    }
+  }
+
+  @Nullable
+  private RootCache getRootCache(@NotNull VirtualFile root) {
+    synchronized (myCaches) {
+      if (myCaches.containsKey(root.getPath())) {
+        return myCaches.get(root.getPath());
+      }
+      File dir = getDir(root);
+      RootCache cache = null;
+      try {
+        cache = open(dir, today(), MAX_ANNOTATIONS);
+      }
+      catch (IOException e) {
+        LOG.info("Annotation cache of " + root.getPath() + " is corrupted, rebuilding", e);
+        FileUtil.delete(dir);
+        try {
+          cache = open(dir, today(), MAX_ANNOTATIONS);
+        }
+        catch (IOException e1) {
+          LOG.info(e1);
+        }
+      }
+      myCaches.put(root.getPath(), cache);
+      return cache;
+    }
+  }
+
+  @NotNull
+  private File getDir(@NotNull VirtualFile root) {
+    return new File(myDir, FileUtil.sanitizeFileName(root.getName()) + "_" + Integer.toHexString(root.getPath().hashCode()));
+  }
+
+  private static int today() {
+    return (int)(System.currentTimeMillis() / DateFormatUtil.DAY);
+  }
+
+  /**
+   * Opens the cache, evicting the old annotations first if it hasn't been done today.
+   */
+  @NotNull
+  static RootCache open(@NotNull File dir, int today, int maxAnnotations) throws IOException {
+    File versionFile = new File(dir, "version");
+    if (!versionFile.exists() || !String.valueOf(VERSION).equals(FileUtil.loadFile(versionFile).trim())) {
+      FileUtil.delete(dir);
+      FileUtil.writeToFile(versionFile, String.valueOf(VERSION));
+    }
+    File evictionFile = new File(dir, "evicted");
+    if (!evictionFile.exists() || !String.valueOf(today).equals(FileUtil.loadFile(evictionFile).trim())) {
+      evict(dir, today, maxAnnotations);
+      FileUtil.writeToFile(evictionFile, String.valueOf(today));
+    }
+    return new RootCache(dir);
+  }
+
+  /**
+   * Drops the annotations which haven't been used for {@link #MAX_AGE_DAYS} and the least recently used ones above
+   * the limit, along with the commits not referenced by the rest. Removing entries from a persistent map
+   * doesn't shrink its files, so the rest is copied to a new cache which replaces the old one.
+   */
+  private static void evict(@NotNull File dir, int today, int maxAnnotations) throws IOException {
+    List<Pair<String, Integer>> retained = new ArrayList<Pair<String, Integer>>();
+    RootCache cache = new RootCache(dir);
+    try {
+      Collection<String> keys = cache.myAnnotations.getAllKeysWithExistingMapping();
+      for (String key : keys) {
+        StoredAnnotation stored = cache.myAnnotations.get(key);
+        if (stored != null && today - stored.accessDay <= MAX_AGE_DAYS) {
+          retained.add(Pair.create(key, stored.accessDay));
+        }
+      }
+      int total = keys.size();
+      if (retained.size() == total && total <= maxAnnotations) return;
+
+      Collections.sort(retained, new Comparator<Pair<String, Integer>>() {
+        @Override
+        public int compare(Pair<String, Integer> o1, Pair<String, Integer> o2) {
+          return o2.second - o1.second;
+        }
+      });
+      List<Pair<String, Integer>> kept = retained.subList(0, Math.min(retained.size(), maxAnnotations));
+
+      File newDir = new File(dir.getPath() + ".new");
+      FileUtil.delete(newDir);
+      RootCache newCache = new RootCache(newDir);
+      try {
+        for (Pair<String, Integer> each : kept) {
+          StoredAnnotation stored = cache.myAnnotations.get(each.first);
+          newCache.myAnnotations.put(each.first, stored);
+          for (String hash : stored.annotation.hashes) {
+            if (!newCache.myCommits.containsMapping(hash)) {
+              CommitInfo commit = cache.myCommits.get(hash);
+              if (commit != null) newCache.myCommits.put(hash, commit);
+            }
+          }
+        }
+      }
+      finally {
+        newCache.close();
+      }
+      cache.close();
+      cache = null;
+
+      for (File file : new File[]{new File(dir, "annotations"), new File(dir, "commits")}) {
+        PersistentHashMap.deleteFilesStartingWith(file);
+      }
+      for (File file : newDir.listFiles()) {
+        FileUtil.rename(file, new File(dir, file.getName()));
+      }
+      FileUtil.delete(newDir);
+      LOG.info("Annotation cache " + dir.getName() + ": " + kept.size() + " of " + total + " annotations kept");
+    }
+    finally {
+      if (cache != null) cache.close();
+    }
+  }
+
+  private void drop(@NotNull VirtualFile root, @NotNull IOException e) {
+    LOG.info("Annotation cache of " + root.getPath() + " is dropped", e);
+    synchronized (myCaches) {
+      RootCache cache = myCaches.remove(root.getPath());
+      if (cache != null) {
+        cache.close();
+      }
+      FileUtil.delete(getDir(root));
+    }
+  }
+
+  /**
+   * @param key the path relative to the root, with the revision appended for annotations of non-current revisions
+   */
+  @Nullable
+  public LineRevisions getAnnotation(@NotNull VirtualFile root, @NotNull String key) {
+    RootCache cache = getRootCache(root);
+    if (cache == null) return null;
+    try {
+      return cache.getAnnotation(key, today());
+    }
+    catch (IOException e) {
+      drop(root, e);
+      return null;
+    }
+  }
+
+  public void putAnnotation(@NotNull VirtualFile root, @NotNull String key, @NotNull LineRevisions annotation) {
+    RootCache cache = getRootCache(root);
+    if (cache == null) return;
+    try {
+      cache.putAnnotation(key, annotation, today());
+    }
+    catch (IOException e) {
+      drop(root, e);
+    }
+  }
+
+  @Nullable
+  public CommitInfo getCommit(@NotNull VirtualFile root, @NotNull String hash) {
+    RootCache cache = getRootCache(root);
+    if (cache == null) return null;
+    try {
+      return cache.getCommit(hash);
+    }
+    catch (IOException e) {
+      drop(root, e);
+      return null;
+    }
+  }
+
+  public void putCommits(@NotNull VirtualFile root, @NotNull Map<String, CommitInfo> commits) {
+    RootCache cache = getRootCache(root);
+    if (cache == null) return;
+    try {
+      cache.putCommits(commits);
+    }
+    catch (IOException e) {
+      drop(root, e);
+    }
+  }
+
+  @Override
+  public void dispose() {
+    synchronized (myCaches) {
+      for (RootCache cache : myCaches.values()) {
+        if (cache != null) {
+          cache.close();
+        }
+      }
+      myCaches.clear();
+    }
+  }
+
+  private static class StoredAnnotationExternalizer implements DataExternalizer<StoredAnnotation> {
+    @Override
+    public void save(DataOutput out, StoredAnnotation stored) throws IOException {
+      DataInputOutputUtil.writeINT(out, stored.accessDay);
+      LineRevisions value = stored.annotation;
+      IOUtil.writeString(value.revision, out);
+      DataInputOutputUtil.writeINT(out, value.hashes.length);
+      for (String hash : value.hashes) {
+        IOUtil.writeString(hash, out);
+      }
+      DataInputOutputUtil.writeINT(out, value.lines.length);
+      for (int line : value.lines) {
+        DataInputOutputUtil.writeINT(out, line);
+      }
+    }
+
+    @Override
+    public StoredAnnotation read(DataInput in) throws IOException {
+      int accessDay = DataInputOutputUtil.readINT(in);
+      String revision = IOUtil.readString(in);
+      String[] hashes = new String[DataInputOutputUtil.readINT(in)];
+      for (int i = 0; i < hashes.length; i++) {
+        hashes[i] = IOUtil.readString(in);
+      }
+      int[] lines = new int[DataInputOutputUtil.readINT(in)];
+      for (int i = 0; i < lines.length; i++) {
+        lines[i] = DataInputOutputUtil.readINT(in);
+      }
+      return new StoredAnnotation(new LineRevisions(revision, hashes, lines), accessDay);
+    }
+  }
+
+  private static class CommitInfoExternalizer implements DataExternalizer<CommitInfo> {
+    @Override
+    public void save(DataOutput out, CommitInfo value) throws IOException {
+      out.writeLong(value.time);
+      IOUtil.writeString(value.author, out);
+      IOUtil.writeString(value.message, out);
+    }
+
+    @Override
+    public CommitInfo read(DataInput in) throws IOException {
+      long time = in.readLong();
+      String author = IOUtil.readString(in);
+      return new CommitInfo(time, author, IOUtil.readString(in));
+    }
+  }
+}
@@ -20,6 +20,7 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vcs.FilePathImpl;
@@ -29,26 +30,31 @@ import com.intellij.openapi.vcs.history.VcsAbstractHistorySession;
 import com.intellij.openapi.vcs.history.VcsFileRevision;
 import com.intellij.openapi.vcs.history.VcsRevisionNumber;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.ArrayUtil;
+import com.intellij.vcsUtil.VcsFileUtil;
 import com.intellij.vcsUtil.VcsUtil;
 import git4idea.GitFileRevision;
 import git4idea.GitRevisionNumber;
 import git4idea.GitUtil;
 import git4idea.commands.GitCommand;
 import git4idea.commands.GitSimpleHandler;
+import git4idea.util.GitFileUtils;
 import git4idea.util.StringScanner;
 import git4idea.history.GitHistoryUtils;
 import git4idea.i18n.GitBundle;
+import gnu.trove.TObjectIntHashMap;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 /**
  * Git annotation provider implementation.
  * <p/>
+ * Annotations are kept in the persistent {@link GitAnnotationCache}: annotating a file again after new commits replays their diffs
+ * over the cached annotation instead of running <code>git blame</code>, and the revision details come from the cache as well.
+ * <p/>
  * Based on the JetBrains SVNAnnotationProvider.
  */
 public class GitAnnotationProvider implements AnnotationProvider, VcsCacheableAnnotationProvider {
@@ -97,20 +103,37 @@ public class GitAnnotationProvider implements AnnotationProvider, VcsCacheableAn
         try {
           final FilePath currentFilePath = VcsUtil.getFilePath(file.getPath());
           final FilePath realFilePath;
-          if (progress != null) {
-            progress.setText(GitBundle.message("getting.history", file.getName()));
-          }
-          final List<VcsFileRevision> revisions = GitHistoryUtils.history(myProject, currentFilePath);
           if (revision == null) {
             realFilePath = GitHistoryUtils.getLastCommitName(myProject, currentFilePath);
           }
           else {
             realFilePath = ((GitFileRevision)revision).getPath();
           }
+          final VirtualFile root = GitUtil.getGitRoot(realFilePath);
+          final String relativePath = VcsFileUtil.relativePath(root, realFilePath);
+          final VcsRevisionNumber annotatedRevision =
+            revision == null ? GitHistoryUtils.getCurrentRevision(myProject, realFilePath, "HEAD") : revision.getRevisionNumber();
+          final String cacheKey = annotatedRevision == null || relativePath == null ? null :
+                                  revision == null ? relativePath : relativePath + "@" + annotatedRevision.asString();
+
+          if (cacheKey != null) {
+            annotation[0] = annotateFromCache(root, relativePath, realFilePath, cacheKey, annotatedRevision.asString(), revision, file);
+            if (annotation[0] != null) {
+              return;
+            }
+          }
+
+          if (progress != null) {
+            progress.setText(GitBundle.message("getting.history", file.getName()));
+          }
+          final List<VcsFileRevision> revisions = GitHistoryUtils.history(myProject, currentFilePath);
           if (progress != null) {
             progress.setText(GitBundle.message("computing.annotation", file.getName()));
           }
           final GitFileAnnotation result = annotate(realFilePath, revision, revisions, file);
+          if (cacheKey != null) {
+            cacheAnnotation(root, cacheKey, annotatedRevision.asString(), revisions, result);
+          }
           annotation[0] = result;
         }
         catch (Exception e) {
@@ -211,6 +234,141 @@ public class GitAnnotationProvider implements AnnotationProvider, VcsCacheableAn
     return annotation;
   }
 
+  /**
+   * Restores the annotation of the given revision from the persistent cache, replaying the commits made since the cached revision
+   * if needed.
+   *
+   * @return the annotation, or null if it is not cached or can't be brought up to date
+   */
+  @Nullable
+  private GitFileAnnotation annotateFromCache(@NotNull VirtualFile root, @NotNull String relativePath, @NotNull FilePath repositoryFilePath,
+                                              @NotNull String cacheKey, @NotNull String annotatedRevision,
+                                              @Nullable VcsFileRevision revision, @NotNull VirtualFile file) {
+    GitAnnotationCache cache = GitAnnotationCache.getInstance();
+    GitAnnotationCache.LineRevisions lineRevisions = cache.getAnnotation(root, cacheKey);
+    if (lineRevisions == null) {
+      return null;
+    }
+    try {
+      boolean updated = false;
+      if (!lineRevisions.revision.equals(annotatedRevision)) {
+        if (revision != null) {
+          return null;
+        }
+        Map<String, GitAnnotationCache.CommitInfo> newCommits = new HashMap<String, GitAnnotationCache.CommitInfo>();
+        lineRevisions = GitAnnotationUpdater.update(lineRevisions, annotatedRevision,
+                                                    loadChangesSince(root, repositoryFilePath, lineRevisions.revision, annotatedRevision),
+                                                    newCommits);
+        if (lineRevisions == null) {
+          return null;
+        }
+        cache.putCommits(root, newCommits);
+        updated = true;
+      }
+
+      byte[] content = GitFileUtils.getFileContent(myProject, root, annotatedRevision, relativePath);
+      List<String> lines = splitLines(new String(content, file.getCharset()));
+      if (lines.size() != lineRevisions.lines.length) {
+        return null;
+      }
+
+      GitRevisionNumber[] revisions = new GitRevisionNumber[lineRevisions.hashes.length];
+      String[] authors = new String[revisions.length];
+      List<VcsFileRevision> fileRevisions = new ArrayList<VcsFileRevision>(revisions.length);
+      for (int i = 0; i < revisions.length; i++) {
+        GitAnnotationCache.CommitInfo info = cache.getCommit(root, lineRevisions.hashes[i]);
+        if (info == null) {
+          return null;
+        }
+        revisions[i] = new GitRevisionNumber(lineRevisions.hashes[i], new Date(info.time));
+        authors[i] = info.author;
+        Pair<Pair<String, String>, Pair<String, String>> authorAndCommitter =
+          new Pair<Pair<String, String>, Pair<String, String>>(new Pair<String, String>(info.author, null), null);
+        fileRevisions.add(new GitFileRevision(myProject, repositoryFilePath, revisions[i], authorAndCommitter, info.message, null, null,
+                                              Collections.<String>emptyList()));
+      }
+
+      GitFileAnnotation annotation =
+        new GitFileAnnotation(myProject, file, revision == null, revision == null ? null : revision.getRevisionNumber());
+      for (int i = 0; i < lines.size(); i++) {
+        GitRevisionNumber lineRevision = revisions[lineRevisions.lines[i]];
+        annotation.appendLineInfo(lineRevision.getTimestamp(), lineRevision, authors[lineRevisions.lines[i]], lines.get(i), i + 1);
+      }
+      annotation.addLogEntries(fileRevisions);
+      if (updated) {
+        cache.putAnnotation(root, cacheKey, lineRevisions);
+      }
+      return annotation;
+    }
+    catch (VcsException e) {
+      LOG.info("Couldn't restore the annotation of " + repositoryFilePath + " from the cache", e);
+      return null;
+    }
+  }
+
+  @NotNull
+  private String loadChangesSince(@NotNull VirtualFile root, @NotNull FilePath repositoryFilePath, @NotNull String base,
+                                  @NotNull String revision) throws VcsException {
+    GitSimpleHandler h = new GitSimpleHandler(myProject, root, GitCommand.LOG);
+    h.setNoSSH(true);
+    h.setSilent(true);
+    h.setStdoutSuppressed(true);
+    h.addParameters("--reverse", "--parents", "-p", "-U0", "-w", "--no-color", "--no-ext-diff", GitAnnotationUpdater.LOG_FORMAT,
+                    base + ".." + revision);
+    h.endOptions();
+    h.addRelativePaths(repositoryFilePath);
+    return h.run();
+  }
+
+  /**
+   * Splits the content as 'git blame' does: each line keeps its separator, and the last line gets one if it doesn't have it.
+   */
+  @NotNull
+  private static List<String> splitLines(@NotNull String content) {
+    List<String> lines = new ArrayList<String>();
+    int start = 0;
+    while (start < content.length()) {
+      int end = content.indexOf('\n', start);
+      if (end < 0) {
+        lines.add(content.substring(start) + "\n");
+        break;
+      }
+      lines.add(content.substring(start, end + 1));
+      start = end + 1;
+    }
+    return lines;
+  }
+
+  private static void cacheAnnotation(@NotNull VirtualFile root, @NotNull String cacheKey, @NotNull String annotatedRevision,
+                                      @NotNull List<VcsFileRevision> history, @NotNull GitFileAnnotation annotation) {
+    Map<String, String> messages = new HashMap<String, String>();
+    for (VcsFileRevision fileRevision : history) {
+      messages.put(fileRevision.getRevisionNumber().asString(), fileRevision.getCommitMessage());
+    }
+    Map<String, GitAnnotationCache.CommitInfo> commits = new HashMap<String, GitAnnotationCache.CommitInfo>();
+    TObjectIntHashMap<String> indices = new TObjectIntHashMap<String>();
+    List<String> hashes = new ArrayList<String>();
+    int[] lines = new int[annotation.getNumLines()];
+    for (int i = 0; i < lines.length; i++) {
+      GitFileAnnotation.LineInfo info = annotation.getLineInfo(i);
+      if (info == null || info.getRevision() == null || info.getDate() == null) {
+        return; // not committed
+      }
+      String hash = info.getRevision().asString();
+      if (!indices.containsKey(hash)) {
+        indices.put(hash, hashes.size());
+        hashes.add(hash);
+        String message = messages.get(hash);
+        commits.put(hash, new GitAnnotationCache.CommitInfo(info.getDate().getTime(), StringUtil.notNullize(info.getAuthor()),
+                                                            StringUtil.notNullize(message)));
+      }
+      lines[i] = indices.get(hash);
+    }
+    GitAnnotationCache cache = GitAnnotationCache.getInstance();
+    cache.putCommits(root, commits);
+    cache.putAnnotation(root, cacheKey, new GitAnnotationCache.LineRevisions(annotatedRevision, ArrayUtil.toStringArray(hashes), lines));
+  }
+
   @Override
   public VcsAnnotation createCacheable(FileAnnotation fileAnnotation) {
     final GitFileAnnotation gitFileAnnotation = (GitFileAnnotation) fileAnnotation;
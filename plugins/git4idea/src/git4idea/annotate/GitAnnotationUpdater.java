@@ -0,0 +1,143 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.annotate;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.ArrayUtil;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Brings a cached annotation up to date with a newer revision by replaying the diffs of the commits made since the annotated revision:
+ * lines added by a commit are attributed to it, other lines keep their revisions.
+ * <p/>
+ * The input is the output of <code>git log --reverse --parents -p -U0 -w</code> with {@link #LOG_FORMAT} for the file.
+ * The result is the same as <code>git blame -w</code> would give as long as the history of the file between the revisions is linear;
+ * if it is not (a merge changed the file, the file was renamed), nothing is computed.
+ */
+class GitAnnotationUpdater {
+  static final String LOG_FORMAT = "--pretty=format:%x01%H%x02%P%x02%ct%x02%an%x02%B%x03";
+  private static final String RECORD_START = "\u0001";
+  private static final String ITEMS_SEPARATOR = "\u0002";
+  private static final String RECORD_END = "\u0003";
+
+  private static final Pattern HUNK = Pattern.compile("@@ -(\\d+)(?:,(\\d+))? \\+(\\d+)(?:,(\\d+))? @@.*");
+  private static final String[] UNSUPPORTED_HEADERS = {"new file mode", "deleted file mode", "rename ", "copy ", "similarity", "Binary"};
+
+  private GitAnnotationUpdater() {
+  }
+
+  /**
+   * @param newCommits receives the details of the replayed commits
+   * @return the annotation of the given revision, or null if it can't be computed from the log
+   */
+  @Nullable
+  static GitAnnotationCache.LineRevisions update(@NotNull GitAnnotationCache.LineRevisions base, @NotNull String revision,
+                                                 @NotNull String log, @NotNull Map<String, GitAnnotationCache.CommitInfo> newCommits) {
+    List<String> hashes = new ArrayList<String>(Arrays.asList(base.hashes));
+    TIntArrayList lines = new TIntArrayList(base.lines);
+    String last = base.revision;
+
+    for (String record : log.split(RECORD_START)) {
+      if (StringUtil.isEmptyOrSpaces(record)) continue;
+      int headerEnd = record.indexOf(RECORD_END);
+      if (headerEnd < 0) return null;
+      String[] header = record.substring(0, headerEnd).split(ITEMS_SEPARATOR, -1);
+      if (header.length != 5) return null;
+      String hash = header[0].trim();
+      // parents are rewritten to the previous commit changing the file, so the history is linear if each commit follows the previous one
+      if (!last.equals(header[1].trim())) return null;
+      long time;
+      try {
+        time = Long.parseLong(header[2].trim()) * 1000;
+      }
+      catch (NumberFormatException e) {
+        return null;
+      }
+      newCommits.put(hash, new GitAnnotationCache.CommitInfo(time, header[3], header[4].trim()));
+
+      hashes.add(hash);
+      lines = applyPatch(lines, record.substring(headerEnd + 1), hashes.size() - 1);
+      if (lines == null) return null;
+      last = hash;
+    }
+    if (!last.equals(revision)) return null;
+    return compact(revision, hashes, lines);
+  }
+
+  @Nullable
+  private static TIntArrayList applyPatch(@NotNull TIntArrayList lines, @NotNull String patch, int commit) {
+    TIntArrayList result = new TIntArrayList(lines.size());
+    int position = 0;
+    boolean fileHeaderSeen = false;
+    for (String line : StringUtil.splitByLines(patch)) {
+      if (line.startsWith("diff ")) {
+        if (fileHeaderSeen) return null; // more than one file
+        fileHeaderSeen = true;
+        continue;
+      }
+      for (String header : UNSUPPORTED_HEADERS) {
+        if (line.startsWith(header)) return null;
+      }
+      if (!line.startsWith("@@ ")) continue;
+      Matcher matcher = HUNK.matcher(line);
+      if (!matcher.matches()) return null;
+      int oldStart = Integer.parseInt(matcher.group(1));
+      int oldCount = matcher.group(2) == null ? 1 : Integer.parseInt(matcher.group(2));
+      int newCount = matcher.group(4) == null ? 1 : Integer.parseInt(matcher.group(4));
+      // for pure insertions the old start is the line after which the new lines go
+      int hunkStart = oldCount == 0 ? oldStart : oldStart - 1;
+      if (hunkStart < position || hunkStart + oldCount > lines.size()) return null;
+      for (int i = position; i < hunkStart; i++) {
+        result.add(lines.get(i));
+      }
+      for (int i = 0; i < newCount; i++) {
+        result.add(commit);
+      }
+      position = hunkStart + oldCount;
+    }
+    for (int i = position; i < lines.size(); i++) {
+      result.add(lines.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * Drops the commits which no line refers to anymore.
+   */
+  @NotNull
+  private static GitAnnotationCache.LineRevisions compact(@NotNull String revision, @NotNull List<String> hashes,
+                                                          @NotNull TIntArrayList lines) {
+    TIntIntHashMap newIndices = new TIntIntHashMap();
+    List<String> usedHashes = new ArrayList<String>();
+    int[] result = new int[lines.size()];
+    for (int i = 0; i < result.length; i++) {
+      int commit = lines.get(i);
+      if (!newIndices.containsKey(commit)) {
+        newIndices.put(commit, usedHashes.size());
+        usedHashes.add(hashes.get(commit));
+      }
+      result[i] = newIndices.get(commit);
+    }
+    return new GitAnnotationCache.LineRevisions(revision, ArrayUtil.toStringArray(usedHashes), result);
+  }
+}
@@ -193,6 +193,11 @@ public class GitFileAnnotation extends FileAnnotation {
     return lineInfo == null ? null : lineInfo.getRevision();
   }
 
+  @Nullable
+  LineInfo getLineInfo(int lineNumber) {
+    return lineNumberCheck(lineNumber) ? null : myLines.get(lineNumber);
+  }
+
   private boolean lineNumberCheck(int lineNumber) {
     return myLines.size() <= lineNumber || lineNumber < 0 || myLines.get(lineNumber) == null;
   }
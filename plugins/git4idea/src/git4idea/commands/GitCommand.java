@@ -45,6 +45,7 @@ public class GitCommand {
   public static final GitCommand CLONE = write("clone");
   public static final GitCommand DIFF = read("diff");
   public static final GitCommand FETCH = read("fetch");  // fetch is a read-command, because it doesn't modify the index
+  public static final GitCommand FOR_EACH_REF = read("for-each-ref");
   public static final GitCommand INIT = write("init");
   public static final GitCommand LOG = read("log");
   public static final GitCommand LS_FILES = read("ls-files");
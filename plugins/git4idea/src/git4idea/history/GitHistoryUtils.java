@@ -50,6 +50,7 @@ import git4idea.history.browser.SymbolicRefs;
 import git4idea.history.browser.SymbolicRefsI;
 import git4idea.history.wholeTree.AbstractHash;
 import git4idea.history.wholeTree.CommitHashPlusParents;
+import git4idea.history.wholeTree.GitCommitGraph;
 import git4idea.history.wholeTree.GitCommitsSequentialIndex;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -268,6 +269,110 @@ public class GitHistoryUtils {
     if (! file.exists() || file.length() == 0) throw new VcsException("Short repository history not loaded");
   }
 
+  /**
+   * @return commits pointed by the local and remote branches and tags: full ref names to full hashes
+   */
+  @NotNull
+  public static Map<String, String> loadRefsHeads(@NotNull Project project, @NotNull VirtualFile root) throws VcsException {
+    final GitSimpleHandler h = new GitSimpleHandler(project, root, GitCommand.FOR_EACH_REF);
+    h.setNoSSH(true);
+    h.setSilent(true);
+    h.setStdoutSuppressed(true);
+    h.addParameters("--format=%(refname)%09%(objecttype)%09%(objectname)%09%(*objecttype)%09%(*objectname)",
+                    "refs/heads", "refs/remotes", "refs/tags");
+    final String output = h.run();
+
+    final Map<String, String> result = new LinkedHashMap<String, String>();
+    for (String line : StringUtil.splitByLines(output)) {
+      final String[] parts = line.split("\t", -1);
+      if (parts.length < 5 || parts[0].endsWith("/HEAD")) continue;
+      // annotated tags are peeled; refs to trees and blobs are skipped
+      if ("commit".equals(parts[1])) {
+        result.put(parts[0], parts[2]);
+      }
+      else if ("commit".equals(parts[3])) {
+        result.put(parts[0], parts[4]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Loads commits reachable from the branches and tags but not from the given commits, parents first,
+   * for {@link git4idea.history.wholeTree.GitCommitGraph}.
+   */
+  public static void loadCommitGraph(@NotNull Project project, @NotNull VirtualFile root, @NotNull Collection<String> excluded,
+                                     @NotNull final Consumer<GitCommitGraph.Record> consumer, @Nullable final Getter<Boolean> isCanceled)
+    throws VcsException {
+    final GitLineHandler h = new GitLineHandler(project, root, GitCommand.LOG);
+    final GitLogParser parser = new GitLogParser(project, GitLogParser.NameStatus.NAME,
+                                                 HASH, SHORT_HASH, COMMIT_TIME, PARENTS, AUTHOR_NAME, COMMITTER_NAME);
+    h.setNoSSH(true);
+    h.setSilent(true);
+    h.setStdoutSuppressed(true);
+    h.addParameters("--reverse", "--topo-order", "--name-only", parser.getPretty(), "--encoding=UTF-8",
+                    "--branches", "--remotes", "--tags");
+    if (!excluded.isEmpty()) {
+      h.addParameters("--not");
+      h.addParameters(new ArrayList<String>(excluded));
+    }
+    h.endOptions();
+
+    final MyTokenAccumulator accumulator = new MyTokenAccumulator(parser);
+    final Semaphore semaphore = new Semaphore();
+    final VcsException[] exceptions = new VcsException[1];
+    h.addLineListener(new GitLineHandlerListener() {
+      @Override
+      public void onLineAvailable(String line, Key outputType) {
+        if (!ProcessOutputTypes.STDOUT.equals(outputType) || exceptions[0] != null) return;
+        try {
+          if (isCanceled != null && isCanceled.get()) {
+            throw new ProcessCanceledException();
+          }
+          final GitLogRecord record = accumulator.acceptLine(line);
+          if (record != null) {
+            consumer.consume(createGraphRecord(record));
+          }
+        }
+        catch (VcsException e) {
+          exceptions[0] = e;
+          h.cancel();
+        }
+        catch (ProcessCanceledException e) {
+          exceptions[0] = new VcsException("Loading of the commit graph was canceled");
+          h.cancel();
+        }
+      }
+
+      @Override
+      public void processTerminated(int exitCode) {
+        semaphore.up();
+      }
+
+      @Override
+      public void startFailed(Throwable exception) {
+        exceptions[0] = new VcsException(exception);
+        semaphore.up();
+      }
+    });
+    semaphore.down();
+    h.start();
+    semaphore.waitFor();
+    if (exceptions[0] != null) throw exceptions[0];
+    if (!h.errors().isEmpty()) throw h.errors().get(0);
+
+    final GitLogRecord last = accumulator.processLast();
+    if (last != null) {
+      consumer.consume(createGraphRecord(last));
+    }
+  }
+
+  @NotNull
+  private static GitCommitGraph.Record createGraphRecord(@NotNull GitLogRecord record) throws VcsException {
+    return new GitCommitGraph.Record(record.getHash(), record.getShortHash().length(), record.getLongTimeStamp(), record.getAuthorName(),
+                                     record.getCommitterName(), record.getParentsHashes(), record.getRelativePaths());
+  }
+
   /*
    === Smart full log with renames ===
    'git log --follow' does detect renames, but it has a bug - merge commits aren't handled properly: they just dissapear from the history.
@@ -80,6 +80,15 @@ class GitLogRecord {
     return res;
   }
 
+  @NotNull
+  List<String> getRelativePaths() throws VcsException {
+    List<String> res = new ArrayList<String>(myPaths.size());
+    for (String strPath : myPaths) {
+      res.add(GitUtil.unescapePath(strPath));
+    }
+    return res;
+  }
+
   private String lookup(GitLogParser.GitLogOption key) {
     return shortBuffer(myOptions.get(key));
   }
@@ -133,6 +133,10 @@ public class ChangesFilter {
     public CommandParametersFilter getCommandParametersFilter() {
       return myCommandParametersFilter;
     }
+
+    public Filter[] getFilters() {
+      return myFilters;
+    }
   }
 
   public static List<MemoryFilter> combineFilters(final Collection<Filter> filters) {
@@ -218,6 +222,10 @@ public class ChangesFilter {
       };
     }
 
+    public long getTs() {
+      return myTs;
+    }
+
     @NotNull
     @Override
     public MemoryFilter getMemoryFilter() {
@@ -256,6 +264,10 @@ public class ChangesFilter {
       };
     }
 
+    public long getTs() {
+      return myTs;
+    }
+
     @NotNull
     @Override
     public MemoryFilter getMemoryFilter() {
@@ -294,6 +306,10 @@ public class ChangesFilter {
       };
     }
 
+    public String getRegexp() {
+      return myRegexp;
+    }
+
     public CommandParametersFilter getCommandParametersFilter() {
       return myCommandParametersFilter;
     }
@@ -346,6 +362,10 @@ public class ChangesFilter {
       };
     }
 
+    public String getRegexp() {
+      return myRegexp;
+    }
+
     public CommandParametersFilter getCommandParametersFilter() {
       return myCommandParametersFilter;
     }
@@ -396,6 +416,10 @@ public class ChangesFilter {
       };
     }
 
+    public Date getDate() {
+      return myDate;
+    }
+
     public CommandParametersFilter getCommandParametersFilter() {
       return myCommandParametersFilter;
     }
@@ -446,6 +470,10 @@ public class ChangesFilter {
       };
     }
 
+    public Date getDate() {
+      return myDate;
+    }
+
     public CommandParametersFilter getCommandParametersFilter() {
       return myCommandParametersFilter;
     }
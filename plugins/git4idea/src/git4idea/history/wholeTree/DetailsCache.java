@@ -157,13 +157,15 @@ public class DetailsCache {
                   public void run(@NotNull ProgressIndicator indicator) {
                     if (!recheck.process(abstractHash)) return;
                     if (getBranches(root, abstractHash) != null) return;
-                    List<String> branches;
-                    try {
-                      branches = new LowLevelAccessImpl(myProject, root).getBranchesWithCommit(abstractHash.getString());
-                    }
-                    catch (VcsException e) {
-                      LOG.info(e);
-                      branches = Collections.singletonList("Can not load branches due to error: " + e.getMessage());
+                    List<String> branches = getBranchesFromGraph(myProject, root, abstractHash);
+                    if (branches == null) {
+                      try {
+                        branches = new LowLevelAccessImpl(myProject, root).getBranchesWithCommit(abstractHash.getString());
+                      }
+                      catch (VcsException e) {
+                        LOG.info(e);
+                        branches = Collections.singletonList("Can not load branches due to error: " + e.getMessage());
+                      }
                     }
                     putBranches(root, abstractHash, branches);
                     final List<String> finalBranches = branches;
@@ -177,6 +179,30 @@ public class DetailsCache {
                 }, myState, null);
   }
 
+  // local branches first, then remote ones - as 'git branch -a --contains' lists them;
+  // null if the graph isn't built yet or can't be brought up to date with the refs, then git is asked
+  @Nullable
+  private static List<String> getBranchesFromGraph(final Project project, final VirtualFile root, final AbstractHash abstractHash) {
+    final GitCommitGraph graph = GitCommitGraphStore.getInstance().getUpToDateGraph(project, root);
+    if (graph == null) return null;
+    final int id = graph.find(abstractHash.getString());
+    if (id == GitCommitGraph.NOT_FOUND) return null;
+
+    final List<String> local = new ArrayList<String>();
+    final List<String> remote = new ArrayList<String>();
+    for (String ref : graph.getContainingRefs(id)) {
+      if (ref.startsWith(GitBranch.REFS_HEADS_PREFIX)) {
+        local.add(ref.substring(GitBranch.REFS_HEADS_PREFIX.length()));
+      } else if (ref.startsWith(GitBranch.REFS_REMOTES_PREFIX)) {
+        remote.add(ref.substring(GitBranch.REFS_REMOTES_PREFIX.length()));
+      }
+    }
+    Collections.sort(local);
+    Collections.sort(remote);
+    local.addAll(remote);
+    return local;
+  }
+
   public void setModalityState(ModalityState state) {
     myState = state;
   }
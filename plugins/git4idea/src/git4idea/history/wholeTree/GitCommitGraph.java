@@ -0,0 +1,643 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.history.wholeTree;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.io.DataInputOutputUtil;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Compact commit graph of one repository: commits get int ids in the order they were added, parents always precede
+ * their children, so the ids are a topological order of the graph. Hashes, times, authors, committers, parents and
+ * changed paths are kept in flat arrays indexed by these ids; parents and paths are stored in adjacency arrays.
+ * <p/>
+ * The graph is persisted to an append-only data file (users, paths and commits are written in the order they appear)
+ * and a small snapshot file of the refs heads, which is rewritten on every update.
+ */
+public class GitCommitGraph {
+  public static final int NOT_FOUND = -1;
+
+  private static final int VERSION = 1;
+  private static final int HASH_LENGTH = 20;
+  private static final int MIN_PREFIX_LENGTH = 6; // hex chars
+  private static final byte USER = 1;
+  private static final byte PATH = 2;
+  private static final byte COMMIT = 3;
+
+  private final File myDataFile;
+  private final File myRefsFile;
+
+  private byte[] myHashes = ArrayUtil.EMPTY_BYTE_ARRAY;
+  private byte[] myShortHashLengths = ArrayUtil.EMPTY_BYTE_ARRAY;
+  private final TIntArrayList myTimes = new TIntArrayList(); // seconds
+  private final TIntArrayList myAuthors = new TIntArrayList();
+  private final TIntArrayList myCommitters = new TIntArrayList();
+  private final TIntArrayList myParentsStarts = new TIntArrayList();
+  private final TIntArrayList myParents = new TIntArrayList();
+  private final TIntArrayList myPathsStarts = new TIntArrayList();
+  private final TIntArrayList myPaths = new TIntArrayList();
+  private int mySize;
+  private int[] myTable = new int[16]; // open addressing: commit ids by first bytes of their hashes
+
+  private final List<String> myUserNames = new ArrayList<String>();
+  private final TObjectIntHashMap<String> myUserIds = new TObjectIntHashMap<String>();
+  private final List<String> myPathNames = new ArrayList<String>();
+  private final TObjectIntHashMap<String> myPathIds = new TObjectIntHashMap<String>();
+
+  private final Map<String, Integer> myRefs = new LinkedHashMap<String, Integer>();
+
+  public GitCommitGraph(@NotNull File dataFile, @NotNull File refsFile) {
+    myDataFile = dataFile;
+    myRefsFile = refsFile;
+    myParentsStarts.add(0);
+    myPathsStarts.add(0);
+    Arrays.fill(myTable, NOT_FOUND);
+  }
+
+  public static class Record {
+    private final String myHash;
+    private final int myShortHashLength;
+    private final long myTime;
+    private final String myAuthor;
+    private final String myCommitter;
+    private final String[] myParents;
+    private final List<String> myPaths;
+
+    /**
+     * @param time  commit time, in seconds
+     * @param paths changed paths, relative to the root
+     */
+    public Record(@NotNull String hash, int shortHashLength, long time, @NotNull String author, @NotNull String committer,
+                  @NotNull String[] parents, @NotNull List<String> paths) {
+      myHash = hash;
+      myShortHashLength = shortHashLength;
+      myTime = time;
+      myAuthor = author;
+      myCommitter = committer;
+      myParents = parents;
+      myPaths = paths;
+    }
+
+    @NotNull
+    public String getHash() {
+      return myHash;
+    }
+  }
+
+  /**
+   * Reads the persisted graph; a broken tail of the data file (e.g. after a crash during an update) is cut off.
+   *
+   * @return false if there is no valid data file, i.e. the graph should be built from scratch; an outdated file is deleted
+   */
+  public synchronized boolean load() throws IOException {
+    if (!myDataFile.isFile()) return false;
+    byte[] bytes = FileUtil.loadFileBytes(myDataFile);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    if (bytes.length < 4 || in.readInt() != VERSION) {
+      FileUtil.delete(myDataFile);
+      FileUtil.delete(myRefsFile);
+      return false;
+    }
+
+    int validLength = bytes.length - in.available();
+    try {
+      while (in.available() > 0) {
+        byte tag = in.readByte();
+        if (tag == USER) {
+          addName(in.readUTF(), myUserNames, myUserIds);
+        }
+        else if (tag == PATH) {
+          addName(in.readUTF(), myPathNames, myPathIds);
+        }
+        else if (tag == COMMIT) {
+          readCommit(in);
+        }
+        else {
+          throw new EOFException("Unexpected tag: " + tag);
+        }
+        validLength = bytes.length - in.available();
+      }
+    }
+    catch (EOFException e) {
+      RandomAccessFile file = new RandomAccessFile(myDataFile, "rw");
+      try {
+        file.setLength(validLength);
+      }
+      finally {
+        file.close();
+      }
+    }
+    loadRefs();
+    return true;
+  }
+
+  private void readCommit(DataInputStream in) throws IOException {
+    byte[] hash = new byte[HASH_LENGTH];
+    in.readFully(hash);
+    byte shortHashLength = in.readByte();
+    int time = in.readInt();
+    int author = DataInputOutputUtil.readINT(in);
+    int committer = DataInputOutputUtil.readINT(in);
+    int[] parents = readInts(in);
+    int[] paths = readInts(in);
+    // the whole record is read, so it is safe to add it
+    addCommit(hash, shortHashLength, time, author, committer, parents, paths);
+  }
+
+  private static int[] readInts(DataInput in) throws IOException {
+    int[] result = new int[DataInputOutputUtil.readINT(in)];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = DataInputOutputUtil.readINT(in);
+    }
+    return result;
+  }
+
+  private static void writeInts(DataOutput out, int[] ints) throws IOException {
+    DataInputOutputUtil.writeINT(out, ints.length);
+    for (int each : ints) {
+      DataInputOutputUtil.writeINT(out, each);
+    }
+  }
+
+  private void loadRefs() throws IOException {
+    myRefs.clear();
+    if (!myRefsFile.isFile()) return;
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myRefsFile)));
+    try {
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String name = in.readUTF();
+        int id = in.readInt();
+        if (id >= 0 && id < mySize) myRefs.put(name, id);
+      }
+    }
+    catch (EOFException e) {
+      myRefs.clear();
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Forgets all the commits and refs and deletes the persisted graph, so that it can be built from scratch.
+   */
+  public synchronized void clear() {
+    FileUtil.delete(myDataFile);
+    FileUtil.delete(myRefsFile);
+    myHashes = ArrayUtil.EMPTY_BYTE_ARRAY;
+    myShortHashLengths = ArrayUtil.EMPTY_BYTE_ARRAY;
+    myTimes.clear();
+    myAuthors.clear();
+    myCommitters.clear();
+    myParentsStarts.clear();
+    myParentsStarts.add(0);
+    myParents.clear();
+    myPathsStarts.clear();
+    myPathsStarts.add(0);
+    myPaths.clear();
+    mySize = 0;
+    myTable = new int[16];
+    Arrays.fill(myTable, NOT_FOUND);
+    myUserNames.clear();
+    myUserIds.clear();
+    myPathNames.clear();
+    myPathIds.clear();
+    myRefs.clear();
+  }
+
+  /**
+   * Appends the commits, which must be given parents first.
+   * Already known commits and parents which are neither known nor given are skipped.
+   */
+  public synchronized void append(@NotNull List<Record> records) throws IOException {
+    if (records.isEmpty()) return;
+    boolean newFile = !myDataFile.isFile() || myDataFile.length() == 0;
+    if (newFile) FileUtil.createParentDirs(myDataFile);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myDataFile, !newFile)));
+    try {
+      if (newFile) out.writeInt(VERSION);
+      for (Record record : records) {
+        if (find(record.myHash) != NOT_FOUND) continue;
+
+        int author = putName(record.myAuthor, myUserNames, myUserIds, USER, out);
+        int committer = putName(record.myCommitter, myUserNames, myUserIds, USER, out);
+        TIntArrayList parents = new TIntArrayList(record.myParents.length);
+        for (String parent : record.myParents) {
+          int id = find(parent);
+          if (id != NOT_FOUND) parents.add(id);
+        }
+        int[] paths = new int[record.myPaths.size()];
+        for (int i = 0; i < paths.length; i++) {
+          paths[i] = putName(record.myPaths.get(i), myPathNames, myPathIds, PATH, out);
+        }
+        byte[] hash = toBytes(record.myHash);
+        byte shortHashLength = (byte)Math.min(record.myShortHashLength, HASH_LENGTH * 2);
+        int time = (int)record.myTime;
+
+        out.writeByte(COMMIT);
+        out.write(hash);
+        out.writeByte(shortHashLength);
+        out.writeInt(time);
+        DataInputOutputUtil.writeINT(out, author);
+        DataInputOutputUtil.writeINT(out, committer);
+        writeInts(out, parents.toNativeArray());
+        writeInts(out, paths);
+        addCommit(hash, shortHashLength, time, author, committer, parents.toNativeArray(), paths);
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Replaces the refs snapshot; refs to unknown commits are skipped.
+   *
+   * @param refs full names to full hashes
+   */
+  public synchronized void setRefs(@NotNull Map<String, String> refs) throws IOException {
+    myRefs.clear();
+    for (Map.Entry<String, String> entry : refs.entrySet()) {
+      int id = find(entry.getValue());
+      if (id != NOT_FOUND) myRefs.put(entry.getKey(), id);
+    }
+
+    FileUtil.createParentDirs(myRefsFile);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myRefsFile)));
+    try {
+      out.writeInt(myRefs.size());
+      for (Map.Entry<String, Integer> entry : myRefs.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeInt(entry.getValue());
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  private static int putName(@NotNull String name, List<String> names, TObjectIntHashMap<String> ids, byte tag, DataOutput out)
+    throws IOException {
+    if (ids.containsKey(name)) return ids.get(name);
+    out.writeByte(tag);
+    out.writeUTF(name);
+    return addName(name, names, ids);
+  }
+
+  private static int addName(@NotNull String name, List<String> names, TObjectIntHashMap<String> ids) {
+    int id = names.size();
+    names.add(name);
+    ids.put(name, id);
+    return id;
+  }
+
+  private void addCommit(byte[] hash, byte shortHashLength, int time, int author, int committer, int[] parents, int[] paths) {
+    if (mySize == myShortHashLengths.length) {
+      int capacity = mySize * 3 / 2 + 16;
+      myHashes = ArrayUtil.realloc(myHashes, capacity * HASH_LENGTH);
+      myShortHashLengths = ArrayUtil.realloc(myShortHashLengths, capacity);
+    }
+    int id = mySize++;
+    System.arraycopy(hash, 0, myHashes, id * HASH_LENGTH, HASH_LENGTH);
+    myShortHashLengths[id] = shortHashLength;
+    myTimes.add(time);
+    myAuthors.add(author);
+    myCommitters.add(committer);
+    myParents.add(parents);
+    myParentsStarts.add(myParents.size());
+    myPaths.add(paths);
+    myPathsStarts.add(myPaths.size());
+
+    if (mySize * 2 > myTable.length) {
+      myTable = new int[myTable.length * 2];
+      Arrays.fill(myTable, NOT_FOUND);
+      for (int i = 0; i < mySize; i++) {
+        putToTable(i);
+      }
+    }
+    else {
+      putToTable(id);
+    }
+  }
+
+  private void putToTable(int id) {
+    int mask = myTable.length - 1;
+    int slot = slot(myHashes[id * HASH_LENGTH], myHashes[id * HASH_LENGTH + 1], myHashes[id * HASH_LENGTH + 2]) & mask;
+    while (myTable[slot] != NOT_FOUND) {
+      slot = (slot + 1) & mask;
+    }
+    myTable[slot] = id;
+  }
+
+  private static int slot(int b0, int b1, int b2) {
+    return (((b0 & 0xFF) << 16) | ((b1 & 0xFF) << 8) | (b2 & 0xFF)) * 0x9E3779B9 >>> 8;
+  }
+
+  public synchronized int size() {
+    return mySize;
+  }
+
+  /**
+   * @param hash full hash or its unique prefix of at least 6 characters
+   * @return id of the commit, or {@link #NOT_FOUND} if the commit is unknown or the prefix is ambiguous
+   */
+  public synchronized int find(@NotNull String hash) {
+    if (hash.length() < MIN_PREFIX_LENGTH || hash.length() > HASH_LENGTH * 2) return NOT_FOUND;
+    for (int i = 0; i < hash.length(); i++) {
+      if (Character.digit(hash.charAt(i), 16) < 0) return NOT_FOUND;
+    }
+    int mask = myTable.length - 1;
+    int slot = slot(hexByte(hash, 0), hexByte(hash, 1), hexByte(hash, 2)) & mask;
+    int found = NOT_FOUND;
+    for (int id = myTable[slot]; id != NOT_FOUND; slot = (slot + 1) & mask, id = myTable[slot]) {
+      if (hasPrefix(id, hash)) {
+        if (found != NOT_FOUND) return NOT_FOUND;
+        found = id;
+        if (hash.length() == HASH_LENGTH * 2) break;
+      }
+    }
+    return found;
+  }
+
+  private boolean hasPrefix(int id, @NotNull String hash) {
+    for (int i = 0; i < hash.length(); i++) {
+      if (nibble(id, i) != Character.digit(hash.charAt(i), 16)) return false;
+    }
+    return true;
+  }
+
+  private int nibble(int id, int index) {
+    byte b = myHashes[id * HASH_LENGTH + index / 2];
+    return index % 2 == 0 ? (b >> 4) & 0xF : b & 0xF;
+  }
+
+  private static int hexByte(@NotNull String hash, int index) {
+    return Character.digit(hash.charAt(index * 2), 16) << 4 | Character.digit(hash.charAt(index * 2 + 1), 16);
+  }
+
+  @NotNull
+  private static byte[] toBytes(@NotNull String hash) {
+    if (hash.length() != HASH_LENGTH * 2) throw new IllegalArgumentException("Not a full hash: " + hash);
+    byte[] result = new byte[HASH_LENGTH];
+    for (int i = 0; i < HASH_LENGTH; i++) {
+      result[i] = (byte)hexByte(hash, i);
+    }
+    return result;
+  }
+
+  @NotNull
+  public synchronized String getHash(int id) {
+    return toHex(id, HASH_LENGTH * 2);
+  }
+
+  /**
+   * @return the hash abbreviated the same way git abbreviated it when the commit was added
+   */
+  @NotNull
+  public synchronized String getShortHash(int id) {
+    return toHex(id, myShortHashLengths[id]);
+  }
+
+  private String toHex(int id, int length) {
+    StringBuilder result = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      result.append(Character.forDigit(nibble(id, i), 16));
+    }
+    return result.toString();
+  }
+
+  /**
+   * @return commit time in milliseconds
+   */
+  public synchronized long getTime(int id) {
+    return myTimes.get(id) * 1000L;
+  }
+
+  @NotNull
+  public synchronized String getAuthor(int id) {
+    return myUserNames.get(myAuthors.get(id));
+  }
+
+  @NotNull
+  public synchronized String getCommitter(int id) {
+    return myUserNames.get(myCommitters.get(id));
+  }
+
+  public synchronized int getAuthorId(int id) {
+    return myAuthors.get(id);
+  }
+
+  public synchronized int getCommitterId(int id) {
+    return myCommitters.get(id);
+  }
+
+  @NotNull
+  public synchronized int[] getParents(int id) {
+    int start = myParentsStarts.get(id);
+    return myParents.toNativeArray(start, myParentsStarts.get(id + 1) - start);
+  }
+
+  /**
+   * @return whether the commit changed one of the paths marked in the given array indexed by path ids
+   */
+  public synchronized boolean touches(int id, @NotNull boolean[] paths) {
+    for (int i = myPathsStarts.get(id); i < myPathsStarts.get(id + 1); i++) {
+      if (paths[myPaths.get(i)]) return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return array indexed by user ids, marking the users whose names contain a match of the pattern
+   */
+  @NotNull
+  public synchronized boolean[] findUsers(@NotNull Pattern pattern) {
+    boolean[] result = new boolean[myUserNames.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = pattern.matcher(myUserNames.get(i)).find();
+    }
+    return result;
+  }
+
+  /**
+   * @param relativePaths paths relative to the root, separated with '/'; an empty path stands for the whole root
+   * @return array indexed by path ids, marking the paths equal to or under one of the given ones
+   */
+  @NotNull
+  public synchronized boolean[] findPaths(@NotNull Collection<String> relativePaths) {
+    boolean[] result = new boolean[myPathNames.size()];
+    for (int i = 0; i < result.length; i++) {
+      String path = myPathNames.get(i);
+      for (String each : relativePaths) {
+        if (each.isEmpty() || FileUtil.startsWith(path, each)) {
+          result[i] = true;
+          break;
+        }
+      }
+    }
+    return result;
+  }
+
+  @NotNull
+  public synchronized Map<String, String> getRefs() {
+    Map<String, String> result = new LinkedHashMap<String, String>();
+    for (Map.Entry<String, Integer> entry : myRefs.entrySet()) {
+      result.put(entry.getKey(), getHash(entry.getValue()));
+    }
+    return result;
+  }
+
+  /**
+   * @param ref full ref name, or its name without the <code>refs/heads/</code>, <code>refs/remotes/</code>
+   *            or <code>refs/tags/</code> prefix, or a hash
+   * @return id of the commit the ref points to, or {@link #NOT_FOUND}
+   */
+  public synchronized int resolve(@NotNull String ref) {
+    String[] prefixes = {"", "refs/heads/", "refs/remotes/", "refs/tags/"};
+    for (String prefix : prefixes) {
+      Integer id = myRefs.get(prefix + ref);
+      if (id != null) return id;
+    }
+    return find(ref);
+  }
+
+  /**
+   * @return names of the refs whose heads contain the given commit
+   */
+  @NotNull
+  public synchronized List<String> getContainingRefs(int id) {
+    boolean[] reaches = new boolean[mySize];
+    reaches[id] = true;
+    for (int i = id + 1; i < mySize; i++) {
+      for (int j = myParentsStarts.get(i); j < myParentsStarts.get(i + 1); j++) {
+        if (reaches[myParents.get(j)]) {
+          reaches[i] = true;
+          break;
+        }
+      }
+    }
+    List<String> result = new ArrayList<String>();
+    for (Map.Entry<String, Integer> entry : myRefs.entrySet()) {
+      if (reaches[entry.getValue()]) result.add(entry.getKey());
+    }
+    return result;
+  }
+
+  /**
+   * @param starts ids of the commits to start from, all refs heads if empty
+   * @return ids of the commits reachable from the starts, in the order of <code>git log --topo-order</code>
+   *         or <code>git log --date-order</code>: children always go before their parents
+   */
+  @NotNull
+  public synchronized int[] getLog(@NotNull TIntArrayList starts, boolean topoOrder) {
+    boolean[] reachable = new boolean[mySize];
+    int[] startIds = starts.isEmpty() ? toIntArray(myRefs.values()) : starts.toNativeArray();
+    for (int id : startIds) {
+      reachable[id] = true;
+    }
+    // children have greater ids than parents
+    int[] children = new int[mySize];
+    int count = 0;
+    for (int id = mySize - 1; id >= 0; id--) {
+      if (!reachable[id]) continue;
+      count++;
+      for (int j = myParentsStarts.get(id); j < myParentsStarts.get(id + 1); j++) {
+        reachable[myParents.get(j)] = true;
+        children[myParents.get(j)]++;
+      }
+    }
+
+    int[] result = new int[count];
+    if (topoOrder) {
+      int i = 0;
+      for (int id = mySize - 1; id >= 0; id--) {
+        if (reachable[id]) result[i++] = id;
+      }
+      return result;
+    }
+
+    // date order: the newest of the commits whose children are all shown goes next
+    int[] heap = new int[count];
+    int heapSize = 0;
+    for (int id = 0; id < mySize; id++) {
+      if (reachable[id] && children[id] == 0) heapSize = heapPush(heap, heapSize, id);
+    }
+    int i = 0;
+    while (heapSize > 0) {
+      int id = heap[0];
+      heapSize = heapPop(heap, heapSize);
+      result[i++] = id;
+      for (int j = myParentsStarts.get(id); j < myParentsStarts.get(id + 1); j++) {
+        int parent = myParents.get(j);
+        if (--children[parent] == 0) heapSize = heapPush(heap, heapSize, parent);
+      }
+    }
+    return result;
+  }
+
+  private static int[] toIntArray(Collection<Integer> integers) {
+    int[] result = new int[integers.size()];
+    int i = 0;
+    for (Integer each : integers) {
+      result[i++] = each;
+    }
+    return result;
+  }
+
+  private boolean isNewer(int id1, int id2) {
+    int t1 = myTimes.get(id1);
+    int t2 = myTimes.get(id2);
+    return t1 > t2 || t1 == t2 && id1 > id2;
+  }
+
+  private int heapPush(int[] heap, int size, int id) {
+    int i = size;
+    while (i > 0 && isNewer(id, heap[(i - 1) / 2])) {
+      heap[i] = heap[(i - 1) / 2];
+      i = (i - 1) / 2;
+    }
+    heap[i] = id;
+    return size + 1;
+  }
+
+  private int heapPop(int[] heap, int size) {
+    int last = heap[--size];
+    int i = 0;
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= size) break;
+      if (child + 1 < size && isNewer(heap[child + 1], heap[child])) child++;
+      if (!isNewer(heap[child], last)) break;
+      heap[i] = heap[child];
+      i = child;
+    }
+    heap[i] = last;
+    return size;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "commits: " + mySize + ", users: " + myUserNames.size() + ", paths: " + myPathNames.size() + ", refs: " + myRefs.size();
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.history.wholeTree;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Consumer;
+import git4idea.history.GitHistoryUtils;
+import gnu.trove.TIntHashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * !! application-level
+ * <p/>
+ * Keeps {@link GitCommitGraph commit graphs} of git roots under the system directory. A graph is built once in background,
+ * then it is updated incrementally: only the commits not reachable from the already known refs heads are loaded from git.
+ */
+public class GitCommitGraphStore {
+  private static final Logger LOG = Logger.getInstance("#git4idea.history.wholeTree.GitCommitGraphStore");
+  // to keep the command line short
+  private static final int MAX_EXCLUDED_HEADS = 500;
+  private static final int APPEND_PACK = 1000;
+
+  private final File myDir;
+  private final Map<String, RootGraph> myGraphs = new HashMap<String, RootGraph>();
+
+  public GitCommitGraphStore() {
+    myDir = new File(new File(PathManager.getSystemPath(), "vcs"), "git_graph");
+  }
+
+  public static GitCommitGraphStore getInstance() {
+    return ServiceManager.getService(GitCommitGraphStore.class);
+  }
+
+  private static class RootGraph {
+    private final GitCommitGraph myGraph;
+    private boolean myLoaded;
+    private volatile boolean myReady;
+    private volatile boolean myBuilding;
+
+    private RootGraph(@NotNull GitCommitGraph graph) {
+      myGraph = graph;
+    }
+  }
+
+  @NotNull
+  private RootGraph getRootGraph(@NotNull VirtualFile root) {
+    synchronized (myGraphs) {
+      RootGraph rootGraph = myGraphs.get(root.getPath());
+      if (rootGraph == null) {
+        String name = FileUtil.sanitizeFileName(root.getName()) + "_" + Integer.toHexString(root.getPath().hashCode());
+        rootGraph = new RootGraph(new GitCommitGraph(new File(myDir, name + ".graph"), new File(myDir, name + ".refs")));
+        myGraphs.put(root.getPath(), rootGraph);
+      }
+      return rootGraph;
+    }
+  }
+
+  /**
+   * Brings the graph of the root up to date with the refs of the repository.
+   *
+   * @return the graph, or null if it is not built yet (then it is being built in background) or it can not be updated
+   */
+  @Nullable
+  public GitCommitGraph getUpToDateGraph(@NotNull final Project project, @NotNull final VirtualFile root) {
+    final RootGraph rootGraph = getRootGraph(root);
+    if (rootGraph.myBuilding) return null;
+
+    synchronized (rootGraph) {
+      if (!rootGraph.myLoaded) {
+        rootGraph.myLoaded = true;
+        try {
+          rootGraph.myReady = rootGraph.myGraph.load();
+        }
+        catch (IOException e) {
+          LOG.info("Failed to load the commit graph of " + root.getPath() + ", rebuilding it", e);
+          rootGraph.myGraph.clear();
+          rootGraph.myReady = false;
+        }
+      }
+      if (rootGraph.myReady) {
+        return update(project, root, rootGraph.myGraph) ? rootGraph.myGraph : null;
+      }
+      rootGraph.myBuilding = true;
+    }
+
+    ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          synchronized (rootGraph) {
+            long start = System.currentTimeMillis();
+            rootGraph.myReady = update(project, root, rootGraph.myGraph);
+            LOG.info("Commit graph of " + root.getPath() + " built in " + (System.currentTimeMillis() - start) + " ms: " +
+                     rootGraph.myGraph);
+          }
+        }
+        finally {
+          rootGraph.myBuilding = false;
+        }
+      }
+    });
+    return null;
+  }
+
+  private static boolean update(@NotNull Project project, @NotNull VirtualFile root, @NotNull GitCommitGraph graph) {
+    try {
+      Map<String, String> refs = GitHistoryUtils.loadRefsHeads(project, root);
+      if (graph.size() > 0 && refs.equals(graph.getRefs())) return true;
+
+      try {
+        loadCommits(project, root, graph, getExcludedHeads(graph, refs, MAX_EXCLUDED_HEADS));
+      }
+      catch (VcsException e) {
+        if (graph.size() == 0) throw e;
+        LOG.info("Failed to update the commit graph of " + root.getPath() + ", rebuilding it", e);
+        graph.clear();
+        loadCommits(project, root, graph, Collections.<String>emptyList());
+      }
+      graph.setRefs(refs);
+      return true;
+    }
+    catch (VcsException e) {
+      LOG.info(e);
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+    return false;
+  }
+
+  /**
+   * All ancestors of a known commit are known, so it is enough to exclude the current heads which are in the graph already.
+   * Heads remembered by the graph are not used, since the commits they point to may have been garbage collected.
+   * <p/>
+   * If there are too many heads, the most recent ones are kept: the commits reachable from the dropped heads are loaded once more
+   * and skipped, and they are more likely to be reachable from the recent heads anyway.
+   */
+  @NotNull
+  public static List<String> getExcludedHeads(@NotNull final GitCommitGraph graph, @NotNull Map<String, String> refs, int limit) {
+    TIntHashSet found = new TIntHashSet();
+    for (String hash : refs.values()) {
+      int id = graph.find(hash);
+      if (id != GitCommitGraph.NOT_FOUND) found.add(id);
+    }
+    int[] ids = found.toArray();
+    Integer[] sorted = new Integer[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      sorted[i] = ids[i];
+    }
+    Arrays.sort(sorted, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer id1, Integer id2) {
+        long time1 = graph.getTime(id1);
+        long time2 = graph.getTime(id2);
+        if (time1 != time2) return time1 > time2 ? -1 : 1;
+        return id2.compareTo(id1);
+      }
+    });
+
+    List<String> result = new ArrayList<String>(Math.min(sorted.length, limit));
+    for (int i = 0; i < sorted.length && i < limit; i++) {
+      result.add(graph.getHash(sorted[i]));
+    }
+    return result;
+  }
+
+  private static void loadCommits(@NotNull Project project, @NotNull VirtualFile root, @NotNull final GitCommitGraph graph,
+                                  @NotNull List<String> excludedHeads) throws VcsException, IOException {
+    final List<GitCommitGraph.Record> pack = new ArrayList<GitCommitGraph.Record>();
+    final IOException[] ioException = new IOException[1];
+    GitHistoryUtils.loadCommitGraph(project, root, excludedHeads, new Consumer<GitCommitGraph.Record>() {
+      @Override
+      public void consume(GitCommitGraph.Record record) {
+        pack.add(record);
+        if (pack.size() >= APPEND_PACK && ioException[0] == null) {
+          try {
+            graph.append(pack);
+          }
+          catch (IOException e) {
+            ioException[0] = e;
+          }
+          pack.clear();
+        }
+      }
+    }, null);
+    if (ioException[0] != null) throw ioException[0];
+    graph.append(pack);
+  }
+}
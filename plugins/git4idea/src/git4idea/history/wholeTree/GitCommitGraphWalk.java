@@ -0,0 +1,158 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.history.wholeTree;
+
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import git4idea.history.browser.ChangesFilter;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Pages through the log of a {@link GitCommitGraph} in the order of <code>git log</code>, applying the user, date and structure
+ * filters locally. Filters which need more than the graph knows (e.g. by comment) are not supported.
+ */
+class GitCommitGraphWalk {
+  private final GitCommitGraph myGraph;
+  private final int[] myLog;
+  private int myPosition;
+
+  private long myAfter = Long.MIN_VALUE;
+  private long myBefore = Long.MAX_VALUE;
+  private final List<boolean[]> myAuthors = new ArrayList<boolean[]>();
+  private final List<boolean[]> myCommitters = new ArrayList<boolean[]>();
+  private final List<boolean[]> myPaths = new ArrayList<boolean[]>();
+
+  private GitCommitGraphWalk(@NotNull GitCommitGraph graph, @NotNull int[] log) {
+    myGraph = graph;
+    myLog = log;
+  }
+
+  /**
+   * @return the walk, or null if some filter or starting point can not be resolved by the graph
+   */
+  @Nullable
+  static GitCommitGraphWalk create(@NotNull GitCommitGraph graph, @NotNull VirtualFile root, @NotNull Collection<ChangesFilter.Filter> filters,
+                                   @NotNull Collection<String> startingPoints, boolean topoOrder) {
+    TIntArrayList starts = new TIntArrayList();
+    for (String point : startingPoints) {
+      int id = graph.resolve(point);
+      if (id == GitCommitGraph.NOT_FOUND) return null;
+      starts.add(id);
+    }
+    GitCommitGraphWalk walk = new GitCommitGraphWalk(graph, graph.getLog(starts, topoOrder));
+    for (ChangesFilter.Filter filter : filters) {
+      if (!walk.addFilter(filter, root)) return null;
+    }
+    return walk;
+  }
+
+  private boolean addFilter(@NotNull ChangesFilter.Filter filter, @NotNull VirtualFile root) {
+    // the same conditions as the memory filters have
+    if (filter instanceof ChangesFilter.And) {
+      for (ChangesFilter.Filter each : ((ChangesFilter.And)filter).getFilters()) {
+        if (!addFilter(each, root)) return false;
+      }
+    }
+    else if (filter instanceof ChangesFilter.BeforeTime) {
+      myBefore = Math.min(myBefore, ((ChangesFilter.BeforeTime)filter).getTs());
+    }
+    else if (filter instanceof ChangesFilter.AfterTime) {
+      myAfter = Math.max(myAfter, ((ChangesFilter.AfterTime)filter).getTs());
+    }
+    else if (filter instanceof ChangesFilter.BeforeDate) {
+      myBefore = Math.min(myBefore, ((ChangesFilter.BeforeDate)filter).getDate().getTime() - 1);
+    }
+    else if (filter instanceof ChangesFilter.AfterDate) {
+      myAfter = Math.max(myAfter, ((ChangesFilter.AfterDate)filter).getDate().getTime() + 1);
+    }
+    else if (filter instanceof ChangesFilter.Author) {
+      Pattern pattern = compile(((ChangesFilter.Author)filter).getRegexp());
+      if (pattern == null) return false;
+      myAuthors.add(myGraph.findUsers(pattern));
+    }
+    else if (filter instanceof ChangesFilter.Committer) {
+      Pattern pattern = compile(((ChangesFilter.Committer)filter).getRegexp());
+      if (pattern == null) return false;
+      myCommitters.add(myGraph.findUsers(pattern));
+    }
+    else if (filter instanceof ChangesFilter.StructureFilter) {
+      if (((ChangesFilter.StructureFilter)filter).isEmpty()) return true;
+      Set<VirtualFile> files = new HashSet<VirtualFile>();
+      filter.getCommandParametersFilter().applyToPaths(files);
+      List<String> paths = new ArrayList<String>();
+      for (VirtualFile file : files) {
+        String path = file.equals(root) ? "" : VfsUtil.getRelativePath(file, root, '/');
+        if (path != null) paths.add(path);
+      }
+      myPaths.add(myGraph.findPaths(paths));
+    }
+    else {
+      return false;
+    }
+    return true;
+  }
+
+  @Nullable
+  private static Pattern compile(@Nullable String regexp) {
+    if (regexp == null) return null;
+    try {
+      return Pattern.compile(regexp);
+    }
+    catch (PatternSyntaxException e) {
+      return null;
+    }
+  }
+
+  private boolean matches(int id) {
+    long time = myGraph.getTime(id);
+    if (time < myAfter || time > myBefore) return false;
+    for (boolean[] users : myAuthors) {
+      if (!users[myGraph.getAuthorId(id)]) return false;
+    }
+    for (boolean[] users : myCommitters) {
+      if (!users[myGraph.getCommitterId(id)]) return false;
+    }
+    for (boolean[] paths : myPaths) {
+      if (!myGraph.touches(id, paths)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return at most <code>count</code> next matching commits; fewer if the log is over
+   */
+  @NotNull
+  List<CommitHashPlusParents> next(int count) {
+    List<CommitHashPlusParents> result = new ArrayList<CommitHashPlusParents>();
+    while (myPosition < myLog.length && result.size() < count) {
+      int id = myLog[myPosition++];
+      if (!matches(id)) continue;
+      int[] parents = myGraph.getParents(id);
+      String[] parentHashes = new String[parents.length];
+      for (int i = 0; i < parents.length; i++) {
+        parentHashes[i] = myGraph.getShortHash(parents[i]);
+      }
+      result.add(new CommitHashPlusParents(myGraph.getShortHash(id), parentHashes, myGraph.getTime(id), myGraph.getAuthor(id)));
+    }
+    return result;
+  }
+}
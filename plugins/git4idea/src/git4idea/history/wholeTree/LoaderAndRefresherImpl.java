@@ -28,6 +28,7 @@ import git4idea.history.browser.GitCommit;
 import git4idea.history.browser.LowLevelAccessImpl;
 import git4idea.history.browser.SymbolicRefsI;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
@@ -60,6 +61,9 @@ public class LoaderAndRefresherImpl implements LoaderAndRefresher<CommitHashPlus
   @NotNull
   private volatile StepType myStepType;
   private final boolean myTopoOrder;
+  // the log read from the commit graph, null if git is asked
+  private GitCommitGraphWalk myGraphWalk;
+  private boolean myGraphWalkChecked;
 
   private static boolean parameterCheck(final Integer i) {
     return i != null && i > 0;
@@ -151,6 +155,10 @@ public class LoaderAndRefresherImpl implements LoaderAndRefresher<CommitHashPlus
     }*/
 
     myRepeatingLoadConsumer.reset();
+    if (! myGraphWalkChecked) {
+      myGraphWalkChecked = true;
+      myGraphWalk = createGraphWalk();
+    }
     int count = 340;
     boolean shouldFull = ! myHaveStructureFilter;
     if (LoadAlgorithm.LoadType.TEST.equals(loadType)) {
@@ -192,7 +200,9 @@ public class LoaderAndRefresherImpl implements LoaderAndRefresher<CommitHashPlus
   }
 
   private void step(final int count, final boolean shouldFull, final long continuation) {
-    if (shouldFull) {
+    if (myGraphWalk != null) {
+      loadFromGraph(count);
+    } else if (shouldFull) {
       loadFull(count, continuation);
     } else {
       loadShort(continuation, count);
@@ -292,6 +302,25 @@ public class LoaderAndRefresherImpl implements LoaderAndRefresher<CommitHashPlus
     }
   }
 
+  @Nullable
+  private GitCommitGraphWalk createGraphWalk() {
+    final GitCommitGraph graph = GitCommitGraphStore.getInstance().getUpToDateGraph(myProject, myRootHolder.getRoot());
+    if (graph == null) return null;
+    return GitCommitGraphWalk.create(graph, myRootHolder.getRoot(), myFilters, myStartingPoints, myTopoOrder);
+  }
+
+  // the walk continues from where it stopped, so only the last commit is repeated for the repeating consumer
+  private void loadFromGraph(final int count) {
+    final CommitHashPlusParents last = myRepeatingLoadConsumer.getLast();
+    if (last != null) {
+      myRepeatingLoadConsumer.consume(last);
+    }
+    for (CommitHashPlusParents commit : myGraphWalk.next(count)) {
+      if (isInterrupted()) return;
+      myRepeatingLoadConsumer.consume(commit);
+    }
+  }
+
   interface MyRootHolder {
     VirtualFile getRoot();
     CommitI decorateByRoot(final CommitI commitI);
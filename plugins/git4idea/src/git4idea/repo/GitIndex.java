@@ -0,0 +1,276 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.repo;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.containers.SLRUMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.*;
+
+/**
+ * Entries of the Git index file ({@code .git/index}), read directly from disk.
+ * Versions 2 and 3 of the format are supported; extensions (cached trees, resolve-undo) are skipped.
+ * <p/>
+ * Parsed indices are cached until the index file changes. Besides the timestamp and the length of the file, the checksum which
+ * terminates the file is compared, since the file may be rewritten within the timestamp granularity keeping its length.
+ */
+public class GitIndex {
+
+  public static final int MODE_TYPE_MASK = 0170000;
+  public static final int MODE_FILE = 0100000;
+  public static final int MODE_SYMLINK = 0120000;
+  public static final int MODE_GITLINK = 0160000;
+
+  private static final int SIGNATURE = 0x44495243; // "DIRC"
+  private static final int ASSUME_VALID = 0x8000;
+  private static final int EXTENDED = 0x4000;
+  private static final int SKIP_WORKTREE = 0x4000; // in the extended flags
+  private static final int NAME_MASK = 0xFFF;
+  private static final int ENTRY_FIXED_LENGTH = 62;
+  private static final int CHECKSUM_LENGTH = 20;
+
+  private static final SLRUMap<String, GitIndex> ourCache = new SLRUMap<String, GitIndex>(5, 5);
+
+  @NotNull private final List<Entry> myEntries; // sorted by path, then by stage
+  private final long myTimestamp;
+  private final long myLength;
+  @NotNull private final byte[] myChecksum;
+
+  public static class Entry {
+    @NotNull private final String myPath;
+    private final int myMode;
+    @NotNull private final byte[] myHash;
+    private final int myModificationTime; // seconds
+    private final int mySize;             // truncated to 32 bits
+    private final int myStage;
+    private final boolean myWorkTreeIgnored;
+
+    Entry(@NotNull String path, int mode, @NotNull byte[] hash, int modificationTime, int size, int stage, boolean workTreeIgnored) {
+      myPath = path;
+      myMode = mode;
+      myHash = hash;
+      myModificationTime = modificationTime;
+      mySize = size;
+      myStage = stage;
+      myWorkTreeIgnored = workTreeIgnored;
+    }
+
+    /**
+     * @return path relative to the root, separated with '/'
+     */
+    @NotNull
+    public String getPath() {
+      return myPath;
+    }
+
+    public int getMode() {
+      return myMode;
+    }
+
+    @NotNull
+    public byte[] getHash() {
+      return myHash;
+    }
+
+    public int getModificationTime() {
+      return myModificationTime;
+    }
+
+    public int getSize() {
+      return mySize;
+    }
+
+    /**
+     * @return 0 for normal entries, 1-3 for the base, ours and theirs versions of an unmerged file
+     */
+    public int getStage() {
+      return myStage;
+    }
+
+    /**
+     * @return true if the entry is marked with 'assume unchanged' or 'skip worktree', so its working tree file is not checked
+     */
+    public boolean isWorkTreeIgnored() {
+      return myWorkTreeIgnored;
+    }
+  }
+
+  private GitIndex(@NotNull List<Entry> entries, long timestamp, long length, @NotNull byte[] checksum) {
+    myEntries = entries;
+    myTimestamp = timestamp;
+    myLength = length;
+    myChecksum = checksum;
+  }
+
+  /**
+   * @return the index, an empty index if the file doesn't exist (a fresh repository),
+   *         or {@code null} if the format of the file is not supported
+   */
+  @Nullable
+  public static GitIndex read(@NotNull File indexFile) throws IOException {
+    if (!indexFile.exists()) {
+      return new GitIndex(Collections.<Entry>emptyList(), 0, 0, ArrayUtil.EMPTY_BYTE_ARRAY);
+    }
+    String key = indexFile.getPath();
+    synchronized (ourCache) {
+      GitIndex cached = ourCache.get(key);
+      if (cached != null && cached.myTimestamp == indexFile.lastModified() && cached.myLength == indexFile.length() &&
+          Arrays.equals(cached.myChecksum, readChecksum(indexFile))) {
+        return cached;
+      }
+    }
+    long timestamp = indexFile.lastModified();
+    GitIndex index = parse(FileUtil.loadFileBytes(indexFile), timestamp);
+    if (index != null) {
+      synchronized (ourCache) {
+        ourCache.put(key, index);
+      }
+    }
+    return index;
+  }
+
+  @NotNull
+  private static byte[] readChecksum(@NotNull File indexFile) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+    try {
+      long length = file.length();
+      if (length < CHECKSUM_LENGTH) return ArrayUtil.EMPTY_BYTE_ARRAY;
+      byte[] result = new byte[CHECKSUM_LENGTH];
+      file.seek(length - CHECKSUM_LENGTH);
+      file.readFully(result);
+      return result;
+    }
+    finally {
+      file.close();
+    }
+  }
+
+  @Nullable
+  static GitIndex parse(@NotNull byte[] bytes, long timestamp) throws IOException {
+    if (bytes.length < 12 || readInt(bytes, 0) != SIGNATURE) {
+      throw new IOException("Not a git index file");
+    }
+    int version = readInt(bytes, 4);
+    if (version != 2 && version != 3) {
+      return null;
+    }
+    int count = readInt(bytes, 8);
+    List<Entry> entries = new ArrayList<Entry>(count);
+    int pos = 12;
+    try {
+      for (int i = 0; i < count; i++) {
+        int start = pos;
+        int mtime = readInt(bytes, pos + 8);
+        int mode = readInt(bytes, pos + 24);
+        int size = readInt(bytes, pos + 36);
+        byte[] hash = Arrays.copyOfRange(bytes, pos + 40, pos + 60);
+        int flags = readShort(bytes, pos + 60);
+        pos += ENTRY_FIXED_LENGTH;
+        boolean workTreeIgnored = (flags & ASSUME_VALID) != 0;
+        if ((flags & EXTENDED) != 0) {
+          if (version < 3) throw new IOException("Extended flags in the index of version " + version);
+          workTreeIgnored |= (readShort(bytes, pos) & SKIP_WORKTREE) != 0;
+          pos += 2;
+        }
+        int nameLength = flags & NAME_MASK;
+        if (nameLength == NAME_MASK) { // the name is too long, it is terminated with NUL
+          nameLength = 0;
+          while (bytes[pos + nameLength] != 0) nameLength++;
+        }
+        String path = new String(bytes, pos, nameLength, "UTF-8");
+        pos += nameLength;
+        // entries are padded with 1-8 NULs to the multiple of 8 bytes
+        pos = start + ((pos - start) / 8 + 1) * 8;
+        entries.add(new Entry(path, mode, hash, mtime, size, (flags >> 12) & 3, workTreeIgnored));
+      }
+    }
+    catch (IndexOutOfBoundsException e) {
+      throw new IOException("Unexpected end of the index file");
+    }
+    // the file is sorted by path bytes; make sure the order agrees with String comparison used for lookups
+    Collections.sort(entries, new Comparator<Entry>() {
+      @Override
+      public int compare(Entry e1, Entry e2) {
+        int result = e1.myPath.compareTo(e2.myPath);
+        return result != 0 ? result : e1.myStage - e2.myStage;
+      }
+    });
+    byte[] checksum = Arrays.copyOfRange(bytes, Math.max(0, bytes.length - CHECKSUM_LENGTH), bytes.length);
+    return new GitIndex(entries, timestamp, bytes.length, checksum);
+  }
+
+  private static int readInt(byte[] bytes, int pos) {
+    return (bytes[pos] & 0xFF) << 24 | (bytes[pos + 1] & 0xFF) << 16 | (bytes[pos + 2] & 0xFF) << 8 | (bytes[pos + 3] & 0xFF);
+  }
+
+  private static int readShort(byte[] bytes, int pos) {
+    return (bytes[pos] & 0xFF) << 8 | (bytes[pos + 1] & 0xFF);
+  }
+
+  /**
+   * @return modification time of the index file; entries modified at the same second or later are "racily clean":
+   *         their files may have been changed without changing the size and the time stored in the index
+   */
+  public long getTimestamp() {
+    return myTimestamp;
+  }
+
+  @NotNull
+  public List<Entry> getEntries() {
+    return Collections.unmodifiableList(myEntries);
+  }
+
+  /**
+   * @param path path relative to the root, separated with '/'; an empty path stands for the whole root
+   * @return entries of the given file and of all files under the given directory
+   */
+  @NotNull
+  public List<Entry> getEntries(@NotNull String path) {
+    if (path.isEmpty()) {
+      return getEntries();
+    }
+    List<Entry> result = new ArrayList<Entry>();
+    for (int i = lowerBound(path); i < myEntries.size() && myEntries.get(i).myPath.equals(path); i++) {
+      result.add(myEntries.get(i));
+    }
+    String prefix = path + "/";
+    for (int i = lowerBound(prefix); i < myEntries.size() && myEntries.get(i).myPath.startsWith(prefix); i++) {
+      result.add(myEntries.get(i));
+    }
+    return result;
+  }
+
+  private int lowerBound(@NotNull String path) {
+    int low = 0;
+    int high = myEntries.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (myEntries.get(mid).myPath.compareTo(path) < 0) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
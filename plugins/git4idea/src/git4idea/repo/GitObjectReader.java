@@ -0,0 +1,436 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.repo;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.containers.SLRUMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads commits and trees from the Git object database directly: loose objects and packs with version 2 indices.
+ * <p/>
+ * Objects which can't be found (e.g. located in alternate object databases) are reported as {@code null},
+ * so the caller may fall back to the Git command line.
+ * Trees are immutable, so parsed trees are cached by their hashes for all repositories.
+ */
+public class GitObjectReader {
+
+  private static final int OBJ_COMMIT = 1;
+  private static final int OBJ_TREE = 2;
+  private static final int OBJ_BLOB = 3;
+  private static final int OBJ_TAG = 4;
+  private static final int OBJ_OFS_DELTA = 6;
+  private static final int OBJ_REF_DELTA = 7;
+  private static final String[] TYPE_NAMES = {null, "commit", "tree", "blob", "tag"};
+
+  private static final int HASH_LENGTH = 20;
+  private static final int IDX_HEADER_LENGTH = 8;
+  private static final int FANOUT_LENGTH = 256 * 4;
+  private static final int MAX_DELTA_DEPTH = 100;
+
+  private static final SLRUMap<String, List<TreeEntry>> ourTreeCache = new SLRUMap<String, List<TreeEntry>>(500, 1000);
+
+  private final File myObjectsDir;
+  private File[] myPackIndices;
+
+  public GitObjectReader(@NotNull File gitDir) {
+    myObjectsDir = new File(gitDir, "objects");
+  }
+
+  public static class TreeEntry {
+    @NotNull private final String myName;
+    private final int myMode;
+    @NotNull private final String myHash;
+
+    TreeEntry(@NotNull String name, int mode, @NotNull String hash) {
+      myName = name;
+      myMode = mode;
+      myHash = hash;
+    }
+
+    @NotNull
+    public String getName() {
+      return myName;
+    }
+
+    public int getMode() {
+      return myMode;
+    }
+
+    public boolean isTree() {
+      return (myMode & GitIndex.MODE_TYPE_MASK) == 040000;
+    }
+
+    @NotNull
+    public String getHash() {
+      return myHash;
+    }
+  }
+
+  private static class GitObject {
+    private final int myType;
+    @NotNull private final byte[] myContent;
+
+    private GitObject(int type, @NotNull byte[] content) {
+      myType = type;
+      myContent = content;
+    }
+  }
+
+  /**
+   * @return hash of the root tree of the given commit, or {@code null} if the commit is not found
+   */
+  @Nullable
+  public String readCommitTree(@NotNull String commitHash) throws IOException {
+    GitObject commit = readObject(commitHash);
+    if (commit == null) return null;
+    if (commit.myType != OBJ_COMMIT) throw new IOException(commitHash + " is not a commit");
+    // the first line is 'tree <hash>'
+    String header = new String(commit.myContent, 0, Math.min(commit.myContent.length, 45), "UTF-8");
+    if (!header.startsWith("tree ") || header.length() < 45) throw new IOException("Unexpected commit format: " + commitHash);
+    return header.substring(5, 45);
+  }
+
+  /**
+   * @return entries of the given tree, or {@code null} if the tree is not found
+   */
+  @Nullable
+  public List<TreeEntry> readTree(@NotNull String treeHash) throws IOException {
+    synchronized (ourTreeCache) {
+      List<TreeEntry> cached = ourTreeCache.get(treeHash);
+      if (cached != null) return cached;
+    }
+    GitObject tree = readObject(treeHash);
+    if (tree == null) return null;
+    if (tree.myType != OBJ_TREE) throw new IOException(treeHash + " is not a tree");
+
+    List<TreeEntry> entries = new ArrayList<TreeEntry>();
+    byte[] content = tree.myContent;
+    int pos = 0;
+    while (pos < content.length) {
+      int mode = 0;
+      for (; content[pos] != ' '; pos++) {
+        mode = mode * 8 + content[pos] - '0';
+      }
+      int nameStart = ++pos;
+      while (content[pos] != 0) pos++;
+      String name = new String(content, nameStart, pos - nameStart, "UTF-8");
+      pos++;
+      entries.add(new TreeEntry(name, mode, toHex(content, pos)));
+      pos += HASH_LENGTH;
+    }
+    synchronized (ourTreeCache) {
+      ourTreeCache.put(treeHash, entries);
+    }
+    return entries;
+  }
+
+  @Nullable
+  private GitObject readObject(@NotNull String hash) throws IOException {
+    return readObject(hash, 0);
+  }
+
+  @Nullable
+  private GitObject readObject(@NotNull String hash, int depth) throws IOException {
+    File loose = new File(new File(myObjectsDir, hash.substring(0, 2)), hash.substring(2));
+    if (loose.isFile()) {
+      return readLooseObject(loose);
+    }
+    byte[] binaryHash = fromHex(hash);
+    for (File index : getPackIndices()) {
+      long offset = findOffset(index, binaryHash);
+      if (offset >= 0) {
+        File pack = new File(index.getParentFile(), index.getName().substring(0, index.getName().length() - ".idx".length()) + ".pack");
+        RandomAccessFile file = new RandomAccessFile(pack, "r");
+        try {
+          return readPackedObject(file, offset, depth);
+        }
+        finally {
+          file.close();
+        }
+      }
+    }
+    return null;
+  }
+
+  @NotNull
+  private File[] getPackIndices() {
+    if (myPackIndices == null) {
+      File[] indices = new File(myObjectsDir, "pack").listFiles(new FilenameFilter() {
+        @Override
+        public boolean accept(File dir, String name) {
+          return name.endsWith(".idx");
+        }
+      });
+      myPackIndices = indices == null ? new File[0] : indices;
+    }
+    return myPackIndices;
+  }
+
+  @NotNull
+  private static GitObject readLooseObject(@NotNull File file) throws IOException {
+    byte[] data = inflate(FileUtil.loadFileBytes(file));
+    int headerEnd = 0;
+    while (headerEnd < data.length && data[headerEnd] != 0) headerEnd++;
+    String header = new String(data, 0, headerEnd, "UTF-8");
+    int space = header.indexOf(' ');
+    int type = space < 0 ? -1 : Arrays.asList(TYPE_NAMES).indexOf(header.substring(0, space));
+    if (type <= 0) throw new IOException("Unexpected object header in " + file + ": " + header);
+    return new GitObject(type, Arrays.copyOfRange(data, headerEnd + 1, data.length));
+  }
+
+  /**
+   * Looks the hash up in the pack index of version 2: a fan-out table of 256 cumulative counts by the first byte,
+   * sorted hashes, CRCs, 32-bit offsets and 64-bit offsets for large packs.
+   *
+   * @return offset of the object in the pack, or -1 if the object is not in the pack
+   */
+  private static long findOffset(@NotNull File indexFile, @NotNull byte[] hash) throws IOException {
+    RandomAccessFile index = new RandomAccessFile(indexFile, "r");
+    try {
+      byte[] header = new byte[IDX_HEADER_LENGTH];
+      index.readFully(header);
+      if (header[0] != (byte)0xFF || header[1] != 't' || header[2] != 'O' || header[3] != 'c' || index.length() < IDX_HEADER_LENGTH + FANOUT_LENGTH) {
+        throw new IOException("Unsupported pack index version: " + indexFile);
+      }
+      int first = hash[0] & 0xFF;
+      index.seek(IDX_HEADER_LENGTH + 255 * 4);
+      int count = index.readInt();
+      int low = 0;
+      if (first > 0) {
+        index.seek(IDX_HEADER_LENGTH + (first - 1) * 4);
+        low = index.readInt();
+      }
+      index.seek(IDX_HEADER_LENGTH + first * 4);
+      int high = index.readInt();
+
+      byte[] candidate = new byte[HASH_LENGTH];
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        index.seek(IDX_HEADER_LENGTH + FANOUT_LENGTH + (long)mid * HASH_LENGTH);
+        index.readFully(candidate);
+        int cmp = compare(candidate, hash);
+        if (cmp < 0) {
+          low = mid + 1;
+        }
+        else if (cmp > 0) {
+          high = mid;
+        }
+        else {
+          long offsetsStart = IDX_HEADER_LENGTH + FANOUT_LENGTH + (long)count * (HASH_LENGTH + 4);
+          index.seek(offsetsStart + (long)mid * 4);
+          int offset = index.readInt();
+          if (offset >= 0) return offset;
+          index.seek(offsetsStart + (long)count * 4 + (long)(offset & 0x7FFFFFFF) * 8);
+          return index.readLong();
+        }
+      }
+      return -1;
+    }
+    finally {
+      index.close();
+    }
+  }
+
+  private static int compare(@NotNull byte[] hash1, @NotNull byte[] hash2) {
+    for (int i = 0; i < HASH_LENGTH; i++) {
+      int diff = (hash1[i] & 0xFF) - (hash2[i] & 0xFF);
+      if (diff != 0) return diff;
+    }
+    return 0;
+  }
+
+  @Nullable
+  private GitObject readPackedObject(@NotNull RandomAccessFile pack, long offset, int depth) throws IOException {
+    if (depth > MAX_DELTA_DEPTH) throw new IOException("Delta chain is too long");
+    pack.seek(offset);
+    int c = pack.readUnsignedByte();
+    int type = (c >> 4) & 7;
+    long size = c & 0x0F;
+    for (int shift = 4; (c & 0x80) != 0; shift += 7) {
+      c = pack.readUnsignedByte();
+      size |= (long)(c & 0x7F) << shift;
+    }
+    if (size > Integer.MAX_VALUE) throw new IOException("Object is too large");
+
+    switch (type) {
+      case OBJ_COMMIT:
+      case OBJ_TREE:
+      case OBJ_BLOB:
+      case OBJ_TAG:
+        return new GitObject(type, inflate(pack, (int)size));
+
+      case OBJ_OFS_DELTA: {
+        c = pack.readUnsignedByte();
+        long distance = c & 0x7F;
+        while ((c & 0x80) != 0) {
+          c = pack.readUnsignedByte();
+          distance = ((distance + 1) << 7) | (c & 0x7F);
+        }
+        byte[] delta = inflate(pack, (int)size);
+        GitObject base = readPackedObject(pack, offset - distance, depth + 1);
+        return base == null ? null : new GitObject(base.myType, applyDelta(base.myContent, delta));
+      }
+
+      case OBJ_REF_DELTA: {
+        byte[] baseHash = new byte[HASH_LENGTH];
+        pack.readFully(baseHash);
+        byte[] delta = inflate(pack, (int)size);
+        GitObject base = readObject(toHex(baseHash, 0), depth + 1);
+        return base == null ? null : new GitObject(base.myType, applyDelta(base.myContent, delta));
+      }
+
+      default:
+        throw new IOException("Unexpected object type " + type + " at offset " + offset);
+    }
+  }
+
+  @NotNull
+  private static byte[] inflate(@NotNull RandomAccessFile pack, int size) throws IOException {
+    // one spare byte, so that the inflater always has room to make progress and an oversized entry is detected
+    byte[] result = new byte[size + 1];
+    byte[] buffer = new byte[Math.min(size + 64, 8192)];
+    Inflater inflater = new Inflater();
+    try {
+      int done = 0;
+      while (!inflater.finished()) {
+        if (inflater.needsInput()) {
+          int read = pack.read(buffer);
+          if (read < 0) throw new IOException("Unexpected end of the pack");
+          inflater.setInput(buffer, 0, read);
+        }
+        done += inflater.inflate(result, done, result.length - done);
+        if (inflater.needsDictionary() || done > size) throw new IOException("Broken pack entry");
+      }
+      if (done != size) throw new IOException("Unexpected size of a pack entry");
+      return Arrays.copyOf(result, size);
+    }
+    catch (DataFormatException e) {
+      throw new IOException(e.getMessage());
+    }
+    finally {
+      inflater.end();
+    }
+  }
+
+  @NotNull
+  private static byte[] inflate(@NotNull byte[] data) throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(data);
+      ByteArrayOutputStream result = new ByteArrayOutputStream(data.length * 2);
+      byte[] buffer = new byte[8192];
+      while (!inflater.finished()) {
+        int count = inflater.inflate(buffer);
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) throw new IOException("Broken loose object");
+        result.write(buffer, 0, count);
+      }
+      return result.toByteArray();
+    }
+    catch (DataFormatException e) {
+      throw new IOException(e.getMessage());
+    }
+    finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Delta format: sizes of the base and of the result as little-endian base-128 numbers, then instructions
+   * to copy a range of the base (the high bit is set, the lower bits tell which offset and size bytes follow)
+   * or to insert the next 1-127 bytes of the delta.
+   */
+  @NotNull
+  static byte[] applyDelta(@NotNull byte[] base, @NotNull byte[] delta) throws IOException {
+    int[] pos = {0};
+    long baseSize = readDeltaSize(delta, pos);
+    if (baseSize != base.length) throw new IOException("Delta base size mismatch");
+    byte[] result = new byte[(int)readDeltaSize(delta, pos)];
+    int resultPos = 0;
+    int p = pos[0];
+    while (p < delta.length) {
+      int op = delta[p++] & 0xFF;
+      if ((op & 0x80) != 0) {
+        int copyOffset = 0;
+        int copySize = 0;
+        for (int i = 0; i < 4; i++) {
+          if ((op & (1 << i)) != 0) copyOffset |= (delta[p++] & 0xFF) << (8 * i);
+        }
+        for (int i = 0; i < 3; i++) {
+          if ((op & (0x10 << i)) != 0) copySize |= (delta[p++] & 0xFF) << (8 * i);
+        }
+        if (copySize == 0) copySize = 0x10000;
+        System.arraycopy(base, copyOffset, result, resultPos, copySize);
+        resultPos += copySize;
+      }
+      else if (op != 0) {
+        System.arraycopy(delta, p, result, resultPos, op);
+        p += op;
+        resultPos += op;
+      }
+      else {
+        throw new IOException("Unexpected delta instruction");
+      }
+    }
+    if (resultPos != result.length) throw new IOException("Delta result size mismatch");
+    return result;
+  }
+
+  private static long readDeltaSize(@NotNull byte[] delta, @NotNull int[] pos) {
+    long size = 0;
+    int shift = 0;
+    int c;
+    do {
+      c = delta[pos[0]++] & 0xFF;
+      size |= (long)(c & 0x7F) << shift;
+      shift += 7;
+    }
+    while ((c & 0x80) != 0);
+    return size;
+  }
+
+  @NotNull
+  public static String toHex(@NotNull byte[] bytes, int offset) {
+    StringBuilder result = new StringBuilder(HASH_LENGTH * 2);
+    for (int i = offset; i < offset + HASH_LENGTH; i++) {
+      result.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16)).append(Character.forDigit(bytes[i] & 0xF, 16));
+    }
+    return result.toString();
+  }
+
+  @NotNull
+  static byte[] fromHex(@NotNull String hash) throws IOException {
+    if (hash.length() != HASH_LENGTH * 2) throw new IOException("Not a full hash: " + hash);
+    byte[] result = new byte[HASH_LENGTH];
+    for (int i = 0; i < HASH_LENGTH; i++) {
+      int high = Character.digit(hash.charAt(2 * i), 16);
+      int low = Character.digit(hash.charAt(2 * i + 1), 16);
+      if (high < 0 || low < 0) throw new IOException("Not a hash: " + hash);
+      result[i] = (byte)(high << 4 | low);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.status;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.io.FileUtilRt;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.util.SystemProperties;
+import git4idea.repo.GitIndex;
+import git4idea.repo.GitObjectReader;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * <p>
+ *   Computes the status of the dirty paths of a Git root without calling Git: the index is read from {@code .git/index},
+ *   the HEAD tree is read from the object database, and the working tree files are compared with the index by their
+ *   sizes and timestamps, and by the content hashes if the timestamps don't match or are racy. CRLF line separators are
+ *   converted to LF before hashing only if {@code core.autocrlf} enables it.
+ * </p>
+ * <p>
+ *   If the repository uses something not supported here (index format v4, objects in alternates, symlinks, submodules,
+ *   attributes which may change the content on check in), or the content of a file too large to load would have to be compared,
+ *   nothing is computed, and {@code 'git status'} should be used.
+ *   Only exact staged renames are detected.
+ * </p>
+ */
+class GitLocalStatus {
+
+  enum Type { MODIFIED, ADDED, DELETED, RENAMED, CONFLICT }
+
+  static class Status {
+    @NotNull final Type type;
+    @NotNull final String path;
+    @Nullable final String oldPath;
+
+    Status(@NotNull Type type, @NotNull String path, @Nullable String oldPath) {
+      this.type = type;
+      this.path = path;
+      this.oldPath = oldPath;
+    }
+
+    @Override
+    public String toString() {
+      return type + " " + path + (oldPath == null ? "" : " <- " + oldPath);
+    }
+  }
+
+  private static class Unsupported extends Exception {
+    private Unsupported(@NotNull String message) {
+      super(message);
+    }
+  }
+
+  @NotNull private final File myRoot;
+  @NotNull private final File myGitDir;
+  @NotNull private final GitObjectReader myObjectReader;
+  private boolean myAutoCrlfRead;
+  @Nullable private Boolean myAutoCrlf;
+
+  private GitLocalStatus(@NotNull File root, @NotNull File gitDir) {
+    myRoot = root;
+    myGitDir = gitDir;
+    myObjectReader = new GitObjectReader(gitDir);
+  }
+
+  /**
+   * @param headRevision the current revision, {@code null} for a repository without commits
+   * @return changes under the dirty paths, or {@code null} if the status can't be computed without Git
+   */
+  @Nullable
+  static List<Status> collect(@NotNull File root, @NotNull File gitDir, @Nullable String headRevision,
+                              @NotNull Collection<FilePath> dirtyPaths) throws IOException {
+    if (!gitDir.isDirectory()) {  // .git file pointing to another location
+      return null;
+    }
+    try {
+      return new GitLocalStatus(root, gitDir).collect(headRevision, dirtyPaths);
+    }
+    catch (Unsupported e) {
+      return null;
+    }
+  }
+
+  @NotNull
+  private List<Status> collect(@Nullable String headRevision, @NotNull Collection<FilePath> dirtyPaths) throws IOException, Unsupported {
+    GitIndex index = GitIndex.read(new File(myGitDir, "index"));
+    if (index == null) throw new Unsupported("index format");
+    String headTree = null;
+    if (headRevision != null) {
+      headTree = myObjectReader.readCommitTree(headRevision);
+      if (headTree == null) throw new Unsupported("HEAD commit not found");
+    }
+
+    // path -> entries of all stages
+    Map<String, List<GitIndex.Entry>> indexEntries = new TreeMap<String, List<GitIndex.Entry>>();
+    Map<String, GitObjectReader.TreeEntry> headEntries = new TreeMap<String, GitObjectReader.TreeEntry>();
+    for (FilePath dirtyPath : dirtyPaths) {
+      String path = FileUtil.getRelativePath(myRoot.getPath(), dirtyPath.getPath(), '/');
+      if (path == null || path.startsWith("../")) continue;
+      if (path.equals(".")) path = "";
+
+      for (GitIndex.Entry entry : index.getEntries(path)) {
+        List<GitIndex.Entry> stages = indexEntries.get(entry.getPath());
+        if (stages == null) {
+          stages = new ArrayList<GitIndex.Entry>(1);
+          indexEntries.put(entry.getPath(), stages);
+        }
+        if (!stages.contains(entry)) stages.add(entry);
+      }
+      if (headTree != null) {
+        collectTreeEntries(headTree, "", path, headEntries);
+      }
+    }
+
+    List<Status> result = new ArrayList<Status>();
+    Map<String, String> deletedInIndex = new HashMap<String, String>(); // hash -> path
+    Map<String, String> addedToIndex = new LinkedHashMap<String, String>(); // path -> hash
+    Set<String> allPaths = new TreeSet<String>(indexEntries.keySet());
+    allPaths.addAll(headEntries.keySet());
+    for (String path : allPaths) {
+      List<GitIndex.Entry> stages = indexEntries.get(path);
+      GitObjectReader.TreeEntry head = headEntries.get(path);
+      if (head != null) checkMode(head.getMode(), path);
+
+      if (stages == null) {
+        deletedInIndex.put(head.getHash(), path);
+        continue;
+      }
+      GitIndex.Entry entry = stages.get(0);
+      checkMode(entry.getMode(), path);
+      if (stages.size() > 1 || entry.getStage() != 0) {
+        result.add(new Status(Type.CONFLICT, path, null));
+        continue;
+      }
+
+      File file = new File(myRoot, path);
+      boolean inWorkTree = entry.isWorkTreeIgnored() || file.isFile();
+      if (head == null) {
+        if (inWorkTree) { // added and then deleted from the working tree is not a change
+          addedToIndex.put(path, GitObjectReader.toHex(entry.getHash(), 0));
+        }
+      }
+      else if (!inWorkTree) {
+        result.add(new Status(Type.DELETED, path, null));
+      }
+      else if (!head.getHash().equals(GitObjectReader.toHex(entry.getHash(), 0)) || head.getMode() != entry.getMode() ||
+               !entry.isWorkTreeIgnored() && isModified(file, entry, index.getTimestamp())) {
+        result.add(new Status(Type.MODIFIED, path, null));
+      }
+    }
+
+    for (Map.Entry<String, String> added : addedToIndex.entrySet()) {
+      String oldPath = deletedInIndex.remove(added.getValue());
+      if (oldPath != null) {
+        result.add(new Status(Type.RENAMED, added.getKey(), oldPath));
+      }
+      else {
+        result.add(new Status(Type.ADDED, added.getKey(), null));
+      }
+    }
+    for (String deleted : deletedInIndex.values()) {
+      result.add(new Status(Type.DELETED, deleted, null));
+    }
+    return result;
+  }
+
+  private static void checkMode(int mode, @NotNull String path) throws Unsupported {
+    int type = mode & GitIndex.MODE_TYPE_MASK;
+    if (type == GitIndex.MODE_SYMLINK || type == GitIndex.MODE_GITLINK) {
+      throw new Unsupported("symlink or submodule: " + path);
+    }
+  }
+
+  /**
+   * Collects blobs of the given tree which are equal to the given path or located under it.
+   */
+  private void collectTreeEntries(@NotNull String treeHash, @NotNull String treePath, @NotNull String path,
+                                  @NotNull Map<String, GitObjectReader.TreeEntry> result) throws IOException, Unsupported {
+    List<GitObjectReader.TreeEntry> entries = myObjectReader.readTree(treeHash);
+    if (entries == null) throw new Unsupported("tree not found: " + treeHash);
+    for (GitObjectReader.TreeEntry entry : entries) {
+      String entryPath = treePath.isEmpty() ? entry.getName() : treePath + "/" + entry.getName();
+      boolean under = path.isEmpty() || entryPath.equals(path) || entryPath.startsWith(path + "/");
+      if (entry.isTree()) {
+        if (under || path.startsWith(entryPath + "/")) {
+          collectTreeEntries(entry.getHash(), entryPath, path, result);
+        }
+      }
+      else if (under) {
+        result.put(entryPath, entry);
+      }
+    }
+  }
+
+  private boolean isModified(@NotNull File file, @NotNull GitIndex.Entry entry, long indexTimestamp) throws IOException, Unsupported {
+    long length = file.length();
+    long seconds = file.lastModified() / 1000;
+    boolean statMatches = (int)length == entry.getSize() && seconds == entry.getModificationTime();
+    boolean racy = entry.getModificationTime() >= indexTimestamp / 1000;
+    if (statMatches && !racy) {
+      return false;
+    }
+    if (length > FileUtilRt.LARGE_FOR_CONTENT_LOADING) {
+      // the content can't be compared, and a touched file is not necessarily modified
+      throw new Unsupported("too large to compare the content: " + file);
+    }
+
+    byte[] content = FileUtil.loadFileBytes(file);
+    if (Arrays.equals(blobHash(content), entry.getHash())) return false;
+    byte[] normalized = crlfToLf(content);
+    if (normalized != content && Arrays.equals(blobHash(normalized), entry.getHash())) {
+      Boolean converted = isCrlfConvertedOnCheckIn();
+      if (converted == null) throw new Unsupported("core.autocrlf is not set in the repository or the user configuration");
+      if (converted) return false;
+    }
+    if (hasAttributes(file)) {
+      throw new Unsupported("attributes may define filters for " + file);
+    }
+    return true;
+  }
+
+  /**
+   * @return whether line separators are converted to LF when files are added to the index according to {@code core.autocrlf}
+   *         in the repository and the user configuration, {@code null} if it is not set there: the system configuration, which is not
+   *         read here, may set it. {@code core.eol} is not checked, since it doesn't cause conversions without the attributes, which
+   *         are not supported anyway.
+   */
+  @Nullable
+  private Boolean isCrlfConvertedOnCheckIn() throws IOException {
+    if (!myAutoCrlfRead) {
+      myAutoCrlfRead = true;
+      File home = new File(SystemProperties.getUserHome());
+      String xdgHome = System.getenv("XDG_CONFIG_HOME");
+      File[] configs = {new File(myGitDir, "config"), new File(home, ".gitconfig"),
+        new File(new File(StringUtil.isEmpty(xdgHome) ? new File(home, ".config") : new File(xdgHome), "git"), "config")};
+      for (File config : configs) {
+        String value = readCoreOption(config, "autocrlf");
+        if (value != null) {
+          myAutoCrlf = !value.equalsIgnoreCase("false") && !value.equalsIgnoreCase("no") && !value.equalsIgnoreCase("off") &&
+                       !value.equals("0");
+          break;
+        }
+      }
+    }
+    return myAutoCrlf;
+  }
+
+  /**
+   * @return the last value of the option of the {@code [core]} section in the given git config file, an empty string for an option
+   *         without a value, or {@code null} if the option is not set there
+   */
+  @Nullable
+  static String readCoreOption(@NotNull File config, @NotNull String name) throws IOException {
+    if (!config.isFile()) return null;
+    String result = null;
+    boolean inCore = false;
+    for (String line : StringUtil.splitByLines(FileUtil.loadFile(config))) {
+      line = line.trim();
+      if (line.startsWith("[")) {
+        int end = line.indexOf(']');
+        inCore = end > 0 && line.substring(1, end).trim().equalsIgnoreCase("core");
+        continue;
+      }
+      if (!inCore || line.isEmpty() || line.startsWith("#") || line.startsWith(";")) continue;
+      int eq = line.indexOf('=');
+      String key = (eq < 0 ? line : line.substring(0, eq)).trim();
+      if (!key.equalsIgnoreCase(name)) continue;
+      String value = eq < 0 ? "" : line.substring(eq + 1);
+      int comment = StringUtil.indexOfAny(value, "#;");
+      if (comment >= 0) value = value.substring(0, comment);
+      result = StringUtil.unquoteString(value.trim());
+    }
+    return result;
+  }
+
+  private boolean hasAttributes(@NotNull File file) {
+    if (new File(new File(myGitDir, "info"), "attributes").exists()) return true;
+    for (File dir = file.getParentFile(); dir != null; dir = dir.getParentFile()) {
+      if (new File(dir, ".gitattributes").exists()) return true;
+      if (FileUtil.filesEqual(dir, myRoot)) break;
+    }
+    return false;
+  }
+
+  @NotNull
+  static byte[] crlfToLf(@NotNull byte[] content) {
+    int crlf = 0;
+    for (int i = 0; i + 1 < content.length; i++) {
+      if (content[i] == '\r' && content[i + 1] == '\n') crlf++;
+    }
+    if (crlf == 0) return content;
+    byte[] result = new byte[content.length - crlf];
+    int j = 0;
+    for (int i = 0; i < content.length; i++) {
+      if (content[i] == '\r' && i + 1 < content.length && content[i + 1] == '\n') continue;
+      result[j++] = content[i];
+    }
+    return result;
+  }
+
+  @NotNull
+  static byte[] blobHash(@NotNull byte[] content) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update(("blob " + content.length + "\u0000").getBytes("US-ASCII"));
+      return digest.digest(content);
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+}
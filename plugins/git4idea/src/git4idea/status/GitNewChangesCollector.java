@@ -38,14 +38,18 @@ import git4idea.repo.GitRepository;
 import git4idea.repo.GitUntrackedFilesHolder;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
  * <p>
  *   Collects changes from the Git repository in the given {@link com.intellij.openapi.vcs.changes.VcsDirtyScope}
- *   by calling {@code 'git status --porcelain -z'} on it.
+ *   by reading the index and the HEAD tree directly (see {@link GitLocalStatus}), or,
+ *   if the repository uses features not supported there, by calling {@code 'git status --porcelain -z'} on it.
  *   Works only on Git 1.7.0 and later.
  * </p>
  * <p>
@@ -100,13 +104,53 @@ class GitNewChangesCollector extends GitChangesCollector {
     }
   }
 
-  // calls 'git status' and parses the output, feeding myChanges.
+  // reads the status from the index if possible, otherwise calls 'git status' and parses the output, feeding myChanges.
   private void collectChanges(Collection<FilePath> dirtyPaths) throws VcsException {
+    if (myRepository != null && collectLocalChanges(dirtyPaths)) {
+      return;
+    }
     GitSimpleHandler handler = statusHandler(dirtyPaths);
     String output = handler.run();
     parseOutput(output, handler);
   }
 
+  private boolean collectLocalChanges(Collection<FilePath> dirtyPaths) throws VcsException {
+    VcsRevisionNumber head = getHead();
+    List<GitLocalStatus.Status> statuses;
+    try {
+      String headRevision = head == VcsRevisionNumber.NULL ? null : head.asString();
+      statuses = GitLocalStatus.collect(new File(myVcsRoot.getPath()), new File(myRepository.getGitDir().getPath()), headRevision,
+                                        dirtyPaths);
+    }
+    catch (IOException e) {
+      LOG.info("Couldn't read the status of " + myVcsRoot + " from the index", e);
+      return false;
+    }
+    if (statuses == null) {
+      return false;
+    }
+    for (GitLocalStatus.Status status : statuses) {
+      switch (status.type) {
+        case MODIFIED:
+          reportModified(status.path, head);
+          break;
+        case ADDED:
+          reportAdded(status.path);
+          break;
+        case DELETED:
+          reportDeleted(status.path, head);
+          break;
+        case RENAMED:
+          reportRename(status.path, status.oldPath, head);
+          break;
+        case CONFLICT:
+          reportConflict(status.path, head);
+          break;
+      }
+    }
+    return true;
+  }
+
   private void collectUnversionedFiles() throws VcsException {
     if (myRepository == null) {
       // if GitRepository was not initialized at the time of creation of the GitNewChangesCollector => collecting unversioned files by hands.
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.annotate;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Collections;
+
+public class GitAnnotationCacheTest extends TestCase {
+  private File myDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("gitAnnotationCache", null);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myDir);
+    super.tearDown();
+  }
+
+  private static GitAnnotationCache.LineRevisions annotation(String hash) {
+    return new GitAnnotationCache.LineRevisions("rev", new String[]{hash}, new int[]{0, 0});
+  }
+
+  private static void putAnnotation(GitAnnotationCache.RootCache cache, String key, String hash, int day) throws Exception {
+    cache.putAnnotation(key, annotation(hash), day);
+    cache.putCommits(Collections.singletonMap(hash, new GitAnnotationCache.CommitInfo(day, "author", "message " + hash)));
+  }
+
+  public void testOldAnnotationsAreEvicted() throws Exception {
+    GitAnnotationCache.RootCache cache = GitAnnotationCache.open(myDir, 100, 10);
+    putAnnotation(cache, "old.txt", "1", 60);
+    putAnnotation(cache, "used.txt", "2", 60);
+    putAnnotation(cache, "new.txt", "3", 95);
+    assertNotNull(cache.getAnnotation("used.txt", 100));
+    cache.close();
+
+    // eviction is done once a day
+    cache = GitAnnotationCache.open(myDir, 100, 10);
+    assertNotNull(cache.getAnnotation("old.txt", 60));
+    cache.close();
+
+    cache = GitAnnotationCache.open(myDir, 101, 10);
+    assertNull(cache.getAnnotation("old.txt", 101));
+    assertNull(cache.getCommit("1"));
+    assertEquals("2", cache.getAnnotation("used.txt", 101).hashes[0]);
+    assertEquals("message 2", cache.getCommit("2").message);
+    assertNotNull(cache.getAnnotation("new.txt", 101));
+    assertNotNull(cache.getCommit("3"));
+    cache.close();
+  }
+
+  public void testLeastRecentlyUsedAnnotationsAreEvicted() throws Exception {
+    GitAnnotationCache.RootCache cache = GitAnnotationCache.open(myDir, 100, 2);
+    putAnnotation(cache, "a.txt", "1", 98);
+    putAnnotation(cache, "b.txt", "2", 99);
+    putAnnotation(cache, "c.txt", "2", 100);
+    cache.close();
+
+    cache = GitAnnotationCache.open(myDir, 101, 2);
+    assertNull(cache.getAnnotation("a.txt", 101));
+    assertNull(cache.getCommit("1"));
+    assertNotNull(cache.getAnnotation("b.txt", 101));
+    assertNotNull(cache.getAnnotation("c.txt", 101));
+    assertNotNull(cache.getCommit("2"));
+    cache.close();
+
+    cache = GitAnnotationCache.open(myDir, 102, 2);
+    assertNotNull(cache.getAnnotation("b.txt", 102));
+    assertNotNull(cache.getAnnotation("c.txt", 102));
+    cache.close();
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.annotate;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.ArrayUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Checks that replaying the log over a cached annotation gives the same result as <code>git blame</code>.
+ */
+public class GitAnnotationUpdaterTest extends TestCase {
+  private File myRoot;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myRoot = FileUtil.createTempDirectory("gitAnnotations", null);
+    git("init", "-q");
+    git("config", "user.name", "Test");
+    git("config", "user.email", "test@example.com");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myRoot);
+    super.tearDown();
+  }
+
+  private String git(String... params) throws Exception {
+    Process process = new ProcessBuilder(ArrayUtil.mergeArrays(new String[]{"git"}, params))
+      .directory(myRoot).redirectErrorStream(true).start();
+    String output = new String(FileUtil.loadBytes(process.getInputStream()), "UTF-8");
+    assertEquals("git " + Arrays.toString(params) + ": " + output, 0, process.waitFor());
+    return output;
+  }
+
+  private String commit(String content, String message) throws Exception {
+    FileUtil.writeToFile(new File(myRoot, "file.txt"), content);
+    git("add", "file.txt");
+    git("commit", "-q", "-m", message);
+    return git("rev-parse", "HEAD").trim();
+  }
+
+  private GitAnnotationCache.LineRevisions blame(String revision) throws Exception {
+    List<String> hashes = new ArrayList<String>();
+    List<String> lines = StringUtil.split(git("blame", "-l", "-s", "-w", revision, "--", "file.txt"), "\n");
+    int[] result = new int[lines.size()];
+    for (int i = 0; i < lines.size(); i++) {
+      String hash = lines.get(i).substring(0, 40);
+      if (!hashes.contains(hash)) hashes.add(hash);
+      result[i] = hashes.indexOf(hash);
+    }
+    return new GitAnnotationCache.LineRevisions(revision, ArrayUtil.toStringArray(hashes), result);
+  }
+
+  private GitAnnotationCache.LineRevisions update(GitAnnotationCache.LineRevisions base, String revision,
+                                                  Map<String, GitAnnotationCache.CommitInfo> commits) throws Exception {
+    String log = git("log", "--reverse", "--parents", "-p", "-U0", "-w", "--no-color", "--no-ext-diff", GitAnnotationUpdater.LOG_FORMAT,
+                     base.revision + ".." + revision, "--", "file.txt");
+    return GitAnnotationUpdater.update(base, revision, log, commits);
+  }
+
+  private static List<String> lineHashes(GitAnnotationCache.LineRevisions annotation) {
+    List<String> result = new ArrayList<String>();
+    for (int line : annotation.lines) {
+      result.add(annotation.hashes[line]);
+    }
+    return result;
+  }
+
+  public void testLinearHistory() throws Exception {
+    String base = commit("a\nb\nc\nd\ne\n", "initial");
+    GitAnnotationCache.LineRevisions cached = blame(base);
+    commit("a\nB\nc\nd\ne\nf\n", "change and append");
+    commit("x\na\nB\nd\ne\nf\n", "insert and delete");
+    commit("x\na\nB\n  d\ne\nf", "whitespace only");
+    String last = commit("x\na\nB\ny\nz\n  d\ne\nf", "insert in the middle");
+
+    Map<String, GitAnnotationCache.CommitInfo> commits = new HashMap<String, GitAnnotationCache.CommitInfo>();
+    GitAnnotationCache.LineRevisions updated = update(cached, last, commits);
+    assertNotNull(updated);
+    assertEquals(last, updated.revision);
+    assertEquals(lineHashes(blame(last)), lineHashes(updated));
+    assertEquals(4, commits.size());
+    assertEquals("insert in the middle", commits.get(last).message);
+    assertEquals("Test", commits.get(last).author);
+    // the commit of the whitespace change annotates no lines
+    assertEquals(new HashSet<String>(lineHashes(updated)).size(), updated.hashes.length);
+  }
+
+  public void testCommitsNotChangingTheFileAreSkipped() throws Exception {
+    String base = commit("a\nb\n", "initial");
+    FileUtil.writeToFile(new File(myRoot, "other.txt"), "other");
+    git("add", "other.txt");
+    git("commit", "-q", "-m", "other");
+    String last = commit("a\nb\nc\n", "append");
+
+    GitAnnotationCache.LineRevisions updated = update(blame(base), last, new HashMap<String, GitAnnotationCache.CommitInfo>());
+    assertNotNull(updated);
+    assertEquals(lineHashes(blame(last)), lineHashes(updated));
+  }
+
+  public void testMergeChangingTheFileIsNotReplayed() throws Exception {
+    String base = commit("a\nb\nc\n", "initial");
+    git("checkout", "-q", "-b", "side");
+    commit("a\nb\nc\nd\n", "side");
+    git("checkout", "-q", "-");
+    commit("z\na\nb\nc\n", "main");
+    git("merge", "-q", "side", "-m", "merge");
+    String merge = git("rev-parse", "HEAD").trim();
+
+    assertNull(update(blame(base), merge, new HashMap<String, GitAnnotationCache.CommitInfo>()));
+  }
+
+  public void testNotAncestorIsNotReplayed() throws Exception {
+    commit("a\n", "initial");
+    git("checkout", "-q", "-b", "side");
+    String side = commit("a\nb\n", "side");
+    git("checkout", "-q", "-");
+    String main = commit("a\nc\n", "main");
+
+    assertNull(update(blame(side), main, new HashMap<String, GitAnnotationCache.CommitInfo>()));
+  }
+}
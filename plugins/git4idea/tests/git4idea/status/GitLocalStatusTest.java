@@ -0,0 +1,196 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.status;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.io.FileUtilRt;
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.openapi.vcs.FilePathImpl;
+import com.intellij.util.ArrayUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Compares {@link GitLocalStatus} with the real repository state produced by the git executable.
+ */
+public class GitLocalStatusTest extends TestCase {
+  private File myRoot;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myRoot = FileUtil.createTempDirectory("gitLocalStatus", null);
+    git("init", "-q");
+    git("config", "user.name", "Test");
+    git("config", "user.email", "test@example.com");
+    git("config", "core.autocrlf", "false");
+    write("a.txt", "a\n");
+    write("dir/b.txt", "b\n");
+    write("dir/c.txt", "c\n");
+    write("dir/sub/d.txt", "d\n");
+    git("add", ".");
+    git("commit", "-q", "-m", "initial");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myRoot);
+    super.tearDown();
+  }
+
+  private String git(String... params) throws IOException, InterruptedException {
+    return git(true, params);
+  }
+
+  private String git(boolean checkExitCode, String... params) throws IOException, InterruptedException {
+    Process process = new ProcessBuilder(ArrayUtil.mergeArrays(new String[]{"git"}, params))
+      .directory(myRoot).redirectErrorStream(true).start();
+    String output = new String(FileUtil.loadBytes(process.getInputStream()));
+    int exitCode = process.waitFor();
+    if (checkExitCode) {
+      assertEquals("git " + Arrays.toString(params) + ": " + output, 0, exitCode);
+    }
+    return output.trim();
+  }
+
+  private String head() throws Exception {
+    return git("rev-parse", "HEAD");
+  }
+
+  private void write(String path, String content) throws IOException {
+    FileUtil.writeToFile(new File(myRoot, path), content);
+  }
+
+  private List<String> status(String... dirtyPaths) throws Exception {
+    List<FilePath> paths = new ArrayList<FilePath>();
+    for (String path : dirtyPaths) {
+      File file = new File(myRoot, path);
+      paths.add(new FilePathImpl(file, file.isDirectory()));
+    }
+    List<GitLocalStatus.Status> statuses = GitLocalStatus.collect(myRoot, new File(myRoot, ".git"), head(), paths);
+    assertNotNull(statuses);
+    List<String> result = new ArrayList<String>();
+    for (GitLocalStatus.Status status : statuses) {
+      result.add(status.toString());
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+  public void testClean() throws Exception {
+    assertEquals(Collections.<String>emptyList(), status(""));
+  }
+
+  public void testModifiedAddedDeleted() throws Exception {
+    write("dir/b.txt", "b changed\n");
+    write("dir/new.txt", "new\n");
+    git("add", "dir/new.txt");
+    FileUtil.delete(new File(myRoot, "dir/sub/d.txt"));
+    assertEquals(Arrays.asList("ADDED dir/new.txt", "DELETED dir/sub/d.txt", "MODIFIED dir/b.txt"), status("dir"));
+    assertEquals(Arrays.asList("MODIFIED dir/b.txt"), status("dir/b.txt", "a.txt"));
+    assertEquals(Collections.<String>emptyList(), status("a.txt"));
+  }
+
+  public void testSameSizeModificationIsDetected() throws Exception {
+    write("a.txt", "x\n");
+    assertEquals(Arrays.asList("MODIFIED a.txt"), status(""));
+  }
+
+  public void testStagedChanges() throws Exception {
+    write("a.txt", "staged\n");
+    git("add", "a.txt");
+    git("rm", "-q", "--cached", "dir/c.txt");
+    assertEquals(Arrays.asList("DELETED dir/c.txt", "MODIFIED a.txt"), status(""));
+  }
+
+  public void testRename() throws Exception {
+    git("mv", "dir/c.txt", "moved.txt");
+    assertEquals(Arrays.asList("RENAMED moved.txt <- dir/c.txt"), status(""));
+  }
+
+  public void testPackedObjects() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      write("dir/b.txt", "b\nrevision " + i + "\n");
+      git("commit", "-q", "-a", "-m", "change " + i);
+    }
+    git("gc", "-q", "--aggressive");
+    assertFalse(new File(myRoot, ".git/objects/" + head().substring(0, 2)).exists());
+    write("dir/sub/d.txt", "d changed\n");
+    assertEquals(Arrays.asList("MODIFIED dir/sub/d.txt"), status(""));
+  }
+
+  public void testLineSeparatorsAreNormalized() throws Exception {
+    git("config", "core.autocrlf", "true");
+    write("a.txt", "a\r\n");
+    assertEquals(Collections.<String>emptyList(), status(""));
+  }
+
+  public void testLineSeparatorsAreNotNormalizedWithoutAutoCrlf() throws Exception {
+    write("a.txt", "a\r\n");
+    assertEquals(Arrays.asList("MODIFIED a.txt"), status(""));
+    assertEquals("M a.txt", git("status", "--porcelain", "a.txt"));
+  }
+
+  public void testAutoCrlfIsReadCaseInsensitively() throws Exception {
+    git("config", "--unset", "core.autocrlf");
+    git("config", "core.autoCRLF", "input");
+    write("a.txt", "a\r\n");
+    assertEquals(Collections.<String>emptyList(), status(""));
+  }
+
+  public void testIndexRewrittenKeepingTimestampAndLength() throws Exception {
+    File index = new File(myRoot, ".git/index");
+    write("a.txt", "y\n");
+    git("add", "a.txt");
+    assertEquals(Arrays.asList("MODIFIED a.txt"), status(""));
+    long timestamp = index.lastModified();
+    long length = index.length();
+
+    write("a.txt", "a\n");
+    git("add", "a.txt");
+    assertTrue(index.setLastModified(timestamp));
+    assertEquals(length, index.length());
+    assertEquals(Collections.<String>emptyList(), status(""));
+  }
+
+  public void testTouchedLargeFileIsLeftToGit() throws Exception {
+    File file = new File(myRoot, "large.bin");
+    byte[] content = new byte[FileUtilRt.LARGE_FOR_CONTENT_LOADING + 1];
+    Arrays.fill(content, (byte)'x');
+    FileUtil.writeToFile(file, content);
+    git("add", "large.bin");
+    git("commit", "-q", "-m", "large");
+
+    assertTrue(file.setLastModified(file.lastModified() + 10000));
+    List<FilePath> paths = Collections.<FilePath>singletonList(new FilePathImpl(file, false));
+    assertNull(GitLocalStatus.collect(myRoot, new File(myRoot, ".git"), head(), paths));
+    assertEquals("", git("status", "--porcelain", "large.bin"));
+  }
+
+  public void testConflict() throws Exception {
+    git("checkout", "-q", "-b", "other");
+    write("a.txt", "other\n");
+    git("commit", "-q", "-a", "-m", "other");
+    git("checkout", "-q", "-");
+    write("a.txt", "master\n");
+    git("commit", "-q", "-a", "-m", "master");
+    git(false, "merge", "other");
+    assertEquals(Arrays.asList("CONFLICT a.txt"), status(""));
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.tests;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.ArrayUtil;
+import git4idea.history.wholeTree.GitCommitGraph;
+import git4idea.history.wholeTree.GitCommitGraphStore;
+import gnu.trove.TIntArrayList;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.*;
+import java.util.regex.Pattern;
+
+public class GitCommitGraphTest extends TestCase {
+  private File myDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("gitGraph", null);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myDir);
+    super.tearDown();
+  }
+
+  private GitCommitGraph createGraph() {
+    return new GitCommitGraph(new File(myDir, "test.graph"), new File(myDir, "test.refs"));
+  }
+
+  private static String hash(int n) {
+    return StringUtil.repeat("0", 38 - Integer.toHexString(n).length()) + Integer.toHexString(n) + "ab";
+  }
+
+  private static GitCommitGraph.Record record(int n, long time, String author, String[] paths, int... parents) {
+    String[] parentHashes = new String[parents.length];
+    for (int i = 0; i < parents.length; i++) {
+      parentHashes[i] = hash(parents[i]);
+    }
+    return new GitCommitGraph.Record(hash(n), 8, time, author, author, parentHashes, Arrays.asList(paths));
+  }
+
+  /**
+   *   1 - 2 - 4 (master)
+   *    \- 3 -/
+   *        \- 5 (feature)
+   */
+  private GitCommitGraph createHistory() throws Exception {
+    GitCommitGraph graph = createGraph();
+    graph.append(Arrays.asList(record(1, 100, "alice", new String[]{"a/x.txt"}),
+                               record(2, 300, "bob", new String[]{"b/y.txt"}, 1),
+                               record(3, 200, "alice", new String[]{"a/z.txt"}, 1),
+                               record(4, 400, "bob", ArrayUtil.EMPTY_STRING_ARRAY, 2, 3),
+                               record(5, 500, "carol", new String[]{"a/x.txt", "c.txt"}, 3)));
+    Map<String, String> refs = new LinkedHashMap<String, String>();
+    refs.put("refs/heads/master", hash(4));
+    refs.put("refs/heads/feature", hash(5));
+    graph.setRefs(refs);
+    return graph;
+  }
+
+  private static List<String> log(GitCommitGraph graph, boolean topoOrder, int... starts) {
+    List<String> result = new ArrayList<String>();
+    for (int id : graph.getLog(new TIntArrayList(starts), topoOrder)) {
+      result.add(graph.getHash(id).substring(37, 38));
+    }
+    return result;
+  }
+
+  public void testHashes() throws Exception {
+    GitCommitGraph graph = createHistory();
+    assertEquals(5, graph.size());
+    int id = graph.find(hash(3));
+    assertEquals(hash(3), graph.getHash(id));
+    assertEquals(hash(3).substring(0, 8), graph.getShortHash(id));
+    assertEquals(GitCommitGraph.NOT_FOUND, graph.find(hash(6)));
+    // all hashes share the prefix
+    assertEquals(GitCommitGraph.NOT_FOUND, graph.find("0000000000"));
+    assertEquals(id, graph.find(hash(3).substring(0, 38)));
+    assertEquals(id, graph.resolve(hash(3)));
+    assertEquals(graph.find(hash(5)), graph.resolve("feature"));
+    assertEquals(graph.find(hash(4)), graph.resolve("refs/heads/master"));
+  }
+
+  public void testLog() throws Exception {
+    GitCommitGraph graph = createHistory();
+    assertEquals(Arrays.asList("5", "4", "2", "3", "1"), log(graph, false));
+    assertEquals(Arrays.asList("5", "4", "3", "2", "1"), log(graph, true));
+    assertEquals(Arrays.asList("4", "2", "3", "1"), log(graph, false, graph.resolve("master")));
+    assertEquals(Arrays.asList("5", "3", "1"), log(graph, false, graph.resolve("feature")));
+  }
+
+  public void testContainingRefs() throws Exception {
+    GitCommitGraph graph = createHistory();
+    assertEquals(Arrays.asList("refs/heads/master", "refs/heads/feature"), graph.getContainingRefs(graph.find(hash(3))));
+    assertEquals(Arrays.asList("refs/heads/master"), graph.getContainingRefs(graph.find(hash(2))));
+    assertEquals(Arrays.asList("refs/heads/feature"), graph.getContainingRefs(graph.find(hash(5))));
+  }
+
+  public void testUsersAndPaths() throws Exception {
+    GitCommitGraph graph = createHistory();
+    boolean[] users = graph.findUsers(Pattern.compile("ali"));
+    assertTrue(users[graph.getAuthorId(graph.find(hash(1)))]);
+    assertFalse(users[graph.getAuthorId(graph.find(hash(2)))]);
+
+    boolean[] paths = graph.findPaths(Collections.singletonList("a"));
+    assertTrue(graph.touches(graph.find(hash(3)), paths));
+    assertTrue(graph.touches(graph.find(hash(5)), paths));
+    assertFalse(graph.touches(graph.find(hash(2)), paths));
+    assertFalse(graph.touches(graph.find(hash(4)), paths));
+    assertFalse(graph.touches(graph.find(hash(5)), graph.findPaths(Collections.singletonList("c"))));
+    assertTrue(graph.touches(graph.find(hash(2)), graph.findPaths(Collections.singletonList(""))));
+  }
+
+  public void testIncrementalUpdateAndReload() throws Exception {
+    GitCommitGraph graph = createHistory();
+    // already known commits are skipped
+    graph.append(Arrays.asList(record(5, 500, "carol", ArrayUtil.EMPTY_STRING_ARRAY, 3),
+                               record(6, 600, "dave", new String[]{"d.txt"}, 4, 5)));
+    graph.setRefs(Collections.singletonMap("refs/heads/master", hash(6)));
+    assertEquals(6, graph.size());
+
+    GitCommitGraph loaded = createGraph();
+    assertTrue(loaded.load());
+    assertEquals(6, loaded.size());
+    assertEquals(graph.getRefs(), loaded.getRefs());
+    assertEquals(Arrays.asList("6", "5", "4", "2", "3", "1"), log(loaded, false));
+    int id = loaded.find(hash(6));
+    assertEquals("dave", loaded.getAuthor(id));
+    assertEquals(600000, loaded.getTime(id));
+    assertEquals(2, loaded.getParents(id).length);
+    assertTrue(loaded.touches(id, loaded.findPaths(Collections.singletonList("d.txt"))));
+  }
+
+  public void testBrokenTailIsCutOff() throws Exception {
+    createHistory();
+    File file = new File(myDir, "test.graph");
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(raf.length() - 3);
+    }
+    finally {
+      raf.close();
+    }
+
+    GitCommitGraph graph = createGraph();
+    assertTrue(graph.load());
+    assertEquals(4, graph.size());
+    graph.append(Collections.singletonList(record(5, 500, "carol", new String[]{"c.txt"}, 3)));
+
+    GitCommitGraph reloaded = createGraph();
+    assertTrue(reloaded.load());
+    assertEquals(5, reloaded.size());
+    assertEquals("carol", reloaded.getAuthor(reloaded.find(hash(5))));
+  }
+
+  public void testClear() throws Exception {
+    GitCommitGraph graph = createHistory();
+    graph.clear();
+    assertEquals(0, graph.size());
+    assertTrue(graph.getRefs().isEmpty());
+    assertEquals(GitCommitGraph.NOT_FOUND, graph.find(hash(1)));
+    assertFalse(createGraph().load());
+
+    graph.append(Collections.singletonList(record(7, 700, "erin", new String[]{"e.txt"})));
+    assertEquals(1, graph.size());
+    assertEquals("erin", graph.getAuthor(graph.find(hash(7))));
+    GitCommitGraph reloaded = createGraph();
+    assertTrue(reloaded.load());
+    assertEquals(1, reloaded.size());
+  }
+
+  public void testExcludedHeads() throws Exception {
+    GitCommitGraph graph = createHistory();
+    Map<String, String> refs = new LinkedHashMap<String, String>();
+    refs.put("refs/heads/old", hash(2));
+    refs.put("refs/heads/master", hash(4));
+    refs.put("refs/heads/feature", hash(5));
+    refs.put("refs/heads/new", hash(6));
+    refs.put("refs/tags/v1", hash(4));
+
+    // unknown heads are not excluded, the most recent known ones are kept
+    assertEquals(Arrays.asList(hash(5), hash(4), hash(2)), GitCommitGraphStore.getExcludedHeads(graph, refs, 10));
+    assertEquals(Arrays.asList(hash(5), hash(4)), GitCommitGraphStore.getExcludedHeads(graph, refs, 2));
+  }
+}
@@ -30,7 +30,6 @@ import com.intellij.util.Processor;
 import com.intellij.util.containers.ContainerUtil;
 import gnu.trove.TIntHashSet;
 import gnu.trove.TIntProcedure;
-import gnu.trove.TObjectProcedure;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
@@ -105,22 +104,12 @@ public class UnusedDefInspection extends GroovyLocalInspectionBase {
       if (instruction instanceof ReadWriteVariableInstruction) {
         final ReadWriteVariableInstruction varInst = (ReadWriteVariableInstruction) instruction;
         if (!varInst.isWrite()) {
-          final String varName = varInst.getVariableName();
-          DefinitionMap e = dfaResult.get(i);
-          e.forEachValue(new TObjectProcedure<TIntHashSet>() {
-            public boolean execute(TIntHashSet reaching) {
-              reaching.forEach(new TIntProcedure() {
-                public boolean execute(int defNum) {
-                  final String defName = ((ReadWriteVariableInstruction) flow[defNum]).getVariableName();
-                  if (varName.equals(defName)) {
-                    unusedDefs.remove(defNum);
-                  }
-                  return true;
-                }
-              });
-              return true;
+          final int[] reaching = dfaResult.get(i).getDefinitions(dfaInstance.getVarIndex(varInst.getVariableName()));
+          if (reaching != null) {
+            for (int defNum : reaching) {
+              unusedDefs.remove(defNum);
             }
-          });
+          }
         }
       }
     }
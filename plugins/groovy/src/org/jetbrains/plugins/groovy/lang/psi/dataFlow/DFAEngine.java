@@ -45,21 +45,23 @@ public class DFAEngine<E> {
   }
 
   private static class MyCallEnvironment implements CallEnvironment {
-    ArrayList<Deque<CallInstruction>> myEnv;
+    private final Deque<CallInstruction>[] myEnv;
 
+    @SuppressWarnings("unchecked")
     private MyCallEnvironment(int instructionNum) {
-      myEnv = new ArrayList<Deque<CallInstruction>>(instructionNum);
-      for (int i = 0; i < instructionNum; i++) {
-        myEnv.add(new ArrayDeque<CallInstruction>());
-      }
+      myEnv = new Deque[instructionNum];
     }
 
     public Deque<CallInstruction> callStack(Instruction instruction) {
-      return myEnv.get(instruction.num());
+      Deque<CallInstruction> stack = myEnv[instruction.num()];
+      if (stack == null) {
+        myEnv[instruction.num()] = stack = new ArrayDeque<CallInstruction>();
+      }
+      return stack;
     }
 
     public void update(Deque<CallInstruction> callStack, Instruction instruction) {
-      myEnv.set(instruction.num(), callStack);
+      myEnv[instruction.num()] = callStack;
     }
   }
 
@@ -75,65 +77,75 @@ public class DFAEngine<E> {
     return performDFA(true);
   }
 
+  /**
+   * Worklist iteration in reverse postorder (postorder for backward analyses): the pending instructions are kept as a bit set
+   * of their positions in that order, and the one with the smallest position is always processed first. This way each
+   * instruction normally sees all its predecessors already computed, and loops are re-iterated only when something changes.
+   */
   @Nullable
   private ArrayList<E> performDFA(boolean timeout) {
     WorkingTimeMeasurer measurer = new WorkingTimeMeasurer(ourTimeLimit);
 
-    ArrayList<E> info = new ArrayList<E>(myFlow.length);
-    CallEnvironment env = new MyCallEnvironment(myFlow.length);
-    for (int i = 0; i < myFlow.length; i++) {
+    final int n = myFlow.length;
+    ArrayList<E> info = new ArrayList<E>(n);
+    CallEnvironment env = new MyCallEnvironment(n);
+    for (int i = 0; i < n; i++) {
       info.add(myDfa.initial());
     }
 
-    boolean[] visited = new boolean[myFlow.length];
-
     final boolean forward = myDfa.isForward();
-    int[] order = ControlFlowBuilderUtil.postorder(myFlow); //todo for backward?
+    final int[] position = ControlFlowBuilderUtil.postorder(myFlow);
+    if (!forward) {
+      for (int i = 0; i < n; i++) {
+        position[i] = n - 1 - position[i];
+      }
+    }
+    final int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[position[i]] = i;
+    }
+
+    final BitSet pending = new BitSet(n);
+    pending.set(0, n);
+    final ArrayList<E> prevInfos = new ArrayList<E>();
+
     int count = 0;
-    for (int i = forward ? 0 : myFlow.length - 1; forward ? i < myFlow.length : i >= 0;) {
-      Instruction instr = myFlow[order[i]];
-
-      if (!visited[instr.num()]) {
-        Queue<Instruction> workList = new LinkedList<Instruction>();
-
-        workList.add(instr);
-        visited[instr.num()] = true;
-
-        while (!workList.isEmpty()) {
-          count++;
-          if (timeout && count % 512 == 0 && measurer.isTimeOver()) return null;
-
-          ProgressManager.checkCanceled();
-          final Instruction curr = workList.remove();
-          final int num = curr.num();
-          final E oldE = info.get(num);
-          E newE = join(curr, info, env);
-          myDfa.fun(newE, curr);
-          if (!mySemilattice.eq(newE, oldE)) {
-            info.set(num, newE);
-            for (Instruction next : getNext(curr, env)) {
-              workList.add(next);
-              visited[next.num()] = true;
-            }
-          }
+    int cursor = pending.nextSetBit(0);
+    while (cursor >= 0) {
+      count++;
+      if (timeout && count % 512 == 0 && measurer.isTimeOver()) return null;
+
+      ProgressManager.checkCanceled();
+      pending.clear(cursor);
+      final Instruction curr = myFlow[order[cursor]];
+      final int num = curr.num();
+      final E oldE = info.get(num);
+      E newE = join(curr, info, env, prevInfos);
+      myDfa.fun(newE, curr);
+      int next = cursor + 1;
+      if (!mySemilattice.eq(newE, oldE)) {
+        info.set(num, newE);
+        for (Instruction succ : getNext(curr, env)) {
+          int succPosition = position[succ.num()];
+          pending.set(succPosition);
+          if (succPosition < next) next = succPosition;
         }
       }
-
-      if (forward) i++;
-      else i--;
+      cursor = pending.nextSetBit(next);
     }
 
-
     return info;
   }
 
-  private E join(Instruction instruction, ArrayList<E> info, CallEnvironment env) {
+  private E join(Instruction instruction, ArrayList<E> info, CallEnvironment env, ArrayList<E> prevInfos) {
     final Iterable<? extends Instruction> prev = myDfa.isForward() ? instruction.predecessors(env) : instruction.successors(env);
-    ArrayList<E> prevInfos = new ArrayList<E>();
+    prevInfos.clear();
     for (Instruction i : prev) {
       prevInfos.add(info.get(i.num()));
     }
-    return mySemilattice.join(prevInfos);
+    E result = mySemilattice.join(prevInfos);
+    prevInfos.clear();
+    return result;
   }
 
   private Iterable<? extends Instruction> getNext(Instruction curr, CallEnvironment env) {
@@ -15,70 +15,80 @@
  */
 package org.jetbrains.plugins.groovy.lang.psi.dataFlow.reachingDefs;
 
-import gnu.trove.TIntHashSet;
-import gnu.trove.TIntObjectHashMap;
-import gnu.trove.TIntObjectProcedure;
-import gnu.trove.TObjectProcedure;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.plugins.groovy.lang.psi.controlFlow.Instruction;
 
+import java.util.BitSet;
+
 /**
- * @author peter
+ * Maps variable index to the set of definition instruction numbers reaching the current point.
+ * Both keys and definitions are dense (they come from the same control flow), so plain bit sets are used.
  */
 public class DefinitionMap {
-  private final TIntObjectHashMap<TIntHashSet> myMap = new TIntObjectHashMap<TIntHashSet>();
+  private static final BitSet[] EMPTY = new BitSet[0];
 
-  public void registerDef(Instruction varInsn, int varId) {
-    TIntHashSet defs = myMap.get(varId);
+  private BitSet[] myDefs = EMPTY;
+
+  private BitSet getOrCreate(int key) {
+    if (key >= myDefs.length) {
+      BitSet[] newDefs = new BitSet[Math.max(key + 1, myDefs.length * 3 / 2)];
+      System.arraycopy(myDefs, 0, newDefs, 0, myDefs.length);
+      myDefs = newDefs;
+    }
+    BitSet defs = myDefs[key];
     if (defs == null) {
-      myMap.put(varId, defs = new TIntHashSet());
-    } else {
-      defs.clear();
+      myDefs[key] = defs = new BitSet();
     }
-    defs.add(varInsn.num());
+    return defs;
   }
 
-  public void merge(DefinitionMap map2) {
-    map2.myMap.forEachEntry(new TIntObjectProcedure<TIntHashSet>() {
-      public boolean execute(int num, TIntHashSet defs) {
-        TIntHashSet defs2 = myMap.get(num);
-        if (defs2 == null) {
-          defs2 = new TIntHashSet(defs.toArray());
-          myMap.put(num, defs2);
-        }
-        else {
-          defs2.addAll(defs.toArray());
-        }
+  @Nullable
+  private BitSet get(int key) {
+    return key >= 0 && key < myDefs.length ? myDefs[key] : null;
+  }
 
-        return true;
+  public void registerDef(Instruction varInsn, int varId) {
+    BitSet defs = getOrCreate(varId);
+    defs.clear();
+    defs.set(varInsn.num());
+  }
+
+  public void merge(DefinitionMap map2) {
+    BitSet[] defs2 = map2.myDefs;
+    for (int i = defs2.length - 1; i >= 0; i--) {
+      if (defs2[i] != null) {
+        getOrCreate(i).or(defs2[i]);
       }
-    });
+    }
   }
 
   public boolean eq(final DefinitionMap m2) {
-    if (myMap.size() != m2.myMap.size()) return false;
-
-    return myMap.forEachEntry(new TIntObjectProcedure<TIntHashSet>() {
-      public boolean execute(int num, TIntHashSet defs1) {
-        final TIntHashSet defs2 = m2.myMap.get(num);
-        return defs2 != null && defs2.equals(defs1);
-      }
-    });
+    int length = Math.max(myDefs.length, m2.myDefs.length);
+    for (int i = 0; i < length; i++) {
+      BitSet defs1 = get(i);
+      BitSet defs2 = m2.get(i);
+      if (defs1 == null ? defs2 != null : !defs1.equals(defs2)) return false;
+    }
+    return true;
   }
 
   public void copyFrom(DefinitionMap map, int fromIndex, int toIndex) {
-    TIntHashSet defs = map.myMap.get(fromIndex);
-    if (defs == null) defs = new TIntHashSet();
-    myMap.put(toIndex, defs);
+    BitSet defs = map.get(fromIndex);
+    BitSet target = getOrCreate(toIndex);
+    target.clear();
+    if (defs != null) target.or(defs);
   }
 
   @Nullable
   public int[] getDefinitions(int varId) {
-    TIntHashSet set = myMap.get(varId);
-    return set == null ? null : set.toArray();
-  }
+    BitSet set = get(varId);
+    if (set == null) return null;
 
-  public void forEachValue(TObjectProcedure<TIntHashSet> procedure) {
-    myMap.forEachValue(procedure);
+    int[] result = new int[set.cardinality()];
+    int j = 0;
+    for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+      result[j++] = i;
+    }
+    return result;
   }
 }
@@ -23,6 +23,7 @@ import com.intellij.testFramework.IdeaTestUtil
 import com.intellij.util.ThrowableRunnable
 import org.jetbrains.plugins.groovy.LightGroovyTestCase
 import org.jetbrains.plugins.groovy.codeInspection.noReturnMethod.MissingReturnInspection
+import org.jetbrains.plugins.groovy.codeInspection.unusedDef.UnusedDefInspection
 import org.jetbrains.plugins.groovy.dsl.GroovyDslFileIndex
 import org.jetbrains.plugins.groovy.lang.psi.GroovyFile
 import org.jetbrains.plugins.groovy.lang.psi.api.statements.typedef.members.GrMethod
@@ -222,6 +223,26 @@ class SomeClass {
     measureHighlighting(text, 8000)
   }
 
+  public void "test reaching definitions in a big method with many variables and branches"() {
+    def text = """
+def foo(List<String> list, int n) {
+${
+(0..<50).collect { "  def v$it = n > $it ? 'a' : $it\n" }.join('')
+}
+  for (s in list) {
+${
+(0..<50).collect { "    if (s.length() > $it) { v$it = s } else { v${(it + 1) % 50} = v$it }\n    println v$it\n" }.join('')
+}
+  }
+${
+(0..<50).collect { "  println v$it\n" }.join('')
+}
+}
+"""
+    myFixture.enableInspections(new UnusedDefInspection())
+    measureHighlighting(text, 5000)
+  }
+
   public void "test infer only the variable types that are needed"() {
     addGdsl '''contribute(currentType(String.name)) {
   println 'sleeping'
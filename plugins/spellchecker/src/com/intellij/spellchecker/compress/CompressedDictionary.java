@@ -17,7 +17,10 @@ package com.intellij.spellchecker.compress;
 
 import com.intellij.spellchecker.dictionary.Dictionary;
 import com.intellij.spellchecker.dictionary.Loader;
+import com.intellij.spellchecker.engine.BKTree;
+import com.intellij.spellchecker.engine.LevenshteinDistance;
 import com.intellij.spellchecker.engine.Transformation;
+import com.intellij.util.ConcurrencyUtil;
 import com.intellij.util.Consumer;
 import gnu.trove.TIntObjectHashMap;
 import gnu.trove.TIntObjectProcedure;
@@ -26,6 +29,8 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public final class CompressedDictionary implements Dictionary {
 
@@ -37,6 +42,9 @@ public final class CompressedDictionary implements Dictionary {
   private final Encoder encoder;
   private final String name;
 
+  // suggestion indices by the first letter, are built on the first request as most letters are never asked for
+  private final ConcurrentMap<Character, BKTree> wordsIndices = new ConcurrentHashMap<Character, BKTree>();
+
   private TIntObjectHashMap<SortedSet<byte[]>> rawData = new TIntObjectHashMap<SortedSet<byte[]>>();
   private static final Comparator<byte[]> COMPARATOR = new Comparator<byte[]>() {
     public int compare(byte[] o1, byte[] o2) {
@@ -115,6 +123,18 @@ public final class CompressedDictionary implements Dictionary {
     return getWords(first, 0, Integer.MAX_VALUE);
   }
 
+  /**
+   * @return index by {@link LevenshteinDistance} of all words starting with the given letter
+   */
+  @NotNull
+  public BKTree getWordsIndex(char first) {
+    BKTree index = wordsIndices.get(first);
+    if (index == null) {
+      index = ConcurrencyUtil.cacheOrGet(wordsIndices, first, new BKTree(new LevenshteinDistance(), getWords(first)));
+    }
+    return index;
+  }
+
   public String getName() {
     return name;
   }
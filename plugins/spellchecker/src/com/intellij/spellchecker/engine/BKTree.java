@@ -0,0 +1,163 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.spellchecker.engine;
+
+import com.intellij.util.ArrayUtil;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Burkhard-Keller tree: index of words which allows to find the words closest to the given one
+ * without computing the distance to every word. Every child differs from its parent by the distance
+ * stored in the child node, so by triangle inequality only the children with
+ * <code>|childDistance - distance(word, parent)| <= radius</code> may contain words within the radius.
+ * <p/>
+ * The metrics must satisfy triangle inequality, e.g. {@link LevenshteinDistance}.
+ * Nodes are kept in parallel arrays, children of a node are linked through {@link #myNextSibling}.
+ */
+public final class BKTree {
+  private static final int NULL = -1;
+
+  private final Metrics myMetrics;
+  private String[] myWords = ArrayUtil.EMPTY_STRING_ARRAY;
+  private int[] myDistance = ArrayUtil.EMPTY_INT_ARRAY;   // distance to the parent
+  private int[] myFirstChild = ArrayUtil.EMPTY_INT_ARRAY;
+  private int[] myNextSibling = ArrayUtil.EMPTY_INT_ARRAY;
+  private int mySize;
+
+  public BKTree(@NotNull Metrics metrics) {
+    myMetrics = metrics;
+  }
+
+  public BKTree(@NotNull Metrics metrics, @NotNull Collection<String> words) {
+    this(metrics);
+    ensureCapacity(words.size());
+    for (String word : words) {
+      add(word);
+    }
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  public void add(@NotNull String word) {
+    if (mySize == 0) {
+      addNode(word, 0);
+      return;
+    }
+    int node = 0;
+    while (true) {
+      final int distance = myMetrics.calculateMetrics(word, myWords[node]);
+      if (distance == 0) {
+        return;
+      }
+      int child = myFirstChild[node];
+      while (child != NULL && myDistance[child] != distance) {
+        child = myNextSibling[child];
+      }
+      if (child == NULL) {
+        final int newNode = addNode(word, distance);
+        myNextSibling[newNode] = myFirstChild[node];
+        myFirstChild[node] = newNode;
+        return;
+      }
+      node = child;
+    }
+  }
+
+  private int addNode(@NotNull String word, int distance) {
+    ensureCapacity(mySize + 1);
+    final int node = mySize++;
+    myWords[node] = word;
+    myDistance[node] = distance;
+    myFirstChild[node] = NULL;
+    myNextSibling[node] = NULL;
+    return node;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= myWords.length) return;
+    final int newCapacity = Math.max(capacity, myWords.length * 3 / 2 + 16);
+    final String[] words = new String[newCapacity];
+    System.arraycopy(myWords, 0, words, 0, mySize);
+    myWords = words;
+    myDistance = ArrayUtil.realloc(myDistance, newCapacity);
+    myFirstChild = ArrayUtil.realloc(myFirstChild, newCapacity);
+    myNextSibling = ArrayUtil.realloc(myNextSibling, newCapacity);
+  }
+
+  /**
+   * @return all words within the given distance from the given word, in no particular order
+   */
+  @NotNull
+  public List<Suggestion> findWithin(@NotNull String word, int radius) {
+    final List<Suggestion> result = new ArrayList<Suggestion>();
+    if (mySize == 0) {
+      return result;
+    }
+    final TIntArrayList stack = new TIntArrayList();
+    stack.add(0);
+    while (!stack.isEmpty()) {
+      final int node = stack.remove(stack.size() - 1);
+      final int distance = myMetrics.calculateMetrics(word, myWords[node]);
+      if (distance <= radius) {
+        result.add(new Suggestion(myWords[node], distance));
+      }
+      for (int child = myFirstChild[node]; child != NULL; child = myNextSibling[child]) {
+        if (Math.abs(myDistance[child] - distance) <= radius) {
+          stack.add(child);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return at most <code>limit</code> words closest to the given word, in no particular order
+   */
+  @NotNull
+  public List<Suggestion> findClosest(@NotNull String word, int limit) {
+    if (mySize == 0 || limit <= 0) {
+      return new ArrayList<Suggestion>();
+    }
+    // the farthest of the found words is on the top
+    final PriorityQueue<Suggestion> closest = new PriorityQueue<Suggestion>(limit, Collections.reverseOrder());
+    final TIntArrayList stack = new TIntArrayList();
+    stack.add(0);
+    while (!stack.isEmpty()) {
+      final int node = stack.remove(stack.size() - 1);
+      final int distance = myMetrics.calculateMetrics(word, myWords[node]);
+      if (closest.size() < limit) {
+        closest.add(new Suggestion(myWords[node], distance));
+      }
+      else if (distance < closest.peek().getMetrics()) {
+        closest.poll();
+        closest.add(new Suggestion(myWords[node], distance));
+      }
+
+      final int radius = closest.size() < limit ? Integer.MAX_VALUE : closest.peek().getMetrics();
+      for (int child = myFirstChild[node]; child != NULL; child = myNextSibling[child]) {
+        if (Math.abs(myDistance[child] - distance) < radius) {
+          stack.add(child);
+        }
+      }
+    }
+    return new ArrayList<Suggestion>(closest);
+  }
+}
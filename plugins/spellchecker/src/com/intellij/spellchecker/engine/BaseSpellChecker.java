@@ -275,7 +275,18 @@ public class BaseSpellChecker implements SpellCheckerEngine {
       return Collections.emptyList();
     }
     final List<Suggestion> suggestions = new ArrayList<Suggestion>();
-    List<String> rawSuggestions = restore(transformed.charAt(0), 0, Integer.MAX_VALUE, bundledDictionaries);
+    final List<Dictionary> notIndexed = new ArrayList<Dictionary>();
+    for (Dictionary dictionary : bundledDictionaries) {
+      if (dictionary instanceof CompressedDictionary) {
+        // the closest words of every dictionary include the closest words among all of them
+        final BKTree index = ((CompressedDictionary)dictionary).getWordsIndex(transformed.charAt(0));
+        suggestions.addAll(index.findClosest(transformed, threshold));
+      }
+      else {
+        notIndexed.add(dictionary);
+      }
+    }
+    List<String> rawSuggestions = restore(transformed.charAt(0), 0, Integer.MAX_VALUE, notIndexed);
     rawSuggestions.addAll(restore(word.charAt(0), 0, Integer.MAX_VALUE, dictionaries));
     for (String rawSuggestion : rawSuggestions) {
       final int distance = metrics.calculateMetrics(transformed, rawSuggestion);
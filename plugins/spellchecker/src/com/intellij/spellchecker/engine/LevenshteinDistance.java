@@ -22,22 +22,25 @@ public class LevenshteinDistance implements Metrics {
   }
 
   public int calculateMetrics(CharSequence str1, CharSequence str2) {
-    int[][] distance = new int[str1.length() + 1][str2.length() + 1];
+    // only two rows of the distance matrix are kept
+    int[] previous = new int[str2.length() + 1];
+    int[] current = new int[str2.length() + 1];
 
-    for (int i = 0; i <= str1.length(); i++) {
-      distance[i][0] = i;
-    }
     for (int j = 0; j <= str2.length(); j++) {
-      distance[0][j] = j;
+      previous[j] = j;
     }
 
     for (int i = 1; i <= str1.length(); i++) {
+      current[0] = i;
+      final char c1 = str1.charAt(i - 1);
       for (int j = 1; j <= str2.length(); j++) {
-        distance[i][j] = minimum(distance[i - 1][j] + 1, distance[i][j - 1] + 1,
-                                 distance[i - 1][j - 1] + ((str1.charAt(i - 1) == str2.charAt(j - 1)) ? 0 : 1));
+        current[j] = minimum(current[j - 1] + 1, previous[j] + 1, previous[j - 1] + ((c1 == str2.charAt(j - 1)) ? 0 : 1));
       }
+      final int[] row = previous;
+      previous = current;
+      current = row;
     }
 
-    return distance[str1.length()][str2.length()];
+    return previous[str2.length()];
   }
 }
@@ -20,6 +20,10 @@ import com.intellij.spellchecker.DefaultBundledDictionariesProvider;
 import com.intellij.spellchecker.StreamLoader;
 import com.intellij.spellchecker.dictionary.Dictionary;
 import com.intellij.spellchecker.dictionary.Loader;
+import com.intellij.spellchecker.engine.BKTree;
+import com.intellij.spellchecker.engine.LevenshteinDistance;
+import com.intellij.spellchecker.engine.Metrics;
+import com.intellij.spellchecker.engine.Suggestion;
 import com.intellij.spellchecker.engine.Transformation;
 import com.intellij.testFramework.PlatformTestUtil;
 import com.intellij.util.Consumer;
@@ -29,9 +33,7 @@ import junit.framework.TestCase;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 @SuppressWarnings({"JUnitTestCaseWithNonTrivialConstructors"})
 public class DictionaryTest extends TestCase {
@@ -82,6 +84,46 @@ public class DictionaryTest extends TestCase {
     }).cpuBound().assertTiming();
   }
 
+  public void testSuggestionsIndex() {
+    final Loader loader = new StreamLoader(DefaultBundledDictionariesProvider.class.getResourceAsStream(ENGLISH_DIC), ENGLISH_DIC);
+    final CompressedDictionary english = CompressedDictionary.create(loader, new Transformation());
+    final String[] typos = {"upgade", "recieve", "adress", "occured", "seperate", "definately", "enviroment", "begining", "wierd",
+      "accomodate", "tomorow", "untill", "publically", "neccessary", "reccomend", "existance", "sucessful", "wich", "thier", "goverment"};
+
+    final Metrics metrics = new LevenshteinDistance();
+    for (String typo : typos) {
+      final BKTree index = english.getWordsIndex(typo.charAt(0));
+      final List<String> words = english.getWords(typo.charAt(0));
+      int best = Integer.MAX_VALUE;
+      int withinBest = 0;
+      for (String word : words) {
+        final int distance = metrics.calculateMetrics(typo, word);
+        if (distance < best) {
+          best = distance;
+          withinBest = 0;
+        }
+        if (distance == best) {
+          withinBest++;
+        }
+      }
+      final List<Suggestion> closest = index.findClosest(typo, 5);
+      assertEquals(typo, Math.min(5, words.size()), closest.size());
+      assertEquals(typo, best, ((Suggestion)Collections.min(closest)).getMetrics());
+      assertEquals(typo, withinBest, index.findWithin(typo, best).size());
+    }
+
+    PlatformTestUtil.startPerformanceTest("suggestions from index", 1000, new ThrowableRunnable() {
+      @Override
+      public void run() throws Exception {
+        for (int i = 0; i < 10; i++) {
+          for (String typo : typos) {
+            english.getWordsIndex(typo.charAt(0)).findClosest(typo, 5);
+          }
+        }
+      }
+    }).cpuBound().assertTiming();
+  }
+
   private static Loader createLoader(final Set<String> words) {
     return new Loader() {
       @Override
@@ -47,6 +47,7 @@ import net.sf.cglib.proxy.AdvancedProxy;
 import net.sf.cglib.proxy.InvocationHandler;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 
 import javax.swing.*;
 import java.lang.annotation.Annotation;
@@ -67,6 +68,30 @@ public abstract class DomInvocationHandler<T extends AbstractDomChildDescription
   public static final Method ACCEPT_METHOD = ReflectionUtil.getMethod(DomElement.class, "accept", DomElementVisitor.class);
   public static final Method ACCEPT_CHILDREN_METHOD = ReflectionUtil.getMethod(DomElement.class, "acceptChildren", DomElementVisitor.class);
   private static final JavaMethod ourGetValue = JavaMethod.getMethod(GenericValue.class, new JavaMethodSignature("getValue"));
+  /**
+   * Whether the generated proxy classes call {@link DomElement} methods on the handler directly
+   * instead of going through {@link #invoke} and {@link InvocationCache}. Only affects handlers created afterwards
+   */
+  private static volatile boolean ourDirectDispatch = SystemProperties.getBooleanProperty("idea.dom.direct.dispatch", true);
+  /**
+   * Compiles the remaining proxy methods (child getters, value accessors) to {@link DirectInvocation}s
+   */
+  private static final AdvancedProxy.DirectCallFactory ourDirectCalls = new AdvancedProxy.DirectCallFactory() {
+    @Override
+    public InvocationHandler createDirectCall(Method method) {
+      return new DirectInvocation();
+    }
+  };
+
+  @TestOnly
+  public static boolean isDirectDispatch() {
+    return ourDirectDispatch;
+  }
+
+  @TestOnly
+  public static void setDirectDispatch(boolean directDispatch) {
+    ourDirectDispatch = directDispatch;
+  }
 
   private final Type myType;
   private final DomManagerImpl myManager;
@@ -104,7 +129,10 @@ public abstract class DomInvocationHandler<T extends AbstractDomChildDescription
     if (implementation == null && !isInterface) {
       implementation = (Class<? extends DomElement>)rawType;
     }
-    myProxy = AdvancedProxy.createProxy(this, implementation, isInterface ? new Class[]{rawType} : ArrayUtil.EMPTY_CLASS_ARRAY);
+    final Class[] interfaces = isInterface ? new Class[]{rawType} : ArrayUtil.EMPTY_CLASS_ARRAY;
+    myProxy = ourDirectDispatch
+              ? AdvancedProxy.createDispatchingProxy(this, DomInvocationHandler.class, ourDirectCalls, implementation, interfaces)
+              : AdvancedProxy.createProxy(this, implementation, interfaces);
     refreshGenericInfo(dynamic);
     if (stub != null) {
       stub.setHandler(this);
@@ -648,6 +676,42 @@ public abstract class DomInvocationHandler<T extends AbstractDomChildDescription
     }
   }
 
+  /**
+   * Calls the {@link Invocation} of a single proxy method without looking it up in the handler and {@link InvocationCache} maps.
+   * The invocation is taken from the cache after the first call through the handler; the methods for which the handler creates
+   * own invocations (tag value accessors) keep going through the handler.
+   */
+  private static class DirectInvocation implements InvocationHandler {
+    private volatile Pair<InvocationCache, Invocation> myResolved;
+    private volatile boolean myHandlerOnly;
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      final DomInvocationHandler handler = (DomInvocationHandler)AdvancedProxy.getInvocationHandler(proxy);
+      final Pair<InvocationCache, Invocation> resolved = myResolved;
+      if (resolved != null && resolved.first == handler.myInvocationCache) {
+        try {
+          return resolved.second.invoke(handler, args);
+        }
+        catch (InvocationTargetException ex) {
+          throw ex.getTargetException();
+        }
+      }
+
+      final Object result = handler.invoke(proxy, method, args);
+      if (!myHandlerOnly) {
+        final Invocation invocation = handler.myInvocationCache.getInvocation(method);
+        if (invocation != null) {
+          myResolved = Pair.create(handler.myInvocationCache, invocation);
+        }
+        else {
+          myHandlerOnly = true;
+        }
+      }
+      return result;
+    }
+  }
+
   @NotNull
   private Invocation findInvocation(Method method) {
     Invocation invocation = myAccessorInvocations.get(method);
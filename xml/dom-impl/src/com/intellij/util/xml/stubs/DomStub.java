@@ -26,11 +26,14 @@ import com.intellij.util.xml.impl.DomChildDescriptionImpl;
 import com.intellij.util.xml.impl.DomInvocationHandler;
 import com.intellij.util.xml.impl.DomManagerImpl;
 import com.intellij.xml.util.XmlUtil;
+import gnu.trove.THashMap;
+import gnu.trove.TObjectIntHashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Dmitry Avdeev
@@ -41,6 +44,14 @@ public abstract class DomStub extends ObjectStubBase<DomStub> {
   protected final StringRef myLocalName;
   private final StringRef myNamespace;
   private DomInvocationHandler myHandler;
+  /**
+   * children grouped by {@link #nameKey local name}, built on first access, since big files may have thousands of children per tag
+   */
+  private volatile Map<String, List<DomStub>> myChildrenByName;
+  /**
+   * index among the parent's children with the same local name and namespace, assigned when the parent's children are grouped
+   */
+  private int myIndexInParent = -1;
 
   public DomStub(DomStub parent, @NotNull StringRef localName, StringRef namespace) {
     super(parent);
@@ -54,8 +65,9 @@ public abstract class DomStub extends ObjectStubBase<DomStub> {
   public abstract List<DomStub> getChildrenStubs();
 
   public int getChildIndex(DomStub child) {
-    List<DomStub> stubs = getChildrenByName(XmlUtil.getLocalName(child.getName()), child.getNamespaceKey());
-    return stubs.indexOf(child);
+    if (child.getParentStub() != this) return -1;
+    getChildrenByName();
+    return child.myIndexInParent;
   }
 
   public String getName() {
@@ -67,9 +79,77 @@ public abstract class DomStub extends ObjectStubBase<DomStub> {
     return myNamespace == null ? null : myNamespace.getString();
   }
 
-  public List<DomStub> getChildrenByName(final CharSequence name, @Nullable final String nsKey) {
+  protected void childrenChanged() {
+    myChildrenByName = null;
+  }
+
+  @NotNull
+  private Map<String, List<DomStub>> getChildrenByName() {
+    Map<String, List<DomStub>> map = myChildrenByName;
+    if (map != null) return map;
+
     final List<DomStub> stubs = getChildrenStubs();
     if (stubs.isEmpty()) {
+      map = Collections.emptyMap();
+    }
+    else {
+      map = new THashMap<String, List<DomStub>>();
+      //noinspection ForLoopReplaceableByForEach
+      for (int i = 0, size = stubs.size(); i < size; i++) {
+        final DomStub stub = stubs.get(i);
+        final String key = nameKey(stub.getName());
+        List<DomStub> list = map.get(key);
+        if (list == null) {
+          map.put(key, list = new SmartList<DomStub>());
+        }
+        list.add(stub);
+      }
+      for (List<DomStub> list : map.values()) {
+        assignIndices(list);
+      }
+    }
+    myChildrenByName = map;
+    return map;
+  }
+
+  private static void assignIndices(List<DomStub> sameNameStubs) {
+    TObjectIntHashMap<String> counters = null;
+    final String firstKey = nsKey(sameNameStubs.get(0));
+    for (int i = 0, size = sameNameStubs.size(); i < size; i++) {
+      final DomStub stub = sameNameStubs.get(i);
+      final String key = nsKey(stub);
+      if (counters == null) {
+        if (key.equals(firstKey)) {
+          stub.myIndexInParent = i;
+          continue;
+        }
+        counters = new TObjectIntHashMap<String>();
+        counters.put(firstKey, i);
+      }
+      final int index = counters.containsKey(key) ? counters.get(key) : 0;
+      stub.myIndexInParent = index;
+      counters.put(key, index + 1);
+    }
+  }
+
+  /**
+   * Key of the children map: element stubs are named by the tag name which may have a prefix, attribute stubs by the local name,
+   * and lookups may pass either, so both the map and every lookup use the local part of the name.
+   */
+  @NotNull
+  private static String nameKey(@NotNull CharSequence name) {
+    return XmlUtil.getLocalName(name).toString();
+  }
+
+  @NotNull
+  private static String nsKey(DomStub stub) {
+    final String key = stub.getNamespaceKey();
+    return key == null ? "" : key;
+  }
+
+  public List<DomStub> getChildrenByName(final CharSequence name, @Nullable final String nsKey) {
+    final List<DomStub> stubs = getChildrenByName().get(nameKey(name));
+    if (stubs == null) {
       return Collections.emptyList();
     }
 
@@ -78,8 +158,7 @@ public abstract class DomStub extends ObjectStubBase<DomStub> {
     //noinspection ForLoopReplaceableByForEach
     for (int i = 0, size = stubs.size(); i < size; i++) {
       final DomStub stub = stubs.get(i);
-      if (XmlUtil.getLocalName(stub.getName()).equals(name) &&
-          Comparing.equal(s, stub.getNamespaceKey())) {
+      if (Comparing.equal(s, stub.getNamespaceKey())) {
         result.add(stub);
       }
     }
@@ -88,8 +167,9 @@ public abstract class DomStub extends ObjectStubBase<DomStub> {
 
   @Nullable
   public AttributeStub getAttributeStub(final XmlName name) {
-    final List<DomStub> stubs = getChildrenStubs();
-    if (stubs.isEmpty()) {
+    final String key = nameKey(name.getLocalName());
+    final List<DomStub> stubs = getChildrenByName().get(key);
+    if (stubs == null) {
       return null;
     }
 
@@ -97,7 +177,7 @@ public abstract class DomStub extends ObjectStubBase<DomStub> {
     for (int i = 0, size = stubs.size(); i < size; i++) {
       final DomStub stub = stubs.get(i);
       if (stub instanceof AttributeStub &&
-          stub.getName().equals(name.getLocalName())) {
+          nameKey(stub.getName()).equals(key)) {
         return (AttributeStub)stub;
       }
     }
@@ -106,7 +186,11 @@ public abstract class DomStub extends ObjectStubBase<DomStub> {
 
   @Nullable
   public ElementStub getElementStub(String name, int index) {
-    List<DomStub> stubs = getChildrenStubs();
+    final List<DomStub> stubs = getChildrenByName().get(nameKey(name));
+    if (stubs == null) {
+      return null;
+    }
+
     int i = 0;
     for (DomStub stub : stubs) {
       if (stub instanceof ElementStub && name.equals(stub.getName()) && i++ == index) {
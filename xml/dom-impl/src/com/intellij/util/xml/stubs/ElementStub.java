@@ -40,6 +40,7 @@ public class ElementStub extends DomStub {
 
   void addChild(DomStub child) {
     myChildren.add(child);
+    childrenChanged();
   }
 
   @Override
@@ -13,6 +13,7 @@ import com.intellij.psi.impl.meta.MetaRegistry;
 import com.intellij.psi.xml.XmlFile;
 import com.intellij.testFramework.PlatformTestUtil;
 import com.intellij.util.ThrowableRunnable;
+import com.intellij.util.xml.impl.DomInvocationHandler;
 import com.intellij.xml.impl.dtd.XmlNSDescriptorImpl;
 import org.jetbrains.annotations.NotNull;
 
@@ -66,6 +67,49 @@ public class DomPerformanceTest extends DomHardCoreTestCase{
     }).cpuBound().assertTiming();
   }
 
+  public void testGetterPerformance() throws Throwable {
+    final String text = "<root><child attr=\"1\"/><child-element/><child-element/></root>";
+    final MyElement direct = createElement(text, MyElement.class);
+    callGetters(direct, 1);
+
+    final boolean directDispatch = DomInvocationHandler.isDirectDispatch();
+    DomInvocationHandler.setDirectDispatch(false);
+    final MyElement dispatched;
+    try {
+      // the child handlers are created by the first calls, let them get the proxies going through the handler too
+      dispatched = createElement(text, MyElement.class);
+      callGetters(dispatched, 1);
+    }
+    finally {
+      DomInvocationHandler.setDirectDispatch(directDispatch);
+    }
+
+    PlatformTestUtil.startPerformanceTest(getTestName(false) + " (direct dispatch)", 1000, new ThrowableRunnable() {
+      @Override
+      public void run() throws Exception {
+        callGetters(direct, 100000);
+      }
+    }).cpuBound().assertTiming();
+
+    PlatformTestUtil.startPerformanceTest(getTestName(false) + " (dispatch through handler)", 1000, new ThrowableRunnable() {
+      @Override
+      public void run() throws Exception {
+        callGetters(dispatched, 100000);
+      }
+    }).cpuBound().assertTiming();
+  }
+
+  private static void callGetters(MyElement element, int count) {
+    for (int i = 0; i < count; i++) {
+      final MyChildElement child = element.getChild();
+      assertNotNull(child.getXmlTag());
+      assertSame(element, child.getParent());
+      assertTrue(child.isValid());
+      assertEquals("1", child.getAttr().getValue());
+      assertEquals(2, element.getChildElements().size());
+    }
+  }
+
   public void testShouldntParseNonDomFiles() throws Throwable {
     for (int i = 0; i < 420; i++) {
       getDomManager().registerFileDescription(new DomFileDescription(MyChildElement.class, "foo") {
@@ -8,7 +8,10 @@ import net.sf.cglib.proxy.InvocationHandler;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author peter
@@ -168,4 +171,81 @@ public class ProxyTest extends TestCase {
   }
 
 
+  public void testDispatchingProxy() throws Throwable {
+    final List<String> invocations = new ArrayList<String>();
+    final DispatchingHandler handler = new DispatchingHandler(invocations);
+    final Interface4 proxy = AdvancedProxy.createDispatchingProxy(handler, DispatchingHandler.class, null, null, Interface4.class);
+    assertEquals("direct", proxy.getFoo());
+    assertEquals("direct", proxy.foo());
+    assertEquals("invoked", proxy.bar());
+    assertSame(handler, AdvancedProxy.getInvocationHandler(proxy));
+    assertEquals(Arrays.asList("getFoo", "foo", "invoke bar"), invocations);
+  }
+
+  public void testDirectCalls() throws Throwable {
+    final List<String> invocations = new ArrayList<String>();
+    final Map<String, Integer> directCalls = new HashMap<String, Integer>();
+    final AdvancedProxy.DirectCallFactory factory = new AdvancedProxy.DirectCallFactory() {
+      @Override
+      public InvocationHandler createDirectCall(final Method method) {
+        if (!method.getName().equals("bar")) return null;
+        return new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            final DispatchingHandler handler = (DispatchingHandler)AdvancedProxy.getInvocationHandler(proxy);
+            Integer count = directCalls.get(method.getName());
+            directCalls.put(method.getName(), count == null ? 1 : count + 1);
+            return handler.invoke(proxy, method, args);
+          }
+        };
+      }
+    };
+
+    final Interface5 proxy1 = AdvancedProxy.createDispatchingProxy(new DispatchingHandler(invocations), DispatchingHandler.class, factory,
+                                                                   null, Interface5.class);
+    final Interface5 proxy2 = AdvancedProxy.createDispatchingProxy(new DispatchingHandler(invocations), DispatchingHandler.class, factory,
+                                                                   null, Interface5.class);
+    assertSame(proxy1.getClass(), proxy2.getClass());
+    assertEquals("direct", proxy1.getFoo());
+    assertEquals("invoked", proxy1.bar());
+    assertEquals("invoked", proxy2.bar());
+    assertEquals("invoked", proxy2.baz());
+    assertEquals(Arrays.asList("getFoo", "invoke bar", "invoke bar", "invoke baz"), invocations);
+    assertEquals(Collections.singletonMap("bar", 2), directCalls);
+  }
+
+  public interface Interface5 extends Interface4 {
+    String baz();
+  }
+
+  public interface Interface4 extends Interface1 {
+    String bar();
+  }
+
+  public static class DispatchingHandler implements InvocationHandler, Interface1 {
+    private final List<String> myInvocations;
+
+    public DispatchingHandler(List<String> invocations) {
+      myInvocations = invocations;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      myInvocations.add("invoke " + method.getName());
+      return "invoked";
+    }
+
+    @Override
+    public Object getFoo() {
+      myInvocations.add("getFoo");
+      return "direct";
+    }
+
+    @Override
+    public Object foo() {
+      myInvocations.add("foo");
+      return "direct";
+    }
+  }
+
 }
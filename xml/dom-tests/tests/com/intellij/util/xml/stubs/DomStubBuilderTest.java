@@ -6,6 +6,7 @@ import com.intellij.psi.PsiFile;
 import com.intellij.psi.stubs.ObjectStubTree;
 import com.intellij.psi.stubs.StubTreeLoader;
 import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.io.StringRef;
 import com.intellij.util.xml.XmlName;
 import com.intellij.util.xml.reflect.DomExtender;
 import com.intellij.util.xml.reflect.DomExtenderEP;
@@ -14,6 +15,8 @@ import com.intellij.util.xml.stubs.model.Bar;
 import com.intellij.util.xml.stubs.model.Custom;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Arrays;
+
 /**
  * @author Dmitry Avdeev
  *         Date: 8/3/12
@@ -63,6 +66,45 @@ public class DomStubBuilderTest extends DomStubTest {
     assertNull(stubTree); // no stubs for invalid XML
   }
 
+  public void testRepeatedChildren() throws Exception {
+    ElementStub root = element(null, "foo", "");
+    ElementStub bar0 = element(root, "bar", "");
+    element(root, "baz", "");
+    ElementStub bar1 = element(root, "bar", "");
+    ElementStub otherBar = element(root, "bar", "other");
+    ElementStub bar2 = element(root, "bar", "");
+
+    assertEquals(Arrays.<DomStub>asList(bar0, bar1, bar2), root.getChildrenByName("bar", null));
+    assertEquals(Arrays.<DomStub>asList(otherBar), root.getChildrenByName("bar", "other"));
+    assertEquals(0, root.getChildIndex(bar0));
+    assertEquals(1, root.getChildIndex(bar1));
+    assertEquals(2, root.getChildIndex(bar2));
+    assertEquals(0, root.getChildIndex(otherBar));
+    assertSame(bar1, root.getElementStub("bar", 1));
+
+    ElementStub bar3 = element(root, "bar", "");
+    assertEquals(3, root.getChildIndex(bar3));
+    assertEquals(4, root.getChildrenByName("bar", null).size());
+  }
+
+  public void testPrefixedNames() throws Exception {
+    ElementStub root = element(null, "foo", "");
+    ElementStub bar0 = element(root, "f:bar", "ns");
+    ElementStub bar1 = element(root, "f:bar", "ns");
+    AttributeStub attribute = new AttributeStub(root, StringRef.fromString("f:attr"), StringRef.fromString("ns"), "value");
+
+    assertEquals(Arrays.<DomStub>asList(bar0, bar1), root.getChildrenByName("bar", "ns"));
+    assertEquals(Arrays.<DomStub>asList(bar0, bar1), root.getChildrenByName("f:bar", "ns"));
+    assertEquals(1, root.getChildIndex(bar1));
+    assertSame(bar1, root.getElementStub("f:bar", 1));
+    assertSame(attribute, root.getAttributeStub(new XmlName("attr", "ns")));
+    assertSame(attribute, root.getAttributeStub(new XmlName("f:attr", "ns")));
+  }
+
+  private static ElementStub element(ElementStub parent, String name, String nsKey) {
+    return new ElementStub(parent, StringRef.fromString(name), StringRef.fromString(nsKey), false);
+  }
+
   public static class TestExtender extends DomExtender<Bar> {
 
     @Override
@@ -41,6 +41,11 @@ public class DTDParserDefinition extends XMLParserDefinition {
     return LanguageUtil.canStickTokensTogetherByLexer(left, right, new DtdLexer(false));
   }
 
+  @Override
+  public boolean canChangeLeafText(@NotNull ASTNode leaf, @NotNull CharSequence newText) {
+    return false;
+  }
+
   public PsiFile createFile(FileViewProvider viewProvider) {
     return new XmlFileImpl(viewProvider, XmlElementType.DTD_FILE);
   }
@@ -16,6 +16,7 @@
 package com.intellij.lang.html;
 
 import com.intellij.lang.ASTNode;
+import com.intellij.lang.InPlaceRelexingSupport;
 import com.intellij.lang.ParserDefinition;
 import com.intellij.lang.PsiParser;
 import com.intellij.lang.xml.XMLParserDefinition;
@@ -36,7 +37,7 @@ import org.jetbrains.annotations.NotNull;
 /**
  * @author max
  */
-public class HTMLParserDefinition implements ParserDefinition {
+public class HTMLParserDefinition implements ParserDefinition, InPlaceRelexingSupport {
   @NotNull
   public Lexer createLexer(Project project) {
     return new HtmlLexer();
@@ -75,6 +76,10 @@ public class HTMLParserDefinition implements ParserDefinition {
     return new HtmlFileImpl(viewProvider);
   }
 
+  public boolean canChangeLeafText(@NotNull ASTNode leaf, @NotNull CharSequence newText) {
+    return XMLParserDefinition.canChangeXmlLeafText(leaf);
+  }
+
   public SpaceRequirements spaceExistanceTypeBetweenTokens(ASTNode left, ASTNode right) {
     final Lexer lexer = createLexer(left.getPsi().getProject());
     return XMLParserDefinition.canStickTokensTogetherByLexerInXml(left, right, lexer, 0);
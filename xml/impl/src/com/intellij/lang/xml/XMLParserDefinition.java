@@ -16,6 +16,7 @@
 package com.intellij.lang.xml;
 
 import com.intellij.lang.ASTNode;
+import com.intellij.lang.InPlaceRelexingSupport;
 import com.intellij.lang.ParserDefinition;
 import com.intellij.lang.PsiParser;
 import com.intellij.lexer.Lexer;
@@ -26,6 +27,7 @@ import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.impl.source.parsing.xml.XmlParser;
 import com.intellij.psi.impl.source.xml.XmlFileImpl;
+import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.tree.IFileElementType;
 import com.intellij.psi.tree.TokenSet;
 import com.intellij.psi.util.PsiUtilCore;
@@ -36,7 +38,7 @@ import org.jetbrains.annotations.NotNull;
 /**
  * @author max
  */
-public class XMLParserDefinition implements ParserDefinition {
+public class XMLParserDefinition implements ParserDefinition, InPlaceRelexingSupport {
   @NotNull
   public Lexer createLexer(Project project) {
     return new XmlLexer();
@@ -80,6 +82,21 @@ public class XMLParserDefinition implements ParserDefinition {
     return canStickTokensTogetherByLexerInXml(left, right, lexer, 0);
   }
 
+  public boolean canChangeLeafText(@NotNull ASTNode leaf, @NotNull CharSequence newText) {
+    return canChangeXmlLeafText(leaf);
+  }
+
+  /**
+   * The markup parsers only look at the text of names, text, whitespaces and comments are taken as is and nothing binds to them.
+   */
+  public static boolean canChangeXmlLeafText(@NotNull ASTNode leaf) {
+    final IElementType type = leaf.getElementType();
+    return type == XmlTokenType.XML_DATA_CHARACTERS ||
+           type == XmlTokenType.XML_COMMENT_CHARACTERS ||
+           type == XmlTokenType.XML_WHITE_SPACE ||
+           type == XmlTokenType.XML_REAL_WHITE_SPACE;
+  }
+
   public static SpaceRequirements canStickTokensTogetherByLexerInXml(final ASTNode left,
                                                                                       final ASTNode right,
                                                                                       final Lexer lexer,
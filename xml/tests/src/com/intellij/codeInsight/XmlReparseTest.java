@@ -17,6 +17,7 @@ import com.intellij.psi.PsiFile;
 import com.intellij.psi.impl.DebugUtil;
 import com.intellij.psi.impl.source.xml.XmlFileImpl;
 import com.intellij.psi.xml.XmlFile;
+import com.intellij.psi.xml.XmlTag;
 import com.intellij.testFramework.ParsingTestCase;
 import com.intellij.testFramework.PlatformTestCase;
 import com.intellij.testFramework.PlatformTestUtil;
@@ -133,6 +134,77 @@ public class XmlReparseTest extends AbstractReparseTestCase {
                "</table>");
     insert("=");
   }
+
+  public void testDataRelexedInPlace() throws Exception {
+    prepareFile("<a>\n  <b>some", " text</b>\n  <c attr=\"v\">more</c>\n</a>");
+
+    XmlTag tagB = ((XmlFile)myDummyFile).getDocument().getRootTag().findFirstSubTag("b");
+    XmlTag tagC = ((XmlFile)myDummyFile).getDocument().getRootTag().findFirstSubTag("c");
+    insert("x");
+    insert("yz");
+    remove(2);
+    moveEditPointLeft(4);
+    insert(" ");
+
+    assertSame(tagB, ((XmlFile)myDummyFile).getDocument().getRootTag().findFirstSubTag("b"));
+    assertSame(tagC, ((XmlFile)myDummyFile).getDocument().getRootTag().findFirstSubTag("c"));
+  }
+
+  public void testDataTurningIntoMarkup() throws Exception {
+    prepareFile("<a><b>some", " text</b></a>");
+
+    insert("&");
+    insert("amp;");
+    insert("<");
+    insert("c/>");
+    insert("]]>");
+  }
+
+  public void testLineBreaksInWhitespace() throws Exception {
+    prepareFile("<a>\n  <b/>  ", "<c/>\n</a>");
+
+    insert(" ");
+    insert("\n");
+    insert("\n  ");
+    remove(1);
+  }
+
+  public void testCommentRelexed() throws Exception {
+    prepareFile("<a><!-- some", " comment --><b/></a>");
+
+    insert("x");
+    insert(" -");
+    insert("-");
+    insert(">");
+  }
+
+  public void testSeveralTokensRelexed() throws Exception {
+    prepareFile("<a>\n  <b>one two", " three</b>\n</a>");
+
+    XmlTag tagB = ((XmlFile)myDummyFile).getDocument().getRootTag().findFirstSubTag("b");
+    String text = myDummyFile.getText();
+    doReparse("uno  dos", text.replace("one two", "uno  dos"), "one two".length());
+
+    assertSame(tagB, ((XmlFile)myDummyFile).getDocument().getRootTag().findFirstSubTag("b"));
+  }
+
+  public void testRelexedAfterReparse() throws Exception {
+    StringBuilder tags = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      tags.append("<c>text ").append(i).append("</c>\n");
+    }
+    prepareFile("<a>\n<b", ">some text</b>\n" + tags + "<d>more text</d>\n</a>");
+
+    insert("b");
+    moveEditPointRight(tags.length() + ">some text</b>\n<d>more".length());
+    insert(" and");
+    insert("\n");
+    moveEditPointLeft(tags.length() + ">some text</b>\n<d>more and\n".length());
+    remove(1);
+    moveEditPointRight(tags.length() + ">some text</b>\n<d>more and\n".length());
+    insert("x");
+  }
+
   private static final String marker = "<marker>";
   public void testXmlDeclDtd() throws Exception {
     PsiFile file = createFile("x.xml", "<!DOCTYPE name [\n" +